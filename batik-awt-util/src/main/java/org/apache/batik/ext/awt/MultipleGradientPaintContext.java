@@ -34,6 +34,9 @@ import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 
@@ -84,11 +87,37 @@ abstract class MultipleGradientPaintContext implements PaintContext {
          32, 0xff0000, 0xFF00, 0xFF, 0xFF000000,
          false, DataBuffer.TYPE_INT);
 
-     /** The cached colorModel */
-    protected static ColorModel cachedModel;
+    /**
+     * The cached raster of each thread, which is reusable among
+     * instances painting on that thread.
+     */
+    protected static final ThreadLocal cached = new ThreadLocal();
+
+    /**
+     * A raster kept for reuse, with its color model.
+     */
+    protected static class CachedRaster {
+        ColorModel model;
+        WeakReference raster;
+    }
 
-    /** The cached raster, which is reusable among instances */
-    protected static WeakReference cached;
+    /**
+     * The maximum number of gradient tables kept in
+     * <code>gradientTables</code>.
+     */
+    protected static final int GRADIENT_TABLE_CACHE_SIZE = 64;
+
+    /**
+     * The most recently used gradient tables, indexed by
+     * <code>GradientKey</code>.  Pages with many identical gradients
+     * compute their tables only once.
+     */
+    protected static final Map gradientTables
+        = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > GRADIENT_TABLE_CACHE_SIZE;
+            }
+        };
 
     /** Raster is reused whenever possible */
     protected WritableRaster saved;
@@ -294,7 +323,22 @@ abstract class MultipleGradientPaintContext implements PaintContext {
             throw new IllegalArgumentException
                 ("Unsupported ColorSpace for interpolation");
 
-        calculateGradientFractions(loColors, hiColors);
+        GradientKey key = new GradientKey(fractions, colors, cycleMethod,
+                                          colorSpace,
+                                          dataModel.getColorSpace());
+        GradientTables tables;
+        synchronized (gradientTables) {
+            tables = (GradientTables)gradientTables.get(key);
+        }
+        if (tables == null) {
+            calculateGradientFractions(loColors, hiColors);
+            tables = new GradientTables(this);
+            synchronized (gradientTables) {
+                gradientTables.put(key, tables);
+            }
+        } else {
+            tables.copyTo(this);
+        }
 
         model = GraphicsUtil.coerceColorModel(dataModel,
                                               cm.isAlphaPremultiplied());
@@ -1405,23 +1449,21 @@ abstract class MultipleGradientPaintContext implements PaintContext {
 
 
     /** Took this cacheRaster code from GradientPaint. It appears to recycle
-     * rasters for use by any other instance, as long as they are sufficiently
-     * large.
+     * rasters for use by any other instance on the same thread, as long
+     * as they are sufficiently large.
      */
-    protected static final
-    synchronized WritableRaster getCachedRaster
+    protected static final WritableRaster getCachedRaster
         (ColorModel cm, int w, int h) {
-        if (cm == cachedModel) {
-            if (cached != null) {
-                WritableRaster ras = (WritableRaster) cached.get();
-                if (ras != null &&
-                    ras.getWidth() >= w &&
-                    ras.getHeight() >= h)
-                    {
-                        cached = null;
-                        return ras;
-                    }
-            }
+        CachedRaster c = (CachedRaster)cached.get();
+        if (c != null && cm == c.model) {
+            WritableRaster ras = (WritableRaster) c.raster.get();
+            if (ras != null &&
+                ras.getWidth() >= w &&
+                ras.getHeight() >= h)
+                {
+                    cached.set(null);
+                    return ras;
+                }
         }
         // Don't create rediculously small rasters...
         if (w<32) w=32;
@@ -1430,14 +1472,14 @@ abstract class MultipleGradientPaintContext implements PaintContext {
     }
 
     /** Took this cacheRaster code from GradientPaint. It appears to recycle
-     * rasters for use by any other instance, as long as they are sufficiently
-     * large.
+     * rasters for use by any other instance on the same thread, as long
+     * as they are sufficiently large.
      */
-    protected static final
-    synchronized void putCachedRaster(ColorModel cm,
-                                             WritableRaster ras) {
-        if (cached != null) {
-            WritableRaster cras = (WritableRaster) cached.get();
+    protected static final void putCachedRaster(ColorModel cm,
+                                                WritableRaster ras) {
+        CachedRaster c = (CachedRaster)cached.get();
+        if (c != null) {
+            WritableRaster cras = (WritableRaster) c.raster.get();
             if (cras != null) {
                 int cw = cras.getWidth();
                 int ch = cras.getHeight();
@@ -1451,8 +1493,10 @@ abstract class MultipleGradientPaintContext implements PaintContext {
                 }
             }
         }
-        cachedModel = cm;
-        cached = new WeakReference(ras);
+        c = new CachedRaster();
+        c.model = cm;
+        c.raster = new WeakReference(ras);
+        cached.set(c);
     }
 
     /**
@@ -1471,5 +1515,92 @@ abstract class MultipleGradientPaintContext implements PaintContext {
     public final ColorModel getColorModel() {
         return model;
     }
-}
 
+    /**
+     * Identifies the tables computed by
+     * <code>calculateGradientFractions</code>: they only depend on
+     * the gradient stops, the cycle method and the color spaces.
+     */
+    protected static class GradientKey {
+        private final float[] fractions;
+        private final int[] colors;
+        private final Object cycleMethod;
+        private final Object colorSpace;
+        private final ColorSpace dataColorSpace;
+        private final int hash;
+
+        GradientKey(float[] fractions, Color[] colors,
+                    Object cycleMethod, Object colorSpace,
+                    ColorSpace dataColorSpace) {
+            this.fractions = (float[])fractions.clone();
+            this.colors = new int[colors.length];
+            for (int i = 0; i < colors.length; i++) {
+                this.colors[i] = colors[i].getRGB();
+            }
+            this.cycleMethod = cycleMethod;
+            this.colorSpace = colorSpace;
+            this.dataColorSpace = dataColorSpace;
+            int h = Arrays.hashCode(this.fractions);
+            h = 31 * h + Arrays.hashCode(this.colors);
+            h = 31 * h + cycleMethod.hashCode();
+            h = 31 * h + colorSpace.hashCode();
+            hash = 31 * h + dataColorSpace.hashCode();
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof GradientKey)) {
+                return false;
+            }
+            GradientKey k = (GradientKey)o;
+            return hash == k.hash
+                && cycleMethod == k.cycleMethod
+                && colorSpace == k.colorSpace
+                && dataColorSpace == k.dataColorSpace
+                && Arrays.equals(fractions, k.fractions)
+                && Arrays.equals(colors, k.colors);
+        }
+    }
+
+    /**
+     * The result of <code>calculateGradientFractions</code>, shared by
+     * the contexts of identical gradients.  The arrays are never
+     * modified once computed.
+     */
+    protected static class GradientTables {
+        private final int[] gradient;
+        private final int[][] gradients;
+        private final boolean isSimpleLookup;
+        private final boolean hasDiscontinuity;
+        private final int gradientAverage;
+        private final int fastGradientArraySize;
+        private final int transparencyTest;
+        private final ColorModel dataModel;
+
+        GradientTables(MultipleGradientPaintContext ctx) {
+            gradient              = ctx.gradient;
+            gradients             = ctx.gradients;
+            isSimpleLookup        = ctx.isSimpleLookup;
+            hasDiscontinuity      = ctx.hasDiscontinuity;
+            gradientAverage       = ctx.gradientAverage;
+            fastGradientArraySize = ctx.fastGradientArraySize;
+            transparencyTest      = ctx.transparencyTest;
+            dataModel             = ctx.dataModel;
+        }
+
+        void copyTo(MultipleGradientPaintContext ctx) {
+            ctx.gradient              = gradient;
+            ctx.gradients             = gradients;
+            ctx.gradientsLength       = gradients.length;
+            ctx.isSimpleLookup        = isSimpleLookup;
+            ctx.hasDiscontinuity      = hasDiscontinuity;
+            ctx.gradientAverage       = gradientAverage;
+            ctx.fastGradientArraySize = fastGradientArraySize;
+            ctx.transparencyTest      = transparencyTest;
+            ctx.dataModel             = dataModel;
+        }
+    }
+}
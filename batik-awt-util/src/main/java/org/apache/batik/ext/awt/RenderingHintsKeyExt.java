@@ -77,9 +77,40 @@ public final class RenderingHintsKeyExt {
     public static final Object VALUE_AVOID_TILE_PAINTING_OFF = new Object();
     public static final Object VALUE_AVOID_TILE_PAINTING_DEFAULT = new Object();
 
+    /**
+     * Hint giving the distance, in device pixels, by which shapes may
+     * be simplified before they are painted, as a <code>Number</code>.
+     * This makes rendering small overviews of shapes with very many
+     * vertices, such as maps, much faster.  Shapes are not simplified
+     * when the hint is not set.
+     */
+    public static final RenderingHints.Key KEY_SHAPE_SIMPLIFICATION;
+
+    /**
+     * Hint giving the largest font size, in device pixels, of the text
+     * drawn from glyph atlases, as a <code>Number</code>.  Glyphs of
+     * text filled with a color, not stroked and not rotated are then
+     * rendered once in an atlas and copied from it, rather than filled
+     * one by one, which is much faster for dense small text.  Text is
+     * never drawn from an atlas when the hint is not set.
+     */
+    public static final RenderingHints.Key KEY_GLYPH_ATLAS;
+
+    /**
+     * Hint giving the number of markers of a shape from which they are
+     * stamped, as a <code>Number</code>.  Each marker is then rendered
+     * once in a small image for each device orientation and quarter
+     * pixel position, and the images are copied to the markers'
+     * positions, which is much faster for shapes with thousands of
+     * markers.  Markers are always painted one by one when the hint is
+     * not set.
+     */
+    public static final RenderingHints.Key KEY_MARKER_STAMPING;
+
     static {
         int base = 10100;
         RenderingHints.Key trans=null, aoi=null, bi=null, cs=null, atp=null;
+        RenderingHints.Key ss=null, ga=null, ms=null;
         while (true) {
             int val = base;
 
@@ -89,6 +120,9 @@ public final class RenderingHintsKeyExt {
                 bi    = new BufferedImageHintKey (val++);
                 cs    = new ColorSpaceHintKey    (val++);
                 atp   = new AvoidTilingHintKey   (val++);
+                ss    = new ShapeSimplificationHintKey(val++);
+                ga    = new GlyphAtlasHintKey(val++);
+                ms    = new MarkerStampingHintKey(val++);
             } catch (Exception e) {
                 System.err.println
                     ("You have loaded the Batik jar files more than once\n" +
@@ -106,6 +140,9 @@ public final class RenderingHintsKeyExt {
         KEY_BUFFERED_IMAGE      = bi;
         KEY_COLORSPACE          = cs;
         KEY_AVOID_TILE_PAINTING = atp;
+        KEY_SHAPE_SIMPLIFICATION = ss;
+        KEY_GLYPH_ATLAS         = ga;
+        KEY_MARKER_STAMPING     = ms;
     }
 
     /**
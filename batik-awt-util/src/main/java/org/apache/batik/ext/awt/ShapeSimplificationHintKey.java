@@ -0,0 +1,39 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt;
+
+import java.awt.RenderingHints;
+
+/**
+ * The key of the hint giving the tolerance, in device pixels, to which
+ * shapes may be simplified before they are painted.  Its values are
+ * non negative <code>Number</code>s.
+ *
+ * @version $Id$
+ */
+final class ShapeSimplificationHintKey extends RenderingHints.Key {
+
+    ShapeSimplificationHintKey(int number) { super(number); }
+
+    public boolean isCompatibleValue(Object val) {
+        if (!(val instanceof Number))
+            return false;
+        return ((Number)val).doubleValue() >= 0;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.color;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.xmlgraphics.java2d.color.ICCColorSpaceWithIntent;
+
+/**
+ * This class holds the prepared conversion from an ICC color space
+ * to sRGB.  There is one instance per color space, shared by all
+ * the documents and images using it.
+ * <p>
+ * Single colors are converted exactly and remembered.  Rasters of
+ * three component, 8 bit data can be converted through a 3-D lookup
+ * table built once from the color space, with tetrahedral
+ * interpolation between the grid points.  The grid is denser
+ * towards zero, where most profile curves are the steepest.  The
+ * table is checked against the exact conversion of points between
+ * the grid points and is not used if it is off by more than
+ * <code>MAX_ERROR</code> levels, which happens with profiles that
+ * are not smooth.
+ *
+ * @version $Id$
+ */
+public class ICCColorTransform {
+
+    /**
+     * The maximum number of single colors remembered.
+     */
+    public static final int MAX_COLORS = 256;
+
+    /**
+     * The largest difference, in 8 bit levels, allowed between the
+     * lookup table and the exact conversion.
+     */
+    public static final int MAX_ERROR = 2;
+
+    /**
+     * The grid points of the lookup table, on each axis.
+     */
+    static final int [] GRID;
+
+    /**
+     * The grid cell of each 8 bit value.
+     */
+    static final int [] CELL = new int[256];
+
+    /**
+     * The position of each 8 bit value in its cell, from 0 to 256.
+     */
+    static final int [] FRACTION = new int[256];
+
+    static {
+        int [] grid = new int[33];
+        int n = 0;
+        for (int i=0; i<grid.length; i++) {
+            double t = i/(double)(grid.length-1);
+            int v = (int)Math.round(255*t*t);
+            if ((n == 0) || (grid[n-1] != v))
+                grid[n++] = v;
+        }
+        GRID = new int[n];
+        System.arraycopy(grid, 0, GRID, 0, n);
+
+        int c = 0;
+        for (int v=0; v<256; v++) {
+            while ((c < n-2) && (v >= GRID[c+1]))
+                c++;
+            CELL[v] = c;
+            FRACTION[v] = ((v-GRID[c])<<8)/(GRID[c+1]-GRID[c]);
+        }
+    }
+
+    private static final Map transforms = new WeakHashMap();
+
+    /**
+     * Returns the transform for the given color space.
+     */
+    public static ICCColorTransform getInstance(ICCColorSpaceWithIntent cs) {
+        synchronized (transforms) {
+            ICCColorTransform t = (ICCColorTransform)transforms.get(cs);
+            if (t == null) {
+                t = new ICCColorTransform(cs);
+                transforms.put(cs, t);
+            }
+            return t;
+        }
+    }
+
+    /**
+     * The color space, only weakly referenced so that the transform
+     * does not keep its own key alive.
+     */
+    private final Reference colorSpace;
+
+    private final int numComponents;
+
+    private final Map colors = new LinkedHashMap(16, .75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_COLORS;
+            }
+        };
+
+    /**
+     * The sRGB value of each grid point, as 0xRRGGBB, or null if the
+     * table is not accurate enough.
+     */
+    private int [] lut;
+
+    private boolean lutChecked;
+
+    protected ICCColorTransform(ICCColorSpaceWithIntent cs) {
+        colorSpace = new WeakReference(cs);
+        numComponents = cs.getNumComponents();
+    }
+
+    /**
+     * Returns true if <code>toRGB</code> can be used with this
+     * transform, that is if the color space has three components and
+     * the lookup table is accurate enough.  This builds the table.
+     */
+    public boolean isLUTSupported() {
+        return (numComponents == 3) && (getLUT() != null);
+    }
+
+    /**
+     * Converts a color with the color space's rendering intent, as
+     * <code>ICCColorSpaceWithIntent.intendedToRGB</code> does.
+     * @param values the color components
+     * @return a new array with the sRGB components
+     */
+    public float [] intendedToRGB(float [] values) {
+        ColorKey key = new ColorKey(values);
+        float [] rgb;
+        synchronized (colors) {
+            rgb = (float[])colors.get(key);
+        }
+        if (rgb == null) {
+            rgb = getColorSpace().intendedToRGB(values);
+            synchronized (colors) {
+                colors.put(key, rgb);
+            }
+        }
+        return (float[])rgb.clone();
+    }
+
+    /**
+     * Converts 8 bit pixels to sRGB.
+     * @param src the source samples, <code>srcBands</code> per pixel.
+     *        The first three are the color components, the fourth one,
+     *        if present, the alpha.
+     * @param srcBands the number of samples per source pixel, 3 or 4
+     * @param dst the destination, receiving the red, green, blue and
+     *        alpha samples of each pixel
+     * @param n the number of pixels to convert
+     */
+    public void toRGB(int [] src, int srcBands, int [] dst, int n) {
+        int [] lut = (numComponents == 3) ? getLUT() : null;
+        if (lut == null)
+            throw new IllegalStateException("No lookup table");
+        interpolate(lut, src, srcBands, dst, n);
+    }
+
+    /**
+     * Converts pixels through a lookup table, as <code>toRGB</code>.
+     */
+    static void interpolate(int [] lut, int [] src, int srcBands,
+                            int [] dst, int n) {
+        int gs = GRID.length;
+        int sx = gs*gs;
+        int sy = gs;
+        int sp = 0, dp = 0;
+        for (int i=0; i<n; i++, sp+=srcBands, dp+=4) {
+            int x = src[sp  ] & 0xFF;
+            int y = src[sp+1] & 0xFF;
+            int z = src[sp+2] & 0xFF;
+            int fx = FRACTION[x], fy = FRACTION[y], fz = FRACTION[z];
+            int base = CELL[x]*sx + CELL[y]*sy + CELL[z];
+
+            // Pick the tetrahedron holding the point, walking from the
+            // base corner along the axes of decreasing fraction.
+            int i1, i2, f1, f2, f3;
+            if (fx >= fy) {
+                if (fy >= fz) {
+                    i1 = base+sx;      i2 = base+sx+sy; f1 = fx; f2 = fy; f3 = fz;
+                } else if (fx >= fz) {
+                    i1 = base+sx;      i2 = base+sx+1;  f1 = fx; f2 = fz; f3 = fy;
+                } else {
+                    i1 = base+1;       i2 = base+sx+1;  f1 = fz; f2 = fx; f3 = fy;
+                }
+            } else {
+                if (fx >= fz) {
+                    i1 = base+sy;      i2 = base+sx+sy; f1 = fy; f2 = fx; f3 = fz;
+                } else if (fy >= fz) {
+                    i1 = base+sy;      i2 = base+sy+1;  f1 = fy; f2 = fz; f3 = fx;
+                } else {
+                    i1 = base+1;       i2 = base+sy+1;  f1 = fz; f2 = fy; f3 = fx;
+                }
+            }
+            int w0 = 256-f1, w1 = f1-f2, w2 = f2-f3, w3 = f3;
+            int c0 = lut[base], c1 = lut[i1], c2 = lut[i2];
+            int c3 = lut[base+sx+sy+1];
+
+            dst[dp  ] = (w0*((c0>>16)&0xFF) + w1*((c1>>16)&0xFF) +
+                         w2*((c2>>16)&0xFF) + w3*((c3>>16)&0xFF) + 128)>>8;
+            dst[dp+1] = (w0*((c0>> 8)&0xFF) + w1*((c1>> 8)&0xFF) +
+                         w2*((c2>> 8)&0xFF) + w3*((c3>> 8)&0xFF) + 128)>>8;
+            dst[dp+2] = (w0*( c0     &0xFF) + w1*( c1     &0xFF) +
+                         w2*( c2     &0xFF) + w3*( c3     &0xFF) + 128)>>8;
+            dst[dp+3] = (srcBands > 3) ? src[sp+3] : 255;
+        }
+    }
+
+    private ICCColorSpaceWithIntent getColorSpace() {
+        ICCColorSpaceWithIntent cs = (ICCColorSpaceWithIntent)colorSpace.get();
+        if (cs == null)
+            // Our caller handed us the color space, so it is still
+            // strongly reachable: this can not happen.
+            throw new IllegalStateException("Color space was collected");
+        return cs;
+    }
+
+    /**
+     * Returns the lookup table, or null if it is not accurate enough.
+     * The table is built on first use by converting all the grid
+     * points the same way <code>ProfileRed</code> converts images.
+     */
+    protected synchronized int [] getLUT() {
+        if (lutChecked)
+            return lut;
+        lutChecked = true;
+
+        int gs = GRID.length;
+        int n = gs*gs*gs;
+        int [] samples = new int[n*3];
+        int p = 0;
+        for (int x=0; x<gs; x++)
+            for (int y=0; y<gs; y++)
+                for (int z=0; z<gs; z++) {
+                    samples[p++] = GRID[x];
+                    samples[p++] = GRID[y];
+                    samples[p++] = GRID[z];
+                }
+        samples = convert(samples, n);
+        int [] table = new int[n];
+        for (int i=0, s=0; i<n; i++, s+=3)
+            table[i] = (samples[s]<<16) | (samples[s+1]<<8) | samples[s+2];
+
+        // Check the table on a regular grid falling between its points.
+        int cs = 32;
+        n = cs*cs*cs;
+        int [] check = new int[n*3];
+        p = 0;
+        for (int x=0; x<cs; x++)
+            for (int y=0; y<cs; y++)
+                for (int z=0; z<cs; z++) {
+                    check[p++] = 3+x*8;
+                    check[p++] = 3+y*8;
+                    check[p++] = 3+z*8;
+                }
+        int [] exact = convert(check, n);
+        int [] approx = new int[n*4];
+        interpolate(table, check, 3, approx, n);
+        for (int i=0; i<n; i++) {
+            for (int b=0; b<3; b++) {
+                if (Math.abs(approx[i*4+b]-exact[i*3+b]) > MAX_ERROR)
+                    return null;
+            }
+        }
+        lut = table;
+        return lut;
+    }
+
+    /**
+     * Converts <code>n</code> pixels of three 8 bit samples exactly.
+     */
+    private int [] convert(int [] samples, int n) {
+        WritableRaster srcWR = Raster.createBandedRaster
+            (DataBuffer.TYPE_BYTE, n, 1, 3, new Point(0, 0));
+        srcWR.setPixels(0, 0, n, 1, samples);
+        WritableRaster dstWR = Raster.createBandedRaster
+            (DataBuffer.TYPE_BYTE, n, 1, 3, new Point(0, 0));
+
+        ComponentColorModel srcCM = new ComponentColorModel
+            (getColorSpace(), new int[]{8, 8, 8}, false, false,
+             Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        ComponentColorModel sRGBCM = new ComponentColorModel
+            (ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[]{8, 8, 8},
+             false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        new ColorConvertOp(null).filter
+            (new BufferedImage(srcCM, srcWR, false, null),
+             new BufferedImage(sRGBCM, dstWR, false, null));
+        return dstWR.getPixels(0, 0, n, 1, (int[])null);
+    }
+
+    /**
+     * The key of a remembered color.
+     */
+    static class ColorKey {
+        final float [] values;
+        final int hash;
+
+        ColorKey(float [] values) {
+            this.values = (float[])values.clone();
+            this.hash = Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof ColorKey))
+                return false;
+            return Arrays.equals(values, ((ColorKey)o).values);
+        }
+    }
+}
@@ -121,6 +121,24 @@ public class GraphicContext implements Cloneable{
      */
     protected Color foreground = Color.black;
 
+    /**
+     * Whether <code>transform</code> is shared with a clone of this
+     * context, and must be copied before it is modified.
+     */
+    protected boolean transformShared;
+
+    /**
+     * Whether <code>transformStack</code> is shared with a clone of this
+     * context, and must be copied before it is modified.
+     */
+    protected boolean transformStackShared;
+
+    /**
+     * Whether <code>hints</code> is shared with a clone of this
+     * context, and must be copied before it is modified.
+     */
+    protected boolean hintsShared;
+
     /**
      * Default constructor
      */
@@ -142,58 +160,60 @@ public class GraphicContext implements Cloneable{
     }
 
     /**
-     * @return a deep copy of this context
+     * Returns a copy of this context.  The transform, transform stack
+     * and rendering hints are shared with the copy until either context
+     * modifies them; the other elements, including the clip, are never
+     * modified in place.
+     * @return a copy of this context
      */
     public Object clone(){
-        GraphicContext copyGc = new GraphicContext(defaultTransform);
-
-        //
-        // Now, copy each GC element in turn
-        //
-
-        // Default transform
-        /* Set in constructor */
-
-        // Transform
-        copyGc.transform = new AffineTransform(this.transform);
-
-        // Transform stack
-        copyGc.transformStack = new ArrayList( transformStack.size() );
-        for(int i=0; i<this.transformStack.size(); i++){
-            TransformStackElement stackElement =
-                (TransformStackElement)this.transformStack.get(i);
-            copyGc.transformStack.add(stackElement.clone());
+        GraphicContext copyGc;
+        try {
+            copyGc = (GraphicContext)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e.getMessage());
         }
 
-        // Transform stack validity
-        copyGc.transformStackValid = this.transformStackValid;
-
-        // Paint (immutable by requirement)
-        copyGc.paint = this.paint;
-
-        // Stroke (immutable by requirement)
-        copyGc.stroke = this.stroke;
-
-        // Composite (immutable by requirement)
-        copyGc.composite = this.composite;
+        transformShared      = copyGc.transformShared      = true;
+        transformStackShared = copyGc.transformStackShared = true;
+        hintsShared          = copyGc.hintsShared          = true;
 
-        // Clip
-        if(clip != null)
+        // Copies get their clip as a GeneralPath.  A clip that already
+        // is one would be copied as is, so it is shared instead.
+        if ((clip != null) && !(clip instanceof GeneralPath))
             copyGc.clip = new GeneralPath(clip);
-        else
-            copyGc.clip = null;
 
-        // RenderingHints
-        copyGc.hints = (RenderingHints)this.hints.clone();
+        return copyGc;
+    }
 
-        // Font (immutable)
-        copyGc.font = this.font;
+    /**
+     * Makes sure <code>transform</code> can be modified.
+     */
+    protected void unshareTransform() {
+        if (transformShared) {
+            transform = new AffineTransform(transform);
+            transformShared = false;
+        }
+    }
 
-        // Background, Foreground (immutable)
-        copyGc.background = this.background;
-        copyGc.foreground = this.foreground;
+    /**
+     * Makes sure <code>transformStack</code> can be modified.
+     */
+    protected void unshareTransformStack() {
+        if (transformStackShared) {
+            transformStack = new ArrayList(transformStack);
+            transformStackShared = false;
+        }
+    }
 
-        return copyGc;
+    /**
+     * Makes sure <code>hints</code> can be modified.
+     */
+    protected void unshareHints() {
+        if (hintsShared) {
+            hints = (RenderingHints)hints.clone();
+            hintsShared = false;
+        }
     }
 
     /**
@@ -435,6 +455,7 @@ public class GraphicContext implements Cloneable{
      * @see RenderingHints
      */
     public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue){
+        unshareHints();
         hints.put(hintKey, hintValue);
     }
 
@@ -471,6 +492,7 @@ public class GraphicContext implements Cloneable{
      */
     public void setRenderingHints(Map hints){
         this.hints = new RenderingHints(hints);
+        hintsShared = false;
     }
 
 
@@ -489,6 +511,7 @@ public class GraphicContext implements Cloneable{
      * @see RenderingHints
      */
     public void addRenderingHints(Map hints){
+        unshareHints();
         this.hints.putAll(hints);
     }
 
@@ -506,6 +529,8 @@ public class GraphicContext implements Cloneable{
      * @see RenderingHints
      */
     public RenderingHints getRenderingHints(){
+        // The caller may modify the hints returned.
+        unshareHints();
         return hints;
     }
 
@@ -522,6 +547,8 @@ public class GraphicContext implements Cloneable{
      */
     public void translate(int x, int y){
         if(x!=0 || y!=0){
+            unshareTransform();
+            unshareTransformStack();
             transform.translate(x, y);
             transformStack.add(TransformStackElement.createTranslateElement(x, y));
         }
@@ -545,6 +572,8 @@ public class GraphicContext implements Cloneable{
      * @param ty the distance to translate along the y-axis
      */
     public void translate(double tx, double ty){
+        unshareTransform();
+        unshareTransformStack();
         transform.translate(tx, ty);
         transformStack.add(TransformStackElement.createTranslateElement(tx, ty));
     }
@@ -566,6 +595,8 @@ public class GraphicContext implements Cloneable{
      * @param theta the angle of rotation in radians
      */
     public void rotate(double theta){
+        unshareTransform();
+        unshareTransformStack();
         transform.rotate(theta);
         transformStack.add(TransformStackElement.createRotateElement(theta));
     }
@@ -590,6 +621,8 @@ public class GraphicContext implements Cloneable{
      * @param y y coordinate of the origin of the rotation
      */
     public void rotate(double theta, double x, double y){
+        unshareTransform();
+        unshareTransformStack();
         transform.rotate(theta, x, y);
         transformStack.add(TransformStackElement.createTranslateElement(x, y));
         transformStack.add(TransformStackElement.createRotateElement(theta));
@@ -616,6 +649,8 @@ public class GraphicContext implements Cloneable{
      * rendering operations.
      */
     public void scale(double sx, double sy){
+        unshareTransform();
+        unshareTransformStack();
         transform.scale(sx, sy);
         transformStack.add(TransformStackElement.createScaleElement(sx, sy));
     }
@@ -639,6 +674,8 @@ public class GraphicContext implements Cloneable{
      * the positive Y axis direction as a function of their X coordinate
      */
     public void shear(double shx, double shy){
+        unshareTransform();
+        unshareTransformStack();
         transform.shear(shx, shy);
         transformStack.add(TransformStackElement.createShearElement(shx, shy));
     }
@@ -661,6 +698,8 @@ public class GraphicContext implements Cloneable{
      * @see AffineTransform
      */
     public void transform(AffineTransform Tx){
+        unshareTransform();
+        unshareTransformStack();
         transform.concatenate(Tx);
         transformStack.add(TransformStackElement.createGeneralTransformElement(Tx));
     }
@@ -675,6 +714,7 @@ public class GraphicContext implements Cloneable{
      */
     public void setTransform(AffineTransform Tx){
         transform = new AffineTransform(Tx);
+        transformShared = false;
         invalidateTransformStack();
         if(!Tx.isIdentity())
             transformStack.add(TransformStackElement.createGeneralTransformElement(Tx));
@@ -714,7 +754,12 @@ public class GraphicContext implements Cloneable{
      * can override this memento
      */
     protected void invalidateTransformStack(){
-        transformStack.clear();
+        if (transformStackShared) {
+            transformStack = new ArrayList();
+            transformStackShared = false;
+        } else {
+            transformStack.clear();
+        }
         transformStackValid = false;
     }
 
@@ -381,27 +381,17 @@ public class PathLength {
                 lb = curr + 1;
             }
         }
-        for (;;) {
+        // The lengths never decrease, so the first segment that is not
+        // a move from there on is the upper one.
+        int numSegments = segments.size();
+        while (ub < numSegments) {
             PathSegment ps = (PathSegment) segments.get(ub);
-            if (ps.getSegType() != PathIterator.SEG_MOVETO
-                    || ub == segments.size() - 1) {
-                break;
+            if (ps.getSegType() != PathIterator.SEG_MOVETO) {
+                return ub;
             }
             ub++;
         }
-
-        int upperIndex = -1;
-        int currentIndex = 0;
-        int numSegments = segments.size();
-        while (upperIndex <= 0 && currentIndex < numSegments) {
-            PathSegment ps = (PathSegment) segments.get(currentIndex);
-            if (ps.getLength() >= length
-                    && ps.getSegType() != PathIterator.SEG_MOVETO) {
-                upperIndex = currentIndex;
-            }
-            currentIndex++;
-        }
-        return upperIndex;
+        return -1;
     }
 
     /**
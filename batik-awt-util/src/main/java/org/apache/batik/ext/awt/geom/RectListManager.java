@@ -611,6 +611,22 @@ public class RectListManager implements Collection {
         bounds = null;
     }
 
+    /**
+     * Merges rectangles in this list where drawing their union costs
+     * less than drawing them separately.  The cost of a rectangle is
+     * <code>overhead + height*lineOverhead + height*width</code>, so
+     * <code>overhead</code> is the number of pixels one is willing to
+     * overdraw to save a rectangle, and <code>lineOverhead</code> the
+     * same for a scanline.  Overlapping rectangles that are not merged
+     * are split so that the resulting rectangles do not overlap.
+     *
+     * The list is swept in order of increasing x; each rectangle is
+     * only compared with the rectangles that follow it closely enough,
+     * horizontally and vertically, to possibly be merged with it.
+     *
+     * @param overhead the cost of a rectangle.
+     * @param lineOverhead the cost of a scanline.
+     */
     public void mergeRects(int overhead, int lineOverhead) {
         if (size == 0) return;
         Rectangle r, cr;
@@ -622,30 +638,44 @@ public class RectListManager implements Collection {
             cost1 = (overhead                 +
                      (r.height*lineOverhead) +
                      (r.height*r.width));
+            boolean merged;
             do {
-                int maxX = r.x+r.width+overhead/r.height;
+                merged = false;
                 for (j=i+1; j<size; j++) {
                     cr = rects[j];
                     if ((cr == null) || (cr == r)) continue;
-                    if (cr.x >= maxX) {
+                    if (cr.x >= r.x+r.width+overhead/r.height) {
                         // No more merges can happen.
-                        j = size;
                         break;
                     }
+
+                    // Merging with a rect 'gap' scanlines above or
+                    // below this one costs at least
+                    // gap*(r.width+lineOverhead) more than drawing
+                    // both, and splitting requires an intersection.
+                    int gap = Math.max(cr.y-(r.y+r.height),
+                                       r.y-(cr.y+cr.height));
+                    if ((gap > 0) &&
+                        (gap*(r.width+lineOverhead) > overhead))
+                        continue;
+
                     cost2 = (overhead                 +
                              (cr.height*lineOverhead) +
                              (cr.height*cr.width));
 
-                    Rectangle mr = r.union(cr);
-                    cost3 = (overhead                 +
-                             (mr.height*lineOverhead) +
-                             (mr.height*mr.width));
+                    int mx = Math.min(r.x, cr.x);
+                    int my = Math.min(r.y, cr.y);
+                    int mw = Math.max(r.x+r.width,  cr.x+cr.width)  - mx;
+                    int mh = Math.max(r.y+r.height, cr.y+cr.height) - my;
+                    cost3 = (overhead          +
+                             (mh*lineOverhead) +
+                             (mh*mw));
                     if (cost3 <= cost1+cost2) {
-                        r = rects[i] = mr;
+                        r = rects[i] = new Rectangle(mx, my, mw, mh);
                         rects[j] = null;
                         cost1 = cost3;
-                        j=-1;
-                        break;
+                        merged = true;
+                        continue;
                     }
 
                     if (!r.intersects(cr)) continue;
@@ -682,10 +712,10 @@ public class RectListManager implements Collection {
                         add(splits[3], j, size-1);
                 }
 
-                // if we merged it with another rect then
-                // we need to check all the rects up to i again,
-                // against the merged rect.
-            } while (j != size);
+                // if we merged it with another rect then we need
+                // to check the rects we passed again, against the
+                // merged rect.
+            } while (merged);
         }
 
         // Now we will go through collapsing the nulled entries.
@@ -710,6 +740,31 @@ public class RectListManager implements Collection {
         }
     }
 
+    /**
+     * Merges rectangles as {@link #mergeRects(int,int)} does, then
+     * keeps merging until at most <code>maxRects</code> rectangles are
+     * left.  Each further pass doubles <code>overhead</code>, so the
+     * rectangles merged first are those that cost the least overdraw.
+     *
+     * @param overhead the cost of a rectangle.
+     * @param lineOverhead the cost of a scanline.
+     * @param maxRects the maximum number of rectangles to keep.
+     */
+    public void mergeRects(int overhead, int lineOverhead, int maxRects) {
+        mergeRects(overhead, lineOverhead);
+        if (maxRects < 1) maxRects = 1;
+        while (size > maxRects) {
+            if (overhead >= Integer.MAX_VALUE/8) {
+                // Costs would overflow, just use the bounds.
+                rects[0] = getBounds();
+                size = 1;
+                break;
+            }
+            overhead = Math.max(2*overhead, 1);
+            mergeRects(overhead, lineOverhead);
+        }
+    }
+
     public void subtract(RectListManager rlm, int overhead, int lineOverhead) {
         Rectangle r, sr;
         int cost;
@@ -0,0 +1,209 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.PathIterator;
+
+/**
+ * Simplifies shapes for painting at a small scale.  The shape is
+ * flattened, then the vertices of each subpath are thinned with the
+ * Douglas-Peucker algorithm.  Each step gets half of the tolerance, so
+ * that the simplified outline is never further than the tolerance from
+ * the original one.  The first and last vertices of each subpath are
+ * kept, as are closed subpaths.
+ *
+ * @version $Id$
+ */
+public final class ShapeSimplifier {
+
+    /**
+     * No instances.
+     */
+    private ShapeSimplifier() {
+    }
+
+    /**
+     * Returns <code>s</code> simplified to the given tolerance, or
+     * <code>s</code> itself if that removes less than a quarter of its
+     * vertices.
+     */
+    public static Shape simplify(Shape s, double tolerance) {
+        double half = tolerance / 2;
+        PathIterator pi = s.getPathIterator(null, half);
+        Simplifier sim = new Simplifier(pi.getWindingRule(), half);
+        double [] c = new double[6];
+        while (!pi.isDone()) {
+            switch (pi.currentSegment(c)) {
+            case PathIterator.SEG_MOVETO:
+                sim.moveTo(c[0], c[1]);
+                break;
+            case PathIterator.SEG_LINETO:
+                sim.lineTo(c[0], c[1]);
+                break;
+            case PathIterator.SEG_CLOSE:
+                sim.close();
+                break;
+            }
+            pi.next();
+        }
+        sim.flush(false);
+        if (sim.kept * 4 > sim.read * 3)
+            return s;
+        return sim.path;
+    }
+
+    /**
+     * Gathers the vertices of a subpath and appends them, simplified,
+     * to a path.
+     */
+    private static class Simplifier {
+        final GeneralPath path;
+        final double tol2;
+
+        /**
+         * The vertices of the current subpath, as x, y pairs.
+         */
+        double [] pts = new double[64];
+        int n;
+
+        /**
+         * The start of the last subpath, where a close leaves the
+         * current point.
+         */
+        double startX, startY;
+
+        int read, kept;
+
+        boolean [] keep = new boolean[32];
+        int [] stack = new int[32];
+
+        Simplifier(int windingRule, double tolerance) {
+            path = new GeneralPath(windingRule);
+            tol2 = tolerance * tolerance;
+        }
+
+        void moveTo(double x, double y) {
+            flush(false);
+            startX = x;
+            startY = y;
+            add(x, y);
+        }
+
+        void lineTo(double x, double y) {
+            if (n == 0)
+                add(startX, startY);
+            add(x, y);
+        }
+
+        void close() {
+            flush(true);
+        }
+
+        void add(double x, double y) {
+            if (n*2 == pts.length) {
+                double [] tmp = new double[pts.length*2];
+                System.arraycopy(pts, 0, tmp, 0, n*2);
+                pts = tmp;
+            }
+            pts[n*2] = x;
+            pts[n*2+1] = y;
+            n++;
+            read++;
+        }
+
+        /**
+         * Appends the current subpath, simplified, to the path.
+         */
+        void flush(boolean closed) {
+            if (n == 0) {
+                if (closed)
+                    path.closePath();
+                return;
+            }
+            if (keep.length < n)
+                keep = new boolean[n];
+            for (int i=0; i < n; i++)
+                keep[i] = false;
+            keep[0] = keep[n-1] = true;
+
+            // Douglas-Peucker, with an explicit stack of ranges.
+            int sp = 0;
+            if (n > 2) {
+                stack[sp++] = 0;
+                stack[sp++] = n-1;
+            }
+            while (sp > 0) {
+                int j = stack[--sp];
+                int i = stack[--sp];
+                double ax = pts[i*2], ay = pts[i*2+1];
+                double dx = pts[j*2] - ax, dy = pts[j*2+1] - ay;
+                double len2 = dx*dx + dy*dy;
+                double max = 0;
+                int maxK = -1;
+                for (int k=i+1; k < j; k++) {
+                    double px = pts[k*2] - ax, py = pts[k*2+1] - ay;
+                    if (len2 != 0) {
+                        // Distance to the segment, not to its line.
+                        double t = (px*dx + py*dy) / len2;
+                        if (t > 1) t = 1;
+                        if (t > 0) {
+                            px -= t*dx;
+                            py -= t*dy;
+                        }
+                    }
+                    double d = px*px + py*py;
+                    if (d > max) {
+                        max = d;
+                        maxK = k;
+                    }
+                }
+                if ((maxK < 0) || (max <= tol2))
+                    continue;
+                keep[maxK] = true;
+                if (sp + 4 > stack.length) {
+                    int [] tmp = new int[stack.length*2];
+                    System.arraycopy(stack, 0, tmp, 0, sp);
+                    stack = tmp;
+                }
+                if (maxK - i > 1) {
+                    stack[sp++] = i;
+                    stack[sp++] = maxK;
+                }
+                if (j - maxK > 1) {
+                    stack[sp++] = maxK;
+                    stack[sp++] = j;
+                }
+            }
+
+            path.moveTo((float)pts[0], (float)pts[1]);
+            kept++;
+            for (int i=1; i < n; i++) {
+                if (keep[i]) {
+                    path.lineTo((float)pts[i*2], (float)pts[i*2+1]);
+                    kept++;
+                }
+            }
+            if (closed)
+                path.closePath();
+            n = 0;
+        }
+    }
+}
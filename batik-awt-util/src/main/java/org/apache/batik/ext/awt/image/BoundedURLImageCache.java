@@ -0,0 +1,309 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.util.ParsedURL;
+
+/**
+ * A <code>URLImageCache</code> holding its images strongly, up to a
+ * number of bytes, instead of through soft references.  When the
+ * images take more than that, the least recently used ones are
+ * dropped.
+ * <p>
+ * The size of an image is four bytes per pixel of its bounds.  The
+ * bounds of an image still loading are only counted once known.
+ * <p>
+ * The request protocol is the one of <code>URLImageCache</code>, but
+ * the cache is not locked as a whole: requests for different URLs do
+ * not wait on each other, and only the requests for a URL someone is
+ * loading wait for it.
+ *
+ * @version $Id$
+ */
+public class BoundedURLImageCache extends URLImageCache {
+
+    /**
+     * An entry of the cache.  It is pending until its filter is set
+     * or it is cancelled.
+     */
+    static class Entry {
+        Filter filter;
+        volatile boolean done;
+        boolean removed;
+        long size = -1;
+        volatile long lastUse;
+
+        /**
+         * Waits for the filter, returns null if the entry was removed.
+         */
+        synchronized Filter await() {
+            while (!done && !removed) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    // Loop around again see if it is set now...
+                }
+            }
+            return removed ? null : filter;
+        }
+
+        synchronized boolean set(Filter filter) {
+            if (done || removed)
+                return false;
+            this.filter = filter;
+            this.done = true;
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Marks the entry removed and returns the size it counted for.
+         */
+        synchronized long remove() {
+            if (removed)
+                return 0;
+            removed = true;
+            notifyAll();
+            return Math.max(size, 0);
+        }
+
+        /**
+         * Sets the size if it was not known yet and returns the bytes
+         * to add to the cache.
+         */
+        synchronized long updateSize() {
+            if (!done || removed || (size >= 0))
+                return 0;
+            size = sizeOf(filter);
+            return Math.max(size, 0);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of <code>filt</code>, or -1 if it is
+     * not known yet.
+     */
+    static long sizeOf(Filter filt) {
+        Rectangle2D r;
+        if (filt instanceof DeferRable)
+            r = ((DeferRable)filt).getKnownBounds();
+        else
+            r = filt.getBounds2D();
+        if (r == null)
+            return -1;
+        return 4 * (long)Math.ceil(r.getWidth()) * (long)Math.ceil(r.getHeight());
+    }
+
+    protected final ConcurrentHashMap entries = new ConcurrentHashMap();
+
+    protected final long maxSize;
+
+    protected final AtomicLong size = new AtomicLong();
+
+    protected final AtomicLong clock = new AtomicLong();
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
+
+    protected final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding up to <code>maxSize</code> bytes of images.
+     */
+    public BoundedURLImageCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the number of bytes of images the cache may hold.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of bytes of images the cache holds.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of requests answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that put their caller on the hook.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of images dropped to stay within the maximum
+     * size.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public boolean isPresent(ParsedURL purl) {
+        return entries.containsKey(purl);
+    }
+
+    public boolean isDone(ParsedURL purl) {
+        Entry e = (Entry)entries.get(purl);
+        if (e == null)
+            return false;
+        return e.done;
+    }
+
+    /**
+     * If this returns null then you are now 'on the hook'.
+     * to put the Filter associated with ParsedURL into the
+     * cache.  If someone else is on the hook for it, this waits
+     * for them.
+     */
+    public Filter request(ParsedURL purl) {
+        for (;;) {
+            Entry e = (Entry)entries.get(purl);
+            if (e == null) {
+                e = new Entry();
+                if (entries.putIfAbsent(purl, e) == null) {
+                    misses.incrementAndGet();
+                    return null;
+                }
+                continue;
+            }
+            Filter filt = e.await();
+            if (filt != null) {
+                e.lastUse = clock.incrementAndGet();
+                hits.incrementAndGet();
+                return filt;
+            }
+            // Cleared while we waited, most likely it will never
+            // be put so loop around and get on the hook.
+        }
+    }
+
+    /**
+     * Clear the entry for ParsedURL.
+     * This is the easiest way to 'get off the hook'.
+     * if you didn't indend to get on it.
+     */
+    public void clear(ParsedURL purl) {
+        Entry e = (Entry)entries.remove(purl);
+        if (e != null)
+            size.addAndGet(-e.remove());
+    }
+
+    /**
+     * Associate filt with purl.  If the map no longer contains our
+     * purl it was probably cleared or flushed since we were put on
+     * the hook for it, so in that case we will do nothing.  A null
+     * filter gets everyone off the hook.
+     */
+    public void put(ParsedURL purl, Filter filt) {
+        if (filt == null) {
+            clear(purl);
+            return;
+        }
+        Entry e = (Entry)entries.get(purl);
+        if (e == null)
+            return;
+        if (!e.set(filt)) {
+            // Already there, replace it.
+            Entry ne = new Entry();
+            ne.set(filt);
+            if (!entries.replace(purl, e, ne))
+                return;
+            size.addAndGet(-e.remove());
+            e = ne;
+        }
+        e.lastUse = clock.incrementAndGet();
+        size.addAndGet(e.updateSize());
+        evict();
+    }
+
+    public void flush() {
+        Iterator i = entries.keySet().iterator();
+        while (i.hasNext())
+            clear((ParsedURL)i.next());
+    }
+
+    /**
+     * Drops the least recently used images until the cache is within
+     * its maximum size.
+     */
+    protected void evict() {
+        // Count the images whose size got known since they were put.
+        List done = new ArrayList();
+        Iterator i = entries.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry me = (Map.Entry)i.next();
+            Entry e = (Entry)me.getValue();
+            size.addAndGet(e.updateSize());
+            if (e.done)
+                done.add(me);
+        }
+        if (size.get() <= maxSize)
+            return;
+
+        Collections.sort(done, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    long l1 = ((Entry)((Map.Entry)o1).getValue()).lastUse;
+                    long l2 = ((Entry)((Map.Entry)o2).getValue()).lastUse;
+                    return (l1 < l2) ? -1 : ((l1 == l2) ? 0 : 1);
+                }
+            });
+        i = done.iterator();
+        while (i.hasNext() && (size.get() > maxSize)) {
+            Map.Entry me = (Map.Entry)i.next();
+            Entry e = (Entry)me.getValue();
+            if (entries.remove(me.getKey(), e)) {
+                size.addAndGet(-e.remove());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public String toString() {
+        return "BoundedURLImageCache[size=" + getSize()
+            + ", maxSize=" + maxSize
+            + ", hits=" + getHitCount()
+            + ", misses=" + getMissCount()
+            + ", evictions=" + getEvictionCount() + ']';
+    }
+}
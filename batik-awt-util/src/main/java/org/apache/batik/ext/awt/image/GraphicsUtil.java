@@ -55,6 +55,7 @@ import org.apache.batik.ext.awt.image.rendered.Any2LsRGBRed;
 import org.apache.batik.ext.awt.image.rendered.Any2sRGBRed;
 import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.ComponentTransferRed;
 import org.apache.batik.ext.awt.image.rendered.FormatRed;
 import org.apache.batik.ext.awt.image.rendered.RenderedImageCachableRed;
 import org.apache.batik.ext.awt.image.rendered.TranslateRed;
@@ -683,6 +684,11 @@ public class GraphicsUtil {
         if (cs == ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB))
             return src;
 
+        if (src instanceof ComponentTransferRed)
+            // Fold the conversion into the source's lookup tables.
+            return ComponentTransferRed.create
+                (new Any2LsRGBRed(src), (byte[][])null, null);
+
         return new Any2LsRGBRed(src);
     }
 
@@ -702,6 +708,11 @@ public class GraphicsUtil {
         if (cs == ColorSpace.getInstance(ColorSpace.CS_sRGB))
             return src;
 
+        if (src instanceof ComponentTransferRed)
+            // Fold the conversion into the source's lookup tables.
+            return ComponentTransferRed.create
+                (new Any2sRGBRed(src), (byte[][])null, null);
+
         return new Any2sRGBRed(src);
     }
 
@@ -30,6 +30,8 @@ import java.awt.image.Raster;
 import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 
+import org.apache.batik.ext.awt.image.rendered.ParallelBands;
+
 /**
  * This provides an implementation of all the composite rules in SVG.
  *
@@ -317,11 +319,23 @@ public class SVGComposite
             final int   srcAdjust  =    srcScanStride - w;
             final int  dstInAdjust =  dstInScanStride - w;
             final int dstOutAdjust = dstOutScanStride - w;
-
-            precompose_INT_PACK(w, h,
-                                srcPixels,    srcAdjust,    srcBase,
-                                dstInPixels,  dstInAdjust,  dstInBase,
-                                dstOutPixels, dstOutAdjust, dstOutBase);
+            final int width = w;
+
+            // Each row only depends on the same row of the inputs so
+            // large areas are composited as concurrent bands (this
+            // also holds when dstIn and dstOut share their data).
+            ParallelBands.run(0, h, w, new ParallelBands.BandOp() {
+                    public void run(int r0, int r1) {
+                        precompose_INT_PACK
+                            (width, r1-r0,
+                             srcPixels,    srcAdjust,
+                             srcBase    + r0*srcScanStride,
+                             dstInPixels,  dstInAdjust,
+                             dstInBase  + r0*dstInScanStride,
+                             dstOutPixels, dstOutAdjust,
+                             dstOutBase + r0*dstOutScanStride);
+                    }
+                });
         }
     }
 
@@ -445,6 +459,17 @@ public class SVGComposite
                     srcP   = srcPixels  [srcSp++];
                     dstInP = dstInPixels[dstInSp++];
 
+                    // Opaque and fully transparent sources are common
+                    // and give exactly src and dst respectively.
+                    if ((srcP>>>24) == 0xFF) {
+                        dstOutPixels[dstOutSp++] = srcP;
+                        continue;
+                    }
+                    if (srcP == 0) {
+                        dstOutPixels[dstOutSp++] = dstInP;
+                        continue;
+                    }
+
                     dstM = (255-(srcP>>>24))*norm;
                     dstOutPixels[dstOutSp++] =
                         (((     srcP & 0xFF000000) +
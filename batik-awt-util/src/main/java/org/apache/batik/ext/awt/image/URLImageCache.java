@@ -42,10 +42,43 @@ import org.apache.batik.util.SoftReferenceCache;
  */
 public class URLImageCache extends SoftReferenceCache {
 
-    static URLImageCache theCache = new URLImageCache();
+    /**
+     * The number of bytes of images held by the caches made by
+     * <code>createCache</code>.  Set by the
+     * <code>org.apache.batik.ext.awt.image.URLImageCache.maxBytes</code>
+     * system property.  When not positive, they hold soft references.
+     */
+    static final long MAX_BYTES;
+
+    static {
+        long maxBytes = 0;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.ext.awt.image.URLImageCache.maxBytes");
+            if (s != null)
+                maxBytes = Long.parseLong(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            MAX_BYTES = maxBytes;
+        }
+    }
+
+    static URLImageCache theCache = createCache();
 
     public static URLImageCache getDefaultCache() { return theCache; }
 
+    /**
+     * Returns a new cache of the default kind: a
+     * <code>BoundedURLImageCache</code> if a maximum number of bytes
+     * is set, a cache of soft references otherwise.
+     */
+    public static URLImageCache createCache() {
+        if (MAX_BYTES > 0)
+            return new BoundedURLImageCache(MAX_BYTES);
+        return new URLImageCache();
+    }
+
     /**
      * Let people create there own caches.
      */
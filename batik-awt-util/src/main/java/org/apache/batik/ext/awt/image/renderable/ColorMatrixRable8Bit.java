@@ -21,7 +21,9 @@ package org.apache.batik.ext.awt.image.renderable;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.RenderContext;
 
+import org.apache.batik.ext.awt.image.rendered.CachableRed;
 import org.apache.batik.ext.awt.image.rendered.ColorMatrixRed;
+import org.apache.batik.ext.awt.image.rendered.ComponentTransferRed;
 
 /**
  * Implements the interface expected from a color matrix
@@ -210,6 +212,15 @@ public final class ColorMatrixRable8Bit
         if(srcRI == null)
             return null;
 
-        return new ColorMatrixRed(convertSourceCS(srcRI), matrix);
+        CachableRed cr = convertSourceCS(srcRI);
+
+        // A matrix that scales each channel independently is a
+        // lookup, which can be merged with neighbouring lookups.
+        byte[][] tables = ColorMatrixRed.getLookupTables(matrix);
+        if (tables != null)
+            return ComponentTransferRed.create(cr, tables,
+                                               rc.getRenderingHints());
+
+        return new ColorMatrixRed(cr, matrix);
     }
 }
@@ -159,7 +159,8 @@ public class ComponentTransferRable8Bit
         if(srcRI == null)
             return null;
 
-        return new ComponentTransferRed(convertSourceCS(srcRI),
+        // Merges with the source if it is itself a lookup.
+        return ComponentTransferRed.create(convertSourceCS(srcRI),
                                         getTransferFunctions(),
                                         rc.getRenderingHints());
     }
@@ -28,7 +28,6 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorModel;
-import java.awt.image.ConvolveOp;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DirectColorModel;
@@ -44,6 +43,7 @@ import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.rendered.AffineRed;
 import org.apache.batik.ext.awt.image.rendered.BufferedImageCachableRed;
 import org.apache.batik.ext.awt.image.rendered.CachableRed;
+import org.apache.batik.ext.awt.image.rendered.ConvolveMatrixOp;
 import org.apache.batik.ext.awt.image.rendered.PadRed;
 
 /**
@@ -372,9 +372,9 @@ public class ConvolveMatrixRable8Bit
             throw new IllegalArgumentException
                 ("Only bias equal to zero is supported in ConvolveMatrix.");
 
-        BufferedImageOp op = new ConvolveOp(kernel,
-                                            ConvolveOp.EDGE_NO_OP,
-                                            rh);
+        // Picks a direct, separable or FFT based convolution
+        // depending on the kernel and image size.
+        BufferedImageOp op = new ConvolveMatrixOp(kernel, rh);
 
         ColorModel cm = cr.getColorModel();
 
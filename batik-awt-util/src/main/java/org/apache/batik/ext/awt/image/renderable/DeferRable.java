@@ -127,6 +127,16 @@ public class DeferRable implements Filter {
         return bounds;
     }
 
+    /**
+     * Returns the bounds if they are already known, or null.  Unlike
+     * <code>getBounds2D</code> this does not wait for them.
+     */
+    public synchronized Rectangle2D getKnownBounds() {
+        if (src != null)
+            return src.getBounds2D();
+        return bounds;
+    }
+
     public float getMinX() {
         return (float)getBounds2D().getX();
     }
@@ -69,6 +69,14 @@ public class DiffuseLightingRable8Bit
      */
     private float [] kernelUnitLength = null;
 
+    /**
+     * Normals computed by previous renderings.  They are reused by
+     * later renderings when the bump map is unchanged, which is
+     * typical of an animated light.
+     */
+    private final BumpMap.NormalCacheReference normalCache =
+        new BumpMap.NormalCacheReference();
+
     public DiffuseLightingRable8Bit(Filter src,
                                     Rectangle2D litRegion,
                                     Light light,
@@ -95,6 +103,7 @@ public class DiffuseLightingRable8Bit
      */
     public void setSource(Filter src){
         init(src, null);
+        normalCache.clear();
     }
 
     /**
@@ -273,6 +282,7 @@ public class DiffuseLightingRable8Bit
         cr = GraphicsUtil.wrap(getSource().createRendering(rc));
 
         BumpMap bumpMap = new BumpMap(cr, surfaceScale, scaleX, scaleY);
+        bumpMap.setNormalCache(normalCache.get());
 
         cr = new DiffuseLightingRed(kd, light, bumpMap,
                                     devRect, 1/scaleX, 1/scaleY,
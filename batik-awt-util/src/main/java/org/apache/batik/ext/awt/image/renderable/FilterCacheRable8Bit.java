@@ -0,0 +1,201 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.renderable;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderContext;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Shares the rendering of a filter whose result is used by several
+ * other filters.  Without it each consumer renders its own copy of
+ * the source.
+ *
+ * The rendering is kept until {@link #clearCache} is called; since
+ * changes to the source are not tracked this is done by a {@link
+ * Scope} around the whole filter graph, so renderings are only shared
+ * within one rendering of the graph.  A request is served from the
+ * cache when it uses the same transform, rendering hints and area of
+ * interest as a cached rendering, so it gets exactly the image a
+ * fresh rendering would return.  The source's rendering is returned
+ * as it is, not wrapped, so that consumers drawing it see the same
+ * image chain (translations and transforms drawn through
+ * <code>GraphicsUtil.drawImage</code> in particular) and produce the
+ * same pixels; the tiles it computes are kept by its own tile cache.
+ * Painting through {@link PaintRable} is passed on to the source, as
+ * it would be without the cache.
+ *
+ * @version $Id$
+ */
+public class FilterCacheRable8Bit extends AbstractRable
+    implements PaintRable {
+
+    /**
+     * The renderings made since the cache was cleared.
+     */
+    private final List entries = new ArrayList(2);
+
+    /**
+     * A rendering, with the render context it was made for.
+     */
+    private static class Entry {
+        RenderedImage   red;
+        AffineTransform usr2dev;
+        RenderingHints  hints;
+        Shape           aoi;
+
+        boolean matches(AffineTransform usr2dev,
+                        RenderingHints  hints,
+                        Shape           aoi) {
+            return this.usr2dev.equals(usr2dev) &&
+                ((hints == null) ? (this.hints == null)
+                                 : hints.equals(this.hints)) &&
+                ((this.aoi == aoi) ||
+                 ((aoi instanceof Rectangle2D) &&
+                  (this.aoi instanceof Rectangle2D) &&
+                  aoi.equals(this.aoi)));
+        }
+    }
+
+    public FilterCacheRable8Bit(Filter src) {
+        super(src, null);
+    }
+
+    public Filter getSource() {
+        return (Filter)getSources().get(0);
+    }
+
+    public void setSource(Filter src) {
+        init(src, null);
+        clearCache();
+    }
+
+    /**
+     * Pass-through: returns the source's bounds
+     */
+    public Rectangle2D getBounds2D() {
+        return getSource().getBounds2D();
+    }
+
+    /**
+     * Paints the source directly if it can.  Consumers such as
+     * composites paint their sources this way, which does not give
+     * exactly the same pixels as drawing a rendering of them.
+     */
+    public boolean paintRable(Graphics2D g2d) {
+        Filter src = getSource();
+        if (src instanceof PaintRable)
+            return ((PaintRable)src).paintRable(g2d);
+        return false;
+    }
+
+    /**
+     * Drops the cached renderings.
+     */
+    public synchronized void clearCache() {
+        entries.clear();
+    }
+
+    public synchronized RenderedImage createRendering(RenderContext rc) {
+        AffineTransform usr2dev = rc.getTransform();
+        RenderingHints  rh      = rc.getRenderingHints();
+        Shape           aoi     = rc.getAreaOfInterest();
+
+        Iterator i = entries.iterator();
+        while (i.hasNext()) {
+            Entry e = (Entry)i.next();
+            if (e.matches(usr2dev, rh, aoi))
+                return e.red;
+        }
+
+        RenderedImage ri = getSource().createRendering(rc);
+
+        Entry e   = new Entry();
+        e.red     = ri;
+        e.usr2dev = (AffineTransform)usr2dev.clone();
+        e.hints   = (rh == null) ? null : (RenderingHints)rh.clone();
+        e.aoi     = (aoi instanceof Rectangle2D)
+            ? (Shape)((Rectangle2D)aoi).clone() : aoi;
+        entries.add(e);
+        return e.red;
+    }
+
+    /**
+     * Limits the lifetime of the renderings cached by a set of
+     * <code>FilterCacheRable8Bit</code>s to one rendering of its
+     * source.  The rendered image tree returned holds on to the shared
+     * renderings, only the caches are cleared.
+     */
+    public static class Scope extends AbstractRable implements PaintRable {
+
+        private final FilterCacheRable8Bit [] caches;
+
+        /**
+         * @param src the output of the filter graph.
+         * @param caches the caches used in the graph.
+         */
+        public Scope(Filter src, FilterCacheRable8Bit [] caches) {
+            super(src, null);
+            this.caches = (FilterCacheRable8Bit [])caches.clone();
+        }
+
+        public Filter getSource() {
+            return (Filter)getSources().get(0);
+        }
+
+        /**
+         * Pass-through: returns the source's bounds
+         */
+        public Rectangle2D getBounds2D() {
+            return getSource().getBounds2D();
+        }
+
+        public boolean paintRable(Graphics2D g2d) {
+            Filter src = getSource();
+            if (!(src instanceof PaintRable))
+                return false;
+            synchronized (caches) {
+                try {
+                    return ((PaintRable)src).paintRable(g2d);
+                } finally {
+                    for (int i=0; i<caches.length; i++)
+                        caches[i].clearCache();
+                }
+            }
+        }
+
+        public RenderedImage createRendering(RenderContext rc) {
+            synchronized (caches) {
+                try {
+                    return getSource().createRendering(rc);
+                } finally {
+                    for (int i=0; i<caches.length; i++)
+                        caches[i].clearCache();
+                }
+            }
+        }
+    }
+}
@@ -74,6 +74,14 @@ public class SpecularLightingRable8Bit
      */
     private float [] kernelUnitLength = null;
 
+    /**
+     * Normals computed by previous renderings.  They are reused by
+     * later renderings when the bump map is unchanged, which is
+     * typical of an animated light.
+     */
+    private final BumpMap.NormalCacheReference normalCache =
+        new BumpMap.NormalCacheReference();
+
     public SpecularLightingRable8Bit(Filter src,
                                      Rectangle2D litRegion,
                                      Light light,
@@ -102,6 +110,7 @@ public class SpecularLightingRable8Bit
      */
     public void setSource(Filter src){
         init(src, null);
+        normalCache.clear();
     }
 
     /**
@@ -293,6 +302,7 @@ public class SpecularLightingRable8Bit
         cr = GraphicsUtil.wrap(getSource().createRendering(rc));
 
         BumpMap bumpMap = new BumpMap(cr, surfaceScale, scaleX, scaleY);
+        bumpMap.setNormalCache(normalCache.get());
 
         cr = new SpecularLightingRed(ks, specularExponent, light, bumpMap,
                                      devRect, 1/scaleX, 1/scaleY,
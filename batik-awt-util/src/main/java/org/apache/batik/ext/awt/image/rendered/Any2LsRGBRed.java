@@ -65,6 +65,10 @@ public class Any2LsRGBRed extends AbstractRed {
             srcIssRGB = true;
     }
 
+    public CachableRed getSource() {
+        return (CachableRed)getSources().get(0);
+    }
+
     /**
      * Gamma for linear to sRGB convertion
      */
@@ -84,7 +88,7 @@ public class Any2LsRGBRed extends AbstractRed {
      * linearToLinear table is used when the values are considered to
      * be on the sRGB scale to begin with.
      */
-    private static final int[] sRGBToLsRGBLut = new int[256];
+    static final int[] sRGBToLsRGBLut = new int[256];
     static {
         final double scale = 1.0/255;
 
@@ -65,6 +65,10 @@ public class Any2sRGBRed extends AbstractRed {
             srcIsLsRGB = true;
     }
 
+    public CachableRed getSource() {
+        return (CachableRed)getSources().get(0);
+    }
+
     public static boolean is_INT_PACK_COMP(SampleModel sm) {
         if(!(sm instanceof SinglePixelPackedSampleModel)) return false;
 
@@ -96,7 +100,7 @@ public class Any2sRGBRed extends AbstractRed {
      * linearToLinear table is used when the values are considered to
      * be on the sRGB scale to begin with.
      */
-    private static final int[] linearToSRGBLut = new int[256];
+    static final int[] linearToSRGBLut = new int[256];
 
     static {
         final double scale = 1.0/255;
@@ -23,6 +23,11 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SinglePixelPackedSampleModel;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 /**
  * Default BumpMap implementation.
@@ -31,6 +36,12 @@ import java.awt.image.SinglePixelPackedSampleModel;
  * @version $Id$
  */
 public final class BumpMap {
+    /**
+     * Default size, in bytes, of the normal caches kept by lighting
+     * filters.
+     */
+    public static final long DEFAULT_NORMAL_CACHE_SIZE = 8*1024*1024;
+
     /**
      * Image whose alpha channel is used for the
      * normal calculation
@@ -47,6 +58,12 @@ public final class BumpMap {
      */
     private double scaleX, scaleY;
 
+    /**
+     * Cache shared with the bump maps previously built by the same
+     * filter, may be null.
+     */
+    private NormalCache normalCache;
+
     /**
      * Stores the normals for this bumpMap.
      * scaleX and scaleY are the user space to device
@@ -63,6 +80,17 @@ public final class BumpMap {
         this.scaleY = scaleY;
     }
 
+    /**
+     * Sets the cache used to share normals with other bump maps
+     * built by the same filter.  Normals are only reused when the
+     * alpha of the texture they were computed from is unchanged, so
+     * this only saves work when something other than the surface
+     * (for example the light) has changed.
+     */
+    public void setNormalCache(NormalCache normalCache) {
+        this.normalCache = normalCache;
+    }
+
     /**
      * @return surface scale used by this bump map.
      */
@@ -326,8 +354,8 @@ public final class BumpMap {
 
                 n[0] = - halfSurfaceScaleX *(( prnc + 2*crnc + nrnc)
                                              - (prcc + 2*crcc + nrcc));
-                n[1] = - thirdSurfaceScaleY *(( 2*prcc + prnc)
-                                              - ( 2*crcc + crnc));
+                n[1] = - thirdSurfaceScaleY *(( 2*nrcc + nrnc)
+                                              - ( 2*prcc + prnc));
 
                 invNorm = 1.0/Math.sqrt(n[0]*n[0] + n[1]*n[1] + 1);
                 n[0] *= invNorm;
@@ -489,5 +517,287 @@ public final class BumpMap {
         }
         return N;
     }
-}
 
+    /**
+     * Returns the normals for the given device space rectangle.  The
+     * returned tile computes its rows on demand, so lighting filters
+     * can compute normals and light them in a single pass over the
+     * pixels, one row at a time.  If a matching tile is found in the
+     * normal cache the rows are simply unpacked from it.
+     */
+    public NormalTile getNormalTile(int x, int y, int w, int h) {
+        NormalTile tile = new NormalTile(x, y, w, h);
+        if (normalCache != null) {
+            NormalTile cached = normalCache.get(tile);
+            if (cached != null)
+                return cached;
+        }
+        return tile;
+    }
+
+    /**
+     * Informs the bump map that all the rows of <code>tile</code> have
+     * been requested, so it may be kept in the normal cache.
+     */
+    public void tileDone(NormalTile tile) {
+        if ((normalCache == null) || tile.complete)
+            return;
+        tile.complete = true;
+        normalCache.put(tile);
+    }
+
+    /**
+     * The normals of a rectangle of the bump map.  Rows are computed
+     * from a copy of the texture's alpha channel (including a one
+     * pixel border) and are stored as they are computed so the tile
+     * can be cached.  Rows may be requested concurrently.
+     */
+    public final class NormalTile {
+        final Rectangle rect;
+        final double    ssX, ssY;
+
+        /**
+         * Alpha of the texture, (w+2)*(h+2) values around rect.
+         */
+        final byte[] alpha;
+
+        /**
+         * Bounds of the texture, rows and columns outside of it have
+         * no normal and are treated as edges by their neighbours.
+         */
+        final Rectangle texBounds;
+
+        /**
+         * nx, ny, nz and height for each pixel, filled as rows are
+         * computed.
+         */
+        final float[] normals;
+
+        volatile boolean complete;
+
+        NormalTile(int x, int y, int w, int h) {
+            rect = new Rectangle(x, y, w, h);
+            ssX  = surfaceScaleX;
+            ssY  = surfaceScaleY;
+            texBounds = new Rectangle
+                (texture.getMinX(), texture.getMinY(),
+                 texture.getWidth(), texture.getHeight());
+            alpha   = new byte[(w+2)*(h+2)];
+            normals = new float[w*h*4];
+
+            Rectangle srcRect = new Rectangle(x-1, y-1, w+2, h+2);
+            if (!srcRect.intersects(texBounds))
+                return;
+            srcRect = srcRect.intersection(texBounds);
+
+            final Raster r = texture.getData(srcRect);
+            srcRect = r.getBounds();
+            final DataBufferInt db = (DataBufferInt)r.getDataBuffer();
+            final int[] pixels = db.getBankData()[0];
+            final SinglePixelPackedSampleModel sppsm;
+            sppsm = (SinglePixelPackedSampleModel)r.getSampleModel();
+            final int scanStride = sppsm.getScanlineStride();
+            int offset =
+                (db.getOffset() +
+                 sppsm.getOffset(srcRect.x -r.getSampleModelTranslateX(),
+                                 srcRect.y -r.getSampleModelTranslateY()));
+            final int aw = w+2;
+            int ap = (srcRect.y-(y-1))*aw + (srcRect.x-(x-1));
+            for (int j=0; j<srcRect.height; j++) {
+                int p = offset + j*scanStride;
+                int a = ap + j*aw;
+                for (int i=0; i<srcRect.width; i++)
+                    alpha[a++] = (byte)(pixels[p++]>>>24);
+            }
+        }
+
+        public Rectangle getBounds() {
+            return (Rectangle)rect.clone();
+        }
+
+        /**
+         * Fills <code>N</code> with the normals of row <code>j</code>
+         * (relative to the top of the tile).  Each element of
+         * <code>N</code> receives the x, y and z components of the
+         * normal followed by the surface height, as with
+         * <code>getNormalArray</code>.
+         */
+        public void getRow(int j, double[][] N) {
+            final int w = rect.width;
+            int np = j*w*4;
+            if (!complete)
+                computeRow(j);
+            for (int i=0; i<w; i++) {
+                final double[] n = N[i];
+                n[0] = normals[np++];
+                n[1] = normals[np++];
+                n[2] = normals[np++];
+                n[3] = normals[np++];
+            }
+        }
+
+        /**
+         * Computes the normals of row <code>j</code> with the Sobel
+         * kernels given in the feDiffuseLighting section of the SVG
+         * specification.  At the edges of the texture the missing
+         * row/column is replaced by the center one and the scale
+         * factor grows accordingly; this gives the specification's
+         * edge and corner kernels without special casing them.
+         */
+        private void computeRow(int j) {
+            final int w  = rect.width;
+            final int aw = w+2;
+            final int py = rect.y + j;
+            int np = j*w*4;
+            if ((py < texBounds.y) || (py >= texBounds.y+texBounds.height)) {
+                Arrays.fill(normals, np, np+w*4, 0f);
+                return;
+            }
+            final boolean hasT = (py-1 >= texBounds.y);
+            final boolean hasB = (py+1 <  texBounds.y+texBounds.height);
+            final int dT = hasT ? -aw : 0;
+            final int dB = hasB ?  aw : 0;
+            final int wT = hasT ? 1 : 0;
+            final int wB = hasB ? 1 : 0;
+            final double pixelScale = 1.0/255;
+            final double hScale = surfaceScale*pixelScale;
+            final int xMin = texBounds.x;
+            final int xMax = texBounds.x+texBounds.width;
+
+            int a = (j+1)*aw + 1;
+            for (int i=0; i<w; i++, a++) {
+                final int px = rect.x+i;
+                if ((px < xMin) || (px >= xMax)) {
+                    normals[np++] = 0;
+                    normals[np++] = 0;
+                    normals[np++] = 0;
+                    normals[np++] = 0;
+                    continue;
+                }
+                final boolean hasL = (px-1 >= xMin);
+                final boolean hasR = (px+1 <  xMax);
+                final int dL = hasL ? -1 : 0;
+                final int dR = hasR ?  1 : 0;
+                final int wL = hasL ? 1 : 0;
+                final int wR = hasR ? 1 : 0;
+
+                final int cc = alpha[a]&0xFF;
+                double nx = 0, ny = 0;
+                final int distX = wL+wR;
+                if (distX != 0) {
+                    int diff = (wT*((alpha[a+dT+dR]&0xFF) -
+                                    (alpha[a+dT+dL]&0xFF)) +
+                                2 *((alpha[a   +dR]&0xFF) -
+                                    (alpha[a   +dL]&0xFF)) +
+                                wB*((alpha[a+dB+dR]&0xFF) -
+                                    (alpha[a+dB+dL]&0xFF)));
+                    nx = -ssX*pixelScale*2*diff/((wT+2+wB)*distX);
+                }
+                final int distY = wT+wB;
+                if (distY != 0) {
+                    int diff = (wL*((alpha[a+dB+dL]&0xFF) -
+                                    (alpha[a+dT+dL]&0xFF)) +
+                                2 *((alpha[a+dB   ]&0xFF) -
+                                    (alpha[a+dT   ]&0xFF)) +
+                                wR*((alpha[a+dB+dR]&0xFF) -
+                                    (alpha[a+dT+dR]&0xFF)));
+                    ny = -ssY*pixelScale*2*diff/((wL+2+wR)*distY);
+                }
+                final double invNorm = 1.0/Math.sqrt(nx*nx + ny*ny + 1);
+                normals[np++] = (float)(nx*invNorm);
+                normals[np++] = (float)(ny*invNorm);
+                normals[np++] = (float)invNorm;
+                normals[np++] = (float)(cc*hScale);
+            }
+        }
+
+        boolean matches(NormalTile t) {
+            return (rect.equals(t.rect) &&
+                    (ssX == t.ssX) && (ssY == t.ssY) &&
+                    texBounds.equals(t.texBounds) &&
+                    Arrays.equals(alpha, t.alpha));
+        }
+
+        long getSize() {
+            return alpha.length + normals.length*4L;
+        }
+    }
+
+    /**
+     * A bounded cache of normal tiles.  Tiles are looked up by
+     * rectangle and are only returned if they were computed from the
+     * same alpha values with the same surface scale.
+     */
+    public static final class NormalCache {
+        private final LinkedHashMap tiles = new LinkedHashMap(16, .75f, true);
+        private final long maxSize;
+        private long size;
+
+        /**
+         * @param maxSize the maximum number of bytes of normals kept.
+         */
+        public NormalCache(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized NormalTile get(NormalTile t) {
+            NormalTile ret = (NormalTile)tiles.get(t.rect);
+            if ((ret != null) && ret.matches(t))
+                return ret;
+            return null;
+        }
+
+        synchronized void put(NormalTile t) {
+            long sz = t.getSize();
+            if (sz > maxSize)
+                return;
+            NormalTile old = (NormalTile)tiles.put(t.rect, t);
+            if (old != null)
+                size -= old.getSize();
+            size += sz;
+
+            Iterator i = tiles.values().iterator();
+            while ((size > maxSize) && i.hasNext()) {
+                NormalTile eldest = (NormalTile)i.next();
+                size -= eldest.getSize();
+                i.remove();
+            }
+        }
+
+        public synchronized void flush() {
+            tiles.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * A soft reference to a {@link NormalCache}, which is replaced by
+     * a new cache once the garbage collector has cleared it.  Lighting
+     * filters keep one to share normals between their renderings.
+     */
+    public static final class NormalCacheReference {
+        private Reference ref;
+
+        /**
+         * Returns the referenced cache, creating one of
+         * <code>DEFAULT_NORMAL_CACHE_SIZE</code> bytes if needed.
+         */
+        public synchronized NormalCache get() {
+            NormalCache ret = null;
+            if (ref != null)
+                ret = (NormalCache)ref.get();
+            if (ret == null) {
+                ret = new NormalCache(DEFAULT_NORMAL_CACHE_SIZE);
+                ref = new SoftReference(ret);
+            }
+            return ret;
+        }
+
+        /**
+         * Drops the referenced cache.
+         */
+        public synchronized void clear() {
+            ref = null;
+        }
+    }
+}
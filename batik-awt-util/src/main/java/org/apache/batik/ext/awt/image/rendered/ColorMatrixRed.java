@@ -77,6 +77,35 @@ public class ColorMatrixRed extends AbstractRed{
         return cm;
     }
 
+    /**
+     * Returns the lookup tables (in band order: red, green, blue,
+     * alpha) equivalent to <code>matrix</code> when it only scales and
+     * offsets each channel independently, null otherwise.  The tables
+     * reproduce the arithmetic of <code>copyData</code> exactly.
+     */
+    public static byte[][] getLookupTables(float[][] matrix){
+        for(int i=0; i<4; i++){
+            for(int j=0; j<4; j++){
+                if((i != j) && (matrix[i][j] != 0)){
+                    return null;
+                }
+            }
+        }
+
+        byte[][] tables = new byte[4][256];
+        for(int i=0; i<4; i++){
+            final float scale  = matrix[i][i]/255f;
+            final float offset = matrix[i][4]/255f;
+            for(int v=0; v<256; v++){
+                int d = (int)((scale*v + offset)*255.0f);
+                if ((d & 0xFFFFFF00) != 0)
+                    d = ((d & 0x80000000) != 0)?0:255;
+                tables[i][v] = (byte)d;
+            }
+        }
+        return tables;
+    }
+
     public ColorMatrixRed(CachableRed src, float[][] matrix){
         setMatrix(matrix);
 
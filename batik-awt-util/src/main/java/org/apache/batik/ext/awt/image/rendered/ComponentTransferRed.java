@@ -19,14 +19,25 @@
 package org.apache.batik.ext.awt.image.rendered;
 
 import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
 import java.awt.image.ByteLookupTable;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
 import java.awt.image.LookupOp;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.ext.awt.image.TransferFunction;
 
 /**
+ * Applies a lookup table to each channel of the unpremultiplied
+ * source data.  Consecutive per channel operations are cheap to
+ * combine, so {@link #create} folds chains of
+ * <code>ComponentTransferRed</code>s (and the sRGB/linear sRGB
+ * conversions between them) into a single set of tables applied in
+ * one pass.
  *
  * @author <a href="mailto:thomas.deweese@kodak.com">Thomas DeWeese</a>
  * @version $Id$
@@ -34,6 +45,11 @@ import org.apache.batik.ext.awt.image.TransferFunction;
 public class ComponentTransferRed extends AbstractRed {
     LookupOp operation;
 
+    /**
+     * The lookup tables in band order: red, green, blue, alpha.
+     */
+    byte [][] tableData;
+
     /**
      * The constructor will instantiate a LookupOp instance using
      * a LookupOp, which is built using the four LUT
@@ -46,15 +62,28 @@ public class ComponentTransferRed extends AbstractRed {
     public ComponentTransferRed(CachableRed src,
                                 TransferFunction [] funcs,
                                 RenderingHints hints) {
-        super(src, src.getBounds(),
-              GraphicsUtil.coerceColorModel(src.getColorModel(), false),
-              src.getSampleModel(),
-              null);
+        this(src, getTableData(funcs), hints);
+    }
+
+    /**
+     * @param tableData the 256 entry lookup tables in band order:
+     *        red, green, blue, alpha.
+     */
+    public ComponentTransferRed(CachableRed src,
+                                byte [][] tableData,
+                                RenderingHints hints) {
+        this(src, tableData,
+             GraphicsUtil.coerceColorModel(src.getColorModel(), false),
+             hints);
+    }
+
+    private ComponentTransferRed(CachableRed src,
+                                 byte [][] tableData,
+                                 ColorModel cm,
+                                 RenderingHints hints) {
+        super(src, src.getBounds(), cm, src.getSampleModel(), null);
 
-        byte [][] tableData = {funcs[1].getLookupTable(),
-                               funcs[2].getLookupTable(),
-                               funcs[3].getLookupTable(),
-                               funcs[0].getLookupTable()};
+        this.tableData = tableData;
 
         // Note that we create an anonymous subclass here.
         // For what ever reason this makes the Op work correctly.
@@ -66,16 +95,171 @@ public class ComponentTransferRed extends AbstractRed {
             { };
     }
 
+    /**
+     * Returns an image applying the transfer functions to
+     * <code>src</code>, see {@link #create(CachableRed, byte[][],
+     * RenderingHints)}.
+     */
+    public static CachableRed create(CachableRed src,
+                                     TransferFunction [] funcs,
+                                     RenderingHints hints) {
+        return create(src, getTableData(funcs), hints);
+    }
+
+    /**
+     * Returns an image applying <code>tableData</code> (in band
+     * order: red, green, blue, alpha) to <code>src</code>.  If
+     * <code>src</code> is itself a <code>ComponentTransferRed</code>,
+     * possibly behind a conversion between sRGB and linear sRGB, the
+     * tables are composed with the source's tables and conversion so
+     * that only one pass is made over the original data.
+     *
+     * @param tableData the tables to apply, null for the identity
+     *        (useful to fold a conversion into the source's tables).
+     */
+    public static CachableRed create(CachableRed src,
+                                     byte [][] tableData,
+                                     RenderingHints hints) {
+        byte [][] tables = tableData;
+        CachableRed cr = src;
+        boolean folded = false;
+        while (true) {
+            if (cr instanceof ComponentTransferRed) {
+                ComponentTransferRed ctr = (ComponentTransferRed)cr;
+                tables = compose(tables, ctr.tableData);
+                cr = ctr.getSource();
+            } else if ((cr instanceof Any2sRGBRed) &&
+                       isFoldable(((Any2sRGBRed)cr).getSource(),
+                                  ColorSpace.CS_LINEAR_RGB)) {
+                tables = compose(tables, Any2sRGBRed.linearToSRGBLut);
+                cr = ((Any2sRGBRed)cr).getSource();
+            } else if ((cr instanceof Any2LsRGBRed) &&
+                       isFoldable(((Any2LsRGBRed)cr).getSource(),
+                                  ColorSpace.CS_sRGB)) {
+                tables = compose(tables, Any2LsRGBRed.sRGBToLsRGBLut);
+                cr = ((Any2LsRGBRed)cr).getSource();
+            } else {
+                break;
+            }
+            folded = true;
+        }
+
+        if (!folded) {
+            if (tableData == null)
+                return src;
+            return new ComponentTransferRed(src, tableData, hints);
+        }
+
+        // The result has the color space of the outermost image.
+        ColorModel cm = GraphicsUtil.coerceColorModel
+            (src.getColorModel(), false);
+        return new ComponentTransferRed(cr, tables, cm, hints);
+    }
+
+    /**
+     * True if a color conversion of <code>src</code> can be folded
+     * into lookup tables: <code>src</code> must be integer packed
+     * ARGB data in the color space <code>csType</code>.
+     */
+    private static boolean isFoldable(CachableRed src, int csType) {
+        ColorModel cm = src.getColorModel();
+        if (!(cm instanceof DirectColorModel) || !cm.hasAlpha())
+            return false;
+        if (cm.getColorSpace() != ColorSpace.getInstance(csType))
+            return false;
+        return GraphicsUtil.is_INT_PACK_Data(src.getSampleModel(), true);
+    }
+
+    /**
+     * Returns the tables applying <code>inner</code> then
+     * <code>outer</code>.  Null stands for the identity.
+     */
+    static byte [][] compose(byte [][] outer, byte [][] inner) {
+        if (outer == null) return inner;
+        if (inner == null) return outer;
+        byte [][] ret = new byte[4][256];
+        for (int b=0; b<4; b++)
+            for (int i=0; i<256; i++)
+                ret[b][i] = outer[b][inner[b][i]&0xFF];
+        return ret;
+    }
+
+    /**
+     * Returns the tables applying the color lookup <code>lut</code>
+     * then <code>outer</code>, alpha is left untouched by lut.
+     */
+    private static byte [][] compose(byte [][] outer, int [] lut) {
+        byte [][] inner = new byte[4][256];
+        for (int i=0; i<256; i++) {
+            inner[0][i] = inner[1][i] = inner[2][i] = (byte)lut[i];
+            inner[3][i] = (byte)i;
+        }
+        return compose(outer, inner);
+    }
+
+    private static byte [][] getTableData(TransferFunction [] funcs) {
+        return new byte [][] {funcs[1].getLookupTable(),
+                              funcs[2].getLookupTable(),
+                              funcs[3].getLookupTable(),
+                              funcs[0].getLookupTable()};
+    }
+
+    public CachableRed getSource() {
+        return (CachableRed)getSources().get(0);
+    }
+
     public WritableRaster copyData(WritableRaster wr){
-        CachableRed src = (CachableRed)getSources().get(0);
+        CachableRed src = getSource();
 
         wr = src.copyData(wr);
         GraphicsUtil.coerceData(wr, src.getColorModel(), false);
 
+        if (GraphicsUtil.is_INT_PACK_Data(wr.getSampleModel(), true)) {
+            applyTables_INT_PACK(wr);
+            return wr;
+        }
+
         WritableRaster srcWR = wr.createWritableTranslatedChild(0,0);
 
         operation.filter(srcWR, srcWR);
 
         return wr;
     }
+
+    /**
+     * Applies the tables in place to integer packed ARGB data.
+     */
+    private void applyTables_INT_PACK(WritableRaster wr) {
+        SinglePixelPackedSampleModel sppsm =
+            (SinglePixelPackedSampleModel)wr.getSampleModel();
+        DataBufferInt db = (DataBufferInt)wr.getDataBuffer();
+
+        final int base
+            = (db.getOffset() +
+               sppsm.getOffset(wr.getMinX()-wr.getSampleModelTranslateX(),
+                               wr.getMinY()-wr.getSampleModelTranslateY()));
+        final int[] pixels   = db.getBankData()[0];
+        final int width      = wr.getWidth();
+        final int height     = wr.getHeight();
+        final int scanStride = sppsm.getScanlineStride();
+
+        final byte [] rTbl = tableData[0];
+        final byte [] gTbl = tableData[1];
+        final byte [] bTbl = tableData[2];
+        final byte [] aTbl = tableData[3];
+
+        int pix;
+        for (int y=0; y<height; y++) {
+            int sp  = base + y*scanStride;
+            int end = sp + width;
+            while (sp<end) {
+                pix = pixels[sp];
+                pixels[sp++] =
+                    (((aTbl[(pix>>>24)     ]&0xFF)<<24) |
+                     ((rTbl[(pix>>>16)&0xFF]&0xFF)<<16) |
+                     ((gTbl[(pix>>> 8)&0xFF]&0xFF)<< 8) |
+                     ((bTbl[(pix     )&0xFF]&0xFF)    ));
+            }
+        }
+    }
 }
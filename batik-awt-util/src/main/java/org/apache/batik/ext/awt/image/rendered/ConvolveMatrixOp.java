@@ -0,0 +1,714 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ConvolveOp;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Kernel;
+import java.awt.image.Raster;
+import java.awt.image.RasterOp;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A convolution with the same semantics as
+ * <code>ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, hints)</code> that
+ * picks the cheapest of three implementations for the kernel at hand:
+ * <ul>
+ *   <li>a direct sum over the kernel for small kernels,</li>
+ *   <li>two one dimensional passes when the kernel is separable
+ *       (its matrix has rank one, as with box and gaussian
+ *       kernels),</li>
+ *   <li>a product in the frequency domain when the kernel is large
+ *       enough that the FFT is cheaper than the direct sum.</li>
+ * </ul>
+ * The fast paths handle integer packed rasters with 8 bit samples;
+ * anything else is handed to <code>ConvolveOp</code>.  Rows are
+ * processed concurrently for large rasters (see {@link ParallelBands}),
+ * a strip of rows or an FFT tile at a time so that the working
+ * buffers don't grow with the raster.
+ *
+ * @version $Id$
+ */
+public class ConvolveMatrixOp implements BufferedImageOp, RasterOp {
+
+    /**
+     * Sum every kernel entry for each pixel.
+     */
+    static final int DIRECT    = 0;
+
+    /**
+     * Apply the kernel as a row pass followed by a column pass.
+     */
+    static final int SEPARABLE = 1;
+
+    /**
+     * Multiply the image and kernel spectra.
+     */
+    static final int FFT       = 2;
+
+    /**
+     * Relative tolerance used when checking that a kernel is the
+     * outer product of its factors.
+     */
+    private static final float SEPARABLE_EPS = 1e-5f;
+
+    /**
+     * Estimated cost of one complex butterfly relative to the one
+     * multiply-add of the direct sum.
+     */
+    private static final double FFT_COST_FACTOR = 4;
+
+    /**
+     * The minimum number of output rows convolved at once by the
+     * direct and separable implementations.
+     */
+    private static final int STRIP_ROWS = 64;
+
+    /**
+     * The size of the FFT tiles, unless the kernel needs larger ones.
+     */
+    private static final int FFT_TILE = 256;
+
+    private final Kernel kernel;
+    private final RenderingHints hints;
+
+    private final int kw, kh, xOrigin, yOrigin;
+    private final float[] kernelData;
+
+    /**
+     * The column and row factors of the kernel, null if it is not
+     * separable.
+     */
+    private final float[] colFactor, rowFactor;
+
+    /**
+     * Forced implementation (one of DIRECT, SEPARABLE or FFT), -1 to
+     * select by cost.
+     */
+    private int method = -1;
+
+    /**
+     * @param kernel the convolution kernel, applied as by
+     *        <code>ConvolveOp</code> (the kernel is mirrored).
+     * @param hints rendering hints passed on to <code>ConvolveOp</code>
+     *        when the fast paths don't apply, may be null.
+     */
+    public ConvolveMatrixOp(Kernel kernel, RenderingHints hints) {
+        this.kernel  = kernel;
+        this.hints   = hints;
+        this.kw      = kernel.getWidth();
+        this.kh      = kernel.getHeight();
+        this.xOrigin = kernel.getXOrigin();
+        this.yOrigin = kernel.getYOrigin();
+        this.kernelData = kernel.getKernelData(null);
+
+        float[][] factors = factor(kernelData, kw, kh);
+        if (factors == null) {
+            colFactor = null;
+            rowFactor = null;
+        } else {
+            colFactor = factors[0];
+            rowFactor = factors[1];
+        }
+    }
+
+    public Kernel getKernel() {
+        return (Kernel)kernel.clone();
+    }
+
+    /**
+     * Returns true if the kernel was found to be separable.
+     */
+    public boolean isSeparable() {
+        return colFactor != null;
+    }
+
+    /**
+     * Forces the implementation used, -1 restores the selection by
+     * cost.  For testing.
+     */
+    void setMethod(int method) {
+        if ((method == SEPARABLE) && (colFactor == null))
+            throw new IllegalArgumentException("Kernel is not separable");
+        this.method = method;
+    }
+
+    /**
+     * Returns the implementation used for a <code>w</code> by
+     * <code>h</code> raster with <code>nBands</code> bands.
+     */
+    int getMethod(int w, int h, int nBands) {
+        if (method != -1)
+            return method;
+
+        double direct = (double)w*h*kw*kh*nBands;
+        if (colFactor != null) {
+            double sep = (double)w*h*(kw+kh)*nBands;
+            if (sep <= direct)
+                return SEPARABLE;
+        }
+
+        // Two real bands are transformed at once as one complex
+        // tile, plus the kernel transform.
+        int ow = Math.max(1, w-2*(kw-1-xOrigin));
+        int oh = Math.max(1, h-2*(kh-1-yOrigin));
+        int fw = getTileSize(ow, kw);
+        int fh = getTileSize(oh, kh);
+        double tiles = Math.ceil(ow/(double)(fw-kw+1)) *
+            Math.ceil(oh/(double)(fh-kh+1));
+        double n = (double)fw*fh;
+        double log = log2(fw) + log2(fh);
+        double transforms = tiles*2*((nBands+1)/2) + 1;
+        double fft = FFT_COST_FACTOR*transforms*n*log/2;
+        if (fft < direct)
+            return FFT;
+        return DIRECT;
+    }
+
+    public Rectangle2D getBounds2D(Raster src) {
+        return new Rectangle(src.getMinX(), src.getMinY(),
+                             src.getWidth(), src.getHeight());
+    }
+
+    public Rectangle2D getBounds2D(BufferedImage src) {
+        return new Rectangle(0, 0, src.getWidth(), src.getHeight());
+    }
+
+    public Point2D getPoint2D(Point2D srcPt, Point2D destPt) {
+        // This operation does not affect pixel location
+        if (destPt == null)
+            destPt = new Point2D.Float();
+        destPt.setLocation(srcPt.getX(), srcPt.getY());
+        return destPt;
+    }
+
+    public RenderingHints getRenderingHints() {
+        return hints;
+    }
+
+    public WritableRaster createCompatibleDestRaster(Raster src) {
+        return src.createCompatibleWritableRaster();
+    }
+
+    public BufferedImage createCompatibleDestImage(BufferedImage src,
+                                                   ColorModel destCM) {
+        if (destCM == null)
+            destCM = src.getColorModel();
+        WritableRaster wr = destCM.createCompatibleWritableRaster
+            (src.getWidth(), src.getHeight());
+        return new BufferedImage(destCM, wr,
+                                 destCM.isAlphaPremultiplied(), null);
+    }
+
+    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
+        if (dest == null)
+            dest = createCompatibleDestImage(src, null);
+
+        if (!isCompatible(src.getRaster(), dest.getRaster())
+            || (src.getColorModel().isAlphaPremultiplied() !=
+                dest.getColorModel().isAlphaPremultiplied()))
+            return new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, hints)
+                .filter(src, dest);
+
+        convolve(src.getRaster(), dest.getRaster());
+        return dest;
+    }
+
+    public WritableRaster filter(Raster src, WritableRaster dest) {
+        if (dest == null)
+            dest = createCompatibleDestRaster(src);
+
+        if (!isCompatible(src, dest))
+            return new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, hints)
+                .filter(src, dest);
+
+        convolve(src, dest);
+        return dest;
+    }
+
+    /**
+     * True if both rasters are integer packed with matching 8 bit
+     * bands and the same size.
+     */
+    private static boolean isCompatible(Raster src, Raster dest) {
+        if ((src.getWidth()  != dest.getWidth()) ||
+            (src.getHeight() != dest.getHeight()))
+            return false;
+        if (!isIntPacked8(src.getSampleModel()) ||
+            !isIntPacked8(dest.getSampleModel()))
+            return false;
+
+        int[] srcOff = ((SinglePixelPackedSampleModel)src.getSampleModel())
+            .getBitOffsets();
+        int[] dstOff = ((SinglePixelPackedSampleModel)dest.getSampleModel())
+            .getBitOffsets();
+        if (srcOff.length != dstOff.length)
+            return false;
+        for (int i=0; i<srcOff.length; i++)
+            if (srcOff[i] != dstOff[i])
+                return false;
+        return true;
+    }
+
+    private static boolean isIntPacked8(SampleModel sm) {
+        if (!(sm instanceof SinglePixelPackedSampleModel))
+            return false;
+        if (sm.getDataType() != DataBuffer.TYPE_INT)
+            return false;
+        SinglePixelPackedSampleModel sppsm = (SinglePixelPackedSampleModel)sm;
+        int[] masks = sppsm.getBitMasks();
+        int[] offs  = sppsm.getBitOffsets();
+        for (int i=0; i<masks.length; i++)
+            if ((masks[i] >>> offs[i]) != 0xFF)
+                return false;
+        return true;
+    }
+
+    private void convolve(Raster src, WritableRaster dest) {
+        final int w = src.getWidth();
+        final int h = src.getHeight();
+        final int nBands = src.getNumBands();
+
+        if (src.getDataBuffer() == dest.getDataBuffer()) {
+            // Filtering in place, the source rows must stay intact.
+            WritableRaster copy = src.createCompatibleWritableRaster();
+            copy.setRect(-src.getMinX(), -src.getMinY(), src);
+            src = copy;
+        }
+
+        // Pixels the kernel doesn't fit over are copied (EDGE_NO_OP).
+        // Like ConvolveOp the margin is the same on both sides, which
+        // for even kernels leaves one column (or row) more than the
+        // kernel needs on the right (or bottom).
+        Packed in  = new Packed(src);
+        Packed out = new Packed(dest);
+        copyBands(in, out, w, h);
+
+        int x0 = kw-1-xOrigin, x1 = w-x0;
+        int y0 = kh-1-yOrigin, y1 = h-y0;
+        if ((x0 < x1) && (y0 < y1)) {
+            switch (getMethod(w, h, nBands)) {
+            case SEPARABLE:
+                separable(in, out, w, x0, x1, y0, y1);
+                break;
+            case FFT:
+                fft(in, out, w, h, x0, x1, y0, y1);
+                break;
+            default:
+                direct(in, out, w, x0, x1, y0, y1);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of output rows processed at once by the
+     * direct and separable implementations.
+     */
+    private int getStripRows() {
+        return Math.max(STRIP_ROWS, 4*kh);
+    }
+
+    /**
+     * Sums the (mirrored) kernel over each pixel of the rectangle
+     * <code>[x0,x1) x [y0,y1)</code>, one kernel entry at a time
+     * over a whole row.  The source rows are unpacked a strip and a
+     * band at a time.
+     */
+    private void direct(final Packed in, final Packed out,
+                        final int w, final int x0, final int x1,
+                        final int y0, final int y1) {
+        final int strip = getStripRows();
+        ParallelBands.run(y0, y1-y0, x1-x0, new ParallelBands.BandOp() {
+                public void run(int r0, int r1) {
+                    float[] acc = new float[x1-x0];
+                    float[] buf = new float
+                        [(Math.min(strip, r1-r0)+kh-1)*w];
+                    for (int s0=r0; s0<r1; s0+=strip) {
+                        int s1 = Math.min(s0+strip, r1);
+                        int iy0 = s0+yOrigin-(kh-1);
+                        for (int b=0; b<in.offs.length; b++) {
+                            in.unpack(b, iy0, s1-s0+kh-1, w, buf);
+                            for (int y=s0; y<s1; y++) {
+                                Arrays.fill(acc, 0);
+                                for (int j=0; j<kh; j++) {
+                                    int row = (y+yOrigin-j-iy0)*w
+                                        + xOrigin + x0;
+                                    for (int i=0; i<kw; i++) {
+                                        float k = kernelData[j*kw+i];
+                                        if (k == 0) continue;
+                                        int sp = row - i;
+                                        for (int x=0; x<acc.length; x++)
+                                            acc[x] += k*buf[sp+x];
+                                    }
+                                }
+                                out.pack(b, acc, x0, y, acc.length);
+                            }
+                        }
+                    }
+                }
+            });
+    }
+
+    /**
+     * Applies the row factor to the rows of a strip, then the column
+     * factor to the result.
+     */
+    private void separable(final Packed in, final Packed out,
+                           final int w, final int x0, final int x1,
+                           final int y0, final int y1) {
+        final int strip = getStripRows();
+        final int tw = x1-x0;
+        ParallelBands.run(y0, y1-y0, x1-x0, new ParallelBands.BandOp() {
+                public void run(int r0, int r1) {
+                    int rows = Math.min(strip, r1-r0)+kh-1;
+                    float[] acc = new float[tw];
+                    float[] buf = new float[rows*w];
+                    float[] tmp = new float[rows*tw];
+                    for (int s0=r0; s0<r1; s0+=strip) {
+                        int s1 = Math.min(s0+strip, r1);
+                        int iy0 = s0+yOrigin-(kh-1);
+                        int n = s1-s0+kh-1;
+                        for (int b=0; b<in.offs.length; b++) {
+                            in.unpack(b, iy0, n, w, buf);
+                            for (int y=0; y<n; y++) {
+                                int sp = y*w + x0 + xOrigin;
+                                int dp = y*tw;
+                                for (int x=0; x<tw; x++) {
+                                    float sum = 0;
+                                    for (int i=0; i<kw; i++)
+                                        sum += rowFactor[i]*buf[sp+x-i];
+                                    tmp[dp+x] = sum;
+                                }
+                            }
+                            for (int y=s0; y<s1; y++) {
+                                Arrays.fill(acc, 0);
+                                for (int j=0; j<kh; j++) {
+                                    float k = colFactor[j];
+                                    if (k == 0) continue;
+                                    int sp = (y+yOrigin-j-iy0)*tw;
+                                    for (int x=0; x<tw; x++)
+                                        acc[x] += k*tmp[sp+x];
+                                }
+                                out.pack(b, acc, x0, y, tw);
+                            }
+                        }
+                    }
+                }
+            });
+    }
+
+    /**
+     * Returns the size of the FFT tiles along a side of
+     * <code>len</code> output pixels for a kernel <code>k</code>
+     * pixels long.
+     */
+    static int getTileSize(int len, int k) {
+        return Math.min(nextPow2(len + k - 1),
+                        Math.max(FFT_TILE, nextPow2(2*k)));
+    }
+
+    /**
+     * Computes the convolution in the frequency domain, a tile at a
+     * time (overlap-save): each tile of the source is multiplied by
+     * the spectrum of the kernel, and the part of the result the
+     * circular convolution doesn't wrap around is kept.  Pairs of
+     * bands are packed in the real and imaginary parts of one
+     * complex tile; since the kernel is real the two results come
+     * back separated in the real and imaginary parts.
+     */
+    private void fft(Packed in, Packed out, int w, int h,
+                     int x0, int x1, int y0, int y1) {
+        final int fw = getTileSize(x1-x0, kw);
+        final int fh = getTileSize(y1-y0, kh);
+        final int bw = fw-kw+1, bh = fh-kh+1;
+        final int n  = fw*fh;
+
+        double[] kRe = new double[n];
+        double[] kIm = new double[n];
+        for (int j=0; j<kh; j++)
+            for (int i=0; i<kw; i++)
+                kRe[j*fw+i] = kernelData[j*kw+i];
+        fft2D(kRe, kIm, fw, fh, false);
+
+        double[] re = new double[n];
+        double[] im = new double[n];
+        float[] row = new float[bw];
+        double scale = 1.0/n;
+        int nBands = in.offs.length;
+        for (int ty=y0; ty<y1; ty+=bh) {
+            int oh = Math.min(bh, y1-ty);
+            // The first source row the tile needs.
+            int sy = ty+yOrigin-(kh-1);
+            int rows = Math.min(fh, h-sy);
+            for (int tx=x0; tx<x1; tx+=bw) {
+                int ow = Math.min(bw, x1-tx);
+                int sx = tx+xOrigin-(kw-1);
+                int cols = Math.min(fw, w-sx);
+                for (int b=0; b<nBands; b+=2) {
+                    boolean pair = (b+1 < nBands);
+                    Arrays.fill(re, 0);
+                    Arrays.fill(im, 0);
+                    in.unpack(b, sx, sy, cols, rows, re, fw);
+                    if (pair)
+                        in.unpack(b+1, sx, sy, cols, rows, im, fw);
+
+                    fft2D(re, im, fw, fh, false);
+                    for (int i=0; i<n; i++) {
+                        double a = re[i], c = kRe[i];
+                        double bi = im[i], d = kIm[i];
+                        re[i] = a*c - bi*d;
+                        im[i] = a*d + bi*c;
+                    }
+                    fft2D(re, im, fw, fh, true);
+
+                    for (int y=0; y<oh; y++) {
+                        int fp = (y+kh-1)*fw + kw-1;
+                        for (int x=0; x<ow; x++)
+                            row[x] = (float)(re[fp+x]*scale);
+                        out.pack(b, row, tx, ty+y, ow);
+                        if (pair) {
+                            for (int x=0; x<ow; x++)
+                                row[x] = (float)(im[fp+x]*scale);
+                            out.pack(b+1, row, tx, ty+y, ow);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * In place two dimensional FFT of a <code>fw</code> by
+     * <code>fh</code> complex image (both powers of two).  The inverse
+     * transform is not scaled.
+     */
+    static void fft2D(final double[] re, final double[] im,
+                      final int fw, final int fh, final boolean inverse) {
+        ParallelBands.run(0, fh, fw, new ParallelBands.BandOp() {
+                public void run(int r0, int r1) {
+                    double[] tRe = new double[fw];
+                    double[] tIm = new double[fw];
+                    for (int y=r0; y<r1; y++) {
+                        System.arraycopy(re, y*fw, tRe, 0, fw);
+                        System.arraycopy(im, y*fw, tIm, 0, fw);
+                        fft1D(tRe, tIm, inverse);
+                        System.arraycopy(tRe, 0, re, y*fw, fw);
+                        System.arraycopy(tIm, 0, im, y*fw, fw);
+                    }
+                }
+            });
+        // Columns are processed as bands of the transposed image.
+        ParallelBands.run(0, fw, fh, new ParallelBands.BandOp() {
+                public void run(int c0, int c1) {
+                    double[] tRe = new double[fh];
+                    double[] tIm = new double[fh];
+                    for (int x=c0; x<c1; x++) {
+                        for (int y=0, p=x; y<fh; y++, p+=fw) {
+                            tRe[y] = re[p];
+                            tIm[y] = im[p];
+                        }
+                        fft1D(tRe, tIm, inverse);
+                        for (int y=0, p=x; y<fh; y++, p+=fw) {
+                            re[p] = tRe[y];
+                            im[p] = tIm[y];
+                        }
+                    }
+                }
+            });
+    }
+
+    /**
+     * Iterative radix-2 FFT, the length must be a power of two.
+     */
+    static void fft1D(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        for (int i=1, j=0; i<n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1)
+                j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+
+        for (int len=2; len<=n; len<<=1) {
+            double ang = 2*Math.PI/len*(inverse ? 1 : -1);
+            double wRe = Math.cos(ang), wIm = Math.sin(ang);
+            int half = len>>1;
+            for (int i=0; i<n; i+=len) {
+                double uRe = 1, uIm = 0;
+                for (int k=0; k<half; k++) {
+                    int a = i+k, b = a+half;
+                    double vRe = re[b]*uRe - im[b]*uIm;
+                    double vIm = re[b]*uIm + im[b]*uRe;
+                    re[b] = re[a] - vRe;
+                    im[b] = im[a] - vIm;
+                    re[a] += vRe;
+                    im[a] += vIm;
+                    double t = uRe*wRe - uIm*wIm;
+                    uIm = uRe*wIm + uIm*wRe;
+                    uRe = t;
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits <code>data</code> into a column and a row factor whose
+     * outer product is the kernel.  Returns null if the kernel is
+     * not (numerically) of rank one.
+     */
+    static float[][] factor(float[] data, int kw, int kh) {
+        int pivot = 0;
+        float max = 0;
+        for (int i=0; i<data.length; i++) {
+            float a = Math.abs(data[i]);
+            if (a > max) {
+                max = a;
+                pivot = i;
+            }
+        }
+        if (max == 0)
+            return null;
+
+        int pi = pivot%kw, pj = pivot/kw;
+        float[] col = new float[kh];
+        float[] row = new float[kw];
+        for (int j=0; j<kh; j++)
+            col[j] = data[j*kw+pi];
+        for (int i=0; i<kw; i++)
+            row[i] = data[pj*kw+i]/data[pivot];
+
+        float eps = max*SEPARABLE_EPS;
+        for (int j=0; j<kh; j++)
+            for (int i=0; i<kw; i++)
+                if (Math.abs(data[j*kw+i] - col[j]*row[i]) > eps)
+                    return null;
+        return new float[][] { col, row };
+    }
+
+    private static int nextPow2(int v) {
+        int p = 1;
+        while (p < v) p <<= 1;
+        return p;
+    }
+
+    private static double log2(long v) {
+        return Math.log(v)/Math.log(2);
+    }
+
+    /**
+     * Copies the bands of <code>src</code> into <code>dest</code>.
+     * Bits outside the bands are left untouched.
+     */
+    private static void copyBands(Packed src, Packed dest, int w, int h) {
+        int keep = 0xFFFFFFFF;
+        for (int b=0; b<dest.offs.length; b++)
+            keep &= ~(0xFF << dest.offs[b]);
+        for (int y=0; y<h; y++) {
+            int sp = src.base + y*src.scan;
+            int dp = dest.base + y*dest.scan;
+            for (int x=0; x<w; x++)
+                dest.pixels[dp+x] = (dest.pixels[dp+x] & keep) |
+                    (src.pixels[sp+x] & ~keep);
+        }
+    }
+
+    /**
+     * The pixels of an integer packed raster with 8 bit bands.
+     */
+    static final class Packed {
+        final int[] pixels;
+        final int[] offs;
+        final int scan;
+        final int base;
+
+        Packed(Raster r) {
+            SinglePixelPackedSampleModel sppsm =
+                (SinglePixelPackedSampleModel)r.getSampleModel();
+            DataBufferInt db = (DataBufferInt)r.getDataBuffer();
+            pixels = db.getBankData()[0];
+            offs   = sppsm.getBitOffsets();
+            scan   = sppsm.getScanlineStride();
+            base   = db.getOffset() + sppsm.getOffset
+                (r.getMinX()-r.getSampleModelTranslateX(),
+                 r.getMinY()-r.getSampleModelTranslateY());
+        }
+
+        /**
+         * Extracts <code>rows</code> full rows of a band, from row
+         * <code>y0</code>, as floats.
+         */
+        void unpack(int band, int y0, int rows, int w, float[] dst) {
+            int shift = offs[band];
+            for (int y=0; y<rows; y++) {
+                int sp = base + (y0+y)*scan;
+                int dp = y*w;
+                for (int x=0; x<w; x++)
+                    dst[dp+x] = (pixels[sp+x] >>> shift) & 0xFF;
+            }
+        }
+
+        /**
+         * Extracts a <code>cols</code> by <code>rows</code> area of a
+         * band, from <code>(x0, y0)</code>, into rows
+         * <code>stride</code> samples apart.
+         */
+        void unpack(int band, int x0, int y0, int cols, int rows,
+                    double[] dst, int stride) {
+            int shift = offs[band];
+            for (int y=0; y<rows; y++) {
+                int sp = base + (y0+y)*scan + x0;
+                int dp = y*stride;
+                for (int x=0; x<cols; x++)
+                    dst[dp+x] = (pixels[sp+x] >>> shift) & 0xFF;
+            }
+        }
+
+        /**
+         * Writes <code>len</code> rounded and clamped samples of a
+         * band from <code>(x, y)</code>.  The other bands are left
+         * untouched.
+         */
+        void pack(int band, float[] src, int x, int y, int len) {
+            int shift = offs[band];
+            int keep = ~(0xFF << shift);
+            int dp = base + y*scan + x;
+            for (int i=0; i<len; i++) {
+                int v = (int)(src[i] + 0.5f);
+                if      (v < 0)   v = 0;
+                else if (v > 255) v = 255;
+                pixels[dp+i] = (pixels[dp+i] & keep) | (v << shift);
+            }
+        }
+    }
+}
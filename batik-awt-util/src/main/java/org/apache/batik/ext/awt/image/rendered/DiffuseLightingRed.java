@@ -114,100 +114,100 @@ public class DiffuseLightingRed extends AbstractRed{
                              minY-wr.getSampleModelTranslateY()));
 
         final int scanStride = sppsm.getScanlineStride();
-        final int adjust = scanStride - w;
-        int p = offset;
-        int r=0, g=0, b=0;
-        int i=0, j=0;
 
         // System.out.println("Getting diffuse red : " + minX + "/" + minY + "/" + w + "/" + h);
-        double x = scaleX*minX;
-        double y = scaleY*minY;
-        double NL = 0;
-
-        // final double[] L = new double[3];
-        final double[][][] NA = bumpMap.getNormalArray(minX, minY, w, h);
-        if(!light.isConstant()){
-            final double[][] LA = new double[w][3];
+        final double x = scaleX*minX;
+        final double y = scaleY*minY;
+
+        // The normals are computed one row at a time and lit
+        // immediately, bands of rows are processed concurrently.
+        final BumpMap.NormalTile normals
+            = bumpMap.getNormalTile(minX, minY, w, h);
+        ParallelBands.run(0, h, w, new ParallelBands.BandOp() {
+                public void run(int y0, int y1) {
+                    lightRows(normals, lightColor, pixels,
+                              offset + y0*scanStride, scanStride,
+                              x, y, w, y0, y1);
+                }
+            });
+        bumpMap.tileDone(normals);
 
-            for(i=0; i<h; i++){
-                final double [][] NR = NA[i];
-                light.getLightRow(x, y+i*scaleY, scaleX, w, NR, LA);
-                for(j=0; j<w; j++){
-                    // Get Normal 
-                    final double [] N = NR[j];
-                    
-                    // Get Light Vector
-                    final double [] L = LA[j];
-                    
-                    NL = 255.*kd*(N[0]*L[0] + N[1]*L[1] + N[2]*L[2]);
-                    
-                    r = (int)(NL*lightColor[0]);
-                    g = (int)(NL*lightColor[1]);
-                    b = (int)(NL*lightColor[2]);
-                    
-                    // If any high bits are set we are not in range.
-                    // If the highest bit is set then we are negative so
-                    // clamp to zero else we are > 255 so clamp to 255.
-                    if ((r & 0xFFFFFF00) != 0)
-                        r = ((r & 0x80000000) != 0)?0:255;
-                    if ((g & 0xFFFFFF00) != 0)
-                        g = ((g & 0x80000000) != 0)?0:255;
-                    if ((b & 0xFFFFFF00) != 0)
-                        b = ((b & 0x80000000) != 0)?0:255;
+        return wr;
+    }
                     
-                    pixels[p++] = (0xff000000
-                                   |
-                                   r << 16
-                                   |
-                                   g << 8
-                                   |
-                                   b);
+    /**
+     * Lights the rows <code>y0</code> to <code>y1</code> of a tile.
+     * @param normals the normals of the tile.
+     * @param lightColor the light color.
+     * @param pixels the destination pixels.
+     * @param p offset of the first pixel of row <code>y0</code>.
+     * @param scanStride the destination scanline stride.
+     * @param x user space x coordinate of the left of the tile.
+     * @param y user space y coordinate of the top of the tile.
+     * @param w the width of the tile.
+     */
+    private void lightRows(final BumpMap.NormalTile normals,
+                           final double[] lightColor,
+                           final int[] pixels, int p, final int scanStride,
+                           final double x, final double y, final int w,
+                           final int y0, final int y1) {
+        final int adjust = scanStride - w;
+        final double[][] NR = new double[w][4];
+        final double kd255 = 255.*kd;
+        int r, g, b;
+        double NL;
                     
-                }
-                p += adjust;
-            }
-        }
-        else{
+        final double[][] LA;
+        if (light.isConstant()) {
             // System.out.println(">>>>>>>> Processing constant light ...");
             // Constant light
             final double[] L = new double[3];
             light.getLight(0, 0, 0, L);
+            LA = new double[w][];
+            for (int j=0; j<w; j++)
+                LA[j] = L;
+        } else {
+            LA = new double[w][3];
+        }
+        
+        for(int i=y0; i<y1; i++){
+            normals.getRow(i, NR);
+            if (!light.isConstant())
+                light.getLightRow(x, y+i*scaleY, scaleX, w, NR, LA);
 
-            for(i=0; i<h; i++){
-                final double [][] NR = NA[i];
-                for(j=0; j<w; j++){
-                    // Get Normal 
-                    final double[] N = NR[j];
-                    
-                    NL = 255.*kd*(N[0]*L[0] + N[1]*L[1] + N[2]*L[2]);
-                    
-                    r = (int)(NL*lightColor[0]);
-                    g = (int)(NL*lightColor[1]);
-                    b = (int)(NL*lightColor[2]);
-                    
-                    // If any high bits are set we are not in range.
-                    // If the highest bit is set then we are negative so
-                    // clamp to zero else we are > 255 so clamp to 255.
-                    if ((r & 0xFFFFFF00) != 0)
-                        r = ((r & 0x80000000) != 0)?0:255;
-                    if ((g & 0xFFFFFF00) != 0)
-                        g = ((g & 0x80000000) != 0)?0:255;
-                    if ((b & 0xFFFFFF00) != 0)
-                        b = ((b & 0x80000000) != 0)?0:255;
-                    
-                    pixels[p++] = (0xff000000
-                                   |
-                                   r << 16
-                                   |
-                                   g << 8
-                                   |
-                                   b);
-                }
-                p += adjust;
+            for(int j=0; j<w; j++){
+                // Get Normal
+                final double [] N = NR[j];
+
+                // Get Light Vector
+                final double [] L = LA[j];
+
+                NL = kd255*(N[0]*L[0] + N[1]*L[1] + N[2]*L[2]);
+
+                r = (int)(NL*lightColor[0]);
+                g = (int)(NL*lightColor[1]);
+                b = (int)(NL*lightColor[2]);
+
+                // If any high bits are set we are not in range.
+                // If the highest bit is set then we are negative so
+                // clamp to zero else we are > 255 so clamp to 255.
+                if ((r & 0xFFFFFF00) != 0)
+                    r = ((r & 0x80000000) != 0)?0:255;
+                if ((g & 0xFFFFFF00) != 0)
+                    g = ((g & 0x80000000) != 0)?0:255;
+                if ((b & 0xFFFFFF00) != 0)
+                    b = ((b & 0x80000000) != 0)?0:255;
+
+                pixels[p++] = (0xff000000
+                               |
+                               r << 16
+                               |
+                               g << 8
+                               |
+                               b);
             }
+            p += adjust;
         }
-        
-        return wr;
     }
 
 }
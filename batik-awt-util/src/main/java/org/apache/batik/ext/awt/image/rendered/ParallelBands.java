@@ -0,0 +1,142 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the rows of a raster operation into horizontal bands and
+ * processes them concurrently on the common fork/join pool.  Small
+ * areas, single processor machines or a disabled
+ * <code>org.apache.batik.parallel_rasters</code> system property
+ * run the operation on the calling thread.
+ *
+ * The operation must only write to the rows it is given, so that
+ * bands can be processed in any order.
+ *
+ * @version $Id$
+ */
+public final class ParallelBands {
+
+    /**
+     * Interface implemented by operations that can process an
+     * arbitrary range of rows.
+     */
+    public interface BandOp {
+        /**
+         * Processes rows <code>y0</code> (inclusive) to
+         * <code>y1</code> (exclusive).
+         */
+        void run(int y0, int y1);
+    }
+
+    /**
+     * True if bands may be processed concurrently.
+     */
+    public static final boolean ENABLED;
+
+    /**
+     * Minimum number of pixels in an operation before it is split.
+     */
+    public static final int MIN_PIXELS;
+
+    static {
+        boolean enabled = true;
+        int minPixels = 128*128;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.parallel_rasters", "true");
+            enabled = Boolean.valueOf(s);
+            s = System.getProperty
+                ("org.apache.batik.parallel_rasters.min_pixels", "16384");
+            minPixels = Integer.parseInt(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            ENABLED   = enabled;
+            MIN_PIXELS = minPixels;
+        }
+    }
+
+    private ParallelBands() { }
+
+    /**
+     * Runs <code>op</code> over the rows <code>y</code> to
+     * <code>y+h</code> of an area <code>w</code> pixels wide.  Returns
+     * once every band has been processed; an exception thrown by any
+     * band is rethrown to the caller.
+     */
+    public static void run(int y, int h, int w, BandOp op) {
+        int nBands = getBandCount(w, h);
+        if (nBands <= 1) {
+            op.run(y, y+h);
+            return;
+        }
+
+        BandTask task = new BandTask(op, y, y+h, (h+nBands-1)/nBands);
+        if (ForkJoinTask.inForkJoinPool())
+            task.invoke();
+        else
+            ForkJoinPool.commonPool().invoke(task);
+    }
+
+    /**
+     * Returns the number of bands an area of <code>w</code> by
+     * <code>h</code> pixels would be split into.
+     */
+    public static int getBandCount(int w, int h) {
+        if (!ENABLED || (h < 2) || ((long)w*h < 2L*MIN_PIXELS))
+            return 1;
+        int par = ForkJoinPool.getCommonPoolParallelism();
+        if (par <= 1)
+            return 1;
+
+        // A few more bands than threads so uneven bands balance out.
+        int nBands = (int)Math.min(par*2L, ((long)w*h)/MIN_PIXELS);
+        return Math.min(nBands, h);
+    }
+
+    /**
+     * Recursively halves the row range until it is no taller than
+     * the requested band height.
+     */
+    static final class BandTask extends RecursiveAction {
+        final BandOp op;
+        final int y0, y1, bandH;
+
+        BandTask(BandOp op, int y0, int y1, int bandH) {
+            this.op    = op;
+            this.y0    = y0;
+            this.y1    = y1;
+            this.bandH = bandH;
+        }
+
+        protected void compute() {
+            if (y1 - y0 <= bandH) {
+                op.run(y0, y1);
+                return;
+            }
+            int mid = y0 + (y1 - y0)/2;
+            invokeAll(new BandTask(op, y0,  mid, bandH),
+                      new BandTask(op, mid, y1,  bandH));
+        }
+    }
+}
@@ -35,6 +35,8 @@ import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
+import org.apache.batik.ext.awt.color.ICCColorTransform;
+
 import org.apache.xmlgraphics.java2d.color.ICCColorSpaceWithIntent;
 
 /**
@@ -102,6 +104,11 @@ public class ProfileRed extends AbstractRed {
      *    ColorConvertOp
      * f. The alpha channel information is integrated back into the image.
      *
+     * When the profile's <code>ICCColorTransform</code> has a lookup
+     * table, b. to f. are replaced by the table, which writes the
+     * destination directly.  a. is skipped too if the image already
+     * has unpremultiplied 8 bit components.
+     *
      * IMPORTANT NOTE: The code uses a BandedSampleModel in c.) and
      * d.) and discard the alpha channel during the color conversions
      * (it is restored in f.)), because of bugs in the interleaved
@@ -140,13 +147,18 @@ public class ProfileRed extends AbstractRed {
             srcWR = srcWR.createWritableTranslatedChild(minX, minY);
             img.copyData(srcWR);
 
+            ICCColorTransform transform
+                = ICCColorTransform.getInstance(colorSpace);
+            boolean useLUT = transform.isLUTSupported();
+
             /**
              * If the source data is not a ComponentColorModel using a
              * BandedSampleModel, do the conversion now.
              */
-            if(!(imgCM instanceof ComponentColorModel) ||
-               !(img.getSampleModel() instanceof BandedSampleModel) ||
-               (imgCM.hasAlpha() && imgCM.isAlphaPremultiplied() )) {
+            if((!useLUT || !is8BitUnpremultiplied(imgCM)) &&
+               (!(imgCM instanceof ComponentColorModel) ||
+                !(img.getSampleModel() instanceof BandedSampleModel) ||
+                (imgCM.hasAlpha() && imgCM.isAlphaPremultiplied() ))) {
                 ComponentColorModel imgCompCM
                     = new ComponentColorModel
                         (imgCS,                      // Same ColorSpace as img
@@ -178,6 +190,22 @@ public class ProfileRed extends AbstractRed {
                 srcWR = wr.createWritableTranslatedChild(minX, minY);
             }
 
+            /**
+             * Three 8 bit, unpremultiplied components go through the
+             * color space's lookup table, straight into the destination.
+             */
+            if (useLUT && is8BitUnpremultiplied(imgCM)) {
+                int nBands = srcWR.getNumBands();
+                int [] src = null;
+                int [] dst = new int[w*4];
+                for (int y=minY; y<minY+h; y++) {
+                    src = srcWR.getPixels(minX, y, w, 1, src);
+                    transform.toRGB(src, nBands, dst, w);
+                    argbWR.setPixels(minX, y, w, 1, dst);
+                }
+                return argbWR;
+            }
+
             /**
              * Now, the input image is using a component color
              * model. We can therefore create an image with the new
@@ -278,4 +306,22 @@ public class ProfileRed extends AbstractRed {
         }
     }
 
+    /**
+     * Returns true if the pixels of <code>cm</code> are made of its
+     * unpremultiplied components, all of 8 bits.
+     */
+    private static boolean is8BitUnpremultiplied(ColorModel cm) {
+        if (!(cm instanceof ComponentColorModel) &&
+            !(cm instanceof DirectColorModel))
+            return false;
+        if (cm.isAlphaPremultiplied())
+            return false;
+        int [] sizes = cm.getComponentSize();
+        for (int i=0; i<sizes.length; i++) {
+            if (sizes[i] != 8)
+                return false;
+        }
+        return true;
+    }
+
 }
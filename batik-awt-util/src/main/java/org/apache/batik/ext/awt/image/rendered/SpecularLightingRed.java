@@ -71,6 +71,19 @@ public class SpecularLightingRed extends AbstractTiledRed{
      */
     private boolean linear;
      
+    /**
+     * Number of intervals in <code>powTable</code>.
+     */
+    private static final int POW_TABLE_SIZE = 2048;
+
+    /**
+     * Lookup table of <code>Math.pow(i/POW_TABLE_SIZE,
+     * specularExponent)</code>, interpolated linearly by
+     * <code>pow</code>.  Null if the exponent is too small for the
+     * table to be accurate.
+     */
+    private final double[] powTable;
+
 
     public SpecularLightingRed(double ks,
                                double specularExponent,
@@ -88,6 +101,17 @@ public class SpecularLightingRed extends AbstractTiledRed{
         this.scaleY = scaleY;
         this.linear = linear;
 
+        if (specularExponent >= 1) {
+            powTable = new double[POW_TABLE_SIZE+2];
+            for (int i=0; i<=POW_TABLE_SIZE; i++)
+                powTable[i] = Math.pow(i/(double)POW_TABLE_SIZE,
+                                       specularExponent);
+            // Guard entry so pow never reads past the table.
+            powTable[POW_TABLE_SIZE+1] = powTable[POW_TABLE_SIZE];
+        } else {
+            powTable = null;
+        }
+
         ColorModel cm;
         if (linear)
             cm = GraphicsUtil.Linear_sRGB_Unpre;
@@ -110,11 +134,20 @@ public class SpecularLightingRed extends AbstractTiledRed{
         return wr;
     }
 
-    public void genRect(WritableRaster wr) {
-        // Copy variable on stack for faster access in tight loop
-        final double scaleX = this.scaleX;
-        final double scaleY = this.scaleY;
+    /**
+     * Returns <code>Math.pow(v, specularExponent)</code>, using the
+     * lookup table for values in [0, 1].
+     */
+    private double pow(double v) {
+        if ((powTable == null) || !(v >= 0) || (v > 1))
+            return Math.pow(v, specularExponent);
+        final double f = v*POW_TABLE_SIZE;
+        final int    i = (int)f;
+        final double p0 = powTable[i];
+        return p0 + (f-i)*(powTable[i+1]-p0);
+    }
 
+    public void genRect(WritableRaster wr) {
         final double[] lightColor = light.getColor(linear);
 
         final int w = wr.getWidth();
@@ -134,14 +167,10 @@ public class SpecularLightingRed extends AbstractTiledRed{
                              minY-wr.getSampleModelTranslateY()));
         // int offset = db.getOffset();
         final int scanStride = sppsm.getScanlineStride();
-        final int adjust = scanStride - w;
-        int p = offset;
-        int a=0, i=0, j=0;
 
         // x and y are in user space
-        double x = scaleX*minX;
-        double y = scaleY*minY;
-        double norm = 0;
+        final double x = scaleX*minX;
+        final double y = scaleY*minY;
 
         int pixel = 0, tmp;
         double mult;
@@ -159,15 +188,54 @@ public class SpecularLightingRed extends AbstractTiledRed{
 
         // System.out.println("Pixel: 0x" + Integer.toHexString(pixel));
 
-        final double[][][] NA = bumpMap.getNormalArray(minX, minY, w, h);
+        // The normals are computed one row at a time and lit
+        // immediately, bands of rows are processed concurrently.
+        final BumpMap.NormalTile normals
+            = bumpMap.getNormalTile(minX, minY, w, h);
+        final int    rgb = pixel;
+        final double m   = mult;
+        ParallelBands.run(0, h, w, new ParallelBands.BandOp() {
+                public void run(int y0, int y1) {
+                    lightRows(normals, rgb, m, pixels,
+                              offset + y0*scanStride, scanStride,
+                              x, y, w, y0, y1);
+                }
+            });
+        bumpMap.tileDone(normals);
+    }
+
+    /**
+     * Lights the rows <code>y0</code> to <code>y1</code> of a tile.
+     * @param normals the normals of the tile.
+     * @param pixel the light color, to which the alpha is added.
+     * @param mult the scale applied to the specular term.
+     * @param pixels the destination pixels.
+     * @param p offset of the first pixel of row <code>y0</code>.
+     * @param scanStride the destination scanline stride.
+     * @param x user space x coordinate of the left of the tile.
+     * @param y user space y coordinate of the top of the tile.
+     * @param w the width of the tile.
+     */
+    private void lightRows(final BumpMap.NormalTile normals,
+                           final int pixel, final double mult,
+                           final int[] pixels, int p, final int scanStride,
+                           final double x, final double y, final int w,
+                           final int y0, final int y1) {
+        // Copy variable on stack for faster access in tight loop
+        final double scaleX = this.scaleX;
+        final double scaleY = this.scaleY;
+        final int adjust = scanStride - w;
+        final double[][] NR = new double[w][4];
+        int a, i, j;
+        double norm;
 
         // System.out.println("Entering Specular Lighting");
         if (light instanceof SpotLight) {
             SpotLight slight = (SpotLight)light;
             final double[][] LA = new double[w][4];
-            for(i=0; i<h; i++){
+            for(i=y0; i<y1; i++){
                 // System.out.println("Row: " + i);
-                final double [][] NR = NA[i];
+                normals.getRow(i, NR);
                 slight.getLightRow4(x, y+i*scaleY, scaleX, w, NR, LA);
                 for (j=0; j<w; j++){
                     // Get Normal 
@@ -183,7 +251,7 @@ public class SpecularLightingRed extends AbstractTiledRed{
                         norm = L[0]*L[0] + L[1]*L[1] + L[2]*L[2];
                         norm = Math.sqrt(norm);
                         double dot = N[0]*L[0] + N[1]*L[1] + N[2]*L[2];
-                        vs = vs*Math.pow(dot/norm, specularExponent);
+                        vs = vs*pow(dot/norm);
                         a = (int)(mult*vs + 0.5);
                         if ((a & 0xFFFFFF00) != 0)
                             a = ((a & 0x80000000) != 0)?0:255;
@@ -194,9 +262,9 @@ public class SpecularLightingRed extends AbstractTiledRed{
             }
         } else if(!light.isConstant()){
             final double[][] LA = new double[w][4];
-            for(i=0; i<h; i++){
+            for(i=y0; i<y1; i++){
                 // System.out.println("Row: " + i);
-                final double [][] NR = NA[i];
+                normals.getRow(i, NR);
                 light.getLightRow(x, y+i*scaleY, scaleX, w, NR, LA);
                 for (j=0; j<w; j++){
                     // Get Normal 
@@ -209,7 +277,7 @@ public class SpecularLightingRed extends AbstractTiledRed{
                     norm = Math.sqrt(norm);
                     double dot = N[0]*L[0] + N[1]*L[1] + N[2]*L[2];
                     // vs = vs/norm;
-                    norm = Math.pow(dot/norm, specularExponent);
+                    norm = pow(dot/norm);
                     a = (int)(mult*norm + 0.5);
                     if ((a & 0xFFFFFF00) != 0)
                         a = ((a & 0x80000000) != 0)?0:255;
@@ -232,14 +300,14 @@ public class SpecularLightingRed extends AbstractTiledRed{
                 L[2] /= norm;
             }
 
-            for(i=0; i<h; i++){
-                final double [][] NR = NA[i];
+            for(i=y0; i<y1; i++){
+                normals.getRow(i, NR);
                 for(j=0; j<w; j++){
                     // Get Normal 
                     final double [] N = NR[j];
                     
-                    a = (int)(mult*Math.pow(N[0]*L[0] + N[1]*L[1] + N[2]*L[2], 
-                                            specularExponent) + 0.5);
+                    a = (int)(mult*pow(N[0]*L[0] + N[1]*L[1] + N[2]*L[2])
+                              + 0.5);
                     
                     if ((a & 0xFFFFFF00) != 0)
                         a = ((a & 0x80000000) != 0)?0:255;
@@ -0,0 +1,152 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The lattice selector and gradient tables used by
+ * {@link TurbulencePatternRed}.  The tables only depend on the seed
+ * so they are shared between all patterns using the same seed; a
+ * small LRU cache of recently used lattices is kept.  Instances are
+ * immutable once built.
+ *
+ * @version $Id$
+ */
+final class TurbulenceLattice {
+
+    static final int BSize = 0x100;
+    static final int BM = 0xff;
+
+    /**
+     * Produces results in the range [1, 2**31 - 2].
+     * Algorithm is: r = (a * r) mod m
+     * where a = 16807 and m = 2**31 - 1 = 2147483647
+     * See [Park & Miller], CACM vol. 31 no. 10 p. 1195, Oct. 1988
+     * To test: the algorithm should produce the result 1043618065
+     * as the 10,000th generated number if the original seed is 1.
+     */
+    private static final int RAND_m = 2147483647; /* 2**31 - 1 */
+    private static final int RAND_a = 16807; /* 7**5; primitive root of m */
+    private static final int RAND_q = 127773; /* m / a */
+    private static final int RAND_r = 2836; /* m % a */
+
+    /**
+     * Number of lattices kept in the cache.
+     */
+    private static final int CACHE_SIZE = 16;
+
+    private static final Map cache = new LinkedHashMap(CACHE_SIZE, .75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /**
+     * Permutation of the lattice points, BSize+1 entries.
+     */
+    final int[] latticeSelector = new int[BSize + 1];
+
+    /**
+     * Four gradient vectors (one per channel) for each lattice point,
+     * with the lattice selector already applied.
+     */
+    final double[] gradient = new double[(BSize+1)*8];
+
+    /**
+     * Single precision copy of <code>gradient</code> for the fast path.
+     */
+    final float[] gradientF = new float[(BSize+1)*8];
+
+    /**
+     * Returns the (possibly shared) lattice for <code>seed</code>.
+     */
+    static TurbulenceLattice getLattice(int seed) {
+        Integer key = seed;
+        synchronized (cache) {
+            TurbulenceLattice ret = (TurbulenceLattice)cache.get(key);
+            if (ret != null)
+                return ret;
+        }
+
+        // Build outside the lock, two threads racing on the same seed
+        // build identical tables.
+        TurbulenceLattice ret = new TurbulenceLattice(seed);
+        synchronized (cache) {
+            cache.put(key, ret);
+        }
+        return ret;
+    }
+
+    static int setupSeed(int seed) {
+        if (seed <= 0) seed = -(seed % (RAND_m - 1)) + 1;
+        if (seed > RAND_m - 1) seed = RAND_m - 1;
+        return seed;
+    }
+
+    static int random(int seed) {
+        int result = RAND_a * (seed % RAND_q) - RAND_r * (seed / RAND_q);
+        if (result <= 0) result += RAND_m;
+        return result;
+    }
+
+    private TurbulenceLattice(int seed) {
+        double u, v, s;
+        int i, j, k, s1, s2;
+        seed = setupSeed(seed);
+
+        for(k = 0; k < 4; k++){
+            for(i = 0; i < BSize; i++){
+                u = (((seed = random(seed)) % (BSize + BSize)) - BSize);
+                v = (((seed = random(seed)) % (BSize + BSize)) - BSize);
+
+                s = 1/Math.sqrt(u*u + v*v);
+                gradient[i*8 + k*2    ] = u*s;
+                gradient[i*8 + k*2 + 1] = v*s;
+            }
+        }
+
+        for(i = 0; i < BSize; i++)
+            latticeSelector[i] = i;
+
+        while(--i > 0){
+            k = latticeSelector[i];
+            j = (seed = random(seed)) % BSize;
+            latticeSelector[i] = latticeSelector[j];
+            latticeSelector[j] = k;
+
+            // Now we apply the lattice to the gradient array, this
+            // lets us avoid one of the lattice lookups.
+            s1 = i<<3;
+            s2 = j<<3;
+            for (j=0; j<8; j++) {
+                s = gradient[s1+j];
+                gradient[s1+j] = gradient[s2+j];
+                gradient[s2+j] = s;
+            }
+        }
+        latticeSelector[BSize] = latticeSelector[0];
+        for (j=0; j<8; j++)
+            gradient[(BSize*8)+j] = gradient[j];
+
+        for (i=0; i<gradient.length; i++)
+            gradientF[i] = (float)gradient[i];
+    }
+}
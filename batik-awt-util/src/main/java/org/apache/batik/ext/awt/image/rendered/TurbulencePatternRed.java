@@ -194,24 +194,55 @@ public final class TurbulencePatternRed extends AbstractRed {
     double[] tx = {1, 0};
     double[] ty = {0, 1};
 
+    private static final int BSize = TurbulenceLattice.BSize;
+    private static final int BM = TurbulenceLattice.BM;
+    private static final double PerlinN = 0x1000;
+    private final int[] latticeSelector;
+    private final double[] gradient;
+
     /**
-     * Produces results in the range [1, 2**31 - 2].
-     * Algorithm is: r = (a * r) mod m
-     * where a = 16807 and m = 2**31 - 1 = 2147483647
-     * See [Park & Miller], CACM vol. 31 no. 10 p. 1195, Oct. 1988
-     * To test: the algorithm should produce the result 1043618065
-     * as the 10,000th generated number if the original seed is 1.
+     * Single precision gradients used by the fast path.
      */
-    private static final int RAND_m = 2147483647; /* 2**31 - 1 */
-    private static final int RAND_a = 16807; /* 7**5; primitive root of m */
-    private static final int RAND_q = 127773; /* m / a */
-    private static final int RAND_r = 2836; /* m % a */
+    private final float[] gradientF;
 
-    private static final int BSize = 0x100;
-    private static final int BM = 0xff;
-    private static final double PerlinN = 0x1000;
-    private final int[] latticeSelector = new int[BSize + 1];
-    private final double[] gradient = new double[(BSize+1)*8];
+    /**
+     * True if the pattern should be generated with the single
+     * precision, band parallel code path (see
+     * <code>org.apache.batik.turbulence.fast_path</code>).
+     */
+    private boolean fastPath = FAST_PATH;
+
+    /**
+     * Default value for <code>fastPath</code>.
+     */
+    static final boolean FAST_PATH;
+
+    static {
+        boolean fast = true;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.turbulence.fast_path", "true");
+            fast = Boolean.valueOf(s);
+        } catch (SecurityException se) {
+        } finally {
+            FAST_PATH = fast;
+        }
+    }
+
+    /**
+     * Lattice frequency along each axis for each octave, used by the
+     * fast path.  The frequencies are exact doublings so these give
+     * the same lattice coordinates as the repeated doubling done by
+     * the reference code.
+     */
+    private double[] octaveFreqX, octaveFreqY;
+
+    /**
+     * Stitching tables for each octave (width, height, wrapX, wrapY)
+     * so the fast path does not need to copy and double a StitchInfo
+     * for every pixel.  Null when stitching is off.
+     */
+    private int[] stitchWidth, stitchHeight, stitchWrapX, stitchWrapY;
 
     public double getBaseFrequencyX(){
         return baseFrequencyX;
@@ -245,58 +276,13 @@ public final class TurbulencePatternRed extends AbstractRed {
     }
 
     public final int setupSeed(int seed) {
-        if (seed <= 0) seed = -(seed % (RAND_m - 1)) + 1;
-        if (seed > RAND_m - 1) seed = RAND_m - 1;
-        return seed;
+        return TurbulenceLattice.setupSeed(seed);
     }
 
     public final int random(int seed) {
-      int result = RAND_a * (seed % RAND_q) - RAND_r * (seed / RAND_q);
-        if (result <= 0) result += RAND_m;
-        return result;
+        return TurbulenceLattice.random(seed);
     }
 
-    private void initLattice(int seed) {
-        double u, v, s;
-        int i, j, k, s1, s2;
-        seed = setupSeed(seed);
-
-        for(k = 0; k < 4; k++){
-            for(i = 0; i < BSize; i++){
-                u = (((seed = random(seed)) % (BSize + BSize)) - BSize);
-                v = (((seed = random(seed)) % (BSize + BSize)) - BSize);
-
-                s = 1/Math.sqrt(u*u + v*v);
-                gradient[i*8 + k*2    ] = u*s;
-                gradient[i*8 + k*2 + 1] = v*s;
-            }
-        }
-
-        for(i = 0; i < BSize; i++)
-            latticeSelector[i] = i;
-
-        while(--i > 0){
-            k = latticeSelector[i];
-            j = (seed = random(seed)) % BSize;
-            latticeSelector[i] = latticeSelector[j];
-            latticeSelector[j] = k;
-
-            // Now we apply the lattice to the gradient array, this
-            // lets us avoid one of the lattice lookups.
-            s1 = i<<3;
-            s2 = j<<3;
-            for (j=0; j<8; j++) {
-                s = gradient[s1+j];
-                gradient[s1+j] = gradient[s2+j];
-                gradient[s2+j] = s;
-            }
-        }
-        latticeSelector[BSize] = latticeSelector[0];
-        for (j=0; j<8; j++)
-            gradient[(BSize*8)+j] = gradient[j];
-    }
-
-
     private static final double s_curve(final double t) {
         return (t * t * (3 - 2 * t) );
     }
@@ -1038,6 +1024,187 @@ public final class TurbulencePatternRed extends AbstractRed {
         }
     }
 
+    /**
+     * Computes the per octave frequency and stitching tables used by
+     * the fast path.  Must be called once the base frequencies,
+     * number of octaves and stitchInfo are final.
+     */
+    private void initOctaveTables() {
+        int n = Math.max(numOctaves, 0);
+        octaveFreqX = new double[n];
+        octaveFreqY = new double[n];
+        double fx = baseFrequencyX, fy = baseFrequencyY;
+        for (int k=0; k<n; k++) {
+            octaveFreqX[k] = fx;
+            octaveFreqY[k] = fy;
+            fx *= 2;
+            fy *= 2;
+        }
+
+        if (stitchInfo == null)
+            return;
+
+        stitchWidth  = new int[n];
+        stitchHeight = new int[n];
+        stitchWrapX  = new int[n];
+        stitchWrapY  = new int[n];
+        StitchInfo si = new StitchInfo(stitchInfo);
+        for (int k=0; k<n; k++) {
+            stitchWidth [k] = si.width;
+            stitchHeight[k] = si.height;
+            stitchWrapX [k] = si.wrapX;
+            stitchWrapY [k] = si.wrapY;
+            si.doubleFrequency();
+        }
+    }
+
+    /**
+     * Selects between the fast path and the reference implementation.
+     * The reference implementation is kept for conformance testing.
+     */
+    void setFastPath(boolean fastPath) {
+        this.fastPath = fastPath;
+    }
+
+    boolean isFastPath() {
+        return fastPath;
+    }
+
+    /**
+     * Fast path for <code>copyData</code>.  Generates the rows
+     * <code>y0</code> to <code>y1</code> (relative to the top of the
+     * destination) using single precision noise evaluation and the
+     * precomputed octave tables.  Each row is positioned directly from
+     * the origin so bands may be generated in any order, on any thread.
+     *
+     * @param pixels    The destination pixel array.
+     * @param off       Offset of the first pixel of the destination.
+     * @param scanStride Scanline stride of the destination.
+     * @param w         Width of the destination.
+     * @param y0        First row to generate.
+     * @param y1        Row after the last row to generate.
+     * @param orgX      Filter space x coordinate of the first pixel.
+     * @param orgY      Filter space y coordinate of the first pixel.
+     */
+    private void fastRows(final int[] pixels, final int off,
+                          final int scanStride, final int w,
+                          final int y0, final int y1,
+                          final double orgX, final double orgY) {
+        final int     nOct     = numOctaves;
+        final boolean fractal  = isFractalNoise;
+        final boolean stitch   = (stitchWidth != null);
+        final int[]   lattice  = latticeSelector;
+        final float[] grad     = gradientF;
+        final double  tx0 = tx[0], tx1 = tx[1];
+        final double  ty0 = ty[0], ty1 = ty[1];
+        final float   base  = fractal ? 127.5f : 0f;
+        final float   ratio0 = fractal ? 127.5f : 255f;
+
+        // Channels that are not generated are masked out when packing.
+        final int nCh = channels.length;
+        final int mask = ((nCh > 3) ? 0xFF000000 : 0) |
+                         ((nCh > 0) ? 0x00FF0000 : 0) |
+                         ((nCh > 1) ? 0x0000FF00 : 0) |
+                         ((nCh > 2) ? 0x000000FF : 0);
+
+        for (int y=y0; y<y1; y++) {
+            int dp = off + y*scanStride;
+            final double rowX = orgX + y*ty0;
+            final double rowY = orgY + y*ty1;
+            for (int x=0; x<w; x++, dp++) {
+                final double pX = rowX + x*tx0;
+                final double pY = rowY + x*tx1;
+
+                float s0 = base, s1 = base, s2 = base, s3 = base;
+                float ratio = ratio0;
+                for (int k=0; k<nOct; k++) {
+                    final double px = pX*octaveFreqX[k] + PerlinN;
+                    final double py = pY*octaveFreqY[k] + PerlinN;
+
+                    int bx0 = (int)px;
+                    int bx1 = bx0+1;
+                    int by0 = (int)py;
+                    int by1 = by0+1;
+                    if (stitch) {
+                        int wrap = stitchWrapX[k];
+                        if (bx1 >= wrap) {
+                            if (bx0 >= wrap) bx0 -= stitchWidth[k];
+                            bx1 -= stitchWidth[k];
+                        }
+                        wrap = stitchWrapY[k];
+                        if (by1 >= wrap) {
+                            if (by0 >= wrap) by0 -= stitchHeight[k];
+                            by1 -= stitchHeight[k];
+                        }
+                    }
+
+                    final int i = lattice[bx0&BM];
+                    final int j = lattice[bx1&BM];
+                    final int b00 = ((i + by0)&BM)<<3;
+                    final int b10 = ((j + by0)&BM)<<3;
+                    final int b01 = ((i + by1)&BM)<<3;
+                    final int b11 = ((j + by1)&BM)<<3;
+
+                    final float rx0 = (float)(px - (int)px);
+                    final float ry0 = (float)(py - (int)py);
+                    final float sx  = rx0*rx0*(3 - 2*rx0);
+                    final float sy  = ry0*ry0*(3 - 2*ry0);
+
+                    float n0 = noise(grad, b00, b10, b01, b11, 0, rx0, ry0, sx, sy);
+                    float n1 = noise(grad, b00, b10, b01, b11, 2, rx0, ry0, sx, sy);
+                    float n2 = noise(grad, b00, b10, b01, b11, 4, rx0, ry0, sx, sy);
+                    float n3 = noise(grad, b00, b10, b01, b11, 6, rx0, ry0, sx, sy);
+                    if (!fractal) {
+                        n0 = Math.abs(n0);
+                        n1 = Math.abs(n1);
+                        n2 = Math.abs(n2);
+                        n3 = Math.abs(n3);
+                    }
+                    s0 += n0*ratio;
+                    s1 += n1*ratio;
+                    s2 += n2*ratio;
+                    s3 += n3*ratio;
+                    ratio *= .5f;
+                }
+
+                pixels[dp] = ((clamp(s3)<<24) |
+                              (clamp(s0)<<16) |
+                              (clamp(s1)<<8)  |
+                              (clamp(s2)    )) & mask;
+            }
+        }
+    }
+
+    /**
+     * Single precision noise for one channel, given the gradient
+     * offsets of the four surrounding lattice points.
+     */
+    private static float noise(final float[] grad,
+                               final int b00, final int b10,
+                               final int b01, final int b11, final int g,
+                               final float rx0, final float ry0,
+                               final float sx, final float sy) {
+        final float rx1 = rx0 - 1f;
+        final float ry1 = ry0 - 1f;
+        float u = rx0*grad[b00+g] + ry0*grad[b00+g+1];
+        float v = rx1*grad[b10+g] + ry0*grad[b10+g+1];
+        final float a = u + sx*(v-u);
+        u = rx0*grad[b01+g] + ry1*grad[b01+g+1];
+        v = rx1*grad[b11+g] + ry1*grad[b11+g+1];
+        final float b = u + sx*(v-u);
+        return a + sy*(b-a);
+    }
+
+    /**
+     * Converts a channel sum to a code value, clamped to [0, 255].
+     */
+    private static int clamp(final float f) {
+        int v = (int)f;
+        if ((v & 0xFFFFFF00) != 0)
+            v = ((v & 0x80000000) != 0)?0:255;
+        return v;
+    }
+
     /**
      * Generates a Perlin noise pattern into dest Raster.
      * @param dest Raster to fill with the pattern.
@@ -1086,6 +1253,22 @@ public final class TurbulencePatternRed extends AbstractRed {
         double point_0 = p[0];
         double point_1 = p[1];
 
+        if (fastPath) {
+            final int[]  pixels = destPixels;
+            final int    off    = dstOff;
+            final int    stride = sppsm.getScanlineStride();
+            final int    width  = w;
+            final double orgX   = point_0;
+            final double orgY   = point_1;
+            ParallelBands.run(0, h, w, new ParallelBands.BandOp() {
+                    public void run(int y0, int y1) {
+                        fastRows(pixels, off, stride, width, y0, y1,
+                                 orgX, orgY);
+                    }
+                });
+            return dest;
+        }
+
         if(isFractalNoise){
             if(stitchInfo == null){
                 if (channels.length == 4) {
@@ -1326,7 +1509,12 @@ public final class TurbulencePatternRed extends AbstractRed {
             //                     " maxLatticeY = " + maxLatticeY);
         }
 
-        initLattice(seed);
+        TurbulenceLattice lattice = TurbulenceLattice.getLattice(seed);
+        latticeSelector = lattice.latticeSelector;
+        gradient        = lattice.gradient;
+        gradientF       = lattice.gradientF;
+
+        initOctaveTables();
 
         ColorModel cm;
         if (alpha)
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 
 import org.apache.batik.ext.awt.image.URLImageCache;
 import org.apache.batik.ext.awt.image.renderable.Filter;
@@ -48,6 +49,7 @@ public class ImageTagRegistry implements ErrorConstants {
     List entries    = new LinkedList();
     List extensions = null;
     List mimeTypes  = null;
+    MagicNumberIndex magicNumberIndex = null;
 
     URLImageCache rawCache;
     URLImageCache imgCache;
@@ -58,9 +60,9 @@ public class ImageTagRegistry implements ErrorConstants {
 
     public ImageTagRegistry(URLImageCache rawCache, URLImageCache imgCache) {
         if (rawCache == null)
-            rawCache = new URLImageCache();
+            rawCache = URLImageCache.createCache();
         if (imgCache == null)
-            imgCache = new URLImageCache();
+            imgCache = URLImageCache.createCache();
 
         this.rawCache= rawCache;
         this.imgCache= imgCache;
@@ -143,11 +145,52 @@ public class ImageTagRegistry implements ErrorConstants {
 
         boolean     openFailed = false;
         List mimeTypes = getRegisteredMimeTypes();
+        MagicNumberIndex index = getMagicNumberIndex();
+        Set matched = null;
 
         Iterator i;
         i = entries.iterator();
         while (i.hasNext()) {
             RegistryEntry re = (RegistryEntry)i.next();
+
+            // Quick out last time the open didn't work for this
+            // URL so don't try again...
+            if ((re instanceof StreamRegistryEntry) && !openFailed) {
+                if (is == null) {
+                    // Haven't opened the stream yet let's try.
+                    if ((purl == null) || !allowOpenStream)
+                        break;  // No purl nothing we can do...
+                    try {
+                        is = purl.openStream(mimeTypes.iterator());
+                        if (!is.markSupported())
+                            // Doesn't support mark so wrap with
+                            // BufferedInputStream that does.
+                            is = new BufferedInputStream(is);
+                    } catch(IOException ioe) {
+                        // Couldn't open the stream, go to next entry.
+                        openFailed = true;
+                    }
+                }
+
+                if (is != null) {
+                    StreamRegistryEntry sre = (StreamRegistryEntry)re;
+                    try {
+                        if (matched == null)
+                            matched = index.match(is);
+                        if (isCompatibleStream(sre, is, index, matched)) {
+                            ret = sre.handleStream(is, purl, needRawData);
+                            if (ret != null) break;
+                        }
+                    } catch (StreamCorruptedException sce) {
+                        // Stream is messed up so setup to reopen it..
+                        is = null;
+                        matched = null;
+                    }
+                }
+            }
+
+            // Entries that can also handle the stream only get the
+            // URL if they did not recognize it, so it is opened once.
             if (re instanceof URLRegistryEntry) {
                 if ((purl == null) || !allowOpenStream) continue;
 
@@ -158,43 +201,6 @@ public class ImageTagRegistry implements ErrorConstants {
                     // Check if we got an image.
                     if (ret != null) break;
                 }
-                continue;
-            }
-
-            if (re instanceof StreamRegistryEntry) {
-                StreamRegistryEntry sre = (StreamRegistryEntry)re;
-                // Quick out last time the open didn't work for this
-                // URL so don't try again...
-                if (openFailed) continue;
-
-                try {
-                    if (is == null) {
-                        // Haven't opened the stream yet let's try.
-                        if ((purl == null) || !allowOpenStream)
-                            break;  // No purl nothing we can do...
-                        try {
-                            is = purl.openStream(mimeTypes.iterator());
-                        } catch(IOException ioe) {
-                            // Couldn't open the stream, go to next entry.
-                            openFailed = true;
-                            continue;
-                        }
-
-                        if (!is.markSupported())
-                            // Doesn't support mark so wrap with
-                            // BufferedInputStream that does.
-                            is = new BufferedInputStream(is);
-                    }
-
-                    if (sre.isCompatibleStream(is)) {
-                        ret = sre.handleStream(is, purl, needRawData);
-                        if (ret != null) break;
-                    }
-                } catch (StreamCorruptedException sce) {
-                    // Stream is messed up so setup to reopen it..
-                    is = null;
-                }
-                continue;
             }
         }
 
@@ -238,6 +244,8 @@ public class ImageTagRegistry implements ErrorConstants {
         boolean needRawData = (colorSpace != null);
 
         Filter ret = null;
+        MagicNumberIndex index = getMagicNumberIndex();
+        Set matched = null;
 
         for (Object entry : entries) {
             RegistryEntry re = (RegistryEntry) entry;
@@ -247,7 +255,9 @@ public class ImageTagRegistry implements ErrorConstants {
             StreamRegistryEntry sre = (StreamRegistryEntry) re;
 
             try {
-                if (sre.isCompatibleStream(is)) {
+                if (matched == null)
+                    matched = index.match(is);
+                if (isCompatibleStream(sre, is, index, matched)) {
                     ret = sre.handleStream(is, null, needRawData);
 
                     if (ret != null) break;
@@ -282,6 +292,31 @@ public class ImageTagRegistry implements ErrorConstants {
         li.add(newRE);
         extensions = null;
         mimeTypes = null;
+        magicNumberIndex = null;
+    }
+
+    /**
+     * Returns the index of the magic numbers of the registered entries.
+     */
+    synchronized MagicNumberIndex getMagicNumberIndex() {
+        if (magicNumberIndex == null)
+            magicNumberIndex = new MagicNumberIndex(entries);
+        return magicNumberIndex;
+    }
+
+    /**
+     * Checks if <code>sre</code> can handle <code>is</code>, through
+     * the magic numbers <code>matched</code> by <code>index</code>
+     * when it has them.
+     */
+    private static boolean isCompatibleStream(StreamRegistryEntry sre,
+                                              InputStream is,
+                                              MagicNumberIndex index,
+                                              Set matched)
+        throws StreamCorruptedException {
+        if (index.isIndexed(sre))
+            return matched.contains(sre);
+        return sre.isCompatibleStream(is);
     }
 
     /**
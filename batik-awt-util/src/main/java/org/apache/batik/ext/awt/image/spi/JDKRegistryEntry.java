@@ -25,6 +25,9 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
@@ -38,10 +41,14 @@ import org.apache.batik.util.ParsedURL;
 /**
  * This Image tag registy entry is setup to wrap the core JDK
  * Image stream tools.
+ * <p>
+ * Streams starting like the GIF, JPEG and PNG images the JDK decodes
+ * are read from the stream the registry already opened.  Other URLs
+ * are handed to the JDK, which opens them again.
  *
  * @version $Id$
  */
-public class JDKRegistryEntry extends AbstractRegistryEntry
+public class JDKRegistryEntry extends MagicNumberRegistryEntry
     implements URLRegistryEntry {
 
     /**
@@ -53,21 +60,28 @@ public class JDKRegistryEntry extends AbstractRegistryEntry
     public static final float PRIORITY =
         1000*MagicNumberRegistryEntry.PRIORITY;
 
+    static final byte [] sigGIF87  = {'G', 'I', 'F', '8', '7', 'a'};
+    static final byte [] sigGIF89  = {'G', 'I', 'F', '8', '9', 'a'};
+    static final byte [] sigJPEG   = {(byte)0xFF, (byte)0xD8, (byte)0xFF};
+    static final byte [] sigPNG    = {(byte)0x89, 'P', 'N', 'G',
+                                      0x0D, 0x0A, 0x1A, 0x0A};
+
+    static final MagicNumber [] MAGIC_NUMBERS = {
+        new MagicNumber(0, sigGIF87),
+        new MagicNumber(0, sigGIF89),
+        new MagicNumber(0, sigJPEG),
+        new MagicNumber(0, sigPNG)
+    };
+
     public JDKRegistryEntry() {
-        super ("JDK", PRIORITY, new String[0], new String [] {"image/gif"});
+        super ("JDK", PRIORITY, new String[0], new String [] {"image/gif"},
+               MAGIC_NUMBERS);
     }
 
     /**
-     * Check if the Stream references an image that can be handled by
-     * this format handler.  The input stream passed in should be
-     * assumed to support mark and reset.
-     *
-     * If this method throws a StreamCorruptedException then the
-     * InputStream will be closed and a new one opened (if possible).
-     *
-     * This method should only throw a StreamCorruptedException if it
-     * is unable to restore the state of the InputStream
-     * (i.e. mark/reset fails basically).
+     * Check if the URL references an image that can be handled by
+     * this format handler.  This is the case of any URL Java can
+     * open.
      */
     public boolean isCompatibleURL(ParsedURL purl) {
         try {
@@ -96,23 +110,48 @@ public class JDKRegistryEntry extends AbstractRegistryEntry
             return null;
         }
 
+        return load(url, null, ERR_URL_FORMAT_UNREADABLE,
+                    new Object[] {"JDK", url});
+    }
+
+    /**
+     * Decode the Stream into a RenderableImage.  The stream is read
+     * to its end and closed before the JDK decodes the data.
+     *
+     * @param is The input stream that contains the image.
+     * @param origURL The original URL, if any, for documentation
+     *                purposes only.  This may be null.
+     * @param needRawData If true the image returned should not have
+     *                    any default color correction the file may
+     *                    specify applied.
+     */
+    public Filter handleStream(InputStream is, ParsedURL origURL,
+                               boolean needRawData) {
+        if (origURL != null)
+            return load(null, is, ERR_URL_FORMAT_UNREADABLE,
+                        new Object[] {"JDK", origURL});
+        return load(null, is, ERR_STREAM_FORMAT_UNREADABLE,
+                    new Object[] {"JDK"});
+    }
+
+    /**
+     * Starts loading the image from <code>url</code>, or
+     * <code>is</code> if <code>url</code> is null, in a new thread.
+     */
+    protected Filter load(final URL url, final InputStream is,
+                          final String errCode, final Object [] errParam) {
         final DeferRable  dr  = new DeferRable();
-        final String      errCode;
-        final Object []   errParam;
-        if (purl != null) {
-            errCode  = ERR_URL_FORMAT_UNREADABLE;
-            errParam = new Object[] {"JDK", url};
-        } else {
-            errCode  = ERR_STREAM_FORMAT_UNREADABLE;
-            errParam = new Object[] {"JDK"};
-        }
 
         Thread t = new Thread() {
                 public void run() {
                     Filter filt = null;
                     try {
                         Toolkit tk = Toolkit.getDefaultToolkit();
-                        Image img = tk.createImage(url);
+                        Image img;
+                        if (url != null)
+                            img = tk.createImage(url);
+                        else
+                            img = tk.createImage(readFully(is));
 
                         if (img != null) {
                             RenderedImage ri = loadImage(img, dr);
@@ -137,6 +176,22 @@ public class JDKRegistryEntry extends AbstractRegistryEntry
         return dr;
     }
 
+    /**
+     * Reads <code>is</code> to its end and closes it.
+     */
+    static byte [] readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte [] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1)
+                bos.write(buf, 0, n);
+            return bos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
     // Stuff for Image Loading.
     public RenderedImage loadImage(Image img, final DeferRable  dr) {
         // In some cases the image will be a
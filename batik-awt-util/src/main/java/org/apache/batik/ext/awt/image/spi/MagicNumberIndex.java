@@ -0,0 +1,223 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.spi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the magic numbers of the <code>MagicNumberRegistryEntry</code>s
+ * of an <code>ImageTagRegistry</code>.  It lets the registry read the
+ * start of a stream once and find all the entries it matches, instead
+ * of having each entry mark, read and reset the stream in turn.
+ * <p>
+ * Magic numbers are grouped by their offset and first byte, so only
+ * the few sharing the byte found in the stream are compared.
+ * Entries overriding <code>isCompatibleStream</code> are not indexed
+ * and still check the stream themselves.
+ *
+ * @version $Id$
+ */
+class MagicNumberIndex {
+
+    /**
+     * A magic number and the entry it belongs to.
+     */
+    static class Candidate {
+        final RegistryEntry entry;
+        final MagicNumberRegistryEntry.MagicNumber magicNumber;
+
+        Candidate(RegistryEntry entry,
+                  MagicNumberRegistryEntry.MagicNumber magicNumber) {
+            this.entry = entry;
+            this.magicNumber = magicNumber;
+        }
+    }
+
+    /**
+     * The number of bytes to read from the start of a stream.
+     */
+    protected int readlimit;
+
+    /**
+     * The distinct offsets of the magic numbers.
+     */
+    protected int [] offsets;
+
+    /**
+     * Lists of <code>Candidate</code>s, keyed by the index of their
+     * offset in <code>offsets</code> and their first byte.
+     */
+    protected Map candidates = new HashMap();
+
+    /**
+     * The entries found through this index.
+     */
+    protected Set indexed = new HashSet();
+
+    /**
+     * Builds the index of the given entries.
+     * @param entries a list of <code>RegistryEntry</code>.
+     */
+    MagicNumberIndex(List entries) {
+        List offs = new ArrayList();
+        Iterator i = entries.iterator();
+        while (i.hasNext()) {
+            RegistryEntry re = (RegistryEntry)i.next();
+            if (!(re instanceof StreamRegistryEntry))
+                continue;
+            StreamRegistryEntry sre = (StreamRegistryEntry)re;
+            if (!isIndexable(sre))
+                continue;
+
+            MagicNumberRegistryEntry mnre = (MagicNumberRegistryEntry)sre;
+            indexed.add(mnre);
+            MagicNumberRegistryEntry.MagicNumber [] mns = mnre.magicNumbers;
+            for (int j=0; j<mns.length; j++) {
+                MagicNumberRegistryEntry.MagicNumber mn = mns[j];
+                readlimit = Math.max(readlimit, mn.getReadlimit());
+                Integer off = Integer.valueOf(mn.offset);
+                int o = offs.indexOf(off);
+                if (o == -1) {
+                    o = offs.size();
+                    offs.add(off);
+                }
+                Object key = getKey(o, mn.magicNumber[0]);
+                List l = (List)candidates.get(key);
+                if (l == null) {
+                    l = new ArrayList(1);
+                    candidates.put(key, l);
+                }
+                l.add(new Candidate(mnre, mn));
+            }
+        }
+        offsets = new int[offs.size()];
+        for (int j=0; j<offsets.length; j++)
+            offsets[j] = ((Integer)offs.get(j)).intValue();
+    }
+
+    /**
+     * Returns true if the magic numbers of <code>sre</code> are the
+     * only thing its <code>isCompatibleStream</code> looks at.
+     */
+    static boolean isIndexable(StreamRegistryEntry sre) {
+        if (!(sre instanceof MagicNumberRegistryEntry))
+            return false;
+        MagicNumberRegistryEntry.MagicNumber [] mns
+            = ((MagicNumberRegistryEntry)sre).magicNumbers;
+        for (int i=0; i<mns.length; i++) {
+            // Nothing to index an empty magic number by.
+            if (mns[i].magicNumber.length == 0)
+                return false;
+        }
+        try {
+            return sre.getClass().getMethod
+                ("isCompatibleStream", new Class[] { InputStream.class })
+                .getDeclaringClass() == MagicNumberRegistryEntry.class;
+        } catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
+    private static Object getKey(int offsetIndex, byte b) {
+        return Integer.valueOf((offsetIndex << 8) | (b & 0xFF));
+    }
+
+    /**
+     * Returns the number of bytes needed at the start of a stream.
+     */
+    int getReadlimit() {
+        return readlimit;
+    }
+
+    /**
+     * Returns true if this index decides whether <code>re</code> is
+     * compatible with a stream.
+     */
+    boolean isIndexed(RegistryEntry re) {
+        return indexed.contains(re);
+    }
+
+    /**
+     * Reads the start of <code>is</code> and returns the set of indexed
+     * entries with a magic number matching it.  The stream is reset
+     * to where it was.
+     * @throws StreamCorruptedException if the stream could not be reset.
+     */
+    Set match(InputStream is) throws StreamCorruptedException {
+        if (offsets.length == 0)
+            return Collections.EMPTY_SET;
+
+        byte [] header = new byte[readlimit];
+        int len = 0;
+        is.mark(readlimit);
+        try {
+            while (len < header.length) {
+                int rn = is.read(header, len, header.length-len);
+                if (rn == -1)
+                    break;
+                len += rn;
+            }
+        } catch (IOException ioe) {
+            // Match what we got.
+        } finally {
+            try {
+                // Make sure we always put back what we have read.
+                // If this throws an IOException then the current
+                // stream should be closed an reopened by the registry.
+                is.reset();
+            } catch (IOException ioe) {
+                throw new StreamCorruptedException(ioe.getMessage());
+            }
+        }
+        return match(header, len);
+    }
+
+    /**
+     * Returns the set of indexed entries with a magic number matching
+     * the first <code>len</code> bytes of <code>header</code>.
+     */
+    Set match(byte [] header, int len) {
+        Set ret = new HashSet();
+        for (int o=0; o<offsets.length; o++) {
+            int off = offsets[o];
+            if (off >= len)
+                continue;
+            List l = (List)candidates.get(getKey(o, header[off]));
+            if (l == null)
+                continue;
+            Iterator i = l.iterator();
+            while (i.hasNext()) {
+                Candidate c = (Candidate)i.next();
+                if (c.magicNumber.isMatch(header, len))
+                    ret.add(c.entry);
+            }
+        }
+        return ret;
+    }
+}
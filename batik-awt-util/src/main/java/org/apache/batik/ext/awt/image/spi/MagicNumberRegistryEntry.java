@@ -113,6 +113,22 @@ public abstract class MagicNumberRegistryEntry
             }
             return true;
         }
+
+        /**
+         * Performs the check on the first <code>len</code> bytes
+         * of a stream, already read in <code>header</code>.
+         */
+        boolean isMatch(byte [] header, int len) {
+            if (offset+magicNumber.length > len) {
+                return false;
+            }
+            for (int i=0; i<magicNumber.length; i++) {
+                if (magicNumber[i] != header[offset+i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     /** The list of magic numbers associated with this entry */
@@ -0,0 +1,84 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that identical gradients share their color tables.
+ */
+public class MultipleGradientPaintContextTestCases {
+
+    private static final float[] FRACTIONS = { 0, .3f, .3f, 1 };
+
+    private static final Color[] COLORS = {
+        Color.red, new Color(0, 255, 0, 128), Color.blue, Color.black
+    };
+
+    @Test
+    public void testSharedTables() {
+        MultipleGradientPaintContext c1 = context
+            (paint(FRACTIONS, COLORS, MultipleGradientPaint.LINEAR_RGB));
+        MultipleGradientPaintContext c2 = context
+            (paint((float[])FRACTIONS.clone(), (Color[])COLORS.clone(),
+                   MultipleGradientPaint.LINEAR_RGB));
+        assertSame(c1.gradient, c2.gradient);
+        assertPixelsEqual(c1, c2);
+
+        MultipleGradientPaintContext c3 = context
+            (paint(FRACTIONS, COLORS, MultipleGradientPaint.SRGB));
+        assertNotSame(c1.gradient, c3.gradient);
+    }
+
+    private void assertPixelsEqual(MultipleGradientPaintContext c1,
+                                   MultipleGradientPaintContext c2) {
+        Raster r1 = c1.getRaster(0, 0, 100, 20);
+        int[] p1 = r1.getPixels(0, 0, 100, 20, (int[])null);
+        c1.dispose();
+        Raster r2 = c2.getRaster(0, 0, 100, 20);
+        int[] p2 = r2.getPixels(0, 0, 100, 20, (int[])null);
+        c2.dispose();
+        assertArrayEquals(p1, p2);
+    }
+
+    private LinearGradientPaint paint(float[] fractions, Color[] colors,
+                                      MultipleGradientPaint.ColorSpaceEnum cs) {
+        return new LinearGradientPaint
+            (new Point2D.Float(0, 0), new Point2D.Float(100, 0),
+             fractions, colors, MultipleGradientPaint.REFLECT, cs);
+    }
+
+    private MultipleGradientPaintContext context(LinearGradientPaint p) {
+        return (MultipleGradientPaintContext)p.createContext
+            (ColorModel.getRGBdefault(), new Rectangle(0, 0, 100, 20),
+             new Rectangle(0, 0, 100, 20), new AffineTransform(),
+             new RenderingHints(null));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.color;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import org.apache.xmlgraphics.java2d.color.ICCColorSpaceWithIntent;
+import org.apache.xmlgraphics.java2d.color.RenderingIntent;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the colors given by <code>ICCColorTransform</code> against
+ * the exact conversion.  Linear RGB has the steepest curve of the
+ * usual profiles near black.
+ */
+public class ICCColorTransformTestCases {
+
+    private ICCColorSpaceWithIntent createColorSpace() {
+        ICC_Profile p = ICC_Profile.getInstance(ColorSpace.CS_LINEAR_RGB);
+        return new ICCColorSpaceWithIntent(p, RenderingIntent.AUTO,
+                                           null, "linear");
+    }
+
+    @Test
+    public void testShared() {
+        ICCColorSpaceWithIntent cs = createColorSpace();
+        assertSame(ICCColorTransform.getInstance(cs),
+                   ICCColorTransform.getInstance(cs));
+    }
+
+    @Test
+    public void testIntendedToRGB() {
+        ICCColorSpaceWithIntent cs = createColorSpace();
+        ICCColorTransform t = ICCColorTransform.getInstance(cs);
+        float [] c = { .1f, .5f, .9f };
+        float [] rgb = t.intendedToRGB(c);
+        assertArrayEquals(cs.intendedToRGB(c), rgb, 0f);
+
+        // The remembered color can not be changed through the result.
+        rgb[0] = 2;
+        assertArrayEquals(cs.intendedToRGB(c), t.intendedToRGB(c), 0f);
+    }
+
+    @Test
+    public void testLUT() {
+        ICCColorSpaceWithIntent cs = createColorSpace();
+        ICCColorTransform t = ICCColorTransform.getInstance(cs);
+        assertTrue(t.isLUTSupported());
+
+        int n = 0;
+        int [] src = new int[37*37*37*4];
+        for (int r=0; r<256; r+=7)
+            for (int g=0; g<256; g+=7)
+                for (int b=0; b<256; b+=7) {
+                    src[n*4  ] = r;
+                    src[n*4+1] = g;
+                    src[n*4+2] = b;
+                    src[n*4+3] = n & 0xFF;
+                    n++;
+                }
+        int [] dst = new int[n*4];
+        t.toRGB(src, 4, dst, n);
+        int [] exact = convert(cs, src, n);
+
+        for (int i=0; i<n; i++) {
+            for (int b=0; b<3; b++) {
+                int d = Math.abs(dst[i*4+b] - exact[i*3+b]);
+                assertTrue("pixel " + i + " band " + b + " off by " + d,
+                           d <= 2);
+            }
+            assertTrue(dst[i*4+3] == (i & 0xFF));
+        }
+    }
+
+    private int [] convert(ColorSpace cs, int [] src, int n) {
+        WritableRaster srcWR = Raster.createBandedRaster
+            (DataBuffer.TYPE_BYTE, n, 1, 3, new Point(0, 0));
+        for (int i=0; i<n; i++)
+            srcWR.setPixel(i, 0, new int[] {src[i*4], src[i*4+1], src[i*4+2]});
+        WritableRaster dstWR = Raster.createBandedRaster
+            (DataBuffer.TYPE_BYTE, n, 1, 3, new Point(0, 0));
+        ComponentColorModel srcCM = new ComponentColorModel
+            (cs, new int[]{8, 8, 8}, false, false,
+             Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        ComponentColorModel dstCM = new ComponentColorModel
+            (ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[]{8, 8, 8},
+             false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        new ColorConvertOp(null).filter
+            (new BufferedImage(srcCM, srcWR, false, null),
+             new BufferedImage(dstCM, dstWR, false, null));
+        return dstWR.getPixels(0, 0, n, 1, (int[])null);
+    }
+}
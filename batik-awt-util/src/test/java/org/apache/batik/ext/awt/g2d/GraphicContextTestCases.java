@@ -0,0 +1,82 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.g2d;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that a <code>GraphicContext</code> and its clones do not see
+ * each other's changes.
+ */
+public class GraphicContextTestCases {
+
+    @Test
+    public void testTransform() {
+        GraphicContext gc = new GraphicContext();
+        gc.translate(10, 20);
+        GraphicContext copy = (GraphicContext)gc.clone();
+
+        copy.scale(2, 2);
+        assertEquals(AffineTransform.getTranslateInstance(10, 20),
+                     gc.getTransform());
+        assertEquals(1, gc.getTransformStack().length);
+        assertEquals(2, copy.getTransformStack().length);
+
+        gc.rotate(1);
+        assertEquals(2, copy.getTransformStack().length);
+        AffineTransform at = AffineTransform.getTranslateInstance(10, 20);
+        at.scale(2, 2);
+        assertEquals(at, copy.getTransform());
+
+        copy.setTransform(new AffineTransform());
+        assertEquals(0, copy.getTransformStack().length);
+        assertEquals(2, gc.getTransformStack().length);
+    }
+
+    @Test
+    public void testHints() {
+        GraphicContext gc = new GraphicContext();
+        GraphicContext copy = (GraphicContext)gc.clone();
+
+        copy.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                              RenderingHints.VALUE_ANTIALIAS_ON);
+        assertNull(gc.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+
+        gc.getRenderingHints().put(RenderingHints.KEY_DITHERING,
+                                   RenderingHints.VALUE_DITHER_ENABLE);
+        assertNull(copy.getRenderingHint(RenderingHints.KEY_DITHERING));
+    }
+
+    @Test
+    public void testClip() {
+        GraphicContext gc = new GraphicContext();
+        gc.setClip(new Rectangle(0, 0, 100, 100));
+        GraphicContext copy = (GraphicContext)gc.clone();
+
+        copy.clipRect(50, 50, 100, 100);
+        assertEquals(new Rectangle(0, 0, 100, 100), gc.getClipBounds());
+        assertEquals(new Rectangle(50, 50, 50, 50), copy.getClipBounds());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Point2D;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the points and angles found along a path with several
+ * subpaths.
+ */
+public class PathLengthTestCases {
+
+    private PathLength createPathLength() {
+        GeneralPath p = new GeneralPath();
+        p.moveTo(0, 0);
+        p.lineTo(10, 0);
+        p.lineTo(10, 10);
+        p.moveTo(100, 100);
+        p.lineTo(100, 120);
+        return new PathLength(p);
+    }
+
+    @Test
+    public void testPointAtLength() {
+        PathLength pl = createPathLength();
+        assertEquals(40f, pl.lengthOfPath(), 0f);
+
+        assertPoint(0, 0, pl.pointAtLength(0));
+        assertPoint(5, 0, pl.pointAtLength(5));
+        assertPoint(10, 0, pl.pointAtLength(10));
+        assertPoint(10, 5, pl.pointAtLength(15));
+        // The move between subpaths has no length.
+        assertPoint(10, 10, pl.pointAtLength(20));
+        assertPoint(100, 105, pl.pointAtLength(25));
+        assertPoint(100, 120, pl.pointAtLength(40));
+
+        assertNull(pl.pointAtLength(-1));
+        assertNull(pl.pointAtLength(41));
+    }
+
+    @Test
+    public void testAngleAtLength() {
+        PathLength pl = createPathLength();
+        assertEquals(0, pl.angleAtLength(0), 1e-6);
+        assertEquals(Math.PI/2, pl.angleAtLength(15), 1e-6);
+        assertEquals(Math.PI/2, pl.angleAtLength(30), 1e-6);
+    }
+
+    @Test
+    public void testSegmentAtLength() {
+        PathLength pl = createPathLength();
+        assertEquals(0, pl.segmentAtLength(0));
+        assertEquals(0, pl.segmentAtLength(5));
+        assertEquals(1, pl.segmentAtLength(15));
+        assertEquals(1, pl.segmentAtLength(20));
+        assertEquals(3, pl.segmentAtLength(25));
+        assertEquals(-1, pl.segmentAtLength(50));
+    }
+
+    private void assertPoint(double x, double y, Point2D p) {
+        assertEquals(x, p.getX(), 1e-4);
+        assertEquals(y, p.getY(), 1e-4);
+    }
+}
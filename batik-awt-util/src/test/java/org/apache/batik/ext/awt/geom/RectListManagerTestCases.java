@@ -0,0 +1,98 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Rectangle;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that merging rectangles keeps covering all of them.
+ */
+public class RectListManagerTestCases {
+
+    @Test
+    public void testMergeCovers() {
+        Rectangle [] rects = randomRects(300, 1);
+        RectListManager rlm = new RectListManager(rects);
+        rlm.mergeRects(1000, 10);
+        assertCovers(rlm, rects);
+    }
+
+    @Test
+    public void testMergeDistant() {
+        Rectangle [] rects = {
+            new Rectangle(0, 0, 10, 10),
+            new Rectangle(0, 1000, 10, 10),
+            new Rectangle(5, 5, 10, 10)
+        };
+        RectListManager rlm = new RectListManager(rects);
+        rlm.mergeRects(1000, 10);
+        assertEquals(2, rlm.size());
+        assertCovers(rlm, rects);
+    }
+
+    @Test
+    public void testMaxRects() {
+        Rectangle [] rects = randomRects(300, 2);
+        RectListManager rlm = new RectListManager(rects);
+        rlm.mergeRects(10, 1);
+        assertTrue(rlm.size() > 8);
+
+        rlm = new RectListManager(rects);
+        rlm.mergeRects(10, 1, 8);
+        assertTrue(rlm.size() <= 8);
+        assertCovers(rlm, rects);
+    }
+
+    private Rectangle [] randomRects(int n, long seed) {
+        Random rnd = new Random(seed);
+        Rectangle [] rects = new Rectangle[n];
+        for (int i=0; i<n; i++) {
+            rects[i] = new Rectangle(rnd.nextInt(2000), rnd.nextInt(2000),
+                                     1+rnd.nextInt(30), 1+rnd.nextInt(30));
+        }
+        return rects;
+    }
+
+    private void assertCovers(RectListManager rlm, Rectangle [] rects) {
+        for (int i=0; i<rects.length; i++) {
+            Rectangle r = rects[i];
+            for (int y=r.y; y<r.y+r.height; y++) {
+                for (int x=r.x; x<r.x+r.width; x++) {
+                    assertTrue("(" + x + ", " + y + ") not covered",
+                               covers(rlm, x, y));
+                }
+            }
+        }
+    }
+
+    private boolean covers(RectListManager rlm, int x, int y) {
+        Iterator i = rlm.iterator();
+        while (i.hasNext()) {
+            if (((Rectangle)i.next()).contains(x, y))
+                return true;
+        }
+        return false;
+    }
+}
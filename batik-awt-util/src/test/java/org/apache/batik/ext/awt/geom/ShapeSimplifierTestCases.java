@@ -0,0 +1,188 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.geom;
+
+import java.awt.Shape;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the vertices kept by <code>ShapeSimplifier</code>.
+ */
+public class ShapeSimplifierTestCases {
+
+    /**
+     * Returns the segments of a shape as strings.
+     */
+    private List segments(Shape s) {
+        List l = new ArrayList();
+        float [] c = new float[6];
+        for (PathIterator pi = s.getPathIterator(null);
+             !pi.isDone(); pi.next()) {
+            switch (pi.currentSegment(c)) {
+            case PathIterator.SEG_MOVETO:
+                l.add("M" + c[0] + "," + c[1]);
+                break;
+            case PathIterator.SEG_LINETO:
+                l.add("L" + c[0] + "," + c[1]);
+                break;
+            case PathIterator.SEG_CLOSE:
+                l.add("Z");
+                break;
+            default:
+                l.add("?");
+            }
+        }
+        return l;
+    }
+
+    @Test
+    public void testNearlyStraightLine() {
+        GeneralPath p = new GeneralPath();
+        p.moveTo(0, 0);
+        for (int i=1; i < 100; i++)
+            p.lineTo(i, ((i & 1) == 0) ? 0.1f : -0.1f);
+        p.lineTo(100, 0);
+
+        assertEquals("[M0.0,0.0, L100.0,0.0]",
+                     segments(ShapeSimplifier.simplify(p, 0.5)).toString());
+    }
+
+    @Test
+    public void testCornersAndSubpaths() {
+        GeneralPath p = new GeneralPath();
+        p.moveTo(0, 0);
+        for (int i=1; i <= 10; i++)
+            p.lineTo(i, 0);
+        for (int i=1; i <= 10; i++)
+            p.lineTo(10, i);
+        p.closePath();
+        // After a close, a line starts from the start of the subpath.
+        for (int i=1; i <= 10; i++)
+            p.lineTo(0, i);
+        p.moveTo(50, 50);
+        for (int i=1; i <= 10; i++)
+            p.lineTo(50 - i, 50);
+
+        assertEquals("[M0.0,0.0, L10.0,0.0, L10.0,10.0, Z,"
+                     + " M0.0,0.0, L0.0,10.0,"
+                     + " M50.0,50.0, L40.0,50.0]",
+                     segments(ShapeSimplifier.simplify(p, 0.5)).toString());
+    }
+
+    @Test
+    public void testSpike() {
+        // The spike goes back past the end of the segment that would
+        // replace it, it must be kept.
+        GeneralPath p = new GeneralPath();
+        p.moveTo(0, 0);
+        p.lineTo(20, 0);
+        p.lineTo(5, 0);
+        p.lineTo(10, 0);
+        for (int i=0; i < 10; i++)
+            p.lineTo(10, 0);
+
+        List l = segments(ShapeSimplifier.simplify(p, 0.5));
+        assertTrue(l.toString(), l.contains("L20.0,0.0"));
+    }
+
+    @Test
+    public void testFewVerticesRemoved() {
+        Shape r = new Rectangle2D.Double(0, 0, 10, 10);
+        assertSame(r, ShapeSimplifier.simplify(r, 0.5));
+    }
+
+    /**
+     * Returns the segments of a flattened shape as lines.
+     */
+    private List lines(Shape s, double flatness) {
+        List l = new ArrayList();
+        double [] c = new double[6];
+        double x = 0, y = 0, startX = 0, startY = 0;
+        for (PathIterator pi = s.getPathIterator(null, flatness);
+             !pi.isDone(); pi.next()) {
+            switch (pi.currentSegment(c)) {
+            case PathIterator.SEG_MOVETO:
+                x = startX = c[0];
+                y = startY = c[1];
+                break;
+            case PathIterator.SEG_LINETO:
+                l.add(new Line2D.Double(x, y, c[0], c[1]));
+                x = c[0];
+                y = c[1];
+                break;
+            case PathIterator.SEG_CLOSE:
+                l.add(new Line2D.Double(x, y, startX, startY));
+                x = startX;
+                y = startY;
+                break;
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Returns the largest distance from the points along the lines of
+     * <code>a</code> to the lines of <code>b</code>.
+     */
+    private double distance(List a, List b) {
+        double max = 0;
+        for (int i=0; i < a.size(); i++) {
+            Line2D l = (Line2D)a.get(i);
+            for (int k=0; k <= 16; k++) {
+                double t = k / 16.0;
+                double x = l.getX1() + t * (l.getX2() - l.getX1());
+                double y = l.getY1() + t * (l.getY2() - l.getY1());
+                double d = Double.MAX_VALUE;
+                for (int j=0; j < b.size(); j++)
+                    d = Math.min(d, ((Line2D)b.get(j)).ptSegDist(x, y));
+                max = Math.max(max, d);
+            }
+        }
+        return max;
+    }
+
+    @Test
+    public void testWithinTolerance() {
+        // Flattening and thinning each move the outline, together they
+        // must stay within the tolerance.
+        GeneralPath p = new GeneralPath();
+        p.moveTo(0, 0);
+        p.curveTo(34, 1.2f, 20, -2.6f, 100, 0);
+        p.curveTo(120, 3.66f, 180, -3.66f, 200, 0);
+        Shape s = ShapeSimplifier.simplify(p, 1);
+        List simplified = lines(s, 0);
+        List original = lines(p, 0.001);
+        assertTrue(simplified.size() * 4 <= original.size());
+
+        double d = distance(simplified, original);
+        assertTrue("simplified to original " + d, d <= 1);
+        d = distance(original, simplified);
+        assertTrue("original to simplified " + d, d <= 1);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+
+import org.apache.batik.ext.awt.image.renderable.DeferRable;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.FloodRable8Bit;
+import org.apache.batik.util.ParsedURL;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the eviction, statistics and request protocol of
+ * <code>BoundedURLImageCache</code>.
+ */
+public class BoundedURLImageCacheTestCases {
+
+    /**
+     * Returns a filter of 10x10 pixels, 400 bytes.
+     */
+    private Filter createFilter() {
+        return new FloodRable8Bit
+            (new Rectangle2D.Double(0, 0, 10, 10), Color.red);
+    }
+
+    private ParsedURL url(String name) {
+        return new ParsedURL("http://example.org/" + name + ".png");
+    }
+
+    private void load(BoundedURLImageCache cache, String name) {
+        assertNull(cache.request(url(name)));
+        cache.put(url(name), createFilter());
+    }
+
+    @Test
+    public void testEviction() {
+        BoundedURLImageCache cache = new BoundedURLImageCache(1200);
+        load(cache, "a");
+        load(cache, "b");
+        load(cache, "c");
+        assertEquals(1200, cache.getSize());
+
+        // Using a makes b the least recently used.
+        Filter a = cache.request(url("a"));
+        assertSame(a, cache.request(url("a")));
+        load(cache, "d");
+
+        assertTrue(cache.isDone(url("a")));
+        assertFalse(cache.isPresent(url("b")));
+        assertTrue(cache.isDone(url("c")));
+        assertTrue(cache.isDone(url("d")));
+        assertEquals(1200, cache.getSize());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.flush();
+        assertEquals(0, cache.getSize());
+        assertFalse(cache.isPresent(url("a")));
+    }
+
+    @Test
+    public void testDeferredSize() {
+        BoundedURLImageCache cache = new BoundedURLImageCache(1000);
+        DeferRable dr = new DeferRable();
+        assertNull(cache.request(url("a")));
+        cache.put(url("a"), dr);
+        assertEquals(0, cache.getSize());
+
+        // Counted once known.
+        dr.setSource(createFilter());
+        load(cache, "b");
+        assertEquals(800, cache.getSize());
+    }
+
+    @Test
+    public void testWaitForPut() throws InterruptedException {
+        final BoundedURLImageCache cache = new BoundedURLImageCache(1000);
+        final Filter[] result = new Filter[1];
+        assertNull(cache.request(url("a")));
+
+        Thread t = new Thread() {
+                public void run() {
+                    result[0] = cache.request(url("a"));
+                }
+            };
+        t.start();
+        Filter filt = createFilter();
+        cache.put(url("a"), filt);
+        t.join();
+        assertSame(filt, result[0]);
+    }
+
+    @Test
+    public void testNullPut() throws InterruptedException {
+        final BoundedURLImageCache cache = new BoundedURLImageCache(1000);
+        final Filter[] result = { createFilter() };
+        assertNull(cache.request(url("a")));
+
+        // Someone waiting gets on the hook when loading failed.
+        Thread t = new Thread() {
+                public void run() {
+                    result[0] = cache.request(url("a"));
+                }
+            };
+        t.start();
+        cache.put(url("a"), null);
+        t.join();
+        assertNull(result[0]);
+        assertTrue(cache.isPresent(url("a")));
+        assertFalse(cache.isDone(url("a")));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image;
+
+import java.awt.CompositeContext;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the integer packed composite contexts (which process
+ * large areas in concurrent bands) agree with the generic ones.
+ */
+public class SVGCompositeTestCases {
+
+    // Large enough to be split in bands.
+    private static final int W = 300;
+    private static final int H = 280;
+
+    @Test
+    public void testOver() {
+        check(CompositeRule.OVER);
+    }
+
+    @Test
+    public void testIn() {
+        check(CompositeRule.IN);
+    }
+
+    @Test
+    public void testOut() {
+        check(CompositeRule.OUT);
+    }
+
+    @Test
+    public void testAtop() {
+        check(CompositeRule.ATOP);
+    }
+
+    @Test
+    public void testXor() {
+        check(CompositeRule.XOR);
+    }
+
+    @Test
+    public void testArithmetic() {
+        check(CompositeRule.ARITHMETIC(.5f, .25f, .75f, -.1f));
+    }
+
+    @Test
+    public void testBlendModes() {
+        check(CompositeRule.MULTIPLY);
+        check(CompositeRule.SCREEN);
+        check(CompositeRule.DARKEN);
+        check(CompositeRule.LIGHTEN);
+    }
+
+    @Test
+    public void testInPlace() {
+        SVGComposite comp = new SVGComposite(CompositeRule.OVER);
+        BufferedImage src = image(BufferedImage.TYPE_INT_ARGB_PRE, 1);
+        BufferedImage dst = image(BufferedImage.TYPE_INT_ARGB_PRE, 2);
+        BufferedImage out = image(BufferedImage.TYPE_INT_ARGB_PRE, 3);
+        compose(comp, src, dst, out.getRaster());
+        compose(comp, src, dst, dst.getRaster());
+        for (int y=0; y<H; y++)
+            for (int x=0; x<W; x++)
+                assertEquals(out.getRGB(x, y), dst.getRGB(x, y));
+    }
+
+    private void check(CompositeRule rule) {
+        SVGComposite comp = new SVGComposite(rule);
+
+        BufferedImage src = image(BufferedImage.TYPE_INT_ARGB_PRE, 4);
+        BufferedImage dst = image(BufferedImage.TYPE_INT_ARGB_PRE, 5);
+        BufferedImage out = image(BufferedImage.TYPE_INT_ARGB_PRE, 6);
+        compose(comp, src, dst, out.getRaster());
+
+        BufferedImage gSrc = image(BufferedImage.TYPE_4BYTE_ABGR_PRE, 4);
+        BufferedImage gDst = image(BufferedImage.TYPE_4BYTE_ABGR_PRE, 5);
+        BufferedImage gOut = image(BufferedImage.TYPE_4BYTE_ABGR_PRE, 6);
+        compose(comp, gSrc, gDst, gOut.getRaster());
+
+        int[] a = new int[4], b = new int[4];
+        for (int y=0; y<H; y++)
+            for (int x=0; x<W; x++) {
+                out .getRaster().getPixel(x, y, a);
+                gOut.getRaster().getPixel(x, y, b);
+                for (int i=0; i<4; i++)
+                    assertTrue(rule + " at " + x + "," + y + ": " +
+                               a[i] + " != " + b[i],
+                               Math.abs(a[i]-b[i]) <= 1);
+            }
+    }
+
+    private void compose(SVGComposite comp, BufferedImage src,
+                         BufferedImage dst, WritableRaster out) {
+        CompositeContext ctx = comp.createContext
+            (src.getColorModel(), dst.getColorModel(), null);
+        ctx.compose(src.getRaster(), dst.getRaster(), out);
+        ctx.dispose();
+    }
+
+    /**
+     * Random premultiplied pixels, with some opaque and some fully
+     * transparent ones.
+     */
+    private BufferedImage image(int type, long seed) {
+        BufferedImage bi = new BufferedImage(W, H, type);
+        WritableRaster wr = bi.getRaster();
+        Random r = new Random(seed);
+        int[] pix = new int[4];
+        for (int y=0; y<H; y++)
+            for (int x=0; x<W; x++) {
+                int a;
+                switch (r.nextInt(4)) {
+                case 0:  a = 0;   break;
+                case 1:  a = 255; break;
+                default: a = r.nextInt(256);
+                }
+                for (int i=0; i<3; i++)
+                    pix[i] = r.nextInt(a+1);
+                pix[3] = a;
+                wr.setPixel(x, y, pix);
+            }
+        return bi;
+    }
+}
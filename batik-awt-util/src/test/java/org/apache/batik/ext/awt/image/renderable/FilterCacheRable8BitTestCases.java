@@ -0,0 +1,102 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.renderable;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderContext;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that <code>FilterCacheRable8Bit</code> renders its source
+ * once per distinct request, and only within a scope.
+ */
+public class FilterCacheRable8BitTestCases {
+
+    /**
+     * A flood counting its renderings.
+     */
+    static class CountingFlood extends FloodRable8Bit {
+        int count;
+        RenderedImage last;
+
+        CountingFlood() {
+            super(new Rectangle2D.Double(0, 0, 100, 100), Color.red);
+        }
+
+        public RenderedImage createRendering(RenderContext rc) {
+            count++;
+            last = super.createRendering(rc);
+            return last;
+        }
+    }
+
+    @Test
+    public void testSharedRendering() {
+        CountingFlood src = new CountingFlood();
+        FilterCacheRable8Bit cache = new FilterCacheRable8Bit(src);
+
+        RenderedImage ri1 = cache.createRendering(context(1, 0, 0, 100, 100));
+        RenderedImage ri2 = cache.createRendering(context(1, 0, 0, 100, 100));
+        assertEquals(1, src.count);
+        assertSame(ri1, ri2);
+        // The source's own rendering, so that it is drawn the same way.
+        assertSame(src.last, ri1);
+
+        // A different area is rendered afresh, as cropping the cached
+        // rendering could differ from it, and is then shared too.
+        RenderedImage ri3 = cache.createRendering(context(1, 10, 20, 30, 40));
+        assertEquals(2, src.count);
+        assertEquals(new Rectangle(10, 20, 30, 40),
+                     new Rectangle(ri3.getMinX(), ri3.getMinY(),
+                                   ri3.getWidth(), ri3.getHeight()));
+        assertSame(ri3, cache.createRendering(context(1, 10, 20, 30, 40)));
+        assertSame(ri1, cache.createRendering(context(1, 0, 0, 100, 100)));
+        assertEquals(2, src.count);
+
+        // So is a different transform.
+        cache.createRendering(context(2, 0, 0, 100, 100));
+        assertEquals(3, src.count);
+    }
+
+    @Test
+    public void testScope() {
+        CountingFlood src = new CountingFlood();
+        FilterCacheRable8Bit cache = new FilterCacheRable8Bit(src);
+        Filter out = new FilterCacheRable8Bit.Scope
+            (cache, new FilterCacheRable8Bit[] { cache });
+
+        out.createRendering(context(1, 0, 0, 100, 100));
+        out.createRendering(context(1, 0, 0, 100, 100));
+        assertEquals(2, src.count);
+    }
+
+    private RenderContext context(double scale,
+                                  int x, int y, int w, int h) {
+        return new RenderContext
+            (AffineTransform.getScaleInstance(scale, scale),
+             new Rectangle(x, y, w, h));
+    }
+}
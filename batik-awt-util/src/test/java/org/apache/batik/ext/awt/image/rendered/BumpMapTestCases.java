@@ -0,0 +1,118 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the row by row normals of <code>BumpMap.NormalTile</code>
+ * against <code>BumpMap.getNormalArray</code>, and the reuse of
+ * cached normals.
+ */
+public class BumpMapTestCases {
+
+    private static final double EPS = 1e-5;
+
+    @Test
+    public void testInterior() {
+        checkNormals(texture(60, 40, 1), 2.5, 10, 5, 30, 20);
+    }
+
+    @Test
+    public void testWholeTexture() {
+        checkNormals(texture(60, 40, 2), 1, 0, 0, 60, 40);
+    }
+
+    @Test
+    public void testBeyondTexture() {
+        checkNormals(texture(20, 30, 3), -3, -5, -4, 32, 40);
+    }
+
+    @Test
+    public void testSingleRow() {
+        checkNormals(texture(25, 1, 4), 5, 0, 0, 25, 1);
+    }
+
+    @Test
+    public void testSingleColumn() {
+        checkNormals(texture(1, 25, 5), 5, -1, 0, 3, 25);
+    }
+
+    @Test
+    public void testCachedNormals() {
+        BumpMap.NormalCache cache = new BumpMap.NormalCache(1 << 20);
+        BufferedImage tex = texture(50, 50, 6);
+
+        BumpMap bm = new BumpMap(tex, 2, 1, 1);
+        bm.setNormalCache(cache);
+        BumpMap.NormalTile t1 = bm.getNormalTile(0, 0, 50, 50);
+        readAll(t1, 50, 50);
+        bm.tileDone(t1);
+
+        // Same surface, new bump map: the normals are reused.
+        bm = new BumpMap(texture(50, 50, 6), 2, 1, 1);
+        bm.setNormalCache(cache);
+        assertSame(t1, bm.getNormalTile(0, 0, 50, 50));
+
+        // Different surface scale or alpha: they are not.
+        bm = new BumpMap(tex, 3, 1, 1);
+        bm.setNormalCache(cache);
+        assertNotSame(t1, bm.getNormalTile(0, 0, 50, 50));
+
+        bm = new BumpMap(texture(50, 50, 7), 2, 1, 1);
+        bm.setNormalCache(cache);
+        assertNotSame(t1, bm.getNormalTile(0, 0, 50, 50));
+    }
+
+    private void checkNormals(BufferedImage tex, double surfaceScale,
+                              int x, int y, int w, int h) {
+        BumpMap bm = new BumpMap(tex, surfaceScale, 1, 1);
+        double[][][] ref = bm.getNormalArray(x, y, w, h);
+        BumpMap.NormalTile tile = bm.getNormalTile(x, y, w, h);
+        double[][] row = new double[w][4];
+        for (int j=0; j<h; j++) {
+            tile.getRow(j, row);
+            for (int i=0; i<w; i++)
+                for (int k=0; k<4; k++)
+                    assertEquals("normal " + i + "," + j + "[" + k + "]",
+                                 ref[j][i][k], row[i][k], EPS);
+        }
+    }
+
+    private void readAll(BumpMap.NormalTile tile, int w, int h) {
+        double[][] row = new double[w][4];
+        for (int j=0; j<h; j++)
+            tile.getRow(j, row);
+    }
+
+    private BufferedImage texture(int w, int h, long seed) {
+        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Random r = new Random(seed);
+        for (int j=0; j<h; j++)
+            for (int i=0; i<w; i++)
+                bi.setRGB(i, j, r.nextInt());
+        return bi;
+    }
+}
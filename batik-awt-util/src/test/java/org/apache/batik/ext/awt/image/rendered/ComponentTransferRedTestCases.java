@@ -0,0 +1,133 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Random;
+
+import org.apache.batik.ext.awt.image.GammaTransfer;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.IdentityTransfer;
+import org.apache.batik.ext.awt.image.LinearTransfer;
+import org.apache.batik.ext.awt.image.TableTransfer;
+import org.apache.batik.ext.awt.image.TransferFunction;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that folding chains of lookups and color conversions into a
+ * single <code>ComponentTransferRed</code> gives the same pixels as
+ * running each step.
+ */
+public class ComponentTransferRedTestCases {
+
+    private static final TransferFunction[] FUNCS_A = {
+        new IdentityTransfer(),
+        new GammaTransfer(1.2f, 0.7f, 0.05f),
+        new LinearTransfer(0.8f, 0.1f),
+        new TableTransfer(new int[] { 0, 200, 40, 255 })
+    };
+
+    private static final TransferFunction[] FUNCS_B = {
+        new LinearTransfer(0.9f, 0),
+        new TableTransfer(new int[] { 255, 0 }),
+        new IdentityTransfer(),
+        new GammaTransfer(1, 2.2f, 0)
+    };
+
+    @Test
+    public void testConsecutiveLookups() {
+        CachableRed src = source();
+        CachableRed ref = new ComponentTransferRed
+            (new ComponentTransferRed(src, FUNCS_A, null), FUNCS_B, null);
+        CachableRed fused = ComponentTransferRed.create
+            (ComponentTransferRed.create(src, FUNCS_A, null), FUNCS_B, null);
+
+        assertSame(src, ((ComponentTransferRed)fused).getSource());
+        assertSamePixels(ref, fused);
+    }
+
+    @Test
+    public void testFoldedConversions() {
+        CachableRed src = source();
+
+        // sRGB -> linear, A, B, linear -> sRGB as a filter chain
+        // with a linear color-interpolation-filters would build it.
+        CachableRed ref = new ComponentTransferRed
+            (new Any2LsRGBRed(src), FUNCS_A, null);
+        ref = new ComponentTransferRed(ref, FUNCS_B, null);
+        ref = new Any2sRGBRed(ref);
+
+        CachableRed fused = ComponentTransferRed.create
+            (GraphicsUtil.convertToLsRGB(src), FUNCS_A, null);
+        fused = ComponentTransferRed.create(fused, FUNCS_B, null);
+        fused = GraphicsUtil.convertTosRGB(fused);
+
+        assertSame(src, ((ComponentTransferRed)fused).getSource());
+        assertSamePixels(ref, fused);
+    }
+
+    @Test
+    public void testDiagonalColorMatrix() {
+        float[][] matrix = {
+            { 1.3f, 0,    0,   0,   -0.1f },
+            { 0,    0.5f, 0,   0,    0.2f },
+            { 0,    0,    2,   0,    0    },
+            { 0,    0,    0,   0.7f, 0.1f }};
+        CachableRed src = GraphicsUtil.convertToLsRGB(source());
+
+        CachableRed ref = new ColorMatrixRed(src, matrix);
+        CachableRed fused = ComponentTransferRed.create
+            (src, ColorMatrixRed.getLookupTables(matrix), null);
+        assertSamePixels(ref, fused);
+    }
+
+    @Test
+    public void testNonDiagonalColorMatrix() {
+        float[][] matrix = {
+            { 1, 0, 0, 0, 0 },
+            { 0, 1, 0, 0, 0 },
+            { 0, 0.1f, 1, 0, 0 },
+            { 0, 0, 0, 1, 0 }};
+        assertNull(ColorMatrixRed.getLookupTables(matrix));
+    }
+
+    private void assertSamePixels(CachableRed ref, CachableRed red) {
+        Raster r1 = ref.getData();
+        Raster r2 = red.getData();
+        int w = r1.getWidth(), h = r1.getHeight();
+        assertArrayEquals
+            (r1.getPixels(r1.getMinX(), r1.getMinY(), w, h, (int[])null),
+             r2.getPixels(r2.getMinX(), r2.getMinY(), w, h, (int[])null));
+    }
+
+    private CachableRed source() {
+        BufferedImage bi = new BufferedImage
+            (64, 48, BufferedImage.TYPE_INT_ARGB_PRE);
+        Random r = new Random(1);
+        for (int y=0; y<bi.getHeight(); y++)
+            for (int x=0; x<bi.getWidth(); x++)
+                bi.setRGB(x, y, r.nextInt());
+        return GraphicsUtil.wrap(bi);
+    }
+}
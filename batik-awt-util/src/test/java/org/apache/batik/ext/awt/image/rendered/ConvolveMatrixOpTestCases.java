@@ -0,0 +1,271 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the direct, separable and FFT implementations of
+ * <code>ConvolveMatrixOp</code> against a plain evaluation of the
+ * convolution sum, and against <code>java.awt.image.ConvolveOp</code>.
+ */
+public class ConvolveMatrixOpTestCases {
+
+    @Test
+    public void testDirect() {
+        Kernel k = kernel(3, 3, 1, 1, new float[] {
+            0, -1, 0,  -1, 5, -1,  0, -0.5f, 0 });
+        checkMethod(k, ConvolveMatrixOp.DIRECT, 40, 30);
+    }
+
+    @Test
+    public void testAsymmetricOrigin() {
+        Kernel k = kernel(4, 2, 0, 1, new float[] {
+            .1f, .2f, .05f, 0,  0, .3f, .25f, .1f });
+        checkMethod(k, ConvolveMatrixOp.DIRECT, 33, 17);
+        checkMethod(k, ConvolveMatrixOp.FFT, 33, 17);
+    }
+
+    @Test
+    public void testSeparable() {
+        float[] col = { 1, 4, 6, 4, 1 };
+        float[] row = { 1, 2, 3, 2, 1, .5f, .25f };
+        float[] data = new float[col.length*row.length];
+        for (int j=0; j<col.length; j++)
+            for (int i=0; i<row.length; i++)
+                data[j*row.length+i] = col[j]*row[i]/200;
+        Kernel k = kernel(row.length, col.length, 2, 3, data);
+
+        ConvolveMatrixOp op = new ConvolveMatrixOp(k, null);
+        assertTrue(op.isSeparable());
+        assertEquals(ConvolveMatrixOp.SEPARABLE, op.getMethod(50, 50, 4));
+        checkMethod(k, ConvolveMatrixOp.SEPARABLE, 50, 41);
+    }
+
+    @Test
+    public void testNotSeparable() {
+        Kernel k = kernel(3, 3, 1, 1, new float[] {
+            1, 0, 0,  0, 1, 0,  0, 0, 1 });
+        assertFalse(new ConvolveMatrixOp(k, null).isSeparable());
+    }
+
+    @Test
+    public void testFFT() {
+        Random r = new Random(3);
+        float[] data = new float[15*13];
+        for (int i=0; i<data.length; i++)
+            data[i] = (r.nextFloat()-.3f)/60;
+        Kernel k = kernel(15, 13, 7, 6, data);
+
+        ConvolveMatrixOp op = new ConvolveMatrixOp(k, null);
+        assertFalse(op.isSeparable());
+        assertEquals(ConvolveMatrixOp.FFT, op.getMethod(200, 200, 4));
+        checkMethod(k, ConvolveMatrixOp.FFT, 61, 47);
+    }
+
+    @Test
+    public void testSmallKernelIsDirect() {
+        Kernel k = kernel(3, 3, 1, 1, new float[] {
+            1, 0, 0,  0, 1, 0,  0, 0, 1 });
+        assertEquals(ConvolveMatrixOp.DIRECT,
+                     new ConvolveMatrixOp(k, null).getMethod(200, 200, 4));
+    }
+
+    @Test
+    public void testKernelLargerThanImage() {
+        Kernel k = kernel(5, 5, 2, 2, new float[25]);
+        BufferedImage src = image(3, 4, 8);
+        BufferedImage dst = new ConvolveMatrixOp(k, null).filter(src, null);
+        // Nothing can be convolved so the source is copied.
+        for (int y=0; y<4; y++)
+            for (int x=0; x<3; x++)
+                assertEquals(src.getRGB(x, y), dst.getRGB(x, y));
+    }
+
+    @Test
+    public void testLargeRaster() {
+        // Several strips and FFT tiles.
+        Random r = new Random(5);
+        float[] data = new float[15*13];
+        for (int i=0; i<data.length; i++)
+            data[i] = (r.nextFloat()-.3f)/60;
+        Kernel k = kernel(15, 13, 7, 6, data);
+        checkMethod(k, ConvolveMatrixOp.FFT, 300, 290);
+        checkMethod(k, ConvolveMatrixOp.DIRECT, 300, 290);
+
+        float[] col = { 1, 2, 1 };
+        float[] row = { 1, 3, 3, 1, 2 };
+        data = new float[col.length*row.length];
+        for (int j=0; j<col.length; j++)
+            for (int i=0; i<row.length; i++)
+                data[j*row.length+i] = col[j]*row[i]/40;
+        checkMethod(new Kernel(row.length, col.length, data),
+                    ConvolveMatrixOp.SEPARABLE, 170, 210);
+    }
+
+    @Test
+    public void testInPlace() {
+        Kernel k = new Kernel(3, 3, new float[] {
+            0, .2f, 0,  .2f, .2f, .2f,  0, .2f, 0 });
+        BufferedImage src = image(20, 30, 11);
+        BufferedImage expected = new ConvolveMatrixOp(k, null)
+            .filter(src, null);
+        WritableRaster wr = src.getRaster();
+        new ConvolveMatrixOp(k, null).filter(wr, wr);
+        for (int y=0; y<30; y++)
+            for (int x=0; x<20; x++)
+                assertEquals(expected.getRGB(x, y), src.getRGB(x, y));
+    }
+
+    /**
+     * Odd and even kernels, which ConvolveOp doesn't center, give
+     * the result of ConvolveOp with every implementation.
+     */
+    @Test
+    public void testConvolveOp() {
+        Random r = new Random(7);
+        int[][] sizes = { {1, 2}, {2, 1}, {2, 2}, {3, 2}, {4, 1},
+                          {4, 4}, {3, 3}, {5, 4}, {1, 5}, {6, 3} };
+        for (int s=0; s<sizes.length; s++) {
+            int kw = sizes[s][0], kh = sizes[s][1];
+            float[] data = new float[kw*kh];
+            for (int i=0; i<data.length; i++)
+                data[i] = r.nextFloat()/(kw*kh);
+            checkConvolveOp(new Kernel(kw, kh, data), 23, 19);
+
+            // A separable one too.
+            float[] sep = new float[kw*kh];
+            for (int j=0; j<kh; j++)
+                for (int i=0; i<kw; i++)
+                    sep[j*kw+i] = (i+1)*(j+2)/(3f*kw*kh*kh);
+            checkConvolveOp(new Kernel(kw, kh, sep), 23, 19);
+        }
+
+        // The example of an even kernel shifting a row.
+        Kernel k = new Kernel(2, 1, new float[] { 0, 1 });
+        BufferedImage src = new BufferedImage
+            (6, 1, BufferedImage.TYPE_INT_ARGB_PRE);
+        for (int x=0; x<6; x++)
+            src.getRaster().setPixel(x, 0, new int[] {
+                40*x, 40*x, 40*x, 255 });
+        WritableRaster d = new ConvolveMatrixOp(k, null)
+            .filter(src.getRaster(), null);
+        int[] expected = { 0, 0, 40, 80, 120, 200 };
+        for (int x=0; x<6; x++)
+            assertEquals(expected[x], d.getSample(x, 0, 0));
+    }
+
+    private void checkConvolveOp(Kernel k, int w, int h) {
+        WritableRaster src = image(w, h, k.getWidth()*31+k.getHeight())
+            .getRaster();
+        WritableRaster ref = new ConvolveOp(k, ConvolveOp.EDGE_NO_OP, null)
+            .filter(src, null);
+        int[] e = ref.getPixels(0, 0, w, h, (int[])null);
+        ConvolveMatrixOp op = new ConvolveMatrixOp(k, null);
+        int[] methods = { ConvolveMatrixOp.DIRECT, ConvolveMatrixOp.FFT,
+                          ConvolveMatrixOp.SEPARABLE };
+        for (int m=0; m<methods.length; m++) {
+            if ((methods[m] == ConvolveMatrixOp.SEPARABLE) &&
+                !op.isSeparable())
+                continue;
+            op.setMethod(methods[m]);
+            int[] d = op.filter(src, null).getPixels(0, 0, w, h, (int[])null);
+            for (int i=0; i<d.length; i++)
+                assertTrue(k.getWidth() + "x" + k.getHeight() + " method "
+                           + methods[m] + " sample " + i + ": " + e[i]
+                           + " != " + d[i], Math.abs(e[i]-d[i]) <= 1);
+        }
+    }
+
+    private void checkMethod(Kernel k, int method, int w, int h) {
+        BufferedImage src = image(w, h, w*h);
+        ConvolveMatrixOp op = new ConvolveMatrixOp(k, null);
+        op.setMethod(method);
+        BufferedImage dst = op.filter(src, null);
+
+        int[] s = src.getRaster().getPixels(0, 0, w, h, (int[])null);
+        int[] d = dst.getRaster().getPixels(0, 0, w, h, (int[])null);
+        int[] ref = reference(k, s, w, h, 4);
+        for (int i=0; i<d.length; i++)
+            assertTrue("sample " + i + " differs: " + ref[i] + " != " + d[i],
+                       Math.abs(ref[i]-d[i]) <= 1);
+    }
+
+    /**
+     * The convolution sum as specified for ConvolveOp, with edge
+     * pixels copied.
+     */
+    private int[] reference(Kernel k, int[] src, int w, int h, int nb) {
+        int kw = k.getWidth(), kh = k.getHeight();
+        int xo = k.getXOrigin(), yo = k.getYOrigin();
+        float[] data = k.getKernelData(null);
+        int[] ret = (int[])src.clone();
+        // ConvolveOp leaves the same margin on both sides.
+        for (int y=kh-1-yo; y<h-(kh-1-yo); y++) {
+            for (int x=kw-1-xo; x<w-(kw-1-xo); x++) {
+                for (int b=0; b<nb; b++) {
+                    double sum = 0;
+                    for (int j=0; j<kh; j++)
+                        for (int i=0; i<kw; i++)
+                            sum += data[j*kw+i] *
+                                src[((y+yo-j)*w + (x+xo-i))*nb + b];
+                    int v = (int)Math.floor(sum + .5);
+                    ret[(y*w+x)*nb+b] = Math.max(0, Math.min(255, v));
+                }
+            }
+        }
+        return ret;
+    }
+
+    private Kernel kernel(int w, int h, int xo, int yo, float[] data) {
+        // Kernel always centers its origin, so shift the data to put
+        // the requested origin on the center by padding.
+        int cw = Math.max(xo, w-1-xo)*2+1;
+        int ch = Math.max(yo, h-1-yo)*2+1;
+        float[] padded = new float[cw*ch];
+        int dx = cw/2 - xo, dy = ch/2 - yo;
+        for (int j=0; j<h; j++)
+            for (int i=0; i<w; i++)
+                padded[(j+dy)*cw + i+dx] = data[j*w+i];
+        return new Kernel(cw, ch, padded);
+    }
+
+    private BufferedImage image(int w, int h, long seed) {
+        BufferedImage bi = new BufferedImage
+            (w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Random r = new Random(seed);
+        for (int y=0; y<h; y++)
+            for (int x=0; x<w; x++) {
+                int a = r.nextInt(256);
+                int c = r.nextInt(a+1);
+                bi.getRaster().setPixel(x, y, new int[] {
+                    c, c/2, r.nextInt(a+1), a });
+            }
+        return bi;
+    }
+}
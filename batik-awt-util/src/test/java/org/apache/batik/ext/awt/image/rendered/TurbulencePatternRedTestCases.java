@@ -0,0 +1,111 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the fast path of <code>TurbulencePatternRed</code>
+ * produces the same pixels (within one code value, since it uses
+ * single precision arithmetic) as the reference implementation.
+ */
+public class TurbulencePatternRedTestCases {
+
+    private static final Rectangle DEV_RECT = new Rectangle(-20, 10, 300, 260);
+
+    @Test
+    public void testTurbulence() {
+        checkConformance(0.05, 0.05, 4, 0, false, null, null);
+    }
+
+    @Test
+    public void testFractalNoise() {
+        checkConformance(0.02, 0.07, 6, 17, true, null, null);
+    }
+
+    @Test
+    public void testNegativeSeed() {
+        checkConformance(0.1, 0.1, 3, -42, false, null, null);
+    }
+
+    @Test
+    public void testTransformed() {
+        AffineTransform at = AffineTransform.getRotateInstance(0.4);
+        at.scale(0.6, 1.3);
+        checkConformance(0.03, 0.03, 5, 3, true, null, at);
+    }
+
+    @Test
+    public void testStitchedTurbulence() {
+        checkConformance(0.05, 0.04, 4, 1, false,
+                         new Rectangle2D.Double(0, 0, 100, 75), null);
+    }
+
+    @Test
+    public void testStitchedFractalNoise() {
+        checkConformance(0.013, 0.05, 5, 9, true,
+                         new Rectangle2D.Double(-10, 20, 130, 60), null);
+    }
+
+    @Test
+    public void testSharedLattice() {
+        assertTrue(TurbulenceLattice.getLattice(12345) ==
+                   TurbulenceLattice.getLattice(12345));
+    }
+
+    private void checkConformance(double bfx, double bfy, int octaves,
+                                  int seed, boolean fractal,
+                                  Rectangle2D tile, AffineTransform txf) {
+        ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+        if (txf == null)
+            txf = new AffineTransform();
+        TurbulencePatternRed ref = new TurbulencePatternRed
+            (bfx, bfy, octaves, seed, fractal, tile, txf, DEV_RECT, cs, true);
+        TurbulencePatternRed fast = new TurbulencePatternRed
+            (bfx, bfy, octaves, seed, fractal, tile, txf, DEV_RECT, cs, true);
+        ref.setFastPath(false);
+        fast.setFastPath(true);
+
+        int[] refPix  = render(ref);
+        int[] fastPix = render(fast);
+        assertEquals(refPix.length, fastPix.length);
+        for (int i=0; i<refPix.length; i++) {
+            assertTrue("sample " + i + " differs: " +
+                       refPix[i] + " != " + fastPix[i],
+                       Math.abs(refPix[i]-fastPix[i]) <= 1);
+        }
+    }
+
+    private int[] render(TurbulencePatternRed red) {
+        WritableRaster wr = red.getColorModel().createCompatibleWritableRaster
+            (DEV_RECT.width, DEV_RECT.height);
+        wr = wr.createWritableTranslatedChild(DEV_RECT.x, DEV_RECT.y);
+        red.copyData(wr);
+        return wr.getPixels(DEV_RECT.x, DEV_RECT.y,
+                            DEV_RECT.width, DEV_RECT.height, (int[])null);
+    }
+}
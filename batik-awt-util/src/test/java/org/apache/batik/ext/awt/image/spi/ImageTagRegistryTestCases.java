@@ -0,0 +1,154 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.ext.awt.image.spi;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.FloodRable8Bit;
+import org.apache.batik.util.ParsedURL;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that <code>ImageTagRegistry</code> finds the entry for a
+ * stream with one read of its start, and does not reopen URLs it
+ * could identify.
+ */
+public class ImageTagRegistryTestCases {
+
+    /**
+     * An entry counting the streams and URLs it is given.
+     */
+    static class TestEntry extends MagicNumberRegistryEntry
+        implements URLRegistryEntry {
+        Filter filter = new FloodRable8Bit
+            (new Rectangle2D.Double(0, 0, 1, 1), Color.red);
+        int streams;
+        int urls;
+
+        TestEntry(String name, float priority, MagicNumber [] mns) {
+            super(name, priority, new String[0],
+                  new String[] {"image/x-" + name}, mns);
+        }
+
+        public Filter handleStream(InputStream is, ParsedURL origURL,
+                                   boolean needRawData) {
+            streams++;
+            return filter;
+        }
+
+        public boolean isCompatibleURL(ParsedURL purl) {
+            return true;
+        }
+
+        public Filter handleURL(ParsedURL purl, boolean needRawData) {
+            urls++;
+            return filter;
+        }
+    }
+
+    /**
+     * A stream counting the marks set on it.
+     */
+    static class MarkCountingStream extends BufferedInputStream {
+        int marks;
+
+        MarkCountingStream(byte [] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        public synchronized void mark(int readlimit) {
+            marks++;
+            super.mark(readlimit);
+        }
+    }
+
+    private TestEntry createEntry(String name, int offset, String magic) {
+        return new TestEntry
+            (name, MagicNumberRegistryEntry.PRIORITY,
+             new MagicNumberRegistryEntry.MagicNumber[] {
+                new MagicNumberRegistryEntry.MagicNumber
+                    (offset, magic.getBytes()) });
+    }
+
+    @Test
+    public void testSinglePass() {
+        ImageTagRegistry reg = new ImageTagRegistry();
+        TestEntry ab = createEntry("ab", 0, "AB");
+        TestEntry cd = createEntry("cd", 2, "CD");
+        TestEntry xy = createEntry("xy", 0, "XY");
+        reg.register(ab);
+        reg.register(cd);
+        reg.register(xy);
+
+        MarkCountingStream is = new MarkCountingStream("XYCDEF".getBytes());
+        assertSame(cd.filter, reg.readStream(is));
+        assertEquals(1, is.marks);
+        assertEquals(0, ab.streams);
+        assertEquals(1, cd.streams);
+        assertEquals(0, xy.streams);
+
+        is = new MarkCountingStream("XY".getBytes());
+        assertSame(xy.filter, reg.readStream(is));
+        assertEquals(1, is.marks);
+    }
+
+    @Test
+    public void testNoReopen() throws IOException {
+        ImageTagRegistry reg = new ImageTagRegistry();
+        TestEntry entry = new TestEntry
+            ("last", JDKRegistryEntry.PRIORITY,
+             new MagicNumberRegistryEntry.MagicNumber[] {
+                new MagicNumberRegistryEntry.MagicNumber
+                    (0, "GIF8".getBytes()) });
+        reg.register(entry);
+
+        // A stream it recognizes is used as is.
+        reg.readURL(createURL("GIF89a"));
+        assertEquals(1, entry.streams);
+        assertEquals(0, entry.urls);
+
+        // Anything else still gets the URL.
+        reg.readURL(createURL("unknown"));
+        assertEquals(1, entry.streams);
+        assertEquals(1, entry.urls);
+    }
+
+    private ParsedURL createURL(String content) throws IOException {
+        File f = File.createTempFile("img", ".dat");
+        f.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(f);
+        try {
+            os.write(content.getBytes());
+        } finally {
+            os.close();
+        }
+        return new ParsedURL(f.toURI().toString());
+    }
+}
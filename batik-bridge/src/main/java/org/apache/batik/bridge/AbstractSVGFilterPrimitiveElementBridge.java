@@ -166,8 +166,15 @@ public abstract class AbstractSVGFilterPrimitiveElementBridge
         Filter srcG = (Filter)filterMap.get(SVG_SOURCE_GRAPHIC_VALUE);
         Rectangle2D filterRegion = srcG.getBounds2D();
 
+        // Keyword sources are created once per filter when filters
+        // are optimized, or when shared by a FilterPrimitiveGraph.
+        SourceKey key = new SourceKey(s);
+        Filter source = (Filter)filterMap.get(key);
+        if (source != null) {
+            return source;
+        }
+
         int length = s.length();
-        Filter source = null;
         switch (length) {
         case 13:
             if (SVG_SOURCE_GRAPHIC_VALUE.equals(s)) {
@@ -221,10 +228,45 @@ public abstract class AbstractSVGFilterPrimitiveElementBridge
         if (source == null) {
             // <identifier>
             source = (Filter)filterMap.get(s);
+        } else if (source != srcG && FilterPrimitiveGraph.OPTIMIZE) {
+            filterMap.put(key, source);
         }
         return source;
     }
 
+    /**
+     * Sets the source returned for the specified keyword by the
+     * following calls to <code>getFilterSource</code>.
+     *
+     * @param s the keyword
+     * @param source the filter to use for this keyword
+     * @param filterMap the filter map that contains named filter primitives
+     */
+    static void putFilterSource(String s, Filter source, Map filterMap) {
+        filterMap.put(new SourceKey(s), source);
+    }
+
+    /**
+     * The key of a keyword source in the filter map.  It is never
+     * equal to a string so a result name cannot hide it.
+     */
+    static final class SourceKey {
+        private final String keyword;
+
+        SourceKey(String keyword) {
+            this.keyword = keyword;
+        }
+
+        public boolean equals(Object o) {
+            return (o instanceof SourceKey) &&
+                keyword.equals(((SourceKey)o).keyword);
+        }
+
+        public int hashCode() {
+            return keyword.hashCode() + 1;
+        }
+    }
+
     /**
      * This is a bit of a hack but we set the flood bounds to
      * -floatmax/2 -> floatmax/2 (should cover the area ok).
@@ -35,7 +35,9 @@ public class ConcreteTextLayoutFactory implements TextLayoutFactory {
 
     /**
      * Returns an instance of TextSpanLayout suitable for rendering the
-     * AttributedCharacterIterator.
+     * AttributedCharacterIterator.  The layouts of runs laid out before,
+     * in this or another document, are built from the ones kept by
+     * <code>TextLayoutCache</code>.
      *
      * @param aci The character iterator to be laid out
      * @param charMap Indicates how chars in aci map to original
@@ -47,7 +49,7 @@ public class ConcreteTextLayoutFactory implements TextLayoutFactory {
                                            int [] charMap,
                                            Point2D offset,
                                            FontRenderContext frc) {
-        return new GlyphLayout(aci, charMap, offset, frc);
+        return TextLayoutCache.createLayout(aci, charMap, offset, frc);
     }
 }
 
@@ -0,0 +1,639 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.FilterCacheRable8Bit;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.SVGConstants;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * The filter primitives of a &lt;filter&gt; element, seen as a graph
+ * whose edges are the 'in' and 'in2' references.  Before the
+ * primitives are built the graph is simplified:
+ * <ul>
+ * <li>primitives that do nothing (an feOffset by 0, an identity
+ *     feColorMatrix or feComponentTransfer, an feMerge of a single
+ *     node) are replaced by their input,</li>
+ * <li>primitives identical to a previous one (same attributes, same
+ *     inputs) are replaced by it,</li>
+ * <li>results used by more than one primitive are rendered once
+ *     per rendering of the filter, see {@link FilterCacheRable8Bit}.</li>
+ * </ul>
+ * Primitives that do not contribute to the last one are still built,
+ * so that their errors are reported, but never rendered.
+ *
+ * The filters built render the same pixels as the primitives built
+ * one by one.  The optimization is off unless the
+ * <code>org.apache.batik.bridge.filter.optimize</code> system
+ * property is set to true.  When the
+ * <code>org.apache.batik.bridge.filter.dump</code> system property
+ * is set to true each simplified graph is displayed through the
+ * user agent, see {@link #toString}.
+ *
+ * @version $Id$
+ */
+class FilterPrimitiveGraph implements SVGConstants {
+
+    /**
+     * Whether filter primitive graphs are simplified, by default.
+     */
+    static final boolean OPTIMIZE;
+
+    /**
+     * Whether the simplified graphs are displayed.
+     */
+    static final boolean DUMP;
+
+    static {
+        boolean optimize = false;
+        boolean dump = false;
+        try {
+            optimize = Boolean.valueOf(System.getProperty
+                ("org.apache.batik.bridge.filter.optimize", "false"));
+            dump = Boolean.valueOf(System.getProperty
+                ("org.apache.batik.bridge.filter.dump", "false"));
+        } catch (SecurityException se) {
+        } finally {
+            OPTIMIZE = optimize;
+            DUMP = dump;
+        }
+    }
+
+    /**
+     * The number of 'in' like attributes of the supported primitives,
+     * feMerge takes one input per feMergeNode.
+     */
+    protected static final Map INPUT_COUNTS = new HashMap();
+    static {
+        Integer none = 0, in = 1, in2 = 2;
+        INPUT_COUNTS.put(SVG_FE_FLOOD_TAG,              none);
+        INPUT_COUNTS.put(SVG_FE_IMAGE_TAG,              none);
+        INPUT_COUNTS.put(SVG_FE_COLOR_MATRIX_TAG,       in);
+        INPUT_COUNTS.put(SVG_FE_COMPONENT_TRANSFER_TAG, in);
+        INPUT_COUNTS.put(SVG_FE_CONVOLVE_MATRIX_TAG,    in);
+        INPUT_COUNTS.put(SVG_FE_DIFFUSE_LIGHTING_TAG,   in);
+        INPUT_COUNTS.put(SVG_FE_GAUSSIAN_BLUR_TAG,      in);
+        INPUT_COUNTS.put(SVG_FE_MORPHOLOGY_TAG,         in);
+        INPUT_COUNTS.put(SVG_FE_OFFSET_TAG,             in);
+        INPUT_COUNTS.put(SVG_FE_SPECULAR_LIGHTING_TAG,  in);
+        INPUT_COUNTS.put(SVG_FE_TILE_TAG,               in);
+        // Does not use its input, but is disabled when it is missing.
+        INPUT_COUNTS.put(SVG_FE_TURBULENCE_TAG,         in);
+        INPUT_COUNTS.put(SVG_FE_BLEND_TAG,              in2);
+        INPUT_COUNTS.put(SVG_FE_COMPOSITE_TAG,          in2);
+        INPUT_COUNTS.put(SVG_FE_DISPLACEMENT_MAP_TAG,   in2);
+        INPUT_COUNTS.put(SVG_FE_MERGE_TAG,              none);
+    }
+
+    /**
+     * The keywords that can be used as a filter primitive input.
+     */
+    protected static final String[] KEYWORDS = {
+        SVG_SOURCE_GRAPHIC_VALUE,
+        SVG_SOURCE_ALPHA_VALUE,
+        SVG_BACKGROUND_IMAGE_VALUE,
+        SVG_BACKGROUND_ALPHA_VALUE,
+        SVG_FILL_PAINT_VALUE,
+        SVG_STROKE_PAINT_VALUE
+    };
+
+    /**
+     * A filter primitive, or a keyword input.
+     */
+    protected static class PrimitiveNode {
+
+        /**
+         * The number of this node in the graph.
+         */
+        int id;
+
+        /**
+         * The filter primitive element, null for keywords.
+         */
+        Element element;
+
+        /**
+         * The local name of the element, or the keyword.
+         */
+        String name;
+
+        /**
+         * The inputs of this primitive.
+         */
+        PrimitiveNode[] inputs = new PrimitiveNode[0];
+
+        /**
+         * The node whose result is used for this one, this node itself
+         * if it has to be built.
+         */
+        PrimitiveNode alias = this;
+
+        /**
+         * Whether the result of this node contributes to the output.
+         */
+        boolean live;
+
+        /**
+         * The number of built nodes using the result of this node.
+         */
+        int uses;
+
+        /**
+         * The filter built for this node.
+         */
+        Filter filter;
+
+        public String toString() {
+            StringBuffer sb = new StringBuffer();
+            sb.append('#').append(id).append(' ').append(name);
+            if (element != null) {
+                String result = element.getAttributeNS
+                    (null, SVG_RESULT_ATTRIBUTE);
+                if (result.length() != 0) {
+                    sb.append(" result=\"").append(result).append('"');
+                }
+            }
+            if (inputs.length != 0) {
+                sb.append(" in=");
+                for (int i = 0; i < inputs.length; i++) {
+                    sb.append(i == 0 ? "#" : ",#").append(inputs[i].id);
+                }
+            }
+            if (alias != this) {
+                sb.append(" [same as #").append(alias.id).append(']');
+            } else if (!live) {
+                sb.append(" [dead]");
+            } else if (uses > 1) {
+                sb.append(" [shared by ").append(uses).append(']');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The filter element.
+     */
+    protected Element filterElement;
+
+    /**
+     * The filter primitives, in document order.
+     */
+    protected List primitives = new ArrayList();
+
+    /**
+     * The keyword inputs used, indexed by keyword.
+     */
+    protected Map keywords = new LinkedHashMap();
+
+    /**
+     * The number of nodes.
+     */
+    protected int count;
+
+    /**
+     * Builds the graph of the filter primitives of the specified
+     * filter element.  Returns null if the element has no primitive,
+     * or if the graph cannot be analysed, in which case the
+     * primitives are built as they are.
+     *
+     * @param filterElement the filter element
+     * @param ctx the bridge context
+     */
+    static FilterPrimitiveGraph build(Element filterElement,
+                                      BridgeContext ctx) {
+        FilterPrimitiveGraph graph = new FilterPrimitiveGraph();
+        graph.filterElement = filterElement;
+        if (!graph.parse(ctx) || graph.primitives.isEmpty()) {
+            return null;
+        }
+        graph.simplify();
+        UserAgent ua = ctx.getUserAgent();
+        if (DUMP && ua != null) {
+            ua.displayMessage(graph.toString());
+        }
+        return graph;
+    }
+
+    /**
+     * Creates the nodes of the graph.  Returns false if one of the
+     * primitives is not supported or has an input that cannot be
+     * resolved.
+     */
+    protected boolean parse(BridgeContext ctx) {
+        Map results = new HashMap();
+        PrimitiveNode previous = null;
+        for (Node n = filterElement.getFirstChild();
+             n != null;
+             n = n.getNextSibling()) {
+
+            if (n.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            Element e = (Element)n;
+            Bridge bridge = ctx.getBridge(e);
+            if (bridge == null || !(bridge instanceof FilterPrimitiveBridge)) {
+                continue;
+            }
+            Integer inputCount = (Integer)INPUT_COUNTS.get(e.getLocalName());
+            if (!SVG_NAMESPACE_URI.equals(e.getNamespaceURI()) ||
+                inputCount == null) {
+                return false;
+            }
+
+            PrimitiveNode node = newNode(e, e.getLocalName());
+            List inputs = new ArrayList();
+            if (inputCount > 0) {
+                inputs.add(resolve(e.getAttributeNS(null, SVG_IN_ATTRIBUTE),
+                                   previous, results));
+            }
+            if (inputCount > 1) {
+                String in2 = e.getAttributeNS(null, SVG_IN2_ATTRIBUTE);
+                inputs.add(in2.length() == 0
+                           ? null : resolve(in2, previous, results));
+            }
+            if (SVG_FE_MERGE_TAG.equals(node.name)) {
+                for (Node m = e.getFirstChild();
+                     m != null;
+                     m = m.getNextSibling()) {
+                    if (isSVGElement(m, SVG_FE_MERGE_NODE_TAG)) {
+                        inputs.add(resolve(((Element)m).getAttributeNS
+                                           (null, SVG_IN_ATTRIBUTE),
+                                           previous, results));
+                    }
+                }
+            }
+            if (inputs.contains(null)) {
+                // Let the primitive bridge report or handle it.
+                return false;
+            }
+            node.inputs = (PrimitiveNode[])
+                inputs.toArray(new PrimitiveNode[inputs.size()]);
+
+            String result = e.getAttributeNS(null, SVG_RESULT_ATTRIBUTE);
+            if (result.trim().length() != 0) {
+                results.put(result, node);
+            }
+            primitives.add(node);
+            previous = node;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the node for the specified 'in' attribute value, as
+     * done by <code>getFilterSource</code>, or null if there is none.
+     */
+    protected PrimitiveNode resolve(String s,
+                                    PrimitiveNode previous,
+                                    Map results) {
+        if (s.length() == 0) {
+            return (previous != null)
+                ? previous : keyword(SVG_SOURCE_GRAPHIC_VALUE);
+        }
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            if (KEYWORDS[i].equals(s)) {
+                return keyword(s);
+            }
+        }
+        return (PrimitiveNode)results.get(s);
+    }
+
+    protected PrimitiveNode keyword(String s) {
+        PrimitiveNode node = (PrimitiveNode)keywords.get(s);
+        if (node == null) {
+            node = newNode(null, s);
+            keywords.put(s, node);
+        }
+        return node;
+    }
+
+    protected PrimitiveNode newNode(Element e, String name) {
+        PrimitiveNode node = new PrimitiveNode();
+        node.id = count++;
+        node.element = e;
+        node.name = name;
+        return node;
+    }
+
+    /**
+     * Replaces the identity and duplicate primitives and finds the
+     * primitives the last one depends on.
+     */
+    protected void simplify() {
+        Map signatures = new HashMap();
+        PrimitiveNode last
+            = (PrimitiveNode)primitives.get(primitives.size()-1);
+        Iterator it = primitives.iterator();
+        while (it.hasNext()) {
+            PrimitiveNode node = (PrimitiveNode)it.next();
+            for (int i = 0; i < node.inputs.length; i++) {
+                node.inputs[i] = node.inputs[i].alias;
+            }
+            // The output is never replaced by one of the inputs of the
+            // filter, or it would be mistaken for an empty filter.
+            if (node != last && isIdentity(node)) {
+                node.alias = node.inputs[0];
+                continue;
+            }
+            String sig = signature(node);
+            PrimitiveNode same = (PrimitiveNode)signatures.get(sig);
+            if (same != null) {
+                node.alias = same;
+            } else {
+                signatures.put(sig, node);
+            }
+        }
+        markLive(last);
+    }
+
+    protected void markLive(PrimitiveNode node) {
+        if (node.live) {
+            return;
+        }
+        node.live = true;
+        if (node.alias != node) {
+            markLive(node.alias);
+            return;
+        }
+        for (int i = 0; i < node.inputs.length; i++) {
+            node.inputs[i].uses++;
+            markLive(node.inputs[i]);
+        }
+    }
+
+    /**
+     * Returns true if the specified primitive returns its input
+     * unchanged.  Primitives with a subregion are never identities
+     * as they crop their input.
+     */
+    protected boolean isIdentity(PrimitiveNode node) {
+        Element e = node.element;
+        if (e.hasAttributeNS(null, SVG_X_ATTRIBUTE) ||
+            e.hasAttributeNS(null, SVG_Y_ATTRIBUTE) ||
+            e.hasAttributeNS(null, SVG_WIDTH_ATTRIBUTE) ||
+            e.hasAttributeNS(null, SVG_HEIGHT_ATTRIBUTE)) {
+            return false;
+        }
+        if (SVG_FE_OFFSET_TAG.equals(node.name)) {
+            return isNumbers(e.getAttributeNS(null, SVG_DX_ATTRIBUTE),
+                             new float[] { 0 }) &&
+                   isNumbers(e.getAttributeNS(null, SVG_DY_ATTRIBUTE),
+                             new float[] { 0 });
+        }
+        if (SVG_FE_COLOR_MATRIX_TAG.equals(node.name)) {
+            String type = e.getAttributeNS(null, SVG_TYPE_ATTRIBUTE);
+            String values = e.getAttributeNS(null, SVG_VALUES_ATTRIBUTE);
+            if (type.length() == 0 || SVG_MATRIX_VALUE.equals(type)) {
+                return isNumbers(values, new float[] {
+                    1, 0, 0, 0, 0,
+                    0, 1, 0, 0, 0,
+                    0, 0, 1, 0, 0,
+                    0, 0, 0, 1, 0 });
+            } else if (SVG_SATURATE_VALUE.equals(type)) {
+                return isNumbers(values, new float[] { 1 });
+            } else if (SVG_HUE_ROTATE_VALUE.equals(type)) {
+                return isNumbers(values, new float[] { 0 });
+            }
+            return false;
+        }
+        if (SVG_FE_COMPONENT_TRANSFER_TAG.equals(node.name)) {
+            for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n.getNodeType() != Node.ELEMENT_NODE) {
+                    continue;
+                }
+                if (!(isSVGElement(n, SVG_FE_FUNC_R_TAG) ||
+                      isSVGElement(n, SVG_FE_FUNC_G_TAG) ||
+                      isSVGElement(n, SVG_FE_FUNC_B_TAG) ||
+                      isSVGElement(n, SVG_FE_FUNC_A_TAG)) ||
+                    !SVG_IDENTITY_VALUE.equals
+                    (((Element)n).getAttributeNS(null, SVG_TYPE_ATTRIBUTE))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (SVG_FE_MERGE_TAG.equals(node.name)) {
+            return node.inputs.length == 1;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the specified attribute value is empty (the
+     * value is the default) or is the specified list of numbers.
+     */
+    protected static boolean isNumbers(String s, float[] expected) {
+        if (s.trim().length() == 0) {
+            return true;
+        }
+        StringTokenizer st = new StringTokenizer(s, " ,\t\n\r");
+        if (st.countTokens() != expected.length) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < expected.length; i++) {
+                if (Float.parseFloat(st.nextToken()) != expected[i]) {
+                    return false;
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+        return true;
+    }
+
+    protected static boolean isSVGElement(Node n, String localName) {
+        return n.getNodeType() == Node.ELEMENT_NODE &&
+            SVG_NAMESPACE_URI.equals(n.getNamespaceURI()) &&
+            localName.equals(n.getLocalName());
+    }
+
+    /**
+     * Returns a string that is the same for two primitives only if
+     * they produce the same result.
+     */
+    protected static String signature(PrimitiveNode node) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < node.inputs.length; i++) {
+            sb.append('#').append(node.inputs[i].id);
+        }
+        appendSignature(sb, node.element);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the name, the attributes other than the inputs and the
+     * result name, and the children of the specified element.
+     */
+    protected static void appendSignature(StringBuffer sb, Element e) {
+        sb.append('<').append(e.getNamespaceURI())
+          .append(':').append(e.getLocalName());
+        NamedNodeMap attrs = e.getAttributes();
+        String[] list = new String[attrs.getLength()];
+        int n = 0;
+        for (int i = 0; i < list.length; i++) {
+            Attr a = (Attr)attrs.item(i);
+            String ln = a.getLocalName();
+            if (ln == null) {
+                ln = a.getNodeName();
+            }
+            if (a.getNamespaceURI() == null &&
+                (SVG_IN_ATTRIBUTE.equals(ln) ||
+                 SVG_IN2_ATTRIBUTE.equals(ln) ||
+                 SVG_RESULT_ATTRIBUTE.equals(ln))) {
+                continue;
+            }
+            list[n++] = a.getNamespaceURI() + ':' + ln + '=' + a.getValue();
+        }
+        Arrays.sort(list, 0, n);
+        for (int i = 0; i < n; i++) {
+            sb.append(' ').append(list[i].length())
+              .append(':').append(list[i]);
+        }
+        sb.append('>');
+        for (Node c = e.getFirstChild(); c != null; c = c.getNextSibling()) {
+            if (c.getNodeType() == Node.ELEMENT_NODE) {
+                appendSignature(sb, (Element)c);
+            }
+        }
+        sb.append("</>");
+    }
+
+    /**
+     * Builds the primitives that are not replaced by another one and
+     * returns the output.
+     *
+     * @param ctx the bridge context
+     * @param filteredElement the filtered element
+     * @param filteredNode the filtered node
+     * @param in the input Filter
+     * @param filterRegion the filter chain region
+     * @param filterNodeMap the map used by named filter primitives
+     * @return the last filter primitive or null if the filter is
+     *         disabled
+     */
+    Filter createFilter(BridgeContext ctx,
+                        Element filteredElement,
+                        GraphicsNode filteredNode,
+                        Filter in,
+                        Rectangle2D filterRegion,
+                        Map filterNodeMap) {
+
+        List caches = new ArrayList();
+
+        Iterator it = keywords.values().iterator();
+        while (it.hasNext()) {
+            PrimitiveNode node = (PrimitiveNode)it.next();
+            if (SVG_SOURCE_GRAPHIC_VALUE.equals(node.name)) {
+                // Already cached by its GraphicsNodeRable.
+                node.filter = in;
+                continue;
+            }
+            node.filter = AbstractSVGFilterPrimitiveElementBridge
+                .getFilterSource(filterElement, node.name, filteredElement,
+                                 filteredNode, filterNodeMap, ctx);
+            if (node.filter != null && node.uses > 1) {
+                FilterCacheRable8Bit cache
+                    = new FilterCacheRable8Bit(node.filter);
+                caches.add(cache);
+                node.filter = cache;
+                AbstractSVGFilterPrimitiveElementBridge.putFilterSource
+                    (node.name, cache, filterNodeMap);
+            }
+        }
+
+        it = primitives.iterator();
+        while (it.hasNext()) {
+            PrimitiveNode node = (PrimitiveNode)it.next();
+            if (node.alias == node) {
+                // Unused primitives are built too so that their errors
+                // are reported, as they were without the graph.
+                Element e = node.element;
+                FilterPrimitiveBridge bridge
+                    = (FilterPrimitiveBridge)ctx.getBridge(e);
+                Filter filter = bridge.createFilter(ctx,
+                                                    e,
+                                                    filteredElement,
+                                                    filteredNode,
+                                                    in,
+                                                    filterRegion,
+                                                    filterNodeMap);
+                if (filter == null) {
+                    return null; // disable the filter if a primitive is null
+                }
+                if (node.uses > 1) {
+                    FilterCacheRable8Bit cache
+                        = new FilterCacheRable8Bit(filter);
+                    caches.add(cache);
+                    filter = cache;
+                }
+                node.filter = filter;
+            }
+            in = node.alias.filter;
+            AbstractSVGFilterPrimitiveElementBridge.updateFilterMap
+                (node.element, in, filterNodeMap);
+        }
+
+        if (!caches.isEmpty()) {
+            FilterCacheRable8Bit[] array = (FilterCacheRable8Bit[])
+                caches.toArray(new FilterCacheRable8Bit[caches.size()]);
+            in = new FilterCacheRable8Bit.Scope(in, array);
+        }
+        return in;
+    }
+
+    /**
+     * Returns the nodes of the graph, one per line, with the
+     * primitives replaced by another one, the ones that are not
+     * rendered and the shared results.
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("filter");
+        String id = filterElement.getAttributeNS(null, SVG_ID_ATTRIBUTE);
+        if (id.length() != 0) {
+            sb.append(" \"").append(id).append('"');
+        }
+        sb.append(':');
+        Iterator it = keywords.values().iterator();
+        while (it.hasNext()) {
+            sb.append("\n  ").append(it.next());
+        }
+        it = primitives.iterator();
+        while (it.hasNext()) {
+            sb.append("\n  ").append(it.next());
+        }
+        return sb.toString();
+    }
+}
@@ -214,6 +214,83 @@ public class GlyphLayout implements TextSpanLayout {
         }
     }
 
+    /**
+     * Creates a text layout for the specified AttributedCharacterIterator
+     * from the snapshot of another layout, made for the same characters,
+     * font and layout attributes.  The glyphs are placed where the
+     * snapshot has them, without laying them out again.
+     *
+     * @param aci the AttributedCharacterIterator whose text is to
+     *  be laid out
+     * @param charMap Indicates how chars in aci map to original
+     *                text char array.
+     * @param offset The offset position of this text layout
+     * @param frc the FontRenderContext to use for generating glyphs.
+     * @param snapshot the layout to copy.
+     */
+    GlyphLayout(AttributedCharacterIterator aci,
+                int [] charMap,
+                Point2D offset,
+                FontRenderContext frc,
+                TextLayoutCache.Snapshot snapshot) {
+
+        this.aci = aci;
+        this.offset = offset;
+        this.font = getFont();
+        this.charMap = charMap;
+        this.metrics = snapshot.metrics;
+
+        this.aci.first();
+        this.vertical = (aci.getAttribute(WRITING_MODE) == WRITING_MODE_TTB);
+        this.textPath =  (TextPath) aci.getAttribute
+            (GVTAttributedCharacterIterator.TextAttribute.TEXTPATH);
+        this.gv = font.createGlyphVector(frc, snapshot.glyphCodes, this.aci);
+
+        this.gv.performDefaultLayout();
+        int numGlyphs = gv.getNumGlyphs();
+        float [] gp = snapshot.positions;
+        Point2D.Float pos = new Point2D.Float();
+        for (int i=0; i<=numGlyphs; i++) {
+            pos.x = gp[2*i  ];
+            pos.y = gp[2*i+1];
+            gv.setGlyphPosition(i, pos);
+        }
+        for (int i=0; i<numGlyphs; i++) {
+            AffineTransform glyphTransform = snapshot.transforms[i];
+            if (glyphTransform != null)
+                gv.setGlyphTransform(i, new AffineTransform(glyphTransform));
+            if (!snapshot.visible[i])
+                gv.setGlyphVisible(i, false);
+        }
+        this.advance = (Point2D)snapshot.advance.clone();
+        this.layoutApplied = snapshot.layoutApplied;
+        this.spacingApplied = true;
+    }
+
+    /**
+     * Lays out this text, as placed by its offset, and returns a copy of
+     * its glyphs.  Only for layouts whose glyph vector was created by an
+     * <code>AWTGVTFont</code> and that were not adjusted yet.
+     */
+    TextLayoutCache.Snapshot createSnapshot() {
+        adjustTextSpacing();
+
+        int numGlyphs = gv.getNumGlyphs();
+        int [] glyphCodes = gv.getGlyphCodes(0, numGlyphs, null);
+        float [] gp = gv.getGlyphPositions(0, numGlyphs+1, null);
+        AffineTransform [] transforms = new AffineTransform[numGlyphs];
+        boolean [] visible = new boolean[numGlyphs];
+        for (int i=0; i<numGlyphs; i++) {
+            AffineTransform glyphTransform = gv.getGlyphTransform(i);
+            if (glyphTransform != null)
+                transforms[i] = new AffineTransform(glyphTransform);
+            visible[i] = gv.isGlyphVisible(i);
+        }
+        return new TextLayoutCache.Snapshot
+            (metrics, glyphCodes, gp, transforms, visible,
+             (Point2D)advance.clone(), layoutApplied);
+    }
+
 
     public GVTGlyphVector getGlyphVector() {
         return this.gv;
@@ -32,6 +32,7 @@ import org.apache.batik.css.engine.value.svg.ICCColor;
 import org.apache.batik.css.engine.value.svg12.CIELabColor;
 import org.apache.batik.css.engine.value.svg12.DeviceColor;
 import org.apache.batik.css.engine.value.svg12.ICCNamedColor;
+import org.apache.batik.ext.awt.color.ICCColorTransform;
 import org.apache.batik.gvt.CompositeShapePainter;
 import org.apache.batik.gvt.FillShapePainter;
 import org.apache.batik.gvt.GraphicsNode;
@@ -455,7 +456,8 @@ public abstract class PaintServer
         }
 
         // Convert values to RGB
-        float[] rgb = profileCS.intendedToRGB(colorValue);
+        float[] rgb = ICCColorTransform.getInstance(profileCS)
+            .intendedToRGB(colorValue);
         //TODO Preserve original ICC color value!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
         return new Color(rgb[0], rgb[1], rgb[2], opacity);
     }
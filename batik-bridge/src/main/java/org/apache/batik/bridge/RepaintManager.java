@@ -21,12 +21,14 @@ package org.apache.batik.bridge;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Collection;
 
+import org.apache.batik.gvt.UpdateTracker;
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.ext.awt.geom.RectListManager;
 
@@ -41,6 +43,27 @@ public class RepaintManager {
     static final int COPY_OVERHEAD      = 10000;
     static final int COPY_LINE_OVERHEAD = 10;
 
+    /**
+     * The maximum number of rectangles repainted at once.  When more
+     * areas are dirty, close ones are merged even if this repaints
+     * more pixels.  Set by the
+     * <code>org.apache.batik.bridge.RepaintManager.maxRects</code>
+     * system property.
+     */
+    static final int MAX_REPAINT_RECTS;
+
+    static {
+        int maxRects = 64;
+        try {
+            maxRects = Integer.parseInt(System.getProperty
+                ("org.apache.batik.bridge.RepaintManager.maxRects", "64"));
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            MAX_REPAINT_RECTS = maxRects;
+        }
+    }
+
     /**
      * The renderer used to repaint the buffer.
      */
@@ -81,7 +104,8 @@ public class RepaintManager {
         RectListManager devRLM = null;
         try {
             devRLM = new RectListManager(rects);
-            devRLM.mergeRects(COPY_OVERHEAD, COPY_LINE_OVERHEAD);
+            devRLM.mergeRects(COPY_OVERHEAD, COPY_LINE_OVERHEAD,
+                              MAX_REPAINT_RECTS);
         } catch(Exception e) {
             e.printStackTrace();
         }
@@ -90,6 +114,64 @@ public class RepaintManager {
         return devRLM;
     }
 
+    /**
+     * Returns the dirty regions recorded by an update tracker, in the
+     * device space of the renderer, or null if nothing changed.
+     * @param tracker The tracker of the changes on the GVT tree.
+     */
+    public RectListManager getDirtyRegions(UpdateTracker tracker) {
+        return tracker.getDirtyRegions(renderer.getTransform());
+    }
+
+    /**
+     * Returns the areas, in renderer space, covering the given device
+     * space regions, as <code>updateRendering(Collection)</code>
+     * takes them.
+     * @param devRLM The regions, as returned by <code>getDirtyRegions</code>.
+     */
+    public List getAreas(RectListManager devRLM) {
+        List areas = new ArrayList(devRLM.size());
+        AffineTransform at = renderer.getTransform();
+        try {
+            if (at != null)
+                at = at.createInverse();
+        } catch (NoninvertibleTransformException nte) {
+            // Nothing is visible.
+            return areas;
+        }
+        for (Object aDevRLM : devRLM) {
+            Shape s = (Shape) aDevRLM;
+            if (at != null)
+                s = at.createTransformedShape(s);
+            areas.add(s);
+        }
+        return areas;
+    }
+
+    /**
+     * Updates the rendering buffer with dirty regions in device space.
+     * They are repainted as they are, unless there are more than the
+     * maximum number of rectangles repainted at once.
+     * @param devRLM The regions, as returned by <code>getDirtyRegions</code>.
+     * @param overdrawTolerance The number of pixels that may be
+     *        repainted needlessly to merge two regions.
+     * @return the list of the rectangles to repaint.
+     */
+    public Collection updateRendering(RectListManager devRLM,
+                                      int overdrawTolerance)
+        throws InterruptedException {
+        for (Object aDevRLM : devRLM) {
+            renderer.flush((Rectangle) aDevRLM);
+        }
+        if (devRLM.size() > MAX_REPAINT_RECTS) {
+            devRLM.mergeRects(overdrawTolerance, COPY_LINE_OVERHEAD,
+                              MAX_REPAINT_RECTS);
+        }
+
+        renderer.repaint(devRLM);
+        return devRLM;
+    }
+
     /**
      * Sets up the renderer so that it is ready to render for the new
      * 'context' defined by the user to device transform, double buffering
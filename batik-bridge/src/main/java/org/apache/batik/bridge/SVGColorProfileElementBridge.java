@@ -46,6 +46,14 @@ public class SVGColorProfileElementBridge extends AbstractSVGBridge
      */
     public NamedProfileCache cache = new NamedProfileCache();
 
+    /**
+     * The profiles shared by all documents, keyed by their URL,
+     * rendering intent and name.  Sharing the color space also shares
+     * its <code>ICCColorTransform</code>.
+     */
+    protected static final NamedProfileCache sharedCache
+        = NamedProfileCache.getDefaultCache();
+
     /**
      * Returns 'colorProfile'.
      */
@@ -103,49 +111,72 @@ public class SVGColorProfileElementBridge extends AbstractSVGBridge
         // Now that we have a profile element,
         // try to load the corresponding ICC profile xlink:href
         String href = XLinkSupport.getXLinkHref(profile);
+        String sharedKey = null;
+        // The shared key this call must either fill or clear, so
+        // that other documents waiting on it are released.
+        String pendingKey = null;
         ICC_Profile p = null;
-        if (href != null) {
-            String baseURI = profile.getBaseURI();
-            ParsedURL pDocURL = null;
-            if (baseURI != null) {
-                pDocURL = new ParsedURL(baseURI);
-            }
+        try {
+            if (href != null) {
+                String baseURI = profile.getBaseURI();
+                ParsedURL pDocURL = null;
+                if (baseURI != null) {
+                    pDocURL = new ParsedURL(baseURI);
+                }
 
-            ParsedURL purl = new ParsedURL(pDocURL, href);
-            if (!purl.complete()) {
-                BridgeException be = new BridgeException(ctx, paintedElement, ERR_URI_MALFORMED,
-                        new Object[] {href});
-                ctx.getUserAgent().displayError(be);
-                return null; //Don't throw. Continue without the profile
+                ParsedURL purl = new ParsedURL(pDocURL, href);
+                if (!purl.complete()) {
+                    BridgeException be = new BridgeException(ctx, paintedElement, ERR_URI_MALFORMED,
+                            new Object[] {href});
+                    ctx.getUserAgent().displayError(be);
+                    return null; //Don't throw. Continue without the profile
+                }
+                try {
+                    ctx.getUserAgent().checkLoadExternalResource(purl, pDocURL);
+
+                    // Another document may already use the same profile.
+                    sharedKey = purl.toString() + ' '
+                        + profile.getAttributeNS(null, SVG_RENDERING_INTENT_ATTRIBUTE)
+                        + ' ' + iccProfileName.toLowerCase();
+                    cs = sharedCache.request(sharedKey);
+                    if (cs != null) {
+                        cache.put(iccProfileName.toLowerCase(), cs);
+                        return cs;
+                    }
+                    pendingKey = sharedKey;
+                    p = ICC_Profile.getInstance(purl.openStream());
+                } catch (IOException ioEx) {
+                    BridgeException be = new BridgeException(ctx, paintedElement, ioEx, ERR_URI_IO,
+                                              new Object[] {href});
+                    ctx.getUserAgent().displayError(be);
+                    return null; //Don't throw. Continue without the profile
+                    // ??? IS THAT AN ERROR FOR THE SVG SPEC ???
+                } catch (SecurityException secEx) {
+                    BridgeException be = new BridgeException(ctx, paintedElement, secEx,
+                            ERR_URI_UNSECURE,
+                            new Object[] {href});
+                    ctx.getUserAgent().displayError(be);
+                    return null; //Don't throw. Continue without the profile
+                }
             }
-            try {
-                ctx.getUserAgent().checkLoadExternalResource(purl, pDocURL);
-                p = ICC_Profile.getInstance(purl.openStream());
-            } catch (IOException ioEx) {
-                BridgeException be = new BridgeException(ctx, paintedElement, ioEx, ERR_URI_IO,
-                                          new Object[] {href});
-                ctx.getUserAgent().displayError(be);
-                return null; //Don't throw. Continue without the profile
-                // ??? IS THAT AN ERROR FOR THE SVG SPEC ???
-            } catch (SecurityException secEx) {
-                BridgeException be = new BridgeException(ctx, paintedElement, secEx,
-                        ERR_URI_UNSECURE,
-                        new Object[] {href});
-                ctx.getUserAgent().displayError(be);
-                return null; //Don't throw. Continue without the profile
+            if (p == null) {
+                return null;
             }
-        }
-        if (p == null) {
-            return null;
-        }
 
-        // Extract the rendering intent from profile element
-        RenderingIntent intent = convertIntent(profile, ctx);
-        cs = new ICCColorSpaceWithIntent(p, intent, href, iccProfileName);
+            // Extract the rendering intent from profile element
+            RenderingIntent intent = convertIntent(profile, ctx);
+            cs = new ICCColorSpaceWithIntent(p, intent, href, iccProfileName);
 
-        // Add profile to cache
-        cache.put(iccProfileName.toLowerCase(), cs);
-        return cs;
+            // Add profile to caches
+            cache.put(iccProfileName.toLowerCase(), cs);
+            sharedCache.put(sharedKey, cs);
+            pendingKey = null;
+            return cs;
+        } finally {
+            if (pendingKey != null) {
+                sharedCache.clear(pendingKey);
+            }
+        }
     }
 
     private static RenderingIntent convertIntent(Element profile, BridgeContext ctx) {
@@ -221,6 +221,19 @@ public class SVGFilterElementBridge extends AnimatableGenericSVGBridge
                                           Map filterNodeMap,
                                           BridgeContext ctx) {
 
+        if (FilterPrimitiveGraph.OPTIMIZE) {
+            FilterPrimitiveGraph graph
+                = FilterPrimitiveGraph.build(filterElement, ctx);
+            if (graph != null) {
+                return graph.createFilter(ctx,
+                                          filteredElement,
+                                          filteredNode,
+                                          in,
+                                          filterRegion,
+                                          filterNodeMap);
+            }
+        }
+
         for (Node n = filterElement.getFirstChild();
              n != null;
              n = n.getNextSibling()) {
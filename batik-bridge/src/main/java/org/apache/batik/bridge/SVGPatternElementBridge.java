@@ -23,8 +23,12 @@ import java.awt.Paint;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.batik.anim.dom.SVGOMDocument;
 import org.apache.batik.dom.util.XLinkSupport;
@@ -35,6 +39,8 @@ import org.apache.batik.gvt.AbstractGraphicsNode;
 import org.apache.batik.gvt.RootGraphicsNode;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.gvt.PatternPaint;
+import org.apache.batik.gvt.event.GraphicsNodeChangeAdapter;
+import org.apache.batik.gvt.event.GraphicsNodeChangeEvent;
 import org.apache.batik.util.ParsedURL;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -77,17 +83,19 @@ public class SVGPatternElementBridge extends AnimatableGenericSVGBridge
 
 
         // extract pattern content
-        RootGraphicsNode patternContentNode;
-        patternContentNode = (RootGraphicsNode)
-            ctx.getElementData(patternElement);
-
-        if (patternContentNode == null) {
-            patternContentNode = extractPatternContent(patternElement, ctx);
-            ctx.setElementData(patternElement, patternContentNode);
-        }
-        if (patternContentNode == null) {
-            return null; // no content means no paint
+        PatternContent content;
+        content = (PatternContent)ctx.getElementData(patternElement);
+
+        if (content == null) {
+            RootGraphicsNode patternContentNode
+                = extractPatternContent(patternElement, ctx);
+            if (patternContentNode == null) {
+                return null; // no content means no paint
+            }
+            content = new PatternContent(patternContentNode);
+            ctx.setElementData(patternElement, content);
         }
+        RootGraphicsNode patternContentNode = content.getNode();
 
         // get pattern region using 'patternUnits'. Pattern region is
         // in tile pace.
@@ -196,6 +204,16 @@ public class SVGPatternElementBridge extends AnimatableGenericSVGBridge
             }
         }
 
+        // Elements painted with the same pattern in the same way share
+        // the paint, and so its rendering of the pattern tile.
+        List key = Arrays.asList(new Object[] {
+            patternRegion, patternContentTransform, patternTransform,
+            Boolean.valueOf(overflowIsHidden), Float.valueOf(opacity) });
+        PatternPaint paint = content.getPaint(key);
+        if (paint != null) {
+            return paint;
+        }
+
         //
         // Apply transform
         //
@@ -218,13 +236,61 @@ public class SVGPatternElementBridge extends AnimatableGenericSVGBridge
             gn.setFilter(filter);
         }
 
-        
+        paint = new PatternPaint(gn,
+                                 patternRegion,
+                                 !overflowIsHidden,
+                                 patternTransform);
+        content.putPaint(key, paint);
+        return paint;
+    }
+
+    /**
+     * The content of a pattern element, along with the paints created
+     * from it.  The paints are dropped when the content changes.
+     */
+    protected static class PatternContent extends GraphicsNodeChangeAdapter {
+
+        /**
+         * The maximum number of paints kept per pattern.
+         */
+        protected static final int MAX_PAINTS = 16;
+
+        protected RootGraphicsNode node;
 
-        return new PatternPaint(gn,
-                                patternRegion,
-                                !overflowIsHidden,
-                                patternTransform);
+        /**
+         * The paints, in least recently used order.
+         */
+        protected Map paints = new LinkedHashMap(16, 0.75f, true);
 
+        public PatternContent(RootGraphicsNode node) {
+            this.node = node;
+            node.addTreeGraphicsNodeChangeListener(this);
+        }
+
+        public RootGraphicsNode getNode() {
+            return node;
+        }
+
+        public synchronized PatternPaint getPaint(Object key) {
+            return (PatternPaint)paints.get(key);
+        }
+
+        public synchronized void putPaint(Object key, PatternPaint paint) {
+            paints.put(key, paint);
+            if (paints.size() > MAX_PAINTS) {
+                Iterator i = paints.values().iterator();
+                i.next();
+                i.remove();
+            }
+        }
+
+        public synchronized void changeCompleted(GraphicsNodeChangeEvent gnce) {
+            Iterator i = paints.values().iterator();
+            while (i.hasNext()) {
+                ((PatternPaint)i.next()).clearCache();
+            }
+            paints.clear();
+        }
     }
 
     /**
@@ -40,8 +40,10 @@ import java.awt.geom.Dimension2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -474,6 +476,7 @@ public class SVGSVGElementBridge
             if (ancestors == null)
                 end = null;
         }
+        Map candidates = new HashMap();
         while (curr != null) {
             String nsURI = curr.getNamespaceURI();
             String tag = curr.getLocalName();
@@ -493,12 +496,16 @@ public class SVGSVGElementBridge
                 continue;
             }
 
-
-            AffineTransform at = gn.getGlobalTransform();
-            Rectangle2D gnBounds = gn.getSensitiveBounds();
-            at.preConcatenate(ati);
-            if (gnBounds != null)
-                gnBounds = at.createTransformedShape(gnBounds).getBounds2D();
+            Set siblings = (Set)candidates.get(gn.getParent());
+            AffineTransform at = null;
+            Rectangle2D gnBounds = null;
+            if ((siblings == null) || siblings.contains(gn)) {
+                at = gn.getGlobalTransform();
+                gnBounds = gn.getSensitiveBounds();
+                at.preConcatenate(ati);
+                if (gnBounds != null)
+                    gnBounds = at.createTransformedShape(gnBounds).getBounds2D();
+            }
 
             if ((gnBounds == null) ||
                 (!rect.intersects(gnBounds))) {
@@ -522,6 +529,9 @@ public class SVGSVGElementBridge
                     next = next.getNextSibling();
                 }
                 if (next != null) {
+                    Set children = getCandidateChildren(gn, at, rect);
+                    if (children != null)
+                        candidates.put(gn, children);
                     curr = (Element)next;
                     continue;
                 }
@@ -609,6 +619,7 @@ public class SVGSVGElementBridge
             if (ancestors == null)
                 end = null;
         }
+        Map candidates = new HashMap();
 
         while (curr != null) {
             String nsURI = curr.getNamespaceURI();
@@ -629,12 +640,16 @@ public class SVGSVGElementBridge
                 continue;
             }
 
-
-            AffineTransform at = gn.getGlobalTransform();
-            Rectangle2D gnBounds = gn.getSensitiveBounds();
-            at.preConcatenate(ati);
-            if (gnBounds != null)
-                gnBounds = at.createTransformedShape(gnBounds).getBounds2D();
+            Set siblings = (Set)candidates.get(gn.getParent());
+            AffineTransform at = null;
+            Rectangle2D gnBounds = null;
+            if ((siblings == null) || siblings.contains(gn)) {
+                at = gn.getGlobalTransform();
+                gnBounds = gn.getSensitiveBounds();
+                at.preConcatenate(ati);
+                if (gnBounds != null)
+                    gnBounds = at.createTransformedShape(gnBounds).getBounds2D();
+            }
 
             if ((gnBounds == null) ||
                 (!rect.intersects(gnBounds))) {
@@ -657,6 +672,9 @@ public class SVGSVGElementBridge
                     next = next.getNextSibling();
                 }
                 if (next != null) {
+                    Set children = getCandidateChildren(gn, at, rect);
+                    if (children != null)
+                        candidates.put(gn, children);
                     curr = (Element)next;
                     continue;
                 }
@@ -809,6 +827,32 @@ public class SVGSVGElementBridge
         return false;
     }
 
+    /**
+     * Returns the set of the children of <code>gn</code> whose bounds
+     * may intersect <code>rect</code>, or null if they all may.
+     * @param at the transform from the user space of <code>gn</code>
+     *        to the one of <code>rect</code>.
+     */
+    protected Set getCandidateChildren(GraphicsNode gn, AffineTransform at,
+                                       Rectangle2D rect) {
+        if (!(gn instanceof CompositeGraphicsNode))
+            return null;
+        // Bounding boxes only map to bounding boxes without rotation.
+        if ((at.getShearX() != 0) || (at.getShearY() != 0))
+            return null;
+        Rectangle2D r;
+        try {
+            r = at.createInverse().createTransformedShape(rect).getBounds2D();
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+        CompositeGraphicsNode cgn = (CompositeGraphicsNode)gn;
+        List children = cgn.getSensitiveChildren(r);
+        if (children.size() == cgn.size())
+            return null;
+        return new HashSet(children);
+    }
+
     protected Set getAncestors(Element end, Element base) {
         Set ret = new HashSet();
         Element p = end;
@@ -23,6 +23,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 
 import org.apache.batik.dom.util.XLinkSupport;
+import org.apache.batik.ext.awt.geom.PathLength;
 import org.apache.batik.gvt.text.TextPath;
 import org.apache.batik.parser.AWTPathProducer;
 import org.apache.batik.parser.ParseException;
@@ -78,43 +79,63 @@ public class SVGTextPathElementBridge extends AnimatableGenericSVGBridge
                                       new Object[] {uri});
         }
 
-        // construct a shape for the referenced path element
-        String s = pathElement.getAttributeNS(null, SVG_D_ATTRIBUTE);
-        Shape pathShape = null;
-        if (s.length() != 0) {
-            AWTPathProducer app = new AWTPathProducer();
-            app.setWindingRule(CSSUtilities.convertFillRule(pathElement));
-            try {
-                PathParser pathParser = new PathParser();
-                pathParser.setPathHandler(app);
-                pathParser.parse(s);
-            } catch (ParseException pEx ) {
-               throw new BridgeException
-                   (ctx, pathElement, pEx, ERR_ATTRIBUTE_VALUE_MALFORMED,
-                    new Object[] {SVG_D_ATTRIBUTE});
-            } finally {
-                pathShape = app.getShape();
+        // The referenced path is flattened and measured once, and
+        // shared by the text paths using it while it is unchanged.
+        String d = pathElement.getAttributeNS(null, SVG_D_ATTRIBUTE);
+        String transform =
+            pathElement.getAttributeNS(null, SVG_TRANSFORM_ATTRIBUTE);
+        PathLength pl = null;
+        Object data = ctx.getElementData(pathElement);
+        if (data instanceof MeasuredPath) {
+            MeasuredPath mp = (MeasuredPath)data;
+            if (mp.d.equals(d) && mp.transform.equals(transform)) {
+                pl = mp.pathLength;
             }
-        } else {
-            throw new BridgeException(ctx, pathElement, ERR_ATTRIBUTE_MISSING,
-                                      new Object[] {SVG_D_ATTRIBUTE});
         }
 
-        // if the reference path element has a transform apply the transform
-        // to the path shape
-        s = pathElement.getAttributeNS(null, SVG_TRANSFORM_ATTRIBUTE);
-        if (s.length() != 0) {
-            AffineTransform tr =
-                SVGUtilities.convertTransform(pathElement,
-                                              SVG_TRANSFORM_ATTRIBUTE, s, ctx);
-            pathShape = tr.createTransformedShape(pathShape);
+        if (pl == null) {
+            // construct a shape for the referenced path element
+            Shape pathShape = null;
+            if (d.length() != 0) {
+                AWTPathProducer app = new AWTPathProducer();
+                app.setWindingRule(CSSUtilities.convertFillRule(pathElement));
+                try {
+                    PathParser pathParser = new PathParser();
+                    pathParser.setPathHandler(app);
+                    pathParser.parse(d);
+                } catch (ParseException pEx ) {
+                   throw new BridgeException
+                       (ctx, pathElement, pEx, ERR_ATTRIBUTE_VALUE_MALFORMED,
+                        new Object[] {SVG_D_ATTRIBUTE});
+                } finally {
+                    pathShape = app.getShape();
+                }
+            } else {
+                throw new BridgeException(ctx, pathElement,
+                                          ERR_ATTRIBUTE_MISSING,
+                                          new Object[] {SVG_D_ATTRIBUTE});
+            }
+
+            // if the reference path element has a transform apply the
+            // transform to the path shape
+            if (transform.length() != 0) {
+                AffineTransform tr =
+                    SVGUtilities.convertTransform
+                    (pathElement, SVG_TRANSFORM_ATTRIBUTE, transform, ctx);
+                pathShape = tr.createTransformedShape(pathShape);
+            }
+
+            pl = new PathLength(new GeneralPath(pathShape));
+            ctx.setElementData(pathElement,
+                               new MeasuredPath(d, transform, pl));
         }
 
         // create the TextPath object that we are going to return
-        TextPath textPath = new TextPath(new GeneralPath(pathShape));
+        TextPath textPath = new TextPath(pl);
 
         // set the start offset if specified
-        s = textPathElement.getAttributeNS(null, SVG_START_OFFSET_ATTRIBUTE);
+        String s =
+            textPathElement.getAttributeNS(null, SVG_START_OFFSET_ATTRIBUTE);
         if (s.length() > 0) {
             float startOffset = 0;
             int percentIndex = s.indexOf('%');
@@ -142,4 +163,21 @@ public class SVGTextPathElementBridge extends AnimatableGenericSVGBridge
 
         return textPath;
     }
+
+    /**
+     * The measure of a path element, along with the attributes it was
+     * computed from.
+     */
+    protected static class MeasuredPath {
+        protected String d;
+        protected String transform;
+        protected PathLength pathLength;
+
+        public MeasuredPath(String d, String transform,
+                            PathLength pathLength) {
+            this.d = d;
+            this.transform = transform;
+            this.pathLength = pathLength;
+        }
+    }
 }
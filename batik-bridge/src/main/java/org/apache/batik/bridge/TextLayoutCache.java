@@ -0,0 +1,356 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.text.AttributedCharacterIterator;
+import java.text.CharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.batik.gvt.font.AWTGVTFont;
+import org.apache.batik.gvt.font.GVTLineMetrics;
+import org.apache.batik.gvt.text.ArabicTextHandler;
+import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
+
+/**
+ * Shares the glyph layouts of text runs between all the documents.  A
+ * <code>GlyphLayout</code> is laid out once for given characters, font,
+ * layout attributes (positions, rotations, baseline shifts, spacing,
+ * orientation) and text path or not, and an immutable snapshot of its
+ * glyphs is kept.  The next run with the same key gets a new layout
+ * built from the snapshot, which it adjusts (chunk offsets, text
+ * length, text path) without affecting the snapshot.  Explicit
+ * positions are compared relative to the one of the first character,
+ * as the layout uses them, so that a label placed elsewhere shares the
+ * layout too.
+ * <p>
+ * Only runs in AWT fonts are shared.  SVG fonts and alternate glyphs
+ * belong to a single document, and Arabic runs get their glyphs from
+ * substituted characters.
+ *
+ * @version $Id$
+ */
+public final class TextLayoutCache {
+
+    /**
+     * The maximum number of snapshots kept.
+     */
+    static final int MAX_ENTRIES = 1024;
+
+    /**
+     * The attributes the layout of a run reads at its first character,
+     * besides its font.
+     */
+    private static final AttributedCharacterIterator.Attribute [] ATTRIBUTES
+        = { GVTAttributedCharacterIterator.TextAttribute.WRITING_MODE,
+            GVTAttributedCharacterIterator.TextAttribute.VERTICAL_ORIENTATION,
+            GVTAttributedCharacterIterator.TextAttribute
+                .VERTICAL_ORIENTATION_ANGLE,
+            GVTAttributedCharacterIterator.TextAttribute
+                .HORIZONTAL_ORIENTATION_ANGLE,
+            GVTAttributedCharacterIterator.TextAttribute.CUSTOM_SPACING,
+            GVTAttributedCharacterIterator.TextAttribute.KERNING,
+            GVTAttributedCharacterIterator.TextAttribute.LETTER_SPACING,
+            GVTAttributedCharacterIterator.TextAttribute.WORD_SPACING };
+
+    /**
+     * The attributes the layout of a run reads for each of its
+     * characters, as in <code>GlyphLayout.runAtts</code>.
+     */
+    private static final AttributedCharacterIterator.Attribute []
+        RUN_ATTRIBUTES
+        = { GVTAttributedCharacterIterator.TextAttribute.X,
+            GVTAttributedCharacterIterator.TextAttribute.Y,
+            GVTAttributedCharacterIterator.TextAttribute.DX,
+            GVTAttributedCharacterIterator.TextAttribute.DY,
+            GVTAttributedCharacterIterator.TextAttribute.ROTATION,
+            GVTAttributedCharacterIterator.TextAttribute.BASELINE_SHIFT };
+
+    private static final Set runAttributeSet
+        = new HashSet(Arrays.asList(RUN_ATTRIBUTES));
+
+    /**
+     * The snapshots, by <code>Key</code>, least recently used first.
+     */
+    private static final Map snapshots
+        = new LinkedHashMap(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry e) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private static long hits;
+
+    private static long misses;
+
+    /**
+     * No instances.
+     */
+    private TextLayoutCache() {
+    }
+
+    /**
+     * Returns the layout of a text run, built from a shared snapshot
+     * when there is one.
+     * @param aci the run, with its font and layout attributes.
+     * @param charMap how the characters of <code>aci</code> map to the
+     *        characters of the text.
+     * @param offset where the run is laid out.
+     * @param frc the font render context of the glyphs.
+     */
+    public static TextSpanLayout createLayout(AttributedCharacterIterator aci,
+                                              int [] charMap,
+                                              Point2D offset,
+                                              FontRenderContext frc) {
+        Key key = createKey(aci, charMap, offset, frc);
+        if (key == null)
+            return new GlyphLayout(aci, charMap, offset, frc);
+
+        Snapshot s;
+        synchronized (snapshots) {
+            s = (Snapshot)snapshots.get(key);
+            if (s != null)
+                hits++;
+            else
+                misses++;
+        }
+        if (s != null)
+            return new GlyphLayout(aci, charMap, offset, frc, s);
+
+        GlyphLayout layout = new GlyphLayout(aci, charMap, offset, frc);
+        s = layout.createSnapshot();
+        synchronized (snapshots) {
+            snapshots.put(key, s);
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the key of a run, or null if its layout is not shared.
+     */
+    private static Key createKey(AttributedCharacterIterator aci,
+                                 int [] charMap,
+                                 Point2D offset,
+                                 FontRenderContext frc) {
+        int begin = aci.getBeginIndex();
+        int end = aci.getEndIndex();
+        if ((begin == end) || (charMap == null))
+            return null;
+
+        aci.first();
+        Object font = aci.getAttribute
+            (GVTAttributedCharacterIterator.TextAttribute.GVT_FONT);
+        if ((font == null) || (font.getClass() != AWTGVTFont.class))
+            return null;
+        if (aci.getAttribute(GVTAttributedCharacterIterator.TextAttribute
+                             .ALT_GLYPH_HANDLER) != null)
+            return null;
+
+        List values = new ArrayList();
+        values.add(font);
+        for (int j=0; j < ATTRIBUTES.length; j++)
+            values.add(aci.getAttribute(ATTRIBUTES[j]));
+        // The path is only followed once the run is laid out, as on any
+        // other path.
+        values.add(Boolean.valueOf
+                   (aci.getAttribute(GVTAttributedCharacterIterator
+                                     .TextAttribute.TEXTPATH) != null));
+
+        // Explicit positions are taken relative to the first one, so
+        // that runs at different places share their layout.
+        float shiftX = getShift
+            (aci.getAttribute(GVTAttributedCharacterIterator.TextAttribute.X),
+             offset.getX());
+        float shiftY = getShift
+            (aci.getAttribute(GVTAttributedCharacterIterator.TextAttribute.Y),
+             offset.getY());
+
+        char [] chars = new char[end-begin];
+        int i = 0;
+        for (char c = aci.first(); c != CharacterIterator.DONE;
+             c = aci.next()) {
+            if (ArabicTextHandler.arabicChar(c))
+                return null;
+            chars[i++] = c;
+        }
+
+        int index = begin;
+        while (index < end) {
+            aci.setIndex(index);
+            int limit = aci.getRunLimit(runAttributeSet);
+            values.add(Integer.valueOf(limit - index));
+            values.add(shift((Float)aci.getAttribute(RUN_ATTRIBUTES[0]),
+                             shiftX));
+            values.add(shift((Float)aci.getAttribute(RUN_ATTRIBUTES[1]),
+                             shiftY));
+            for (int j=2; j < RUN_ATTRIBUTES.length; j++)
+                values.add(aci.getAttribute(RUN_ATTRIBUTES[j]));
+            index = limit;
+        }
+        aci.first();
+        return new Key(new String(chars), charMap, offset, frc,
+                       values.toArray());
+    }
+
+    /**
+     * Returns how much <code>GlyphLayout</code> moves explicit positions
+     * given the one of the first character, or NaN if they stay.
+     */
+    private static float getShift(Object first, double offset) {
+        if ((first == null) || ((Float)first).isNaN())
+            return Float.NaN;
+        return (float)(((Float)first).floatValue() - offset);
+    }
+
+    /**
+     * Returns an explicit position moved as <code>GlyphLayout</code>
+     * moves it.
+     */
+    private static Float shift(Float pos, float shift) {
+        if ((pos == null) || pos.isNaN() || Float.isNaN(shift))
+            return pos;
+        return Float.valueOf(pos.floatValue() - shift);
+    }
+
+    /**
+     * Returns the number of run layouts currently shared.
+     */
+    public static int getSize() {
+        synchronized (snapshots) {
+            return snapshots.size();
+        }
+    }
+
+    /**
+     * Returns the number of runs laid out from a shared snapshot.
+     */
+    public static long getHits() {
+        synchronized (snapshots) {
+            return hits;
+        }
+    }
+
+    /**
+     * Returns the number of shareable runs that had to be laid out.
+     */
+    public static long getMisses() {
+        synchronized (snapshots) {
+            return misses;
+        }
+    }
+
+    /**
+     * Drops the shared layouts and resets their counts.
+     */
+    public static void clear() {
+        synchronized (snapshots) {
+            snapshots.clear();
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    /**
+     * The glyphs of a laid out run: what <code>GlyphLayout</code> needs
+     * to place them again in a new glyph vector.  The arrays are never
+     * modified once the snapshot is built.
+     */
+    static final class Snapshot {
+        final GVTLineMetrics metrics;
+        final int [] glyphCodes;
+
+        /**
+         * The positions of the glyphs and of the point after the last
+         * one, as x, y pairs.
+         */
+        final float [] positions;
+        final AffineTransform [] transforms;
+        final boolean [] visible;
+        final Point2D advance;
+        final boolean layoutApplied;
+
+        Snapshot(GVTLineMetrics metrics, int [] glyphCodes,
+                 float [] positions, AffineTransform [] transforms,
+                 boolean [] visible, Point2D advance,
+                 boolean layoutApplied) {
+            this.metrics = metrics;
+            this.glyphCodes = glyphCodes;
+            this.positions = positions;
+            this.transforms = transforms;
+            this.visible = visible;
+            this.advance = advance;
+            this.layoutApplied = layoutApplied;
+        }
+    }
+
+    /**
+     * The characters, font and layout attributes of a run.
+     */
+    private static class Key {
+        final String text;
+        final int [] charMap;
+        final double x, y;
+        final FontRenderContext frc;
+        final Object [] values;
+        final int hash;
+
+        Key(String text, int [] charMap, Point2D offset,
+            FontRenderContext frc, Object [] values) {
+            this.text = text;
+            this.charMap = (int [])charMap.clone();
+            this.x = offset.getX();
+            this.y = offset.getY();
+            this.frc = frc;
+            this.values = values;
+            int h = text.hashCode();
+            h = h * 31 + Arrays.hashCode(this.charMap);
+            long bits = Double.doubleToLongBits(x) * 31
+                + Double.doubleToLongBits(y);
+            h = h * 31 + (int)(bits ^ (bits >>> 32));
+            h = h * 31 + frc.hashCode();
+            this.hash = h * 31 + Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return (hash == k.hash) && text.equals(k.text) &&
+                (Double.doubleToLongBits(x) ==
+                 Double.doubleToLongBits(k.x)) &&
+                (Double.doubleToLongBits(y) ==
+                 Double.doubleToLongBits(k.y)) &&
+                Arrays.equals(charMap, k.charMap) &&
+                frc.equals(k.frc) &&
+                Arrays.equals(values, k.values);
+        }
+    }
+}
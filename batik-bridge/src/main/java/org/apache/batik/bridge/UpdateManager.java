@@ -34,6 +34,7 @@ import org.apache.batik.bridge.svg12.DefaultXBLManager;
 import org.apache.batik.bridge.svg12.SVG12BridgeContext;
 import org.apache.batik.bridge.svg12.SVG12ScriptingEnvironment;
 import org.apache.batik.dom.events.AbstractEvent;
+import org.apache.batik.ext.awt.geom.RectListManager;
 import org.apache.batik.gvt.GraphicsNode;
 import org.apache.batik.gvt.RootGraphicsNode;
 import org.apache.batik.gvt.UpdateTracker;
@@ -494,7 +495,19 @@ public class UpdateManager  {
     }
 
     /**
-     * Updates the rendering buffer.
+     * The areas <code>repaint</code> and <code>forceRepaint</code> pass
+     * to <code>updateRendering</code>, a copy of them, and the device
+     * space regions they cover.
+     */
+    private List trackedAreas;
+    private List trackedAreasCopy;
+    private RectListManager trackedRegions;
+
+    /**
+     * Updates the rendering buffer.  The dirty regions of the update
+     * tracker go through this method too, as their areas in renderer
+     * space; when they are passed on unchanged, the device space
+     * regions they come from are repainted as is.
      * @param areas List of areas of interest in rederer space units.
      * @param clearPaintingTransform Indicates if the painting transform
      *        should be cleared as a result of this update.
@@ -506,7 +519,12 @@ public class UpdateManager  {
                 (this, repaintManager.getOffScreen(), null);
             fireEvent(updateStartedDispatcher, ev);
 
-            Collection c = repaintManager.updateRendering(areas);
+            Collection c;
+            if ((areas == trackedAreas) && areas.equals(trackedAreasCopy))
+                c = repaintManager.updateRendering
+                    (trackedRegions, updateTracker.getOverdrawTolerance());
+            else
+                c = repaintManager.updateRendering(areas);
             List l = new ArrayList(c);
 
             ev = new UpdateManagerEvent
@@ -525,6 +543,28 @@ public class UpdateManager  {
         }
     }
 
+    /**
+     * Repaints the dirty regions of the update tracker, through
+     * <code>updateRendering(List, boolean)</code>.
+     */
+    private void updateTrackedRendering() {
+        RectListManager rlm = repaintManager.getDirtyRegions(updateTracker);
+        updateTracker.clear();
+        if (rlm == null)
+            return;
+
+        trackedAreas = repaintManager.getAreas(rlm);
+        trackedAreasCopy = new ArrayList(trackedAreas);
+        trackedRegions = rlm;
+        try {
+            updateRendering(trackedAreas, false);
+        } finally {
+            trackedAreas = null;
+            trackedAreasCopy = null;
+            trackedRegions = null;
+        }
+    }
+
     /**
      * This tracks when the rendering first got 'out of date'
      * with respect to the document.
@@ -566,11 +606,7 @@ public class UpdateManager  {
             }
         }
 
-        List dirtyAreas = updateTracker.getDirtyAreas();
-        updateTracker.clear();
-        if (dirtyAreas != null) {
-            updateRendering(dirtyAreas, false);
-        }
+        updateTrackedRendering();
         outOfDateTime = 0;
     }
 
@@ -594,11 +630,7 @@ public class UpdateManager  {
             return;
         }
 
-        List dirtyAreas = updateTracker.getDirtyAreas();
-        updateTracker.clear();
-        if (dirtyAreas != null) {
-            updateRendering(dirtyAreas, false);
-        }
+        updateTrackedRendering();
         outOfDateTime = 0;
     }
 
@@ -0,0 +1,277 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.PadMode;
+import org.apache.batik.ext.awt.image.renderable.Filter;
+import org.apache.batik.ext.awt.image.renderable.FilterChainRable8Bit;
+import org.apache.batik.ext.awt.image.renderable.PadRable8Bit;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.util.SVGConstants;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that filters built through <code>FilterPrimitiveGraph</code>
+ * render the same pixels, and report the same errors, as filters
+ * built primitive by primitive.  The filters are built through the
+ * graph by a filter bridge of the test, whatever the
+ * <code>org.apache.batik.bridge.filter.optimize</code> property.
+ */
+public class FilterPrimitiveGraphTestCases {
+
+    static final String HEAD
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='60' height='60'>"
+        + "<filter id='f' x='-20%' y='-20%' width='140%' height='140%'>";
+
+    static final String TAIL
+        = "</filter>"
+        + "<rect x='10' y='10' width='40' height='30' fill='#4080c0'"
+        + " stroke='#c04000' stroke-width='3' filter='url(#f)'/>"
+        + "</svg>";
+
+    @Test
+    public void testSharedResult() throws Exception {
+        assertSameRendering
+            ("<feGaussianBlur in='SourceAlpha' stdDeviation='2'"
+             + " result='blur'/>"
+             + "<feOffset in='blur' dx='3' dy='3' result='shadow'/>"
+             + "<feComposite in='SourceGraphic' in2='blur'"
+             + " operator='out' result='rim'/>"
+             + "<feMerge><feMergeNode in='shadow'/><feMergeNode in='rim'/>"
+             + "<feMergeNode in='SourceGraphic'/></feMerge>");
+    }
+
+    /**
+     * The lighting example of the specification: the blur and
+     * SourceAlpha are each used by two primitives.
+     */
+    @Test
+    public void testSharedLighting() throws Exception {
+        assertSameDocumentRendering
+            ("<svg xmlns='http://www.w3.org/2000/svg'"
+             + " width='200' height='200'>"
+             + "<filter id='f' filterUnits='userSpaceOnUse'"
+             + " x='-50' y='-50' width='200' height='120'>"
+             + "<feGaussianBlur in='SourceAlpha' stdDeviation='4'"
+             + " result='blur'/>"
+             + "<feOffset in='blur' dx='4' dy='4' result='offsetBlur'/>"
+             + "<feSpecularLighting in='blur' surfaceScale='5'"
+             + " specularConstant='.75' specularExponent='20'"
+             + " lighting-color='#bbbbbb' result='specOut'>"
+             + "<fePointLight x='-5000' y='-10000' z='20000'/>"
+             + "</feSpecularLighting>"
+             + "<feComposite in='specOut' in2='SourceAlpha' operator='in'"
+             + " result='specOut'/>"
+             + "<feComposite in='SourceGraphic' in2='specOut'"
+             + " operator='arithmetic' k1='0' k2='1' k3='1' k4='0'"
+             + " result='litPaint'/>"
+             + "<feMerge><feMergeNode in='offsetBlur'/>"
+             + "<feMergeNode in='litPaint'/></feMerge>"
+             + "</filter>"
+             + "<g filter='url(#f)' transform='translate(60, 60)'>"
+             + "<path d='M0,20 c20,-50 20,50 40,0 s20,50 40,0 s20,50 40,0'"
+             + " fill='none' stroke='#ffcc00' stroke-width='12'/>"
+             + "</g></svg>");
+    }
+
+    @Test
+    public void testIdentities() throws Exception {
+        assertSameRendering
+            ("<feOffset dx='0' dy='0' result='a'/>"
+             + "<feColorMatrix in='a' type='matrix'"
+             + " values='1 0 0 0 0 0 1 0 0 0 0 0 1 0 0 0 0 0 1 0'/>"
+             + "<feComponentTransfer/>"
+             + "<feMerge><feMergeNode/></feMerge>");
+    }
+
+    @Test
+    public void testDuplicates() throws Exception {
+        assertSameRendering
+            ("<feGaussianBlur stdDeviation='1.5' result='a'/>"
+             + "<feGaussianBlur in='SourceGraphic' stdDeviation='1.5'"
+             + " result='b'/>"
+             + "<feComposite in='a' in2='b' operator='arithmetic'"
+             + " k2='0.5' k3='0.5'/>");
+    }
+
+    @Test
+    public void testUnusedPrimitive() throws Exception {
+        assertSameRendering
+            ("<feFlood flood-color='red' result='unused'/>"
+             + "<feOffset in='SourceGraphic' dx='2' dy='1'/>");
+    }
+
+    @Test
+    public void testUnusedPrimitiveError() throws Exception {
+        String body = "<feGaussianBlur stdDeviation='-1' result='unused'/>"
+            + "<feOffset in='SourceGraphic' dx='2' dy='1'/>";
+        assertBridgeException(body, false);
+        assertBridgeException(body, true);
+    }
+
+    @Test
+    public void testToString() throws Exception {
+        Document doc = parse
+            (HEAD + "<feFlood flood-color='red' result='unused'/>"
+             + "<feGaussianBlur in='SourceAlpha' stdDeviation='2'"
+             + " result='blur'/>"
+             + "<feOffset in='blur' dx='0' dy='0' result='same'/>"
+             + "<feComposite in='same' in2='blur' operator='over'/>" + TAIL);
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        new GVTBuilder().build(ctx, doc);
+        FilterPrimitiveGraph graph = FilterPrimitiveGraph.build
+            (doc.getElementById("f"), ctx);
+        ctx.dispose();
+        assertNotNull(graph);
+        String s = graph.toString();
+        assertTrue(s, s.startsWith("filter \"f\":"));
+        assertTrue(s, s.indexOf("feFlood result=\"unused\" [dead]") != -1);
+        assertTrue(s, s.indexOf("feGaussianBlur result=\"blur\""
+                                + " in=#2 [shared by 2]") != -1);
+        assertTrue(s, s.indexOf("feOffset result=\"same\" in=#1"
+                                + " [same as #1]") != -1);
+        assertTrue(s, s.indexOf("feComposite in=#1,#1") != -1);
+    }
+
+    /**
+     * Renders the filter built both ways and compares the pixels.
+     */
+    static void assertSameRendering(String body) throws IOException {
+        assertSameDocumentRendering(HEAD + body + TAIL);
+    }
+
+    static void assertSameDocumentRendering(String svg) throws IOException {
+        BufferedImage plain = render(svg, false);
+        BufferedImage optimized = render(svg, true);
+        for (int y = 0; y < plain.getHeight(); y++) {
+            for (int x = 0; x < plain.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y,
+                             Integer.toHexString(plain.getRGB(x, y)),
+                             Integer.toHexString(optimized.getRGB(x, y)));
+            }
+        }
+    }
+
+    static void assertBridgeException(String body, boolean optimize)
+        throws IOException {
+        try {
+            render(HEAD + body + TAIL, optimize);
+            fail("no error reported, optimize=" + optimize);
+        } catch (BridgeException be) {
+        }
+    }
+
+    static BufferedImage render(String svg, boolean optimize)
+        throws IOException {
+        Document doc = parse(svg);
+        BridgeContext ctx = optimize
+            ? new OptimizingBridgeContext()
+            : new BridgeContext(new UserAgentAdapter());
+        GraphicsNode gn = new GVTBuilder().build(ctx, doc);
+
+        BufferedImage img
+            = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        gn.paint(g);
+        g.dispose();
+        ctx.dispose();
+        return img;
+    }
+
+    static Document parse(String svg) throws IOException {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        return f.createDocument("http://example.org/filter.svg",
+                                new StringReader(svg));
+    }
+
+    /**
+     * A bridge context whose filters are built through a
+     * <code>FilterPrimitiveGraph</code>.
+     */
+    static class OptimizingBridgeContext extends BridgeContext {
+
+        OptimizingBridgeContext() {
+            super(new UserAgentAdapter());
+        }
+
+        public void registerSVGBridges() {
+            super.registerSVGBridges();
+            putBridge(new OptimizingFilterElementBridge());
+        }
+    }
+
+    /**
+     * Builds filters as <code>SVGFilterElementBridge</code> does, but
+     * always through a <code>FilterPrimitiveGraph</code>.
+     */
+    static class OptimizingFilterElementBridge extends SVGFilterElementBridge {
+
+        public Filter createFilter(BridgeContext ctx,
+                                   Element filterElement,
+                                   Element filteredElement,
+                                   GraphicsNode filteredNode) {
+            Rectangle2D filterRegion = SVGUtilities.convertFilterChainRegion
+                (filterElement, filteredElement, filteredNode, ctx);
+            Filter sourceGraphic = new PadRable8Bit
+                (filteredNode.getGraphicsNodeRable(true), filterRegion,
+                 PadMode.ZERO_PAD);
+            Map filterNodeMap = new HashMap();
+            filterNodeMap.put(SVGConstants.SVG_SOURCE_GRAPHIC_VALUE,
+                              sourceGraphic);
+
+            FilterPrimitiveGraph graph
+                = FilterPrimitiveGraph.build(filterElement, ctx);
+            assertNotNull("no graph", graph);
+            Filter in = graph.createFilter(ctx, filteredElement, filteredNode,
+                                           sourceGraphic, filterRegion,
+                                           filterNodeMap);
+            if (in == null) {
+                return null;
+            }
+            FilterChainRable8Bit filterChain
+                = new FilterChainRable8Bit(in, filterRegion);
+            float [] filterRes
+                = SVGUtilities.convertFilterRes(filterElement, ctx);
+            filterChain.setFilterResolutionX((int)filterRes[0]);
+            filterChain.setFilterResolutionY((int)filterRes[1]);
+            return filterChain;
+        }
+    }
+}
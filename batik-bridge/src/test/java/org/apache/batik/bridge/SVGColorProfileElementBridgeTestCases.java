@@ -0,0 +1,78 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that a profile that cannot be loaded does not stay pending in
+ * the cache shared between documents.
+ */
+public class SVGColorProfileElementBridgeTestCases {
+
+    /**
+     * A user agent counting the errors it is shown.
+     */
+    static class CountingUserAgent extends UserAgentAdapter {
+        int errors;
+
+        public void displayError(Exception e) {
+            errors++;
+        }
+    }
+
+    @Test
+    public void testMissingProfileIsCleared() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        String uri = new File(dir, "colorProfile.svg").toURI().toString();
+        String key = new File(dir, "missing.icc").toURI().toString()
+            + " auto missing";
+
+        assertEquals(1, build(uri));
+        assertFalse(SVGColorProfileElementBridge.sharedCache.isPresent(key));
+    }
+
+    static int build(String uri) throws IOException {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        Document doc = f.createDocument
+            (uri, new StringReader
+             ("<svg xmlns='http://www.w3.org/2000/svg'"
+              + " xmlns:xlink='http://www.w3.org/1999/xlink'"
+              + " width='10' height='10'>"
+              + "<color-profile name='missing' xlink:href='missing.icc'/>"
+              + "<rect width='10' height='10'"
+              + " fill='#f00 icc-color(missing, 0.5, 0.5, 0.5)'/>"
+              + "</svg>"));
+        CountingUserAgent ua = new CountingUserAgent();
+        BridgeContext ctx = new BridgeContext(ua);
+        new GVTBuilder().build(ctx, doc);
+        ctx.dispose();
+        return ua.errors;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Paint;
+import java.awt.geom.Rectangle2D;
+import java.io.StringReader;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.PatternPaint;
+import org.apache.batik.gvt.ShapeNode;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the elements filled with a pattern share its paint, until
+ * the content of the pattern changes.
+ */
+public class SVGPatternElementBridgeTestCases {
+
+    static final String SVG
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='100' height='60'>"
+        + "<pattern id='p' patternUnits='userSpaceOnUse'"
+        + " width='10' height='10'>"
+        + "<rect id='dot' x='2' y='2' width='4' height='4' fill='red'/>"
+        + "</pattern>"
+        + "<rect id='a' x='0' y='0' width='40' height='40' fill='url(#p)'/>"
+        + "<rect id='b' x='50' y='0' width='40' height='40' fill='url(#p)'/>"
+        + "</svg>";
+
+    @Test
+    public void testPaintSharedUntilContentChanges() throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        Document doc = f.createDocument("http://example.org/pattern.svg",
+                                        new StringReader(SVG));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        new GVTBuilder().build(ctx, doc);
+
+        Element pattern = doc.getElementById("p");
+        Element a = doc.getElementById("a");
+        Element b = doc.getElementById("b");
+        SVGPatternElementBridge bridge
+            = (SVGPatternElementBridge)ctx.getBridge(pattern);
+        GraphicsNode na = ctx.getGraphicsNode(a);
+        GraphicsNode nb = ctx.getGraphicsNode(b);
+
+        Paint pa = bridge.createPaint(ctx, pattern, a, na, 1);
+        Paint pb = bridge.createPaint(ctx, pattern, b, nb, 1);
+        assertTrue(pa instanceof PatternPaint);
+        assertSame(pa, pb);
+        assertNotSame(pa, bridge.createPaint(ctx, pattern, a, na, 0.5f));
+
+        // Changing the content drops the paints made from it.
+        SVGPatternElementBridge.PatternContent content
+            = (SVGPatternElementBridge.PatternContent)
+            ctx.getElementData(pattern);
+        assertNotNull(content);
+        ShapeNode dot = (ShapeNode)content.getNode().getChildren().get(0);
+        dot.setShape(new Rectangle2D.Double(1, 1, 6, 6));
+        Paint pc = bridge.createPaint(ctx, pattern, a, na, 1);
+        assertNotSame(pa, pc);
+        assertSame(pc, bridge.createPaint(ctx, pattern, b, nb, 1));
+        ctx.dispose();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.font.GVTGlyphVector;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Checks that identical text runs of different documents share their
+ * glyph layout, and that the layouts built from a shared snapshot are
+ * the ones the runs would get on their own.
+ */
+public class TextLayoutCacheTestCases {
+
+    static final String START
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='300' height='100'"
+        + " font-family='SansSerif'>";
+
+    static final String END = "</svg>";
+
+    static final String SVG_FONT
+        = "<defs><font id='f' horiz-adv-x='500'>"
+        + "<font-face font-family='Test' units-per-em='1000'/>"
+        + "<missing-glyph d='M0 0h500v500h-500z'/>"
+        + "<glyph unicode='A' d='M0 0h400v700h-400z'/>"
+        + "</font></defs>";
+
+    @Before
+    public void setUp() {
+        TextLayoutCache.clear();
+    }
+
+    /**
+     * Builds a document and returns the layout of the first run of the
+     * specified text element.
+     */
+    TextSpanLayout build(String content, String id) throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        Document doc = f.createDocument("http://example.org/text.svg",
+                                        new StringReader(START + content
+                                                         + END));
+        BridgeContext ctx = new BridgeContext(new UserAgentAdapter());
+        ctx.setDynamic(true);
+        new GVTBuilder().build(ctx, doc);
+        TextNode node = (TextNode)ctx.getGraphicsNode(doc.getElementById(id));
+        StrokingTextPainter painter
+            = (StrokingTextPainter)node.getTextPainter();
+        List runs
+            = painter.getTextRuns(node, node.getAttributedCharacterIterator());
+        TextSpanLayout layout
+            = ((StrokingTextPainter.TextRun)runs.get(0)).getLayout();
+        ctx.dispose();
+        return layout;
+    }
+
+    static float [] getPositions(TextSpanLayout layout) {
+        GVTGlyphVector gv = layout.getGlyphVector();
+        return gv.getGlyphPositions(0, gv.getNumGlyphs() + 1, null);
+    }
+
+    static void assertSamePositions(float [] expected, float [] actual,
+                                    float dx, float dy) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i += 2) {
+            assertEquals("x " + i / 2, expected[i] + dx, actual[i], 1e-3);
+            assertEquals("y " + i / 2, expected[i+1] + dy, actual[i+1], 1e-3);
+        }
+    }
+
+    @Test
+    public void testSharedAcrossDocuments() throws Exception {
+        TextSpanLayout a = build("<text id='t' x='10' y='20' font-size='14'>"
+                                 + "Shared label</text>", "t");
+        assertEquals(0, TextLayoutCache.getHits());
+        assertEquals(1, TextLayoutCache.getMisses());
+        assertEquals(1, TextLayoutCache.getSize());
+
+        // Placed elsewhere, the same label reuses the layout.
+        TextSpanLayout b = build("<text id='t' x='50' y='70' font-size='14'>"
+                                 + "Shared label</text>", "t");
+        assertEquals(1, TextLayoutCache.getHits());
+        assertEquals(1, TextLayoutCache.getMisses());
+        assertNotSame(a, b);
+        assertNotSame(a.getGlyphVector(), b.getGlyphVector());
+        assertSamePositions(getPositions(a), getPositions(b), 40, 50);
+        assertEquals(a.getBounds2D().getWidth(),
+                     b.getBounds2D().getWidth(), 1e-3);
+
+        // It is the layout the label gets without the cache.
+        TextLayoutCache.clear();
+        TextSpanLayout c = build("<text id='t' x='50' y='70' font-size='14'>"
+                                 + "Shared label</text>", "t");
+        assertEquals(0, TextLayoutCache.getHits());
+        assertSamePositions(getPositions(c), getPositions(b), 0, 0);
+        assertEquals(c.getBounds2D(), b.getBounds2D());
+    }
+
+    @Test
+    public void testAttributesInKey() throws Exception {
+        build("<text id='t' x='10' y='20' font-size='14'>Label</text>", "t");
+        build("<text id='t' x='10' y='20' font-size='15'>Label</text>", "t");
+        build("<text id='t' x='10' y='20' font-size='14'"
+              + " letter-spacing='2'>Label</text>", "t");
+        build("<text id='t' x='10 20' y='20' font-size='14'>Label</text>",
+              "t");
+        assertEquals(0, TextLayoutCache.getHits());
+        assertEquals(4, TextLayoutCache.getMisses());
+        assertEquals(4, TextLayoutCache.getSize());
+    }
+
+    @Test
+    public void testSVGFontNotShared() throws Exception {
+        build(SVG_FONT + "<text id='t' x='10' y='20' font-family='Test'"
+              + " font-size='14'>AAA</text>", "t");
+        build(SVG_FONT + "<text id='t' x='10' y='20' font-family='Test'"
+              + " font-size='14'>AAA</text>", "t");
+        assertEquals(0, TextLayoutCache.getHits());
+        assertEquals(0, TextLayoutCache.getMisses());
+        assertEquals(0, TextLayoutCache.getSize());
+    }
+
+    @Test
+    public void testAdjustedLayoutNotShared() throws Exception {
+        TextSpanLayout plain
+            = build("<text id='t' x='10' y='20' font-size='14'>"
+                    + "Stretched label</text>", "t");
+        float [] expected = getPositions(plain);
+
+        // The stretched copy, built from the snapshot, is adjusted on its
+        // own.
+        String stretched = "<text id='s' x='10' y='20' font-size='14'"
+            + " textLength='250' lengthAdjust='spacingAndGlyphs'>"
+            + "Stretched label</text>";
+        TextSpanLayout s = build(stretched, "s");
+        assertEquals(1, TextLayoutCache.getHits());
+        float [] sp = getPositions(s);
+        assertFalse(sp[sp.length-2] == expected[expected.length-2]);
+        assertSamePositions(expected, getPositions(plain), 0, 0);
+
+        // Later copies still get the positions of the plain layout.
+        TextSpanLayout again
+            = build("<text id='t' x='10' y='20' font-size='14'>"
+                    + "Stretched label</text>", "t");
+        assertEquals(2, TextLayoutCache.getHits());
+        assertSamePositions(expected, getPositions(again), 0, 0);
+        assertEquals(1, TextLayoutCache.getSize());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.bridge;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.batik.anim.dom.SAXSVGDocumentFactory;
+import org.apache.batik.gvt.GraphicsNode;
+import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
+import org.apache.batik.gvt.renderer.ImageRenderer;
+import org.apache.batik.util.XMLResourceDescriptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the repaints of an <code>UpdateManager</code> go through
+ * <code>updateRendering(List, boolean)</code>, and that they bring the
+ * rendering up to date whether subclasses pass the areas on or not.
+ */
+public class UpdateManagerTestCases {
+
+    static final int SIZE = 120;
+
+    static final String SVG
+        = "<svg xmlns='http://www.w3.org/2000/svg' width='120' height='120'>"
+        + "<g transform='rotate(30 60 60)'>"
+        + "<rect id='r' x='10' y='20' width='30' height='15' fill='red'/>"
+        + "<circle cx='80' cy='70' r='15' fill='blue'/>"
+        + "</g></svg>";
+
+    static final AffineTransform USR2DEV
+        = new AffineTransform(0.9, 0.1, -0.1, 0.9, 8, 4);
+
+    BridgeContext ctx;
+    Document doc;
+    GraphicsNode root;
+    ImageRenderer renderer;
+
+    /**
+     * The areas the repaints passed to <code>updateRendering</code>.
+     */
+    List calls = new ArrayList();
+
+    /**
+     * Whether <code>updateRendering</code> passes a copy of the areas.
+     */
+    boolean copyAreas;
+
+    @Before
+    public void createManager() throws Exception {
+        String parser = XMLResourceDescriptor.getXMLParserClassName();
+        SAXSVGDocumentFactory f = new SAXSVGDocumentFactory(parser);
+        doc = f.createDocument("http://example.org/update.svg",
+                               new StringReader(SVG));
+        ctx = new BridgeContext(new UserAgentAdapter());
+        ctx.setDynamicState(BridgeContext.DYNAMIC);
+        root = new GVTBuilder().build(ctx, doc);
+        renderer = new ConcreteImageRendererFactory()
+            .createDynamicImageRenderer();
+        renderer.setTree(root);
+    }
+
+    @After
+    public void dispose() {
+        if (ctx.getUpdateManager() != null)
+            ctx.getUpdateManager().interrupt();
+        ctx.dispose();
+    }
+
+    @Test
+    public void testRepaint() throws Exception {
+        assertRepaint();
+    }
+
+    @Test
+    public void testRepaintCopiedAreas() throws Exception {
+        copyAreas = true;
+        assertRepaint();
+    }
+
+    /**
+     * Moves the rectangle and checks the areas the repaint went
+     * through and the rendering.
+     */
+    void assertRepaint() throws Exception {
+        final UpdateManager um = new UpdateManager(ctx, root, doc) {
+                protected void updateRendering(List areas, boolean cpt) {
+                    calls.add(new ArrayList(areas));
+                    super.updateRendering
+                        (copyAreas ? new ArrayList(areas) : areas, cpt);
+                }
+            };
+        um.manageUpdates(renderer);
+        um.getUpdateRunnableQueue().invokeAndWait(new Runnable() {
+                public void run() {
+                    um.updateRendering(USR2DEV, false,
+                                       new Rectangle(0, 0, SIZE, SIZE),
+                                       SIZE, SIZE);
+                }
+            });
+        calls.clear();
+
+        final Shape before = rectangle();
+        um.getUpdateRunnableQueue().invokeAndWait(new Runnable() {
+                public void run() {
+                    Element r = doc.getElementById("r");
+                    r.setAttributeNS(null, "x", "55");
+                    r.setAttributeNS(null, "y", "-5");
+                    um.forceRepaint();
+                }
+            });
+        assertEquals(1, calls.size());
+
+        // The areas are in renderer space and cover the rectangle
+        // before and after it moved.
+        Area dirty = new Area();
+        for (Object o : (List)calls.get(0))
+            dirty.add(new Area((Shape)o));
+        Shape [] moved = { before, rectangle() };
+        for (int i = 0; i < moved.length; i++) {
+            Area a = new Area(moved[i]);
+            a.subtract(dirty);
+            assertTrue("Area " + i + " is not repainted", a.isEmpty());
+        }
+
+        final BufferedImage [] images = new BufferedImage[2];
+        um.getUpdateRunnableQueue().invokeAndWait(new Runnable() {
+                public void run() {
+                    images[0] = um.getRepaintManager().getOffScreen();
+                    ImageRenderer full = new ConcreteImageRendererFactory()
+                        .createDynamicImageRenderer();
+                    full.setTree(root);
+                    full.updateOffScreen(SIZE, SIZE);
+                    full.setTransform(USR2DEV);
+                    full.repaint(new Rectangle(0, 0, SIZE, SIZE));
+                    images[1] = full.getOffScreen();
+                }
+            });
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals("pixel " + x + "," + y,
+                             Integer.toHexString(images[1].getRGB(x, y)),
+                             Integer.toHexString(images[0].getRGB(x, y)));
+            }
+        }
+    }
+
+    /**
+     * Returns the area of the rectangle in renderer space.
+     */
+    Shape rectangle() {
+        Element r = doc.getElementById("r");
+        GraphicsNode gn = ctx.getGraphicsNode(r);
+        Rectangle2D b = gn.getPrimitiveBounds();
+        AffineTransform at = gn.getGlobalTransform();
+        return at.createTransformedShape(b);
+    }
+}
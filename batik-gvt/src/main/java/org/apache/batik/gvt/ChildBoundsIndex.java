@@ -0,0 +1,277 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An R-tree over the sensitive or painted bounds of the children of a
+ * <code>CompositeGraphicsNode</code>, in the user space of that node.
+ * It is packed in one go with the Sort-Tile-Recursive method and is
+ * not updated: the node drops it whenever its geometry changes and
+ * builds a new one when it is needed again.
+ * <p>
+ * Children with no bounds, or with a transform that can not be
+ * inverted, are not in the tree and are returned by every query,
+ * so that they are handled exactly as if there were no index.
+ *
+ * @version $Id$
+ */
+class ChildBoundsIndex {
+
+    /**
+     * The maximum number of entries of a node of the tree.
+     */
+    static final int NODE_SIZE = 8;
+
+    /**
+     * The bounds of the entries of each level, as minX, minY, maxX,
+     * maxY.  Level 0 holds the children, the last level the entries of
+     * the root.
+     */
+    protected double [][] bounds;
+
+    /**
+     * For level 0, the index of each child.  For the other levels, the
+     * first and last plus one entries of the level below covered by
+     * each entry.
+     */
+    protected int [][] refs;
+
+    /**
+     * The indexes of the children returned by every query.
+     */
+    protected int [] always;
+
+    /**
+     * Builds the index of the first <code>count</code> children.
+     * @param sensitive whether to index the sensitive bounds of the
+     *        children rather than their painted bounds.
+     */
+    ChildBoundsIndex(GraphicsNode [] children, int count, boolean sensitive) {
+        double [] b = new double[count*4];
+        int [] r = new int[count];
+        int [] a = new int[count];
+        int n = 0, na = 0;
+        for (int i=0; i < count; i++) {
+            if (!getBounds(children[i], sensitive, b, n*4)) {
+                a[na++] = i;
+                continue;
+            }
+            r[n++] = i;
+        }
+        always = new int[na];
+        System.arraycopy(a, 0, always, 0, na);
+
+        List lb = new ArrayList();
+        List lr = new ArrayList();
+        int stride = 1;
+        for (;;) {
+            int [] order = sortTileRecursive(b, n);
+            double [] sb = new double[n*4];
+            int [] sr = new int[n*stride];
+            for (int i=0; i < n; i++) {
+                System.arraycopy(b, order[i]*4, sb, i*4, 4);
+                System.arraycopy(r, order[i]*stride, sr, i*stride, stride);
+            }
+            lb.add(sb);
+            lr.add(sr);
+            if (n <= NODE_SIZE)
+                break;
+
+            // Group the sorted entries into the nodes of the next level.
+            int pn = (n + NODE_SIZE - 1) / NODE_SIZE;
+            b = new double[pn*4];
+            r = new int[pn*2];
+            for (int p=0; p < pn; p++) {
+                int start = p*NODE_SIZE;
+                int end = Math.min(start+NODE_SIZE, n);
+                b[p*4  ] = b[p*4+1] = Double.POSITIVE_INFINITY;
+                b[p*4+2] = b[p*4+3] = Double.NEGATIVE_INFINITY;
+                for (int i=start; i < end; i++) {
+                    b[p*4  ] = Math.min(b[p*4  ], sb[i*4  ]);
+                    b[p*4+1] = Math.min(b[p*4+1], sb[i*4+1]);
+                    b[p*4+2] = Math.max(b[p*4+2], sb[i*4+2]);
+                    b[p*4+3] = Math.max(b[p*4+3], sb[i*4+3]);
+                }
+                r[p*2  ] = start;
+                r[p*2+1] = end;
+            }
+            n = pn;
+            stride = 2;
+        }
+        bounds = (double[][])lb.toArray(new double[lb.size()][]);
+        refs = (int[][])lr.toArray(new int[lr.size()][]);
+    }
+
+    /**
+     * Stores the bounds of <code>child</code>, in the user space of its
+     * parent, in <code>b[off..off+4)</code> as minX, minY, maxX, maxY.
+     * The painted bounds are those of <code>getBounds</code>; when the
+     * child is rotated they are those of its transformed bounding box,
+     * which may be a little larger than its transformed bounds.
+     * @return false if the child has no bounds or a transform that can
+     *         not be inverted.
+     */
+    static boolean getBounds(GraphicsNode child, boolean sensitive,
+                             double [] b, int off) {
+        AffineTransform t = child.getTransform();
+        if ((t != null) && (t.getDeterminant() == 0))
+            return false;
+        Rectangle2D cb;
+        if (!sensitive)
+            cb = child.getBounds();
+        else if (t == null)
+            cb = child.getSensitiveBounds();
+        else {
+            cb = child.getTransformedSensitiveBounds(GraphicsNode.IDENTITY);
+            t = null;
+        }
+        if (cb == null)
+            return false;
+
+        double x0 = cb.getMinX(), y0 = cb.getMinY();
+        double x1 = cb.getMaxX(), y1 = cb.getMaxY();
+        if (t == null) {
+            b[off  ] = x0;
+            b[off+1] = y0;
+            b[off+2] = x1;
+            b[off+3] = y1;
+            return true;
+        }
+        double [] pts = { x0, y0, x1, y0, x0, y1, x1, y1 };
+        t.transform(pts, 0, pts, 0, 4);
+        b[off  ] = Math.min(Math.min(pts[0], pts[2]), Math.min(pts[4], pts[6]));
+        b[off+1] = Math.min(Math.min(pts[1], pts[3]), Math.min(pts[5], pts[7]));
+        b[off+2] = Math.max(Math.max(pts[0], pts[2]), Math.max(pts[4], pts[6]));
+        b[off+3] = Math.max(Math.max(pts[1], pts[3]), Math.max(pts[5], pts[7]));
+        return true;
+    }
+
+    /**
+     * Returns the order in which to store the <code>n</code> given
+     * boxes: in vertical slices of whole nodes, sorted along x, each
+     * sorted along y.
+     */
+    static int [] sortTileRecursive(double [] b, int n) {
+        int [] order = new int[n];
+        double [] key = new double[n];
+        for (int i=0; i < n; i++) {
+            order[i] = i;
+            key[i] = b[i*4] + b[i*4+2];
+        }
+        sort(order, key, 0, n);
+
+        int nodes = (n + NODE_SIZE - 1) / NODE_SIZE;
+        int slices = (int)Math.ceil(Math.sqrt(nodes));
+        int sliceSize = slices * NODE_SIZE;
+        for (int i=0; i < n; i++)
+            key[i] = b[i*4+1] + b[i*4+3];
+        for (int start=0; start < n; start += sliceSize)
+            sort(order, key, start, Math.min(start+sliceSize, n));
+        return order;
+    }
+
+    /**
+     * Sorts <code>order[from..to)</code> on the keys of its values.
+     */
+    private static void sort(int [] order, double [] key, int from, int to) {
+        while (to - from > 16) {
+            double pivot = key[order[(from + to) >>> 1]];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (key[order[i]] < pivot) i++;
+                while (key[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int t = order[i]; order[i] = order[j]; order[j] = t;
+                    i++; j--;
+                }
+            }
+            // Recurse on the smaller half, loop on the larger one.
+            if (j - from < to - i) {
+                sort(order, key, from, j+1);
+                from = i;
+            } else {
+                sort(order, key, i, to);
+                to = j+1;
+            }
+        }
+        for (int i=from+1; i < to; i++) {
+            int v = order[i];
+            double k = key[v];
+            int j = i - 1;
+            while ((j >= from) && (key[order[j]] > k)) {
+                order[j+1] = order[j];
+                j--;
+            }
+            order[j+1] = v;
+        }
+    }
+
+    /**
+     * Returns the indexes, in increasing order, of the children whose
+     * sensitive bounds intersect or touch the given rectangle, along
+     * with the children not in the tree.
+     */
+    int [] query(double minX, double minY, double maxX, double maxY) {
+        int [][] buf = { new int[always.length + NODE_SIZE] };
+        System.arraycopy(always, 0, buf[0], 0, always.length);
+        int top = bounds.length - 1;
+        int n = query(top, 0, bounds[top].length/4,
+                      minX, minY, maxX, maxY, buf, always.length);
+        int [] ret = new int[n];
+        System.arraycopy(buf[0], 0, ret, 0, n);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Appends the indexes found under the entries
+     * <code>[start..end)</code> of <code>level</code> to
+     * <code>buf[0]</code>, which holds <code>n</code> of them and is
+     * grown as needed.  Returns the new number of indexes.
+     */
+    private int query(int level, int start, int end,
+                      double minX, double minY, double maxX, double maxY,
+                      int [][] buf, int n) {
+        double [] b = bounds[level];
+        int [] r = refs[level];
+        for (int i=start; i < end; i++) {
+            if ((b[i*4  ] > maxX) || (b[i*4+2] < minX) ||
+                (b[i*4+1] > maxY) || (b[i*4+3] < minY))
+                continue;
+            if (level == 0) {
+                if (n == buf[0].length) {
+                    int [] tmp = new int[n*2];
+                    System.arraycopy(buf[0], 0, tmp, 0, n);
+                    buf[0] = tmp;
+                }
+                buf[0][n++] = r[i];
+            } else {
+                n = query(level-1, r[i*2], r[i*2+1],
+                          minX, minY, maxX, maxY, buf, n);
+            }
+        }
+        return n;
+    }
+}
@@ -25,6 +25,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
@@ -48,6 +49,40 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
     public static final Rectangle2D VIEWPORT  = new Rectangle();
     public static final Rectangle2D NULL_RECT = new Rectangle();
 
+    /**
+     * The number of children from which a composite indexes the
+     * bounds of its children to answer <code>nodeHitAt</code>,
+     * <code>contains</code> and <code>getSensitiveChildren</code>, and
+     * to find the children to paint.
+     * Set by the
+     * <code>org.apache.batik.gvt.CompositeGraphicsNode.indexThreshold</code>
+     * system property.  When not positive, children are never indexed.
+     */
+    static final int INDEX_THRESHOLD;
+
+    /**
+     * The number of queries answered by going through all the
+     * children before they get indexed.  Building the index costs
+     * about as much as a few tens of such queries, so this keeps
+     * composites whose geometry changes between almost every query,
+     * as during animations, from building indexes they would not use.
+     */
+    static final int INDEX_QUERIES = 8;
+
+    static {
+        int threshold = 64;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.gvt.CompositeGraphicsNode.indexThreshold");
+            if (s != null)
+                threshold = Integer.parseInt(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            INDEX_THRESHOLD = threshold;
+        }
+    }
+
     /**
      * The children of this composite graphics node.
      */
@@ -90,6 +125,22 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
      */
     private Shape outline;
 
+    /**
+     * Internal Cache: the index of the sensitive bounds of the children.
+     */
+    private volatile ChildBoundsIndex sensitiveIndex;
+
+    /**
+     * Internal Cache: the index of the painted bounds of the children.
+     */
+    private volatile ChildBoundsIndex paintIndex;
+
+    /**
+     * The number of queries of each index since the geometry last
+     * changed.
+     */
+    private int sensitiveQueries, paintQueries;
+
     /**
      * Constructs a new empty <code>CompositeGraphicsNode</code>.
      */
@@ -153,15 +204,37 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         // Thread.currentThread() is potentially expensive, so reuse my instance in hasBeenHalted()
         Thread currentThread = Thread.currentThread();
 
+        // Skip the children entirely outside of the clip, without
+        // setting up the graphics context for each of them.
+        Shape clip = g2d.getClip();
+        Rectangle2D cr = null;
+        int [] visible = null;
+        double [] cb = null;
+        if (clip != null) {
+            cr = clip.getBounds2D();
+            ChildBoundsIndex index = getChildIndex(false);
+            if (index != null)
+                visible = index.query(cr.getMinX(), cr.getMinY(),
+                                      cr.getMaxX(), cr.getMaxY());
+            else
+                cb = new double[4];
+        }
+
         // Paint children
-        for (int i=0; i < count; ++i) {
+        int n = (visible == null) ? count : visible.length;
+        for (int k=0; k < n; ++k) {
             if (HaltingThread.hasBeenHalted( currentThread ))
                 return;
 
-            GraphicsNode node = children[i];
+            GraphicsNode node = children[(visible == null) ? k : visible[k]];
             if (node == null) {
                 continue;
             }
+            if ((cb != null) && ChildBoundsIndex.getBounds(node, false, cb, 0)
+                && ((cb[0] > cr.getMaxX()) || (cb[2] < cr.getMinX()) ||
+                    (cb[1] > cr.getMaxY()) || (cb[3] < cr.getMinY()))) {
+                continue;
+            }
             node.paint(g2d);
 
         }
@@ -187,6 +260,46 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         primitiveBounds = null;
         sensitiveBounds = null;
         outline = null;
+        sensitiveIndex = null;
+        paintIndex = null;
+        sensitiveQueries = 0;
+        paintQueries = 0;
+    }
+
+    /**
+     * Returns the index of the sensitive or painted bounds of the
+     * children, building it if this node has enough children and has
+     * been queried enough times since its geometry last changed, or
+     * null.
+     */
+    private ChildBoundsIndex getChildIndex(boolean sensitive) {
+        ChildBoundsIndex index = sensitive ? sensitiveIndex : paintIndex;
+        if (index != null)
+            return index;
+        if ((INDEX_THRESHOLD <= 0) || (count < INDEX_THRESHOLD))
+            return null;
+        int queries = sensitive ? ++sensitiveQueries : ++paintQueries;
+        if (queries <= INDEX_QUERIES)
+            return null;
+        index = new ChildBoundsIndex(children, count, sensitive);
+        if (sensitive)
+            sensitiveIndex = index;
+        else
+            paintIndex = index;
+        return index;
+    }
+
+    /**
+     * Returns the indexes, in increasing order, of the children whose
+     * sensitive bounds may contain the given point, or null if they
+     * are not indexed.
+     */
+    private int [] getChildrenAt(Point2D p) {
+        ChildBoundsIndex index = getChildIndex(true);
+        if (index == null)
+            return null;
+        double x = p.getX(), y = p.getY();
+        return index.query(x, y, x, y);
     }
 
     /**
@@ -462,7 +575,10 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         if (count > 0 && bounds != null && bounds.contains(p)) {
             Point2D pt = null;
             Point2D cp = null; // Propagated to children
-            for (int i=0; i < count; ++i) {
+            int [] hits = getChildrenAt(p);
+            int n = (hits == null) ? count : hits.length;
+            for (int k=0; k < n; ++k) {
+                int i = (hits == null) ? k : hits[k];
                 AffineTransform t = children[i].getInverseTransform();
                 if(t != null){
                     pt = t.transform(p, pt);
@@ -492,7 +608,10 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
             // Go backward because the children are in rendering order
             Point2D pt = null;
             Point2D cp = null; // Propagated to children
-            for (int i=count-1; i >= 0; --i) {
+            int [] hits = getChildrenAt(p);
+            int n = (hits == null) ? count : hits.length;
+            for (int k=n-1; k >= 0; --k) {
+                int i = (hits == null) ? k : hits[k];
                 AffineTransform t = children[i].getInverseTransform();
                 if(t != null){
                     pt = t.transform(p, pt);
@@ -510,6 +629,34 @@ public class CompositeGraphicsNode extends AbstractGraphicsNode
         return null;
     }
 
+    /**
+     * Returns the children that may intersect the specified rectangle,
+     * in rendering order.  The list holds at least the children whose
+     * sensitive bounds, in the user space of this node, intersect the
+     * rectangle.  When the children are not indexed, it holds all of
+     * them.
+     *
+     * @param r the rectangle in the user space
+     */
+    public List getSensitiveChildren(Rectangle2D r) {
+        ChildBoundsIndex index = getChildIndex(true);
+        List ret;
+        if (index == null) {
+            ret = new ArrayList(count);
+            for (int i=0; i < count; ++i) {
+                ret.add(children[i]);
+            }
+            return ret;
+        }
+        int [] hits = index.query(r.getMinX(), r.getMinY(),
+                                  r.getMaxX(), r.getMaxY());
+        ret = new ArrayList(hits.length);
+        for (int k=0; k < hits.length; ++k) {
+            ret.add(children[hits[k]]);
+        }
+        return ret;
+    }
+
     /**
      * Returns the outline of this node.
      */
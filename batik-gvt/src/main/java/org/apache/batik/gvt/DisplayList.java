@@ -0,0 +1,346 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A recorded painting of a GVT tree, made by a
+ * <code>DisplayListRecorder</code>.  It is a flat list of items, each
+ * holding everything needed to paint it: the transform from the user
+ * space of the recorded node's parent, the clips, the rendering hints
+ * and the shape, paint and stroke to paint it with.
+ * <p>
+ * A display list is never modified once recorded, so several threads
+ * may replay it at the same time, each on its own
+ * <code>Graphics2D</code>, for instance to render different tiles or
+ * sizes.  Painting a display list gives the same result as painting
+ * the recorded node on the same <code>Graphics2D</code>.
+ * <p>
+ * Nodes that are painted through an offscreen buffer (filters, masks,
+ * group opacity, antialiased clips), nodes of other kinds than shapes
+ * and groups, painters other than fills and strokes, and clipped nodes
+ * holding any of those are recorded as a reference to the node or
+ * painter.  Replaying such an item paints
+ * the node or painter itself, one thread at a time.
+ *
+ * @version $Id$
+ */
+public class DisplayList {
+
+    /**
+     * The list with nothing to paint.
+     */
+    public static final DisplayList EMPTY = new DisplayList(new Item[0]);
+
+    /**
+     * The items, in painting order.
+     */
+    protected final Item [] items;
+
+    /**
+     * The bounds of the items, or null.
+     */
+    protected final Rectangle2D bounds;
+
+    /**
+     * Creates a display list of the given items.
+     */
+    DisplayList(Item [] items) {
+        this.items = items;
+        Rectangle2D b = null;
+        for (int i=0; i < items.length; i++) {
+            if (items[i].bounds == null)
+                continue;
+            if (b == null)
+                b = (Rectangle2D)items[i].bounds.clone();
+            else
+                b.add(items[i].bounds);
+        }
+        this.bounds = b;
+    }
+
+    /**
+     * Returns the number of items of this list.
+     */
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Returns true if some items of this list paint a node through its
+     * own <code>paint</code> method rather than a shape or painter.
+     */
+    boolean paintsNodes() {
+        for (int i=0; i < items.length; i++) {
+            if (items[i] instanceof NodeItem)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the bounds of the area painted by this list, in the user
+     * space of the recorded node's parent, or null if it paints
+     * nothing or the area is not known.
+     */
+    public Rectangle2D getBounds() {
+        return (bounds == null) ? null : (Rectangle2D)bounds.clone();
+    }
+
+    /**
+     * Paints this list.  The graphics is left as it was given.
+     *
+     * @param g2d the Graphics2D to use, with the transform of the user
+     *        space of the recorded node's parent.
+     */
+    public void paint(Graphics2D g2d) {
+        if (items.length == 0)
+            return;
+
+        AffineTransform baseTransform = g2d.getTransform();
+        Paint basePaint = g2d.getPaint();
+        Stroke baseStroke = g2d.getStroke();
+        Rectangle2D area = g2d.getClipBounds();
+
+        // The clip and hints are only read, set and restored when some
+        // items have their own, which is costly on some graphics.
+        Shape baseClip = null;
+        RenderingHints baseHints = null;
+        boolean clipSet = false, hintsSet = false;
+        Shape [] clips = null;
+        RenderingHints hints = null;
+        for (int i=0; i < items.length; i++) {
+            Item item = items[i];
+            Rectangle2D b = item.bounds;
+            if ((area != null) && (b != null) &&
+                ((b.getMinX() > area.getMaxX()) ||
+                 (b.getMaxX() < area.getMinX()) ||
+                 (b.getMinY() > area.getMaxY()) ||
+                 (b.getMaxY() < area.getMinY())))
+                continue;
+
+            g2d.setTransform(baseTransform);
+            if (item.clips != clips) {
+                if (!clipSet) {
+                    baseClip = g2d.getClip();
+                    clipSet = true;
+                } else {
+                    g2d.setClip(baseClip);
+                }
+                if (item.clips != null) {
+                    for (int j=0; j < item.clips.length; j++)
+                        g2d.clip(item.clips[j]);
+                }
+                clips = item.clips;
+            }
+            if (item.hints != hints) {
+                if (!hintsSet) {
+                    baseHints = g2d.getRenderingHints();
+                    hintsSet = true;
+                } else {
+                    g2d.setRenderingHints(baseHints);
+                }
+                if (item.hints != null)
+                    g2d.addRenderingHints(item.hints);
+                hints = item.hints;
+            }
+            if (item.transform != null)
+                g2d.transform(item.transform);
+            item.paint(g2d);
+        }
+
+        g2d.setTransform(baseTransform);
+        if (clipSet)
+            g2d.setClip(baseClip);
+        if (hintsSet)
+            g2d.setRenderingHints(baseHints);
+        g2d.setPaint(basePaint);
+        g2d.setStroke(baseStroke);
+    }
+
+    /**
+     * An item of a display list.
+     */
+    abstract static class Item {
+
+        /**
+         * The transform from the user space of the recorded node's
+         * parent to the one of the item, or null for identity.
+         */
+        final AffineTransform transform;
+
+        /**
+         * The clips, in the user space of the recorded node's parent,
+         * or null.  Items sharing clips share the array.
+         */
+        final Shape [] clips;
+
+        /**
+         * The rendering hints to add, or null.  Items sharing hints
+         * share the object.
+         */
+        final RenderingHints hints;
+
+        /**
+         * The bounds of the area painted, in the user space of the
+         * recorded node's parent, or null if not known.
+         */
+        final Rectangle2D bounds;
+
+        Item(AffineTransform transform, Shape [] clips,
+             RenderingHints hints, Rectangle2D bounds) {
+            this.transform = transform;
+            this.clips = clips;
+            this.hints = hints;
+            this.bounds = bounds;
+        }
+
+        /**
+         * Paints this item, the graphics being set up with its
+         * transform, clips and hints.
+         */
+        abstract void paint(Graphics2D g2d);
+    }
+
+    /**
+     * An item filling a shape.
+     */
+    static class FillItem extends Item {
+        final Shape shape;
+        final Paint paint;
+
+        FillItem(AffineTransform transform, Shape [] clips,
+                 RenderingHints hints, Rectangle2D bounds,
+                 Shape shape, Paint paint) {
+            super(transform, clips, hints, bounds);
+            this.shape = shape;
+            this.paint = paint;
+        }
+
+        void paint(Graphics2D g2d) {
+            g2d.setPaint(paint);
+            if (paint instanceof PatternPaint) {
+                // Its context paints the pattern's nodes.
+                synchronized (paint) {
+                    g2d.fill(shape);
+                }
+            } else {
+                g2d.fill(shape);
+            }
+        }
+    }
+
+    /**
+     * An item stroking a shape.  The stroke is drawn rather than its
+     * outline filled, to get the same normalization as when painting
+     * the node.
+     */
+    static class StrokeItem extends FillItem {
+        final Stroke stroke;
+
+        StrokeItem(AffineTransform transform, Shape [] clips,
+                   RenderingHints hints, Rectangle2D bounds,
+                   Shape shape, Paint paint, Stroke stroke) {
+            super(transform, clips, hints, bounds, shape, paint);
+            this.stroke = stroke;
+        }
+
+        void paint(Graphics2D g2d) {
+            g2d.setStroke(stroke);
+            g2d.setPaint(paint);
+            if (paint instanceof PatternPaint) {
+                synchronized (paint) {
+                    g2d.draw(shape);
+                }
+            } else {
+                g2d.draw(shape);
+            }
+        }
+    }
+
+    /**
+     * An item painting a shape painter.
+     */
+    static class PainterItem extends Item {
+        final ShapePainter painter;
+
+        PainterItem(AffineTransform transform, Shape [] clips,
+                    RenderingHints hints, Rectangle2D bounds,
+                    ShapePainter painter) {
+            super(transform, clips, hints, bounds);
+            this.painter = painter;
+        }
+
+        void paint(Graphics2D g2d) {
+            synchronized (painter) {
+                painter.paint(g2d);
+            }
+        }
+    }
+
+    /**
+     * An item filling the clip, as the background of a
+     * <code>CanvasGraphicsNode</code>.
+     */
+    static class BackgroundItem extends Item {
+        final Paint paint;
+
+        BackgroundItem(AffineTransform transform, Shape [] clips,
+                       RenderingHints hints, Paint paint) {
+            super(transform, clips, hints, null);
+            this.paint = paint;
+        }
+
+        void paint(Graphics2D g2d) {
+            Shape clip = g2d.getClip();
+            if (clip != null) {
+                g2d.setPaint(paint);
+                g2d.fill(clip);
+            }
+        }
+    }
+
+    /**
+     * An item painting a node.  Its transform is the one of the node's
+     * parent, the node applying its own.
+     */
+    static class NodeItem extends Item {
+        final GraphicsNode node;
+
+        NodeItem(AffineTransform transform, Shape [] clips,
+                 RenderingHints hints, Rectangle2D bounds,
+                 GraphicsNode node) {
+            super(transform, clips, hints, bounds);
+            this.node = node;
+        }
+
+        void paint(Graphics2D g2d) {
+            synchronized (node) {
+                node.paint(g2d);
+            }
+        }
+    }
+}
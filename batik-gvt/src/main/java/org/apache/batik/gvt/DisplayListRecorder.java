@@ -0,0 +1,384 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.batik.ext.awt.image.renderable.ClipRable;
+import org.apache.batik.gvt.event.GraphicsNodeChangeAdapter;
+import org.apache.batik.gvt.event.GraphicsNodeChangeEvent;
+
+/**
+ * This class records a GVT tree into a <code>DisplayList</code>, and
+ * records it again when it changes.
+ * <p>
+ * The items of each node are kept between recordings.  The recorder
+ * listens to the changes of the tree, and when a node changes only
+ * that node, its descendants when the change affects them, and the
+ * list of items of its ancestors are recorded again.
+ * <p>
+ * A clipped node holding nodes, painters or backgrounds that read the
+ * clip back from the graphics is recorded as a reference to the node,
+ * so that they read the same clip as when the tree is painted.
+ * <p>
+ * The tree is only read by <code>getDisplayList</code>, which must be
+ * called where the tree may be read, typically in the update thread
+ * of the document.  The lists it returns may then be painted from any
+ * thread.
+ *
+ * @version $Id$
+ */
+public class DisplayListRecorder extends GraphicsNodeChangeAdapter {
+
+    /**
+     * The recorded node.
+     */
+    protected GraphicsNode node;
+
+    /**
+     * The root the recorder listens to, or null.
+     */
+    protected RootGraphicsNode root;
+
+    /**
+     * The items of the recorded nodes, by node.
+     */
+    protected Map items = new HashMap();
+
+    /**
+     * The last recorded list, or null if the tree changed since.
+     */
+    protected DisplayList displayList;
+
+    /**
+     * Creates a recorder for the given node.  If the node is in a tree
+     * with a root, its changes are tracked.  Otherwise the list is
+     * recorded once, and <code>clear</code> must be called to record
+     * it again.
+     */
+    public DisplayListRecorder(GraphicsNode node) {
+        this.node = node;
+        root = node.getRoot();
+        if (root != null)
+            root.addTreeGraphicsNodeChangeListener(this);
+    }
+
+    /**
+     * Stops tracking the changes of the tree.
+     */
+    public synchronized void dispose() {
+        if (root != null)
+            root.removeTreeGraphicsNodeChangeListener(this);
+        root = null;
+        clear();
+    }
+
+    /**
+     * Forgets all the recorded items.
+     */
+    public synchronized void clear() {
+        items.clear();
+        displayList = null;
+    }
+
+    /**
+     * Returns the display list of the node, recording what changed
+     * since the last call.
+     */
+    public synchronized DisplayList getDisplayList() {
+        if (displayList == null) {
+            DisplayList.Item [] l = record(node, null, null, null, null);
+            displayList = (l.length == 0) ? DisplayList.EMPTY
+                                          : new DisplayList(l);
+        }
+        return displayList;
+    }
+
+    /**
+     * Forgets the items of the changed node and its ancestors.
+     * @param gnce The event object describing the GraphicsNode change.
+     */
+    public synchronized void changeStarted(GraphicsNodeChangeEvent gnce) {
+        GraphicsNode gn = gnce.getGraphicsNode();
+        GraphicsNode chngSrc = gnce.getChangeSrc();
+        if (chngSrc != null) {
+            // A child is added or removed, the others stay as they
+            // are, but the child's transform may have been recorded
+            // from some other place in the tree.
+            forget(chngSrc);
+            items.remove(gn);
+            if (chngSrc == node)
+                displayList = null;
+        } else {
+            // Anything the descendants inherit may have changed.
+            forget(gn);
+        }
+        while (gn != null) {
+            items.remove(gn);
+            if (gn == node) {
+                displayList = null;
+                break;
+            }
+            gn = gn.getParent();
+        }
+    }
+
+    /**
+     * Forgets the items of <code>gn</code> and its descendants.
+     */
+    protected void forget(GraphicsNode gn) {
+        items.remove(gn);
+        if (gn instanceof CompositeGraphicsNode) {
+            CompositeGraphicsNode cgn = (CompositeGraphicsNode)gn;
+            for (int i=0; i < cgn.size(); i++)
+                forget((GraphicsNode)cgn.get(i));
+        }
+    }
+
+    /**
+     * Returns the items of <code>gn</code>, recording them if needed.
+     * @param at the transform to the user space of the node's parent.
+     * @param clips the clips of the node's ancestors.
+     * @param clipBounds the bounds of the clips, or null.
+     * @param hints the rendering hints of the node's ancestors.
+     */
+    protected DisplayList.Item [] record(GraphicsNode gn,
+                                         AffineTransform at,
+                                         Shape [] clips,
+                                         Rectangle2D clipBounds,
+                                         RenderingHints hints) {
+        DisplayList.Item [] ret = (DisplayList.Item[])items.get(gn);
+        if (ret == null) {
+            List l = new ArrayList();
+            record(gn, at, clips, clipBounds, hints, l);
+            ret = (DisplayList.Item[])l.toArray(new DisplayList.Item[l.size()]);
+            items.put(gn, ret);
+        }
+        return ret;
+    }
+
+    private void record(GraphicsNode gn, AffineTransform at, Shape [] clips,
+                        Rectangle2D clipBounds, RenderingHints hints,
+                        List l) {
+        Rectangle2D b = gn.getBounds();
+        if (b == null)
+            return;
+
+        if (!isFlattenable(gn)) {
+            AffineTransform nat = concatenate(at, gn.getTransform());
+            b = clipBounds(transformBounds(nat, b), clipBounds);
+            if (b != null)
+                l.add(new DisplayList.NodeItem(at, clips, hints, b, gn));
+            return;
+        }
+        if ((gn instanceof ShapeNode) && !gn.isVisible())
+            return;
+
+        AffineTransform nat = concatenate(at, gn.getTransform());
+        Shape [] parentClips = clips;
+        RenderingHints parentHints = hints;
+        RenderingHints nh = gn.getRenderingHints();
+        if (nh != null) {
+            RenderingHints h = new RenderingHints(null);
+            if (hints != null)
+                h.putAll(hints);
+            h.putAll(nh);
+            hints = h;
+        }
+        Rectangle2D parentClipBounds = clipBounds;
+        ClipRable clip = gn.getClip();
+        if (clip != null) {
+            Shape cp = clip.getClipPath();
+            if (nat != null)
+                cp = nat.createTransformedShape(cp);
+            Shape [] c = new Shape[(clips == null) ? 1 : clips.length+1];
+            if (clips != null)
+                System.arraycopy(clips, 0, c, 0, clips.length);
+            c[c.length-1] = cp;
+            clips = c;
+            clipBounds = clipBounds(cp.getBounds2D(), clipBounds);
+            if (clipBounds == null)
+                return;
+        }
+
+        int start = l.size();
+        if (gn instanceof ShapeNode) {
+            ShapePainter sp = ((ShapeNode)gn).getShapePainter();
+            if (sp != null)
+                record(sp, nat, clips, clipBounds, hints, l);
+        } else {
+            if (gn instanceof CanvasGraphicsNode) {
+                Paint bg = ((CanvasGraphicsNode)gn).getBackgroundPaint();
+                if (bg != null)
+                    l.add(new DisplayList.BackgroundItem(nat, clips, hints,
+                                                         bg));
+            }
+            CompositeGraphicsNode cgn = (CompositeGraphicsNode)gn;
+            for (int i=0; i < cgn.size(); i++) {
+                DisplayList.Item [] ci = record((GraphicsNode)cgn.get(i),
+                                                nat, clips, clipBounds, hints);
+                for (int j=0; j < ci.length; j++)
+                    l.add(ci[j]);
+            }
+        }
+
+        if ((clip != null) && readsClip(l, start)) {
+            // Nodes, painters and backgrounds read the clip back from
+            // the graphics, filters to size their offscreen buffer.
+            // The clip set by the list is not exactly the one set by
+            // the node in its own user space, so the node is painted
+            // by itself.
+            while (l.size() > start)
+                l.remove(l.size()-1);
+            b = clipBounds(transformBounds(nat, b), parentClipBounds);
+            if (b != null)
+                l.add(new DisplayList.NodeItem(at, parentClips, parentHints,
+                                               b, gn));
+        }
+    }
+
+    /**
+     * Returns true if some items of <code>l</code> from
+     * <code>start</code> on paint more than a shape.
+     */
+    private static boolean readsClip(List l, int start) {
+        for (int i=start; i < l.size(); i++) {
+            if (!(l.get(i) instanceof DisplayList.FillItem))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records the items of a shape painter.
+     */
+    private void record(ShapePainter sp, AffineTransform at, Shape [] clips,
+                        Rectangle2D clipBounds, RenderingHints hints,
+                        List l) {
+        Class c = sp.getClass();
+        if (c == CompositeShapePainter.class) {
+            CompositeShapePainter csp = (CompositeShapePainter)sp;
+            for (int i=0; i < csp.getShapePainterCount(); i++)
+                record(csp.getShapePainter(i), at, clips, clipBounds, hints, l);
+        } else if (c == FillShapePainter.class) {
+            Paint paint = ((FillShapePainter)sp).getPaint();
+            Shape shape = sp.getShape();
+            if ((paint == null) || (shape == null))
+                return;
+            Rectangle2D b = clipBounds
+                (transformBounds(at, shape.getBounds2D()), clipBounds);
+            if (b != null)
+                l.add(new DisplayList.FillItem(at, clips, hints, b,
+                                               shape, paint));
+        } else if (c == StrokeShapePainter.class) {
+            StrokeShapePainter ssp = (StrokeShapePainter)sp;
+            Paint paint = ssp.getPaint();
+            Stroke stroke = ssp.getStroke();
+            if ((paint == null) || (stroke == null))
+                return;
+            Shape outline = ssp.getPaintedArea();
+            if (outline == null)
+                return;
+            Rectangle2D b = clipBounds
+                (transformBounds(at, outline.getBounds2D()), clipBounds);
+            if (b != null)
+                l.add(new DisplayList.StrokeItem(at, clips, hints, b,
+                                                 ssp.getShape(), paint,
+                                                 stroke));
+        } else {
+            Rectangle2D b = sp.getPaintedBounds2D();
+            if (b == null)
+                return;
+            b = clipBounds(transformBounds(at, b), clipBounds);
+            if (b != null)
+                l.add(new DisplayList.PainterItem(at, clips, hints, b, sp));
+        }
+    }
+
+    /**
+     * Returns true if the node can be recorded as the items of its
+     * shape or children, that is when it paints nothing else and
+     * needs no offscreen buffer.
+     */
+    protected boolean isFlattenable(GraphicsNode gn) {
+        Class c = gn.getClass();
+        if ((c != ShapeNode.class) &&
+            (c != CompositeGraphicsNode.class) &&
+            (c != CanvasGraphicsNode.class) &&
+            (c != RootGraphicsNode.class))
+            return false;
+        if ((gn.getFilter() != null) || (gn.getMask() != null))
+            return false;
+        Composite composite = gn.getComposite();
+        if ((composite != null) && !AlphaComposite.SrcOver.equals(composite))
+            return false;
+        ClipRable clip = gn.getClip();
+        return (clip == null) || !clip.getUseAntialiasedClip();
+    }
+
+    private static AffineTransform concatenate(AffineTransform at,
+                                               AffineTransform t) {
+        if (t == null)
+            return at;
+        if (at == null)
+            return new AffineTransform(t);
+        at = new AffineTransform(at);
+        at.concatenate(t);
+        return at;
+    }
+
+    /**
+     * Returns the bounds of <code>r</code> once transformed.
+     */
+    private static Rectangle2D transformBounds(AffineTransform at,
+                                               Rectangle2D r) {
+        if (at == null)
+            return new Rectangle2D.Double(r.getX(), r.getY(),
+                                          r.getWidth(), r.getHeight());
+        return at.createTransformedShape(r).getBounds2D();
+    }
+
+    /**
+     * Returns the part of <code>r</code> within <code>clipBounds</code>,
+     * or null if there is none.
+     */
+    private static Rectangle2D clipBounds(Rectangle2D r,
+                                          Rectangle2D clipBounds) {
+        if (clipBounds == null)
+            return r;
+        if ((r.getMinX() > clipBounds.getMaxX()) ||
+            (r.getMaxX() < clipBounds.getMinX()) ||
+            (r.getMinY() > clipBounds.getMaxY()) ||
+            (r.getMaxY() < clipBounds.getMinY()))
+            return null;
+        Rectangle2D.intersect(r, clipBounds, r);
+        return r;
+    }
+}
@@ -18,20 +18,28 @@
  */
 package org.apache.batik.gvt;
 
+import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.ext.awt.geom.ExtendedGeneralPath;
 import org.apache.batik.ext.awt.geom.ExtendedPathIterator;
 import org.apache.batik.ext.awt.geom.ExtendedShape;
 import org.apache.batik.ext.awt.geom.ShapeExtender;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
 
 /**
  * A shape painter that can be used to paint markers on a shape.
@@ -41,6 +49,16 @@ import org.apache.batik.ext.awt.geom.ShapeExtender;
  */
 public class MarkerShapePainter implements ShapePainter {
 
+    /**
+     * The largest number of pixels of a marker stamp.
+     */
+    static final int MAX_STAMP_AREA = 128*128;
+
+    /**
+     * The number of subpixel positions of a stamp along each axis.
+     */
+    static final int STAMP_PHASES = 4;
+
     /**
      * The Shape to be painted.
      */
@@ -119,10 +137,299 @@ public class MarkerShapePainter implements ShapePainter {
              buildMarkerGroup();
          }
          if (markerGroup.getChildren().size() > 0) {
-             markerGroup.paint(g2d);
+             if (!paintInstances(g2d))
+                 markerGroup.paint(g2d);
          }
      }
 
+    /**
+     * Paints the markers by recording each marker once in a
+     * <code>DisplayList</code> and replaying it at every vertex, rather
+     * than painting each proxy through the whole node pipeline.  When
+     * there are at least as many markers as given by the
+     * <code>KEY_MARKER_STAMPING</code> hint, they are stamped instead
+     * if possible, which may move them by a quarter of a pixel.  The
+     * markers are recorded on each call, so changes to their content
+     * are always seen.
+     *
+     * @return false, having painted nothing, if a marker has content
+     *         that must be painted by its node, such as a filter, a
+     *         mask, group opacity, text or an image.
+     */
+    protected boolean paintInstances(Graphics2D g2d) {
+        DisplayList startList = null, middleList = null, endList = null;
+        if (startMarkerProxy != null) {
+            startList = recordMarker(startMarker);
+            if (startList == null) return false;
+        }
+        if (middleMarkerProxies != null) {
+            middleList = recordMarker(middleMarker);
+            if (middleList == null) return false;
+        }
+        if (endMarkerProxy != null) {
+            endList = recordMarker(endMarker);
+            if (endList == null) return false;
+        }
+
+        int n = ((startList == null) ? 0 : 1) + ((endList == null) ? 0 : 1)
+            + ((middleList == null) ? 0 : middleMarkerProxies.length);
+        DisplayList [] lists = new DisplayList[n];
+        AffineTransform [] ats = new AffineTransform[n];
+        n = 0;
+        if (startList != null) {
+            lists[n] = startList;
+            ats[n++] = startMarkerProxy.getTransform();
+        }
+        if (middleList != null) {
+            for (int i=0; i < middleMarkerProxies.length; i++) {
+                lists[n] = middleList;
+                ats[n++] = middleMarkerProxies[i].getTransform();
+            }
+        }
+        if (endList != null) {
+            lists[n] = endList;
+            ats[n++] = endMarkerProxy.getTransform();
+        }
+
+        Object stamping
+            = g2d.getRenderingHint(RenderingHintsKeyExt.KEY_MARKER_STAMPING);
+        if ((stamping instanceof Number) &&
+            (n >= ((Number)stamping).intValue()) &&
+            stampInstances(g2d, lists, ats, n))
+            return true;
+
+        AffineTransform base = g2d.getTransform();
+        Shape clip = g2d.getClip();
+        Rectangle2D area = (clip == null) ? null : clip.getBounds2D();
+        double [] pts = new double[8];
+        for (int i=0; i < n; i++)
+            paintInstance(g2d, base, area, pts, lists[i], ats[i]);
+        return true;
+    }
+
+    /**
+     * The key of a marker stamp: the list, the linear part of the
+     * device transform in steps small enough to move no point of the
+     * marker by more than an eighth of a pixel, and the subpixel
+     * position.
+     */
+    private static class StampKey {
+        final DisplayList list;
+        final long m00, m10, m01, m11;
+        final int px, py;
+        final int hash;
+
+        StampKey(DisplayList list, double step, AffineTransform at) {
+            this.list = list;
+            m00 = Math.round(at.getScaleX() / step);
+            m10 = Math.round(at.getShearY() / step);
+            m01 = Math.round(at.getShearX() / step);
+            m11 = Math.round(at.getScaleY() / step);
+            double tx = at.getTranslateX(), ty = at.getTranslateY();
+            px = (int)Math.floor((tx - Math.floor(tx)) * STAMP_PHASES);
+            py = (int)Math.floor((ty - Math.floor(ty)) * STAMP_PHASES);
+            long h = m00 * 31 + m10;
+            h = h * 31 + m01;
+            h = h * 31 + m11;
+            hash = (int)(h ^ (h >>> 32)) * 31 * 31 + px * 31 + py
+                + System.identityHashCode(list);
+        }
+
+        /**
+         * Returns the device transform the stamp is rendered with, at
+         * the middle of its subpixel position.
+         */
+        AffineTransform getTransform(double step) {
+            return new AffineTransform
+                (m00 * step, m10 * step, m01 * step, m11 * step,
+                 (px + 0.5) / STAMP_PHASES, (py + 0.5) / STAMP_PHASES);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof StampKey))
+                return false;
+            StampKey k = (StampKey)o;
+            return (list == k.list) && (m00 == k.m00) && (m10 == k.m10) &&
+                (m01 == k.m01) && (m11 == k.m11) &&
+                (px == k.px) && (py == k.py);
+        }
+    }
+
+    /**
+     * A rendered marker stamp, drawn at the device position of a
+     * marker plus its offset.
+     */
+    private static class Stamp {
+        BufferedImage image;
+        int x, y;
+    }
+
+    /**
+     * Paints the given markers by stamping images of them, when
+     * painting to an image with source over compositing and when there
+     * are several markers per stamp.
+     *
+     * @return false, having painted nothing, if the markers are not
+     *         worth or not fit for stamping.
+     */
+    protected boolean stampInstances(Graphics2D g2d, DisplayList [] lists,
+                                     AffineTransform [] ats, int n) {
+        if (g2d.getRenderingHint(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE)
+            == null)
+            return false;
+        Object trans = g2d.getRenderingHint
+            (RenderingHintsKeyExt.KEY_TRANSCODING);
+        if ((trans == RenderingHintsKeyExt.VALUE_TRANSCODING_PRINTING) ||
+            (trans == RenderingHintsKeyExt.VALUE_TRANSCODING_VECTOR))
+            return false;
+        if (!AlphaComposite.SrcOver.equals(g2d.getComposite()))
+            return false;
+
+        AffineTransform base = g2d.getTransform();
+        g2d.setTransform(new AffineTransform());
+        Rectangle area = g2d.getClipBounds();
+        g2d.setTransform(base);
+
+        // Find the stamps of the visible markers.
+        StampKey [] keys = new StampKey[n];
+        Map stamps = new HashMap();
+        Map steps = new HashMap();
+        double [] pts = new double[8];
+        int visible = 0;
+        for (int i=0; i < n; i++) {
+            Rectangle2D b = lists[i].bounds;
+            if (b == null)
+                continue;
+            AffineTransform at = new AffineTransform(base);
+            at.concatenate(ats[i]);
+            pts[0] = pts[4] = b.getMinX();
+            pts[2] = pts[6] = b.getMaxX();
+            pts[1] = pts[3] = b.getMinY();
+            pts[5] = pts[7] = b.getMaxY();
+            at.transform(pts, 0, pts, 0, 4);
+            double minX = Math.min(Math.min(pts[0], pts[2]),
+                                   Math.min(pts[4], pts[6]));
+            double maxX = Math.max(Math.max(pts[0], pts[2]),
+                                   Math.max(pts[4], pts[6]));
+            double minY = Math.min(Math.min(pts[1], pts[3]),
+                                   Math.min(pts[5], pts[7]));
+            double maxY = Math.max(Math.max(pts[1], pts[3]),
+                                   Math.max(pts[5], pts[7]));
+            if ((maxX - minX + 3) * (maxY - minY + 3) > MAX_STAMP_AREA)
+                return false;
+            if ((area != null) &&
+                ((maxX + 1 < area.getMinX()) || (minX - 1 > area.getMaxX()) ||
+                 (maxY + 1 < area.getMinY()) || (minY - 1 > area.getMaxY())))
+                continue;
+
+            Double step = (Double)steps.get(lists[i]);
+            if (step == null) {
+                double r = Math.max(Math.max(Math.abs(b.getMinX()),
+                                             Math.abs(b.getMaxX())),
+                                    Math.max(Math.abs(b.getMinY()),
+                                             Math.abs(b.getMaxY())));
+                step = Double.valueOf(1 / (16 * Math.max(r, 1e-3)));
+                steps.put(lists[i], step);
+            }
+            keys[i] = new StampKey(lists[i], step.doubleValue(), at);
+            if (!stamps.containsKey(keys[i]))
+                stamps.put(keys[i], new Stamp());
+            visible++;
+        }
+        if (stamps.size() * 4 > visible)
+            return false;
+
+        RenderingHints hints = g2d.getRenderingHints();
+        hints.remove(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE);
+        hints.remove(RenderingHintsKeyExt.KEY_AREA_OF_INTEREST);
+        g2d.setTransform(new AffineTransform());
+        try {
+            for (int i=0; i < n; i++) {
+                StampKey k = keys[i];
+                if (k == null)
+                    continue;
+                Stamp st = (Stamp)stamps.get(k);
+                if (st.image == null) {
+                    double step = ((Double)steps.get(k.list)).doubleValue();
+                    renderStamp(st, k.list, k.getTransform(step), hints);
+                }
+                AffineTransform at = new AffineTransform(base);
+                at.concatenate(ats[i]);
+                int x = (int)Math.floor(at.getTranslateX());
+                int y = (int)Math.floor(at.getTranslateY());
+                g2d.drawImage(st.image, x + st.x, y + st.y, null);
+            }
+        } finally {
+            g2d.setTransform(base);
+        }
+        return true;
+    }
+
+    /**
+     * Renders a marker stamp with the given device transform.
+     */
+    private static void renderStamp(Stamp st, DisplayList dl,
+                                    AffineTransform at,
+                                    RenderingHints hints) {
+        Rectangle2D b = at.createTransformedShape(dl.bounds).getBounds2D();
+        st.x = (int)Math.floor(b.getMinX()) - 1;
+        st.y = (int)Math.floor(b.getMinY()) - 1;
+        int w = (int)Math.ceil(b.getMaxX()) + 1 - st.x;
+        int h = (int)Math.ceil(b.getMaxY()) + 1 - st.y;
+        st.image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = GraphicsUtil.createGraphics(st.image, hints);
+        g.translate(-st.x, -st.y);
+        g.transform(at);
+        dl.paint(g);
+        g.dispose();
+    }
+
+    /**
+     * Returns the display list of a marker, or null if some of its
+     * content must be painted by its node.
+     */
+    private static DisplayList recordMarker(Marker m) {
+        DisplayListRecorder r = new DisplayListRecorder(m.getMarkerNode());
+        DisplayList dl = r.getDisplayList();
+        r.dispose();
+        return dl.paintsNodes() ? null : dl;
+    }
+
+    /**
+     * Paints one marker at the given transform, unless it is out of
+     * <code>area</code>, the bounds of the clip.
+     */
+    private static void paintInstance(Graphics2D g2d, AffineTransform base,
+                                      Rectangle2D area, double [] pts,
+                                      DisplayList dl, AffineTransform at) {
+        Rectangle2D b = dl.bounds;
+        if (b == null)
+            return;
+        if (area != null) {
+            pts[0] = pts[4] = b.getMinX();
+            pts[2] = pts[6] = b.getMaxX();
+            pts[1] = pts[3] = b.getMinY();
+            pts[5] = pts[7] = b.getMaxY();
+            at.transform(pts, 0, pts, 0, 4);
+            if ((Math.max(Math.max(pts[0], pts[2]), Math.max(pts[4], pts[6]))
+                 < area.getMinX()) ||
+                (Math.min(Math.min(pts[0], pts[2]), Math.min(pts[4], pts[6]))
+                 > area.getMaxX()) ||
+                (Math.max(Math.max(pts[1], pts[3]), Math.max(pts[5], pts[7]))
+                 < area.getMinY()) ||
+                (Math.min(Math.min(pts[1], pts[3]), Math.min(pts[5], pts[7]))
+                 > area.getMaxY()))
+                return;
+        }
+        g2d.transform(at);
+        dl.paint(g2d);
+        g2d.setTransform(base);
+    }
+
     /**
      * Returns the area painted by this shape painter.
      */
@@ -26,6 +26,8 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.ColorModel;
 import java.awt.image.Raster;
+import java.util.Iterator;
+import java.util.LinkedList;
 
 import org.apache.batik.ext.awt.image.PadMode;
 import org.apache.batik.ext.awt.image.renderable.Filter;
@@ -70,7 +72,19 @@ public class PatternPaint implements Paint {
      */
     private boolean overflow;
 
-    private PatternPaintContext lastContext;
+    /**
+     * The most recently used contexts, most recent first.  A context
+     * renders the pattern tile once, so keeping a few of them lets
+     * shapes filled with a shared paint reuse that rendering.  The
+     * contexts kept are only handed out to their first user, the
+     * following ones get a copy with its own raster.
+     */
+    private LinkedList contexts = new LinkedList();
+
+    /**
+     * The maximum number of contexts kept.
+     */
+    protected static final int MAX_CONTEXTS = 4;
 
     /**
      * Constructs a new <code>PatternPaint</code>.
@@ -162,33 +176,77 @@ public class PatternPaint implements Paint {
             xform.concatenate(patternTransform);
         }
 
-        if ((lastContext!= null) &&
-            lastContext.getColorModel().equals(cm)) {
-
-            double[] p = new double[6];
-            double[] q = new double[6];
-            xform.getMatrix(p);
-            lastContext.getUsr2Dev().getMatrix(q);
-            if ((p[0] == q[0]) && (p[1] == q[1]) &&
-                (p[2] == q[2]) && (p[3] == q[3])) {
-                if ((p[4] == q[4]) && (p[5] == q[5]))
-                    return lastContext;
-                else
-                    return new PatternPaintContextWrapper
-                        (lastContext,
-                         (int)(q[4]-p[4]+0.5),
-                         (int)(q[5]-p[5]+0.5));
-            }
-        }
+        PaintContext pc = getCachedContext(cm, xform);
+        if (pc != null)
+            return pc;
+
         // System.out.println("CreateContext Called: " + this);
         // System.out.println("CM : " + cm);
         // System.out.println("xForm : " + xform);
 
-        lastContext = new PatternPaintContext(cm, xform,
-                                       hints, tile,
-                                       patternRegion,
-                                       overflow);
-        return lastContext;
+        PatternPaintContext ppc = new PatternPaintContext(cm, xform,
+                                                          hints, tile,
+                                                          patternRegion,
+                                                          overflow);
+        synchronized (contexts) {
+            contexts.addFirst(ppc);
+            if (contexts.size() > MAX_CONTEXTS)
+                contexts.removeLast();
+        }
+        return ppc;
+    }
+
+    /**
+     * Returns a context sharing the tile rendering of a cached context
+     * usable for the given color model and transform, or null.  A
+     * context can be used when it has the same scale and shear, and a
+     * translation differing by a whole number of device pixels, which
+     * is handled by shifting its output.
+     */
+    private PaintContext getCachedContext(ColorModel cm,
+                                          AffineTransform xform) {
+        double[] p = new double[6];
+        double[] q = new double[6];
+        xform.getMatrix(p);
+        synchronized (contexts) {
+            Iterator i = contexts.iterator();
+            while (i.hasNext()) {
+                PatternPaintContext ppc = (PatternPaintContext)i.next();
+                if (!ppc.getColorModel().equals(cm))
+                    continue;
+                ppc.getUsr2Dev().getMatrix(q);
+                if ((p[0] != q[0]) || (p[1] != q[1]) ||
+                    (p[2] != q[2]) || (p[3] != q[3]))
+                    continue;
+                // A fractional shift would sample the tile differently.
+                double dx = q[4]-p[4];
+                double dy = q[5]-p[5];
+                if ((dx != Math.rint(dx)) || (dy != Math.rint(dy)))
+                    continue;
+
+                if (ppc != contexts.getFirst()) {
+                    i.remove();
+                    contexts.addFirst(ppc);
+                }
+                PatternPaintContext copy = new PatternPaintContext(ppc);
+                if ((dx == 0) && (dy == 0))
+                    return copy;
+                return new PatternPaintContextWrapper
+                    (copy, (int)Math.round(dx), (int)Math.round(dy));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the cached contexts, so the pattern tile is rendered
+     * again the next time it is needed.  This must be called when the
+     * content of the pattern changes.
+     */
+    public void clearCache() {
+        synchronized (contexts) {
+            contexts.clear();
+        }
     }
 
     /**
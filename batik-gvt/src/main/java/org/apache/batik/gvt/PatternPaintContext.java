@@ -143,6 +143,16 @@ public class PatternPaintContext implements PaintContext {
         }
     }
 
+    /**
+     * Creates a context sharing the tile rendering of the specified
+     * context, with its own working raster.
+     */
+    PatternPaintContext(PatternPaintContext ppc) {
+        this.rasterCM = ppc.rasterCM;
+        this.tiled    = ppc.tiled;
+        this.usr2dev  = ppc.usr2dev;
+    }
+
     public void dispose(){
         raster = null;
     }
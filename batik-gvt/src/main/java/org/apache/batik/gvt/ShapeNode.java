@@ -19,10 +19,17 @@
 package org.apache.batik.gvt;
 
 import java.awt.Graphics2D;
+import java.awt.Paint;
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.geom.RectangularShape;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.geom.ShapeSimplifier;
 import org.apache.batik.util.HaltingThread;
 
 /**
@@ -68,6 +75,18 @@ public class ShapeNode extends AbstractGraphicsNode {
      */
     private Shape sensitiveArea;
 
+    /**
+     * The maximum number of simplified shapes kept by a node.
+     */
+    static final int MAX_SIMPLIFIED_SHAPES = 8;
+
+    /**
+     * Internal Cache: The shapes simplified for painting, by user space
+     * tolerance (Double).  The shape of this node is stored for the
+     * tolerances it is not worth simplifying for.
+     */
+    private Map simplifiedShapes;
+
     /**
      * Constructs a new empty <code>ShapeNode</code>.
      */
@@ -150,7 +169,84 @@ public class ShapeNode extends AbstractGraphicsNode {
      */
     public void primitivePaint(Graphics2D g2d) {
         if (shapePainter != null) {
-            shapePainter.paint(g2d);
+            Shape s = getSimplifiedShape(g2d);
+            if (s == null)
+                shapePainter.paint(g2d);
+            else
+                paintSimplified(g2d, shapePainter, s);
+        }
+    }
+
+    /**
+     * Returns the shape to paint instead of the shape of this node when
+     * the <code>KEY_SHAPE_SIMPLIFICATION</code> hint is set, or null.
+     * The tolerance is brought to user space for the power of two at or
+     * above the scale of the graphics, so that the simplified shape is
+     * kept as long as the scale stays between the same powers of two.
+     * A shape is kept for each of these scales, up to
+     * <code>MAX_SIMPLIFIED_SHAPES</code> of them, so that going back and
+     * forth between scales does not simplify again.
+     */
+    protected Shape getSimplifiedShape(Graphics2D g2d) {
+        Object o = g2d.getRenderingHint
+            (RenderingHintsKeyExt.KEY_SHAPE_SIMPLIFICATION);
+        if (!(o instanceof Number) || (shape instanceof RectangularShape))
+            return null;
+        double tol = ((Number)o).doubleValue();
+        if (tol <= 0)
+            return null;
+
+        // The largest scale of the transform.
+        AffineTransform at = g2d.getTransform();
+        double a = at.getScaleX(), b = at.getShearX();
+        double c = at.getShearY(), d = at.getScaleY();
+        double sum = a*a + b*b + c*c + d*d;
+        double det = a*d - b*c;
+        double scale = Math.sqrt((sum + Math.sqrt(Math.max
+                                                  (sum*sum - 4*det*det, 0)))
+                                 / 2);
+        if ((scale == 0) || Double.isInfinite(scale) || Double.isNaN(scale))
+            return null;
+        tol = Math.scalb(tol, -(Math.getExponent(scale) + 1));
+
+        if (simplifiedShapes == null)
+            simplifiedShapes = new HashMap();
+        Double key = Double.valueOf(tol);
+        Shape s = (Shape)simplifiedShapes.get(key);
+        if (s == null) {
+            if (simplifiedShapes.size() >= MAX_SIMPLIFIED_SHAPES)
+                simplifiedShapes.clear();
+            s = ShapeSimplifier.simplify(shape, tol);
+            simplifiedShapes.put(key, s);
+        }
+        return (s == shape) ? null : s;
+    }
+
+    /**
+     * Paints <code>s</code> with the fills and strokes of the given
+     * painter.  Other painters, such as markers, paint their own shape.
+     */
+    protected void paintSimplified(Graphics2D g2d, ShapePainter sp, Shape s) {
+        Class cl = sp.getClass();
+        if (cl == CompositeShapePainter.class) {
+            CompositeShapePainter csp = (CompositeShapePainter)sp;
+            for (int i=0; i < csp.getShapePainterCount(); i++)
+                paintSimplified(g2d, csp.getShapePainter(i), s);
+        } else if (cl == FillShapePainter.class) {
+            Paint paint = ((FillShapePainter)sp).getPaint();
+            if (paint != null) {
+                g2d.setPaint(paint);
+                g2d.fill(s);
+            }
+        } else if (cl == StrokeShapePainter.class) {
+            StrokeShapePainter ssp = (StrokeShapePainter)sp;
+            if ((ssp.getPaint() != null) && (ssp.getStroke() != null)) {
+                g2d.setPaint(ssp.getPaint());
+                g2d.setStroke(ssp.getStroke());
+                g2d.draw(s);
+            }
+        } else {
+            sp.paint(g2d);
         }
     }
 
@@ -170,6 +266,7 @@ public class ShapeNode extends AbstractGraphicsNode {
         sensitiveBounds = null;
         paintedArea = null;
         sensitiveArea = null;
+        simplifiedShapes = null;
     }
 
     public void setPointerEventType(int pointerEventType) {
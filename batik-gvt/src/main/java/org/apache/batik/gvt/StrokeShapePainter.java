@@ -24,9 +24,15 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.Point2D;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A shape painter that can be used to draw the outline of a shape.
+ * <p>
+ * The stroked outline is computed once and kept along with its bounds
+ * until the shape or the stroke is set again.
  *
  * @author <a href="mailto:Thierry.Kormann@sophia.inria.fr">Thierry Kormann</a>
  * @version $Id$
@@ -43,6 +49,11 @@ public class StrokeShapePainter implements ShapePainter {
      */
     protected Shape strokedShape;
 
+    /**
+     * The bounds of the stroked shape.
+     */
+    protected Rectangle2D strokedBounds;
+
     /**
      * The stroke attribute used to draw the outline of the shape.
      */
@@ -73,8 +84,8 @@ public class StrokeShapePainter implements ShapePainter {
      * @param newStroke the stroke object used to draw the outline of the shape
      */
     public void setStroke(Stroke newStroke) {
-        this.stroke       = newStroke;
-        this.strokedShape = null;
+        this.stroke = newStroke;
+        invalidate();
     }
 
     /**
@@ -121,31 +132,27 @@ public class StrokeShapePainter implements ShapePainter {
         if ((paint == null) || (stroke == null))
             return null;
 
-        if (strokedShape == null)
-            strokedShape = stroke.createStrokedShape(shape);
-
-        return strokedShape;
+        return getStrokedShape();
     }
 
     /**
      * Returns the bounds of the area painted by this shape painter
      */
     public Rectangle2D getPaintedBounds2D() {
-        Shape painted = getPaintedArea();
-        if (painted == null)
+        if ((paint == null) || (stroke == null))
             return null;
 
-        return painted.getBounds2D();
+        return (Rectangle2D)getStrokedBounds().clone();
     }
 
     /**
      * Returns the bounds of the area covered by this shape painter
      */
     public boolean inPaintedArea(Point2D pt){
-        Shape painted = getPaintedArea();
-        if (painted == null)
+        if ((paint == null) || (stroke == null))
             return false;
-        return painted.contains(pt);
+        return getStrokedBounds().contains(pt) &&
+            getStrokedShape().contains(pt);
     }
         
     /**
@@ -155,10 +162,7 @@ public class StrokeShapePainter implements ShapePainter {
         if (stroke == null)
             return null;
 
-        if (strokedShape == null)
-            strokedShape = stroke.createStrokedShape(shape);
-
-        return strokedShape;
+        return getStrokedShape();
     }
 
     /**
@@ -166,11 +170,10 @@ public class StrokeShapePainter implements ShapePainter {
      * (even if not painted).
      */
     public Rectangle2D getSensitiveBounds2D() {
-        Shape sensitive = getSensitiveArea();
-        if (sensitive == null)
+        if (stroke == null)
             return null;
 
-        return sensitive.getBounds2D();
+        return (Rectangle2D)getStrokedBounds().clone();
     }
 
     /**
@@ -178,10 +181,10 @@ public class StrokeShapePainter implements ShapePainter {
      * (even if not painted).
      */
     public boolean inSensitiveArea(Point2D pt){
-        Shape sensitive = getSensitiveArea();
-        if (sensitive == null)
+        if (stroke == null)
             return false;
-        return sensitive.contains(pt);
+        return getStrokedBounds().contains(pt) &&
+            getStrokedShape().contains(pt);
     }
         
     /**
@@ -195,7 +198,7 @@ public class StrokeShapePainter implements ShapePainter {
             throw new IllegalArgumentException();
         }
         this.shape = shape;
-        this.strokedShape = null;
+        invalidate();
     }
 
     /**
@@ -206,4 +209,105 @@ public class StrokeShapePainter implements ShapePainter {
     public Shape getShape(){
         return shape;
     }
+
+    /**
+     * Drops the stroked shape and its bounds.
+     */
+    protected void invalidate() {
+        if ((strokedShape == null) && (strokedBounds == null))
+            return;
+        strokedShape = null;
+        strokedBounds = null;
+        synchronized (outlinePainters) {
+            outlinePainters.remove(this);
+        }
+    }
+
+    /**
+     * Returns the stroked shape, computing it if needed.  The stroke
+     * must not be null.
+     */
+    protected Shape getStrokedShape() {
+        Shape ss = strokedShape;
+        if (ss == null)
+            ss = stroke();
+        else
+            countHit();
+        return ss;
+    }
+
+    /**
+     * Returns the bounds of the stroked shape, which must not be
+     * modified.  The stroke must not be null.
+     */
+    protected Rectangle2D getStrokedBounds() {
+        Rectangle2D sb = strokedBounds;
+        if (sb == null) {
+            stroke();
+            sb = strokedBounds;
+        } else {
+            countHit();
+        }
+        return sb;
+    }
+
+    /**
+     * Strokes the shape and keeps the outline and its bounds.
+     */
+    private Shape stroke() {
+        Shape ss = stroke.createStrokedShape(shape);
+        strokedBounds = ss.getBounds2D();
+        strokedShape = ss;
+        synchronized (outlinePainters) {
+            outlinePainters.put(this, Boolean.TRUE);
+        }
+        outlineMisses.incrementAndGet();
+        return ss;
+    }
+
+    private static void countHit() {
+        outlineHits.incrementAndGet();
+    }
+
+    /**
+     * The painters holding a stroked outline.
+     */
+    private static final Map outlinePainters = new WeakHashMap();
+
+    private static final AtomicLong outlineHits = new AtomicLong();
+
+    private static final AtomicLong outlineMisses = new AtomicLong();
+
+    /**
+     * Returns the number of painters holding a stroked outline.
+     */
+    public static int getOutlineCacheSize() {
+        synchronized (outlinePainters) {
+            return outlinePainters.size();
+        }
+    }
+
+    /**
+     * Returns the number of times a kept outline or its bounds were
+     * used rather than stroking the shape.
+     */
+    public static long getOutlineCacheHits() {
+        return outlineHits.get();
+    }
+
+    /**
+     * Returns the number of outlines that had to be stroked.
+     */
+    public static long getOutlineCacheMisses() {
+        return outlineMisses.get();
+    }
+
+    /**
+     * Resets the counts of the kept outlines.  The outlines themselves
+     * are kept.
+     */
+    public static void resetOutlineCacheStats() {
+        outlineHits.set(0);
+        outlineMisses.set(0);
+    }
 }
@@ -24,6 +24,7 @@ import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -32,23 +33,81 @@ import java.util.Set;
 
 import org.apache.batik.gvt.event.GraphicsNodeChangeAdapter;
 import org.apache.batik.gvt.event.GraphicsNodeChangeEvent;
+import org.apache.batik.ext.awt.geom.RectListManager;
 import org.apache.batik.ext.awt.image.renderable.Filter;
 
 /**
- * This class tracks the changes on a GVT tree
+ * This class tracks the changes on a GVT tree.
+ * <p>
+ * The dirty areas are either returned as shapes in the user space of
+ * the root node by {@link #getDirtyAreas()}, or as device space
+ * rectangles by {@link #getDirtyRegions(AffineTransform)}.  The latter
+ * holds a rectangle for the area each changed node covered before and
+ * after its changes, merged where repainting their union overdraws
+ * less than the overdraw tolerance, so that renderers can repaint
+ * just those.
  *
  * @author <a href="mailto:Thomas.DeWeeese@Kodak.com">Thomas DeWeese</a>
  * @version $Id$
  */
 public class UpdateTracker extends GraphicsNodeChangeAdapter {
 
+    /**
+     * The default number of pixels one is willing to overdraw to save
+     * a dirty region.  Set by the
+     * <code>org.apache.batik.gvt.UpdateTracker.overdraw</code> system
+     * property.
+     */
+    public static final int OVERDRAW_TOLERANCE;
+
+    /**
+     * The number of pixels a scanline of a dirty region costs.
+     */
+    static final int LINE_OVERHEAD = 10;
+
+    static {
+        int overdraw = 10000;
+        try {
+            overdraw = Integer.parseInt(System.getProperty
+                ("org.apache.batik.gvt.UpdateTracker.overdraw", "10000"));
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            OVERDRAW_TOLERANCE = overdraw;
+        }
+    }
+
     Map dirtyNodes = null;
     Map fromBounds = new HashMap();
     protected static Rectangle2D NULL_RECT = new Rectangle();
 
+    /**
+     * The number of pixels one is willing to overdraw to save a dirty
+     * region.
+     */
+    protected int overdrawTolerance = OVERDRAW_TOLERANCE;
+
     public UpdateTracker(){
     }
 
+    /**
+     * Returns the number of pixels one is willing to overdraw to save
+     * a dirty region.
+     */
+    public int getOverdrawTolerance() {
+        return overdrawTolerance;
+    }
+
+    /**
+     * Sets the number of pixels one is willing to overdraw to save a
+     * dirty region.  Zero only merges regions that overlap enough to
+     * cost nothing.
+     */
+    public void setOverdrawTolerance(int overdrawTolerance) {
+        if (overdrawTolerance < 0) overdrawTolerance = 0;
+        this.overdrawTolerance = overdrawTolerance;
+    }
+
     /**
      * Tells whether the GVT tree has changed.
      */
@@ -64,6 +123,37 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
             return null;
 
         List ret = new LinkedList();
+        collectDirtyAreas(null, ret);
+        return ret;
+    }
+
+    /**
+     * Returns the dirty areas on GVT as rectangles in device space,
+     * merged according to the overdraw tolerance.  The rectangles are
+     * outset by a pixel to include the effects of anti-aliasing.
+     * @param usr2dev The transform from the user space of the root
+     *                node to device space.
+     */
+    public RectListManager getDirtyRegions(AffineTransform usr2dev) {
+        if (dirtyNodes == null)
+            return null;
+        if (usr2dev == null)
+            usr2dev = new AffineTransform();
+
+        List rects = new ArrayList();
+        collectDirtyAreas(usr2dev, rects);
+        RectListManager rlm = new RectListManager(rects);
+        rlm.mergeRects(overdrawTolerance, LINE_OVERHEAD);
+        return rlm;
+    }
+
+    /**
+     * Adds the dirty areas of the dirty nodes to <code>ret</code> and
+     * forgets the nodes.  The areas are shapes in the user space of
+     * the root node if <code>usr2dev</code> is null, device space
+     * rectangles otherwise.
+     */
+    protected void collectDirtyAreas(AffineTransform usr2dev, List ret) {
         Set keys = dirtyNodes.keySet();
         for (Object key : keys) {
             WeakReference gnWRef = (WeakReference) key;
@@ -86,9 +176,14 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
 
             Rectangle2D srcNRgn = null;
             AffineTransform nat = null;
+            // The node whose current bounds are srcNRgn, if any, and
+            // the current transform of its ancestors.
+            GraphicsNode srcGN = null;
+            AffineTransform pat = null;
             if (!(srcORgn instanceof ChngSrcRect)) {
                 // For change srcs don't use the new bounds of parent node.
                 srcNRgn = gn.getBounds();
+                srcGN = gn;
                 nat = gn.getTransform();
                 if (nat != null)
                     nat = new AffineTransform(nat);
@@ -113,6 +208,7 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
                 Filter f = gn.getFilter();
                 if (f != null) {
                     srcNRgn = f.getBounds2D();
+                    srcGN = null;
                     nat = null;
                 }
 
@@ -134,6 +230,10 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
                         nat.preConcatenate(at);
                     else
                         nat = new AffineTransform(at);
+                    if (pat != null)
+                        pat.preConcatenate(at);
+                    else
+                        pat = new AffineTransform(at);
                 }
             } while (true);
 
@@ -149,22 +249,62 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
                         oRgn = oat.createTransformedShape(srcORgn);
                     // System.err.println("GN: " + srcGN);
                     // System.err.println("Src: " + oRgn.getBounds2D());
-                    ret.add(oRgn);
+                    if (usr2dev == null)
+                        ret.add(oRgn);
+                    else
+                        ret.add(toDeviceRect
+                                (usr2dev.createTransformedShape(oRgn)
+                                 .getBounds2D()));
                 }
 
                 if (srcNRgn != null) {
-                    Shape nRgn = srcNRgn;
-                    if (nat != null)
-                        nRgn = nat.createTransformedShape(srcNRgn);
-                    if (nRgn != null)
-                        ret.add(nRgn);
+                    if (usr2dev == null) {
+                        Shape nRgn = srcNRgn;
+                        if (nat != null)
+                            nRgn = nat.createTransformedShape(srcNRgn);
+                        if (nRgn != null)
+                            ret.add(nRgn);
+                    } else {
+                        AffineTransform dat = new AffineTransform(usr2dev);
+                        if (nat != null)
+                            dat.concatenate(nat);
+                        Rectangle2D nRgn;
+                        if ((srcGN != null) &&
+                            ((dat.getType() &
+                              (AffineTransform.TYPE_GENERAL_ROTATION |
+                               AffineTransform.TYPE_GENERAL_TRANSFORM)) != 0)) {
+                            // The bounds of the rotated bounds can be
+                            // much larger than the area the node covers,
+                            // so let the node bound itself in device space.
+                            AffineTransform pdat = new AffineTransform(usr2dev);
+                            if (pat != null)
+                                pdat.concatenate(pat);
+                            nRgn = srcGN.getTransformedBounds(pdat);
+                        } else {
+                            nRgn = dat.createTransformedShape(srcNRgn)
+                                .getBounds2D();
+                        }
+                        if (nRgn != null)
+                            ret.add(toDeviceRect(nRgn));
+                    }
                 }
             }
         }
 
         fromBounds.clear();
         dirtyNodes.clear();
-        return ret;
+    }
+
+    /**
+     * Returns the device rectangle covering <code>r2d</code>, outset
+     * by one pixel to ensure it includes the effects of anti-aliasing.
+     */
+    static Rectangle toDeviceRect(Rectangle2D r2d) {
+        int x0 = (int) Math.floor(r2d.getX());
+        int y0 = (int) Math.floor(r2d.getY());
+        int x1 = (int) Math.ceil(r2d.getX() + r2d.getWidth());
+        int y1 = (int) Math.ceil(r2d.getY() + r2d.getHeight());
+        return new Rectangle(x0 - 1, y0 - 1, x1 - x0 + 3, y1 - y0 + 3);
     }
 
     /**
@@ -264,8 +404,13 @@ public class UpdateTracker extends GraphicsNodeChangeAdapter {
                 // System.err.println("GN: " + gn);
                 // System.err.println("R2d: " + r2d);
                 // System.err.println("Rgn: " + rgn);
-                //r2d = r2d.createUnion(rgn);
-                r2d.add(rgn);
+                // Only the bounds gn had before its first change were
+                // painted, the ones it went through since need no repaint.
+                if (r2d instanceof ChngSrcRect)
+                    r2d.add(rgn);
+                else if (rgn instanceof ChngSrcRect)
+                    // r2d may be the node's own bounds, don't modify it.
+                    r2d = r2d.createUnion(rgn);
                 // System.err.println("Union: " + r2d);
             }
             else             r2d = rgn;
@@ -18,6 +18,7 @@
  */
 package org.apache.batik.gvt.font;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Paint;
@@ -35,6 +36,7 @@ import java.awt.geom.Rectangle2D;
 import java.text.AttributedCharacterIterator;
 import java.text.CharacterIterator;
 
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.gvt.text.ArabicTextHandler;
 import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
 import org.apache.batik.gvt.text.TextPaintInfo;
@@ -948,6 +950,11 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
             }
 
         } else {
+            if ((fillPaint instanceof Color) &&
+                ((stroke == null) || (strokePaint == null)) &&
+                drawFromAtlas(graphics2D, (Color)fillPaint))
+                return;
+
             Shape outline = getOutline();
 
             // check if we need to fill this glyph
@@ -964,4 +971,89 @@ public class AWTGVTGlyphVector implements GVTGlyphVector {
             }
         }
     }
+
+    /**
+     * Fills the glyphs of this vector with a color by copying their
+     * images from a <code>GlyphAtlas</code>.  This is done when the
+     * <code>KEY_GLYPH_ATLAS</code> hint is set and the font is no larger
+     * than its value in device pixels, when drawing to an image with
+     * source over compositing, and when neither the graphics nor the
+     * glyphs are rotated, skewed or flipped.
+     *
+     * @return false, having drawn nothing, if the glyphs can not be
+     *         drawn from an atlas.
+     */
+    protected boolean drawFromAtlas(Graphics2D g2d, Color color) {
+        Object o = g2d.getRenderingHint(RenderingHintsKeyExt.KEY_GLYPH_ATLAS);
+        if (!(o instanceof Number))
+            return false;
+        if (g2d.getRenderingHint(RenderingHintsKeyExt.KEY_BUFFERED_IMAGE)
+            == null)
+            return false;
+        Object trans = g2d.getRenderingHint
+            (RenderingHintsKeyExt.KEY_TRANSCODING);
+        if ((trans == RenderingHintsKeyExt.VALUE_TRANSCODING_PRINTING) ||
+            (trans == RenderingHintsKeyExt.VALUE_TRANSCODING_VECTOR))
+            return false;
+        if (!AlphaComposite.SrcOver.equals(g2d.getComposite()))
+            return false;
+        // text-rendering = geometricPrecision so fill shapes.
+        if ((g2d.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING) ==
+             RenderingHints.VALUE_TEXT_ANTIALIAS_ON) &&
+            (g2d.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL) ==
+             RenderingHints.VALUE_STROKE_PURE))
+            return false;
+
+        AffineTransform at = g2d.getTransform();
+        if ((at.getShearX() != 0) || (at.getShearY() != 0) ||
+            (at.getScaleX() <= 0) || (at.getScaleY() <= 0))
+            return false;
+        double sx = at.getScaleX() * scaleFactor;
+        double sy = at.getScaleY() * scaleFactor;
+        if (Math.max(sx, sy) * AWTGVTFont.FONT_SIZE >
+            ((Number)o).doubleValue())
+            return false;
+        int numGlyphs = getNumGlyphs();
+        for (int i=0; i < numGlyphs; i++) {
+            AffineTransform gt = glyphTransforms[i];
+            if ((gt != null) &&
+                ((gt.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0))
+                return false;
+        }
+
+        GlyphAtlas atlas = GlyphAtlas.getAtlas(gvtFont.awtFont, sx, sy,
+                                               color, g2d);
+        double [] pt = new double[2];
+        g2d.setTransform(new AffineTransform());
+        try {
+            for (int i=0; i < numGlyphs; i++) {
+                if (!glyphVisible[i])
+                    continue;
+                pt[0] = glyphPositions[i].getX();
+                pt[1] = glyphPositions[i].getY();
+                AffineTransform gt = glyphTransforms[i];
+                if (gt != null) {
+                    pt[0] += gt.getTranslateX();
+                    pt[1] += gt.getTranslateY();
+                }
+                at.transform(pt, 0, pt, 0, 1);
+
+                // The geometry is found by glyph code, not by character.
+                AWTGlyphGeometryCache.Value v = AWTGVTFont.getGlyphGeometry
+                    (gvtFont, CharacterIterator.DONE, awtGlyphVector, i,
+                     defaultGlyphPositions[i]);
+                if (!atlas.draw(g2d, awtGlyphVector.getGlyphCode(i),
+                                v.getOutline(), pt[0], pt[1])) {
+                    // Too large for the atlas, fill it.
+                    g2d.setTransform(at);
+                    g2d.setPaint(color);
+                    g2d.fill(getGlyphOutline(i));
+                    g2d.setTransform(new AffineTransform());
+                }
+            }
+        } finally {
+            g2d.setTransform(at);
+        }
+        return true;
+    }
 }
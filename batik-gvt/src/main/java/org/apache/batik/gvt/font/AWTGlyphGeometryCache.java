@@ -26,6 +26,9 @@ import java.lang.ref.SoftReference;
 /**
  * This class represents a doubly indexed hash table, which holds
  * soft references to the contained glyph geometry informations.
+ * <code>AWTGVTFont</code> now shares the geometry of its glyphs
+ * through <code>GlyphGeometryCache</code>, only the <code>Value</code>
+ * class is still used.
  *
  * @author <a href="mailto:stephane@hillion.org">Stephane Hillion</a>
  * @author <a href="mailto:tkormann@ilog.fr">Thierry Kormann</a>
@@ -0,0 +1,394 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+
+/**
+ * Images of the glyphs of a font, drawn at one device size, in one
+ * color and with the same antialiasing, packed in a few sheets.
+ * Small text is drawn from these images instead of filling the
+ * outlines of its glyphs one by one.
+ * <p>
+ * Each glyph is rendered for <code>PHASES</code> by
+ * <code>PHASES</code> subpixel positions, at the middle of each, so
+ * glyphs drawn from an atlas may be off by an eighth of a pixel.
+ * <p>
+ * The atlases are shared by all the documents, up to a number of
+ * pixels.  When they take more, the least recently used ones are
+ * dropped.
+ *
+ * @version $Id$
+ */
+public class GlyphAtlas {
+
+    /**
+     * The width and height of a sheet.
+     */
+    static final int SHEET_SIZE = 128;
+
+    /**
+     * The number of subpixel positions of a glyph along each axis.
+     */
+    static final int PHASES = 4;
+
+    /**
+     * The number of pixels the atlases take at most.  Set by the
+     * <code>org.apache.batik.gvt.font.GlyphAtlas.maxPixels</code>
+     * system property.
+     */
+    static final long MAX_PIXELS;
+
+    static {
+        long max = 4*1024*1024;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.gvt.font.GlyphAtlas.maxPixels");
+            if (s != null)
+                max = Long.parseLong(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            MAX_PIXELS = max;
+        }
+    }
+
+    /**
+     * The atlases, by <code>Key</code>, least recently used first.
+     */
+    private static final Map atlases = new LinkedHashMap(16, 0.75f, true);
+
+    private static long pixels;
+
+    private static final AtomicLong hits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The cell of glyphs with nothing to draw.
+     */
+    private static final Cell EMPTY = new Cell(null, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * The cell of glyphs too large for a sheet.
+     */
+    private static final Cell TOO_LARGE = new Cell(null, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Returns the atlas of a font, shared by all the documents.
+     * @param font the font, at <code>AWTGVTFont.FONT_SIZE</code>.
+     * @param sx the horizontal scale from the font to device space.
+     * @param sy the vertical scale from the font to device space.
+     * @param color the color of the glyphs.
+     * @param g2d the graphics whose antialiasing and stroke control
+     *        hints the glyphs are rendered with.
+     */
+    public static GlyphAtlas getAtlas(Font font, double sx, double sy,
+                                      Color color, Graphics2D g2d) {
+        Key k = new Key(font, sx, sy, color,
+                        g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING),
+                        g2d.getRenderingHint
+                        (RenderingHints.KEY_STROKE_CONTROL));
+        synchronized (atlases) {
+            GlyphAtlas a = (GlyphAtlas)atlases.get(k);
+            if (a == null) {
+                a = new GlyphAtlas(k);
+                atlases.put(k, a);
+            }
+            return a;
+        }
+    }
+
+    /**
+     * Counts a new sheet of <code>atlas</code> and drops the least
+     * recently used atlases while the atlases take too many pixels.
+     */
+    private static void sheetAdded(GlyphAtlas atlas) {
+        synchronized (atlases) {
+            if (atlas.dropped)
+                return;
+            atlas.sheetCount++;
+            pixels += SHEET_SIZE * SHEET_SIZE;
+            Iterator i = atlases.values().iterator();
+            while ((pixels > MAX_PIXELS) && i.hasNext()) {
+                GlyphAtlas a = (GlyphAtlas)i.next();
+                pixels -= a.sheetCount * SHEET_SIZE * SHEET_SIZE;
+                a.dropped = true;
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pixels the atlases take.
+     */
+    public static long getPixelCount() {
+        synchronized (atlases) {
+            return pixels;
+        }
+    }
+
+    /**
+     * Returns the number of glyphs drawn from an image already rendered.
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of glyph images rendered.
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Drops all the atlases and resets the counts.
+     */
+    public static void clear() {
+        synchronized (atlases) {
+            Iterator i = atlases.values().iterator();
+            while (i.hasNext())
+                ((GlyphAtlas)i.next()).dropped = true;
+            atlases.clear();
+            pixels = 0;
+            hits.set(0);
+            misses.set(0);
+        }
+    }
+
+    /**
+     * The font, scale, color and hints of this atlas.
+     */
+    protected final Key key;
+
+    /**
+     * The hints the glyphs are rendered with.
+     */
+    protected final RenderingHints hints;
+
+    /**
+     * The cells, by glyph code and subpixel position.
+     */
+    protected final Map cells = new HashMap();
+
+    /**
+     * The sheets, the last one being filled.
+     */
+    protected final List sheets = new ArrayList();
+
+    /**
+     * The number of sheets counted in the pixels of the atlases, and
+     * whether this atlas was dropped from them.  Guarded by the lock of
+     * the atlases.
+     */
+    int sheetCount;
+    boolean dropped;
+
+    /**
+     * The position of the next cell on the current shelf of the last
+     * sheet, and the height of the shelf.
+     */
+    protected int shelfX, shelfY, shelfHeight;
+
+    protected GlyphAtlas(Key key) {
+        this.key = key;
+        hints = new RenderingHints(null);
+        if (key.antialiasing != null)
+            hints.put(RenderingHints.KEY_ANTIALIASING, key.antialiasing);
+        if (key.strokeControl != null)
+            hints.put(RenderingHints.KEY_STROKE_CONTROL, key.strokeControl);
+    }
+
+    /**
+     * Draws a glyph.  The graphics must have the identity transform.
+     * @param glyphCode the code of the glyph.
+     * @param outline the outline of the glyph at its origin, at
+     *        <code>AWTGVTFont.FONT_SIZE</code>.
+     * @param x the horizontal device position of the glyph origin.
+     * @param y the vertical device position of the glyph origin.
+     * @return false, having drawn nothing, if the glyph is too large for
+     *         the atlas.
+     */
+    public boolean draw(Graphics2D g2d, int glyphCode, Shape outline,
+                        double x, double y) {
+        int ix = (int)Math.floor(x);
+        int iy = (int)Math.floor(y);
+        int px = Math.min((int)((x - ix) * PHASES), PHASES-1);
+        int py = Math.min((int)((y - iy) * PHASES), PHASES-1);
+        Cell c = getCell(glyphCode, outline, px, py);
+        if (c == TOO_LARGE)
+            return false;
+        if (c == EMPTY)
+            return true;
+        int dx = ix + c.dx, dy = iy + c.dy;
+        g2d.drawImage(c.sheet, dx, dy, dx + c.w, dy + c.h,
+                      c.x, c.y, c.x + c.w, c.y + c.h, null);
+        return true;
+    }
+
+    /**
+     * Returns the cell of a glyph at a subpixel position, rendering it
+     * if needed.  Cells are never changed once rendered, so they may be
+     * drawn outside the lock.
+     */
+    protected synchronized Cell getCell(int glyphCode, Shape outline,
+                                        int px, int py) {
+        Long k = Long.valueOf(((long)glyphCode << 8) | (px << 4) | py);
+        Cell c = (Cell)cells.get(k);
+        if (c != null) {
+            if ((c != TOO_LARGE) && (c != EMPTY))
+                hits.incrementAndGet();
+            return c;
+        }
+
+        AffineTransform at = new AffineTransform
+            (key.sx, 0, 0, key.sy,
+             (px + 0.5) / PHASES, (py + 0.5) / PHASES);
+        Rectangle2D b = at.createTransformedShape(outline).getBounds2D();
+        if (b.isEmpty()) {
+            c = EMPTY;
+        } else {
+            int x0 = (int)Math.floor(b.getMinX()) - 1;
+            int y0 = (int)Math.floor(b.getMinY()) - 1;
+            int w = (int)Math.ceil(b.getMaxX()) + 1 - x0;
+            int h = (int)Math.ceil(b.getMaxY()) + 1 - y0;
+            c = allocate(w, h, x0, y0);
+            if (c != TOO_LARGE) {
+                Graphics2D g = GraphicsUtil.createGraphics(c.sheet, hints);
+                g.clipRect(c.x, c.y, w, h);
+                g.translate(c.x - x0, c.y - y0);
+                g.transform(at);
+                g.setColor(key.color);
+                g.fill(outline);
+                g.dispose();
+                misses.incrementAndGet();
+            }
+        }
+        cells.put(k, c);
+        return c;
+    }
+
+    /**
+     * Returns a free cell of the given size, in the last sheet or in a
+     * new one.
+     */
+    private Cell allocate(int w, int h, int dx, int dy) {
+        if ((w > SHEET_SIZE) || (h > SHEET_SIZE))
+            return TOO_LARGE;
+        if (shelfX + w > SHEET_SIZE) {
+            shelfY += shelfHeight;
+            shelfX = 0;
+            shelfHeight = 0;
+        }
+        if (sheets.isEmpty() || (shelfY + h > SHEET_SIZE)) {
+            sheets.add(new BufferedImage(SHEET_SIZE, SHEET_SIZE,
+                                         BufferedImage.TYPE_INT_ARGB_PRE));
+            shelfX = shelfY = shelfHeight = 0;
+            sheetAdded(this);
+        }
+        BufferedImage sheet = (BufferedImage)sheets.get(sheets.size()-1);
+        Cell c = new Cell(sheet, shelfX, shelfY, w, h, dx, dy);
+        shelfX += w;
+        shelfHeight = Math.max(shelfHeight, h);
+        return c;
+    }
+
+    /**
+     * The place of a glyph image in a sheet, and its offset from the
+     * integer part of the glyph position.
+     */
+    static class Cell {
+        final BufferedImage sheet;
+        final int x, y, w, h;
+        final int dx, dy;
+
+        Cell(BufferedImage sheet, int x, int y, int w, int h,
+             int dx, int dy) {
+            this.sheet = sheet;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.dx = dx;
+            this.dy = dy;
+        }
+    }
+
+    /**
+     * The font, scale, color and hints of an atlas.
+     */
+    static class Key {
+        final Font font;
+        final double sx, sy;
+        final Color color;
+        final Object antialiasing;
+        final Object strokeControl;
+        final int hash;
+
+        Key(Font font, double sx, double sy, Color color,
+            Object antialiasing, Object strokeControl) {
+            this.font = font;
+            this.sx = sx;
+            this.sy = sy;
+            this.color = color;
+            this.antialiasing = antialiasing;
+            this.strokeControl = strokeControl;
+            long h = Double.doubleToLongBits(sx) * 31
+                + Double.doubleToLongBits(sy);
+            int hc = font.hashCode() * 31 + (int)(h ^ (h >>> 32));
+            hc = hc * 31 + color.getRGB();
+            if (antialiasing != null)
+                hc = hc * 31 + antialiasing.hashCode();
+            if (strokeControl != null)
+                hc = hc * 31 + strokeControl.hashCode();
+            this.hash = hc;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return (hash == k.hash) && (sx == k.sx) && (sy == k.sy) &&
+                (antialiasing == k.antialiasing) &&
+                (strokeControl == k.strokeControl) &&
+                font.equals(k.font) && color.equals(k.color);
+        }
+    }
+}
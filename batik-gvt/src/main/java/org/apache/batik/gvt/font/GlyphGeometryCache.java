@@ -0,0 +1,284 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.Font;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The glyph geometry of the AWT fonts, shared by all the glyph vectors
+ * of all the documents.  Glyphs are keyed by font and glyph code.  The
+ * fonts of <code>AWTGVTFont</code> are all derived at
+ * <code>AWTGVTFont.FONT_SIZE</code>, so a glyph is outlined once for
+ * all the sizes it is used at, and scaled by the glyph vectors.
+ * <p>
+ * The cache holds its geometry strongly, up to a number of bytes
+ * estimated from the outlines.  When it holds more, the least recently
+ * used glyphs are dropped.  Lookups do not lock the cache, so several
+ * threads may lay out text at once.
+ *
+ * @version $Id$
+ */
+public final class GlyphGeometryCache {
+
+    /**
+     * The number of bytes of geometry the cache holds at most.
+     * Set by the
+     * <code>org.apache.batik.gvt.font.GlyphGeometryCache.maxSize</code>
+     * system property.
+     */
+    static final long MAX_SIZE;
+
+    static {
+        long max = 4*1024*1024;
+        try {
+            String s = System.getProperty
+                ("org.apache.batik.gvt.font.GlyphGeometryCache.maxSize");
+            if (s != null)
+                max = Long.parseLong(s);
+        } catch (SecurityException se) {
+        } catch (NumberFormatException nfe) {
+        } finally {
+            MAX_SIZE = max;
+        }
+    }
+
+    private static final ConcurrentHashMap entries = new ConcurrentHashMap();
+
+    private static final AtomicLong size = new AtomicLong();
+
+    private static final AtomicLong clock = new AtomicLong();
+
+    private static final AtomicLong hits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Held while dropping glyphs.
+     */
+    private static final Object evictLock = new Object();
+
+    /**
+     * No instances.
+     */
+    private GlyphGeometryCache() {
+    }
+
+    /**
+     * Returns the geometry of a glyph, or null if it is not in the
+     * cache.
+     */
+    public static AWTGlyphGeometryCache.Value get(Font font, int glyphCode) {
+        Entry e = (Entry)entries.get(new Key(font, glyphCode));
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        e.lastUse = clock.incrementAndGet();
+        hits.incrementAndGet();
+        return e.value;
+    }
+
+    /**
+     * Puts the geometry of a glyph in the cache and returns the one to
+     * use: the given one, or the one another thread put first.
+     */
+    public static AWTGlyphGeometryCache.Value put
+        (Font font, int glyphCode, AWTGlyphGeometryCache.Value value) {
+        Entry e = new Entry(value);
+        Entry old = (Entry)entries.putIfAbsent(new Key(font, glyphCode), e);
+        if (old != null) {
+            old.lastUse = clock.incrementAndGet();
+            return old.value;
+        }
+        if (size.addAndGet(e.size) > MAX_SIZE)
+            evict();
+        return value;
+    }
+
+    /**
+     * Returns the number of glyphs in the cache.
+     */
+    public static int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated number of bytes of geometry the cache holds.
+     */
+    public static long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of bytes of geometry the cache may hold.
+     */
+    public static long getMaxSize() {
+        return MAX_SIZE;
+    }
+
+    /**
+     * Returns the number of glyphs found in the cache.
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of glyphs not found in the cache.
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of glyphs dropped to stay within the maximum
+     * size.
+     */
+    public static long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Drops all the glyphs and resets the counts.
+     */
+    public static void clear() {
+        synchronized (evictLock) {
+            Iterator i = entries.entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry me = (Map.Entry)i.next();
+                if (entries.remove(me.getKey(), me.getValue()))
+                    size.addAndGet(-((Entry)me.getValue()).size);
+            }
+            hits.set(0);
+            misses.set(0);
+            evictions.set(0);
+        }
+    }
+
+    /**
+     * Drops the least recently used glyphs until the cache holds three
+     * quarters of its maximum size, so that it is not sorted again for
+     * every new glyph.
+     */
+    static void evict() {
+        synchronized (evictLock) {
+            if (size.get() <= MAX_SIZE)
+                return;
+            List l = new ArrayList(entries.entrySet());
+            Collections.sort(l, new Comparator() {
+                    public int compare(Object o1, Object o2) {
+                        long l1 = ((Entry)((Map.Entry)o1).getValue()).lastUse;
+                        long l2 = ((Entry)((Map.Entry)o2).getValue()).lastUse;
+                        return (l1 < l2) ? -1 : ((l1 == l2) ? 0 : 1);
+                    }
+                });
+            long target = MAX_SIZE - (MAX_SIZE >> 2);
+            Iterator i = l.iterator();
+            while (i.hasNext() && (size.get() > target)) {
+                Map.Entry me = (Map.Entry)i.next();
+                Entry e = (Entry)me.getValue();
+                if (entries.remove(me.getKey(), e)) {
+                    size.addAndGet(-e.size);
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * A font and glyph code.
+     */
+    static class Key {
+        final Font font;
+        final int glyphCode;
+        final int hash;
+
+        Key(Font font, int glyphCode) {
+            this.font = font;
+            this.glyphCode = glyphCode;
+            this.hash = font.hashCode() * 31 + glyphCode;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return (glyphCode == k.glyphCode) &&
+                ((font == k.font) || font.equals(k.font));
+        }
+    }
+
+    /**
+     * The geometry of a glyph, with its estimated size.
+     */
+    static class Entry {
+        final AWTGlyphGeometryCache.Value value;
+        final long size;
+        volatile long lastUse;
+
+        Entry(AWTGlyphGeometryCache.Value value) {
+            this.value = value;
+            this.size = sizeOf(value);
+            this.lastUse = clock.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the estimated number of bytes of a glyph geometry: the
+     * coordinates and segment types of its outline, and the objects
+     * around them.
+     */
+    static long sizeOf(AWTGlyphGeometryCache.Value v) {
+        long n = 200;
+        double [] c = new double[6];
+        for (PathIterator pi = v.getOutline().getPathIterator(null);
+             !pi.isDone(); pi.next()) {
+            switch (pi.currentSegment(c)) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                n += 9;
+                break;
+            case PathIterator.SEG_QUADTO:
+                n += 17;
+                break;
+            case PathIterator.SEG_CUBICTO:
+                n += 25;
+                break;
+            default:
+                n += 1;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,480 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.snapshot;
+
+import java.awt.BasicStroke;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.batik.gvt.PatternPaint;
+
+/**
+ * A painting of a GVT tree, recorded by a <code>SnapshotGraphics2D</code>
+ * as the list of the shapes filled and stroked and of the images drawn,
+ * each with the transform, clip, rendering hints and composite it was
+ * painted with.  A snapshot can be written to a stream in a compact
+ * binary form and read back, so that a document can be painted again
+ * without parsing it, applying its style sheets or building its tree.
+ * <p>
+ * The shapes are kept as vectors, so a snapshot can be painted at any
+ * scale.  What the tree paints through offscreen images (filters,
+ * masks, group opacity, antialiased clips and raster images) is
+ * recorded as images, at the resolution of the recording.
+ * <p>
+ * A snapshot made from a document also describes how the document
+ * is fitted to an image: its size, its <code>viewBox</code> and
+ * <code>preserveAspectRatio</code>, and the transform it was recorded
+ * with.  A snapshot is never modified once recorded or read, so
+ * several threads may paint it at the same time.
+ *
+ * @version $Id$
+ */
+public class Snapshot {
+
+    /**
+     * The operations, in painting order.
+     */
+    protected final Op [] ops;
+
+    /**
+     * The bounds of the operations, or null.
+     */
+    protected final Rectangle2D bounds;
+
+    /**
+     * The size of the image the snapshot was recorded for.
+     */
+    protected float width, height;
+
+    /**
+     * The <code>viewBox</code> of the document, or null.
+     */
+    protected float [] viewBox;
+
+    /**
+     * The <code>preserveAspectRatio</code> alignment of the document,
+     * one of the <code>SVGPreserveAspectRatio</code> constants.
+     */
+    protected short align = 6;
+
+    /**
+     * Whether the <code>preserveAspectRatio</code> of the document is
+     * 'meet' rather than 'slice'.
+     */
+    protected boolean meet = true;
+
+    /**
+     * The transform from the user space of the document to the image.
+     */
+    protected AffineTransform viewTransform = new AffineTransform();
+
+    /**
+     * The scale between the image and the space of the operations.
+     */
+    protected float resolution = 1;
+
+    /**
+     * Creates a snapshot of the given operations.
+     */
+    Snapshot(Op [] ops) {
+        this.ops = ops;
+        Rectangle2D b = null;
+        for (int i=0; i < ops.length; i++) {
+            if (ops[i].bounds == null)
+                continue;
+            if (b == null)
+                b = (Rectangle2D)ops[i].bounds.clone();
+            else
+                b.add(ops[i].bounds);
+        }
+        this.bounds = b;
+    }
+
+    /**
+     * Reads a snapshot written by <code>write</code>.
+     * @exception IOException if the stream can not be read or is not a
+     *            snapshot.
+     */
+    public static Snapshot read(InputStream is) throws IOException {
+        return new SnapshotReader(is).read();
+    }
+
+    /**
+     * Writes this snapshot to the given stream.  The stream is not
+     * closed.
+     * @exception IOException if the stream can not be written or if
+     *            the snapshot paints with a composite other than an
+     *            <code>AlphaComposite</code>.
+     */
+    public void write(OutputStream os) throws IOException {
+        new SnapshotWriter(os).write(this);
+    }
+
+    /**
+     * Returns the number of operations of this snapshot.
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /**
+     * Returns the bounds of the area painted by this snapshot, or null
+     * if it paints nothing.
+     */
+    public Rectangle2D getBounds() {
+        return (bounds == null) ? null : (Rectangle2D)bounds.clone();
+    }
+
+    /**
+     * Sets the size of the image the snapshot was recorded for.
+     */
+    public void setSize(float width, float height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the width of the image the snapshot was recorded for.
+     */
+    public float getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image the snapshot was recorded for.
+     */
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * Sets the <code>viewBox</code> and <code>preserveAspectRatio</code>
+     * of the document.
+     * @param viewBox the x, y, width and height of the view box, or null.
+     * @param align one of the <code>SVGPreserveAspectRatio</code>
+     *        alignment constants.
+     * @param meet true for 'meet', false for 'slice'.
+     */
+    public void setViewBox(float [] viewBox, short align, boolean meet) {
+        this.viewBox = (viewBox == null) ? null : (float[])viewBox.clone();
+        this.align = align;
+        this.meet = meet;
+    }
+
+    /**
+     * Returns the <code>viewBox</code> of the document, or null if it
+     * is not known.
+     */
+    public float [] getViewBox() {
+        return (viewBox == null) ? null : (float[])viewBox.clone();
+    }
+
+    /**
+     * Returns the <code>preserveAspectRatio</code> alignment of the
+     * document.
+     */
+    public short getAlign() {
+        return align;
+    }
+
+    /**
+     * Returns true if the <code>preserveAspectRatio</code> of the
+     * document is 'meet', false if it is 'slice'.
+     */
+    public boolean isMeet() {
+        return meet;
+    }
+
+    /**
+     * Sets the transform from the user space of the document to the
+     * image it was recorded for.
+     */
+    public void setViewTransform(AffineTransform at) {
+        viewTransform = new AffineTransform(at);
+    }
+
+    /**
+     * Returns the transform from the user space of the document to the
+     * image it was recorded for.
+     */
+    public AffineTransform getViewTransform() {
+        return new AffineTransform(viewTransform);
+    }
+
+    /**
+     * Sets the scale between the image the snapshot was recorded for
+     * and the space of its operations.
+     */
+    public void setResolution(float resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * Returns the scale between the image the snapshot was recorded for
+     * and the space of its operations.
+     */
+    public float getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns the transform from the user space of the document to the
+     * space of the operations.
+     */
+    public AffineTransform getRecordingTransform() {
+        AffineTransform at
+            = AffineTransform.getScaleInstance(resolution, resolution);
+        at.concatenate(viewTransform);
+        return at;
+    }
+
+    /**
+     * Paints this snapshot.  The graphics is left as it was given.
+     *
+     * @param g2d the Graphics2D to use, with the transform from the
+     *        space of the operations to the device.
+     */
+    public void paint(Graphics2D g2d) {
+        if (ops.length == 0)
+            return;
+
+        AffineTransform baseTransform = g2d.getTransform();
+        Paint basePaint = g2d.getPaint();
+        Stroke baseStroke = g2d.getStroke();
+        Composite baseComposite = g2d.getComposite();
+        Shape baseClip = g2d.getClip();
+        RenderingHints baseHints = g2d.getRenderingHints();
+        Rectangle2D area = (baseClip == null) ? null : baseClip.getBounds2D();
+
+        State state = null;
+        for (int i=0; i < ops.length; i++) {
+            Op op = ops[i];
+            Rectangle2D b = op.bounds;
+            if ((area != null) && (b != null) &&
+                ((b.getMinX() > area.getMaxX()) ||
+                 (b.getMaxX() < area.getMinX()) ||
+                 (b.getMinY() > area.getMaxY()) ||
+                 (b.getMaxY() < area.getMinY())))
+                continue;
+
+            State s = op.state;
+            if (s != state) {
+                g2d.setTransform(baseTransform);
+                // The hints come first since Java 2D rasterizes the
+                // clip with the stroke control hint it is set with.
+                boolean hintsChanged
+                    = (state == null) || (s.hints != state.hints);
+                if (hintsChanged) {
+                    g2d.setRenderingHints(baseHints);
+                    if (s.hints != null)
+                        g2d.addRenderingHints(s.hints);
+                }
+                if (hintsChanged || (s.clip != state.clip)) {
+                    g2d.setClip(baseClip);
+                    if (s.clip != null)
+                        g2d.clip(s.clip);
+                }
+                g2d.setComposite(s.composite);
+                g2d.transform(s.transform);
+                state = s;
+            }
+            op.paint(g2d);
+        }
+
+        g2d.setTransform(baseTransform);
+        g2d.setClip(baseClip);
+        g2d.setRenderingHints(baseHints);
+        g2d.setComposite(baseComposite);
+        g2d.setPaint(basePaint);
+        g2d.setStroke(baseStroke);
+    }
+
+    /**
+     * What the operations are painted with besides their paint and
+     * stroke.  Consecutive operations painted the same way share their
+     * state.
+     */
+    static class State {
+
+        /**
+         * The transform from the space of the operation to the one of
+         * the snapshot.
+         */
+        final AffineTransform transform;
+
+        /**
+         * The clip, in the space of the snapshot, or null.
+         */
+        final Shape clip;
+
+        /**
+         * The rendering hints, or null.
+         */
+        final RenderingHints hints;
+
+        /**
+         * The composite.
+         */
+        final Composite composite;
+
+        State(AffineTransform transform, Shape clip, RenderingHints hints,
+              Composite composite) {
+            this.transform = transform;
+            this.clip = clip;
+            this.hints = hints;
+            this.composite = composite;
+        }
+
+        /**
+         * Returns the bounds of <code>r</code> in the space of the
+         * snapshot, within the clip, or null if it is clipped out.
+         */
+        Rectangle2D deviceBounds(Rectangle2D r) {
+            r = transform.createTransformedShape(r).getBounds2D();
+            if (clip == null)
+                return r;
+            Rectangle2D cb = clip.getBounds2D();
+            if ((r.getMinX() > cb.getMaxX()) ||
+                (r.getMaxX() < cb.getMinX()) ||
+                (r.getMinY() > cb.getMaxY()) ||
+                (r.getMaxY() < cb.getMinY()))
+                return null;
+            Rectangle2D.intersect(r, cb, r);
+            return r;
+        }
+    }
+
+    /**
+     * An operation of a snapshot.
+     */
+    abstract static class Op {
+        final State state;
+
+        /**
+         * The bounds of the area painted, in the space of the snapshot.
+         */
+        final Rectangle2D bounds;
+
+        Op(State state, Rectangle2D bounds) {
+            this.state = state;
+            this.bounds = bounds;
+        }
+
+        /**
+         * Paints this operation, the graphics being set up with its
+         * state.
+         */
+        abstract void paint(Graphics2D g2d);
+    }
+
+    /**
+     * An operation filling a shape.
+     */
+    static class FillOp extends Op {
+        final Shape shape;
+        final Paint paint;
+
+        FillOp(State state, Rectangle2D bounds, Shape shape, Paint paint) {
+            super(state, bounds);
+            this.shape = shape;
+            this.paint = paint;
+        }
+
+        void paint(Graphics2D g2d) {
+            g2d.setPaint(paint);
+            if (paint instanceof PatternPaint) {
+                // Its context paints the pattern's snapshot.
+                synchronized (paint) {
+                    g2d.fill(shape);
+                }
+            } else {
+                g2d.fill(shape);
+            }
+        }
+    }
+
+    /**
+     * An operation stroking a shape.  The stroke is drawn rather than
+     * its outline filled, to get the same normalization as when the
+     * snapshot was recorded.
+     */
+    static class DrawOp extends FillOp {
+        final BasicStroke stroke;
+
+        DrawOp(State state, Rectangle2D bounds, Shape shape, Paint paint,
+               BasicStroke stroke) {
+            super(state, bounds, shape, paint);
+            this.stroke = stroke;
+        }
+
+        void paint(Graphics2D g2d) {
+            g2d.setStroke(stroke);
+            g2d.setPaint(paint);
+            if (paint instanceof PatternPaint) {
+                synchronized (paint) {
+                    g2d.draw(shape);
+                }
+            } else {
+                g2d.draw(shape);
+            }
+        }
+
+        /**
+         * Returns the bounds of <code>s</code> stroked with
+         * <code>bs</code>, slightly enlarged.
+         */
+        static Rectangle2D strokeBounds(Shape s, BasicStroke bs) {
+            Rectangle2D r = s.getBounds2D();
+            double w = bs.getLineWidth() / 2;
+            if (bs.getLineJoin() == BasicStroke.JOIN_MITER)
+                w *= Math.max(bs.getMiterLimit(), 1.5);
+            else
+                w *= 1.5;
+            return new Rectangle2D.Double(r.getX() - w, r.getY() - w,
+                                          r.getWidth() + 2*w,
+                                          r.getHeight() + 2*w);
+        }
+    }
+
+    /**
+     * An operation drawing an image at the origin of its space.
+     */
+    static class ImageOp extends Op {
+        final BufferedImage image;
+
+        ImageOp(State state, Rectangle2D bounds, BufferedImage image) {
+            super(state, bounds);
+            this.image = image;
+        }
+
+        void paint(Graphics2D g2d) {
+            g2d.drawImage(image, 0, 0, null);
+        }
+    }
+}
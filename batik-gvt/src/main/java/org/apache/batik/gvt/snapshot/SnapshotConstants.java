@@ -0,0 +1,124 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.snapshot;
+
+import java.awt.RenderingHints;
+
+/**
+ * The constants of the binary form of the snapshots.
+ * <p>
+ * A snapshot starts with <code>MAGIC</code> and <code>VERSION</code>,
+ * followed by a deflated stream holding the size, view box and
+ * transforms of the snapshot and then its commands.  The commands
+ * either set the state that the following operations are painted
+ * with, define an image or a pattern for later use, or paint.  A
+ * pattern holds the commands of its own snapshot, up to an
+ * <code>END</code> command like the main list.
+ *
+ * @version $Id$
+ */
+interface SnapshotConstants {
+
+    /**
+     * The first bytes of a snapshot, "BGVT".
+     */
+    int MAGIC = 0x42475654;
+
+    /**
+     * The version of the format.
+     */
+    short VERSION = 1;
+
+    // The commands.
+    byte END            = 0;
+    byte SET_TRANSFORM  = 1;
+    byte SET_CLIP       = 2;
+    byte CLEAR_CLIP     = 3;
+    byte SET_HINTS      = 4;
+    byte SET_COMPOSITE  = 5;
+    byte SET_PAINT      = 6;
+    byte SET_STROKE     = 7;
+    byte DEFINE_IMAGE   = 8;
+    byte DEFINE_PATTERN = 9;
+    byte FILL           = 10;
+    byte DRAW           = 11;
+    byte DRAW_IMAGE     = 12;
+
+    // The kinds of paint.
+    byte PAINT_COLOR    = 0;
+    byte PAINT_LINEAR   = 1;
+    byte PAINT_RADIAL   = 2;
+    byte PAINT_PATTERN  = 3;
+
+    // The kinds of shape.  Rectangles are kept as such since Java 2D
+    // rounds rectangular clips differently from paths.
+    byte SHAPE_PATH     = 0;
+    byte SHAPE_RECT     = 1;
+
+    /**
+     * The rendering hints kept by the snapshots, with their values.
+     * Hints are written as indexes in these arrays.
+     */
+    RenderingHints.Key [] HINT_KEYS = {
+        RenderingHints.KEY_ALPHA_INTERPOLATION,
+        RenderingHints.KEY_ANTIALIASING,
+        RenderingHints.KEY_COLOR_RENDERING,
+        RenderingHints.KEY_DITHERING,
+        RenderingHints.KEY_FRACTIONALMETRICS,
+        RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.KEY_RENDERING,
+        RenderingHints.KEY_STROKE_CONTROL,
+        RenderingHints.KEY_TEXT_ANTIALIASING
+    };
+
+    Object [][] HINT_VALUES = {
+        { RenderingHints.VALUE_ALPHA_INTERPOLATION_DEFAULT,
+          RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY,
+          RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED },
+        { RenderingHints.VALUE_ANTIALIAS_DEFAULT,
+          RenderingHints.VALUE_ANTIALIAS_OFF,
+          RenderingHints.VALUE_ANTIALIAS_ON },
+        { RenderingHints.VALUE_COLOR_RENDER_DEFAULT,
+          RenderingHints.VALUE_COLOR_RENDER_QUALITY,
+          RenderingHints.VALUE_COLOR_RENDER_SPEED },
+        { RenderingHints.VALUE_DITHER_DEFAULT,
+          RenderingHints.VALUE_DITHER_DISABLE,
+          RenderingHints.VALUE_DITHER_ENABLE },
+        { RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT,
+          RenderingHints.VALUE_FRACTIONALMETRICS_OFF,
+          RenderingHints.VALUE_FRACTIONALMETRICS_ON },
+        { RenderingHints.VALUE_INTERPOLATION_BICUBIC,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR,
+          RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR },
+        { RenderingHints.VALUE_RENDER_DEFAULT,
+          RenderingHints.VALUE_RENDER_QUALITY,
+          RenderingHints.VALUE_RENDER_SPEED },
+        { RenderingHints.VALUE_STROKE_DEFAULT,
+          RenderingHints.VALUE_STROKE_NORMALIZE,
+          RenderingHints.VALUE_STROKE_PURE },
+        { RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_OFF,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_GASP,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HBGR,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_VRGB,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_VBGR }
+    };
+}
@@ -0,0 +1,676 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.snapshot;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.ImageObserver;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.batik.ext.awt.LinearGradientPaint;
+import org.apache.batik.ext.awt.RadialGradientPaint;
+import org.apache.batik.ext.awt.g2d.AbstractGraphics2D;
+import org.apache.batik.ext.awt.g2d.GraphicContext;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.PatternPaint;
+
+/**
+ * A <code>Graphics2D</code> that records what is painted on it into a
+ * <code>Snapshot</code>.  Painting a GVT tree on it records the tree:
+ * <pre>
+ *   SnapshotGraphics2D g2d = new SnapshotGraphics2D();
+ *   g2d.clip(area);
+ *   node.paint(g2d);
+ *   Snapshot snapshot = g2d.getSnapshot();
+ * </pre>
+ * <p>
+ * Shapes are recorded with their paint when it is a color, a gradient
+ * or a pattern, and with their stroke when it is a
+ * <code>BasicStroke</code>.  Other strokes are recorded as the shape
+ * they outline, and shapes with other paints as an image of them.
+ * Text is recorded as the outlines of its glyphs.
+ * <p>
+ * The graphics has no device configuration, so what is painted
+ * through offscreen images is converted as for the offscreen images
+ * of the renderers: to sRGB with unpremultiplied alpha.  The graphics
+ * created from this one record into the same snapshot.
+ *
+ * @version $Id$
+ */
+public class SnapshotGraphics2D extends AbstractGraphics2D
+    implements SnapshotConstants {
+
+    /**
+     * The recording shared with the graphics created from this one.
+     */
+    protected Recording recording;
+
+    /**
+     * Creates a graphics recording into a new snapshot.
+     */
+    public SnapshotGraphics2D() {
+        super(true);
+        gc = new SnapshotGraphicContext();
+        recording = new Recording();
+    }
+
+    /**
+     * Creates a graphics with the state of <code>g</code>, recording
+     * into the same snapshot.
+     */
+    public SnapshotGraphics2D(SnapshotGraphics2D g) {
+        super(g);
+        recording = g.recording;
+    }
+
+    /**
+     * Returns the snapshot of what was painted so far.
+     */
+    public Snapshot getSnapshot() {
+        return recording.getSnapshot();
+    }
+
+    public Graphics create() {
+        return new SnapshotGraphics2D(this);
+    }
+
+    public void dispose() {
+    }
+
+    /**
+     * Fills a shape with the current paint.
+     */
+    public void fill(Shape s) {
+        Paint paint = gc.getPaint();
+        if (!isRecordable(paint)) {
+            fillImage(s);
+            return;
+        }
+        Snapshot.State state = getState(null);
+        Rectangle2D b = state.deviceBounds(s.getBounds2D());
+        if (b != null)
+            recording.add(new Snapshot.FillOp(state, b, s, paint));
+    }
+
+    /**
+     * Strokes a shape with the current paint and stroke.
+     */
+    public void draw(Shape s) {
+        Stroke stroke = gc.getStroke();
+        Paint paint = gc.getPaint();
+        if (!(stroke instanceof BasicStroke) || !isRecordable(paint)) {
+            fill(stroke.createStrokedShape(s));
+            return;
+        }
+        BasicStroke bs = (BasicStroke)stroke;
+        Snapshot.State state = getState(null);
+        Rectangle2D b = state.deviceBounds
+            (Snapshot.DrawOp.strokeBounds(s, bs));
+        if (b != null)
+            recording.add(new Snapshot.DrawOp(state, b, s, paint, bs));
+    }
+
+    /**
+     * Returns true if <code>paint</code> can be recorded as is.
+     */
+    protected boolean isRecordable(Paint paint) {
+        return (paint instanceof Color) ||
+            (paint.getClass() == LinearGradientPaint.class) ||
+            (paint.getClass() == RadialGradientPaint.class) ||
+            (paint.getClass() == PatternPaint.class);
+    }
+
+    /**
+     * Records a shape filled with a paint that can not be recorded, as
+     * an image of its device area.
+     */
+    protected void fillImage(Shape s) {
+        SnapshotGraphicContext sgc = (SnapshotGraphicContext)gc;
+        AffineTransform at = sgc.currentTransform();
+        Rectangle r = at.createTransformedShape(s).getBounds();
+        Shape clip = sgc.deviceClip();
+        if (clip != null)
+            r = r.intersection(clip.getBounds());
+        if (r.isEmpty())
+            return;
+
+        BufferedImage bi = new BufferedImage(r.width, r.height,
+                                             BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bi.createGraphics();
+        g.setRenderingHints(getRecordedHints());
+        g.translate(-r.x, -r.y);
+        g.transform(at);
+        g.setPaint(gc.getPaint());
+        g.fill(s);
+        g.dispose();
+        addImage(bi, AffineTransform.getTranslateInstance(r.x, r.y), false);
+    }
+
+    /**
+     * Returns the rendering hints of the graphics that the snapshots
+     * keep.
+     */
+    protected RenderingHints getRecordedHints() {
+        return keptHints(((SnapshotGraphicContext)gc).currentHints());
+    }
+
+    /**
+     * Returns the hints of <code>hints</code> that the snapshots keep.
+     */
+    static RenderingHints keptHints(RenderingHints hints) {
+        RenderingHints ret = new RenderingHints(null);
+        for (int i=0; i < HINT_KEYS.length; i++) {
+            Object v = hints.get(HINT_KEYS[i]);
+            if (v != null)
+                ret.put(HINT_KEYS[i], v);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the state to record operations with.
+     * @param at the transform of the operations to the device space,
+     *        or null for the current one.
+     */
+    protected Snapshot.State getState(AffineTransform at) {
+        SnapshotGraphicContext sgc = (SnapshotGraphicContext)gc;
+        if (at == null)
+            at = sgc.currentTransform();
+        return recording.getState(at, sgc.deviceClip(), sgc.currentHints(),
+                                  gc.getComposite());
+    }
+
+    /**
+     * Records an image drawn with the given transform, relative to the
+     * current one.
+     */
+    protected void drawImage(BufferedImage img, AffineTransform xform) {
+        AffineTransform at = ((SnapshotGraphicContext)gc).currentTransform();
+        at = new AffineTransform(at);
+        if (xform != null)
+            at.concatenate(xform);
+        addImage(img, at, true);
+    }
+
+    /**
+     * Records an image drawn with the given transform to the device.
+     * @param copy whether the pixels of the image must be copied,
+     *        since the image may be reused and painted again.
+     */
+    protected void addImage(BufferedImage img, AffineTransform at,
+                            boolean copy) {
+        Snapshot.State state = getState(at);
+        Rectangle2D b = state.deviceBounds
+            (new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+        if (b == null)
+            return;
+        BufferedImage bi = recording.getImage(img, copy);
+        recording.add(new Snapshot.ImageOp(state, b, bi));
+    }
+
+    public boolean drawImage(Image img, int x, int y,
+                             ImageObserver observer) {
+        BufferedImage bi = toBufferedImage(img);
+        if (bi != null)
+            drawImage(bi, AffineTransform.getTranslateInstance(x, y));
+        return true;
+    }
+
+    public boolean drawImage(Image img, int x, int y,
+                             int width, int height,
+                             ImageObserver observer) {
+        BufferedImage bi = toBufferedImage(img);
+        if ((bi == null) || (width == 0) || (height == 0))
+            return true;
+        AffineTransform at = AffineTransform.getTranslateInstance(x, y);
+        at.scale(width / (double)bi.getWidth(),
+                 height / (double)bi.getHeight());
+        drawImage(bi, at);
+        return true;
+    }
+
+    public void drawRenderedImage(RenderedImage img,
+                                  AffineTransform xform) {
+        AffineTransform at = new AffineTransform(xform);
+        BufferedImage bi;
+        if (img instanceof BufferedImage) {
+            bi = (BufferedImage)img;
+        } else {
+            ColorModel cm = img.getColorModel();
+            Raster r = img.getData();
+            WritableRaster wr = GraphicsUtil.makeRasterWritable(r, 0, 0);
+            bi = new BufferedImage(cm, wr, cm.isAlphaPremultiplied(), null);
+            at.translate(r.getMinX(), r.getMinY());
+        }
+        drawImage(bi, at);
+    }
+
+    public void drawRenderableImage(RenderableImage img,
+                                    AffineTransform xform) {
+        drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    public void drawString(String s, float x, float y) {
+        fill(getFont().createGlyphVector
+             (getFontRenderContext(), s).getOutline(x, y));
+    }
+
+    public void drawString(AttributedCharacterIterator iterator,
+                           float x, float y) {
+        new TextLayout(iterator, getFontRenderContext()).draw(this, x, y);
+    }
+
+    /**
+     * Returns null: painting assumes an sRGB destination.
+     */
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return null;
+    }
+
+    public FontMetrics getFontMetrics(Font f) {
+        synchronized (FONT_METRICS_GRAPHICS) {
+            return FONT_METRICS_GRAPHICS.getFontMetrics(f);
+        }
+    }
+
+    /**
+     * The graphics giving the font metrics.
+     */
+    private static final Graphics2D FONT_METRICS_GRAPHICS
+        = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+            .createGraphics();
+
+    /**
+     * Does nothing, snapshots record no XOR painting.
+     */
+    public void setXORMode(Color c1) {
+    }
+
+    /**
+     * Does nothing, snapshots can not copy what they recorded.
+     */
+    public void copyArea(int x, int y, int width, int height,
+                         int dx, int dy) {
+    }
+
+    /**
+     * Returns <code>img</code> as a buffered image, or null if it
+     * is not loaded.
+     */
+    protected static BufferedImage toBufferedImage(Image img) {
+        if (img instanceof BufferedImage)
+            return (BufferedImage)img;
+        int w = img.getWidth(null);
+        int h = img.getHeight(null);
+        if ((w <= 0) || (h <= 0))
+            return null;
+        BufferedImage bi = new BufferedImage(w, h,
+                                             BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bi.createGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        return bi;
+    }
+
+    /**
+     * The state of the graphics, with access to the device clip and to
+     * the current transform and hints without copying them.
+     */
+    protected static class SnapshotGraphicContext extends GraphicContext {
+
+        /**
+         * Returns the clip in user space, as a rectangle if it is one
+         * in device space.
+         */
+        public Shape getClip() {
+            if (!(clip instanceof Rectangle2D) || !isRectilinear())
+                return super.getClip();
+            try {
+                return transform.createInverse()
+                    .createTransformedShape(clip).getBounds2D();
+            } catch (NoninvertibleTransformException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Sets the clip, keeping rectangles as rectangles when the
+         * transform does not rotate or shear them.
+         */
+        public void setClip(Shape s) {
+            if ((s instanceof Rectangle2D) && isRectilinear())
+                clip = transform.createTransformedShape(s).getBounds2D();
+            else
+                super.setClip(s);
+        }
+
+        /**
+         * Intersects the clip with the given shape.  Like the graphics
+         * of the images the snapshots are painted in, a rectangular
+         * intersection is kept as a rectangle, which Java 2D rounds
+         * differently from a path.
+         */
+        public void clip(Shape s) {
+            if (s == null) {
+                super.clip(s);
+                return;
+            }
+            if ((s instanceof Rectangle2D) && isRectilinear())
+                s = transform.createTransformedShape(s).getBounds2D();
+            else
+                s = transform.createTransformedShape(s);
+
+            if (clip == null) {
+                clip = s;
+            } else if ((clip instanceof Rectangle2D) &&
+                       (s instanceof Rectangle2D)) {
+                clip = ((Rectangle2D)clip).createIntersection((Rectangle2D)s);
+            } else {
+                Area a = new Area(clip);
+                a.intersect(new Area(s));
+                if (a.isRectangular())
+                    clip = a.getBounds2D();
+                else
+                    clip = new GeneralPath(a);
+            }
+        }
+
+        /**
+         * Returns true if the current transform maps rectangles to
+         * rectangles.
+         */
+        boolean isRectilinear() {
+            return (transform.getShearX() == 0) && (transform.getShearY() == 0);
+        }
+
+        /**
+         * Returns the clip in device space, or null.  It is not
+         * modified in place.
+         */
+        Shape deviceClip() {
+            return clip;
+        }
+
+        /**
+         * Returns the current transform, which must not be modified.
+         */
+        AffineTransform currentTransform() {
+            return transform;
+        }
+
+        /**
+         * Returns the current hints, which must not be modified.
+         */
+        RenderingHints currentHints() {
+            return hints;
+        }
+    }
+
+    /**
+     * The operations recorded by a graphics and the graphics created
+     * from it.
+     */
+    protected static class Recording {
+
+        /**
+         * The operations, in painting order.
+         */
+        List ops = new ArrayList();
+
+        /**
+         * The state of the last operation, or null.
+         */
+        Snapshot.State state;
+
+        /**
+         * The images recorded, by content.
+         */
+        Map images = new HashMap();
+
+        void add(Snapshot.Op op) {
+            ops.add(op);
+        }
+
+        Snapshot getSnapshot() {
+            Snapshot.Op [] a = new Snapshot.Op[ops.size()];
+            return new Snapshot((Snapshot.Op[])ops.toArray(a));
+        }
+
+        /**
+         * Returns the state of the last operation if it is the given
+         * one, or a new state.
+         */
+        Snapshot.State getState(AffineTransform at, Shape clip,
+                       RenderingHints hints, Composite composite) {
+            Snapshot.State s = state;
+            if ((s != null) &&
+                s.transform.equals(at) &&
+                sameHints(s.hints, hints) &&
+                s.composite.equals(composite)) {
+                if (sameShape(s.clip, clip))
+                    return s;
+                s = new Snapshot.State(s.transform, clip, s.hints,
+                                       composite);
+            } else {
+                RenderingHints h;
+                if ((s != null) && sameHints(s.hints, hints))
+                    h = s.hints;
+                else
+                    h = keptHints(hints);
+                if ((s != null) && sameShape(s.clip, clip))
+                    clip = s.clip;
+                s = new Snapshot.State(new AffineTransform(at), clip, h,
+                                       composite);
+            }
+            state = s;
+            return s;
+        }
+
+        /**
+         * Returns true if the hints of the operations <code>h</code>
+         * are the ones the snapshots keep of <code>hints</code>.
+         */
+        static boolean sameHints(RenderingHints h, RenderingHints hints) {
+            for (int i=0; i < HINT_KEYS.length; i++) {
+                Object v = hints.get(HINT_KEYS[i]);
+                if (v != h.get(HINT_KEYS[i]))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Returns true if both shapes have the same outline.  Clips are
+         * copied when graphics are created, so they are compared by
+         * their segments.
+         */
+        static boolean sameShape(Shape a, Shape b) {
+            if (a == b)
+                return true;
+            if ((a == null) || (b == null))
+                return false;
+            if ((a instanceof Rectangle2D) && (b instanceof Rectangle2D))
+                return a.equals(b);
+            PathIterator pa = a.getPathIterator(null);
+            PathIterator pb = b.getPathIterator(null);
+            if (pa.getWindingRule() != pb.getWindingRule())
+                return false;
+            double [] ca = new double[6];
+            double [] cb = new double[6];
+            while (!pa.isDone() && !pb.isDone()) {
+                int t = pa.currentSegment(ca);
+                if (t != pb.currentSegment(cb))
+                    return false;
+                int n = 0;
+                switch (t) {
+                case PathIterator.SEG_MOVETO:
+                case PathIterator.SEG_LINETO:
+                    n = 2;
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    n = 4;
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    n = 6;
+                    break;
+                }
+                for (int i=0; i < n; i++) {
+                    if (ca[i] != cb[i])
+                        return false;
+                }
+                pa.next();
+                pb.next();
+            }
+            return pa.isDone() && pb.isDone();
+        }
+
+        /**
+         * Returns the image to record for <code>img</code>: an image
+         * with the same pixels already recorded, or a new one.
+         * @param copy whether the pixels of <code>img</code> must be
+         *        copied.
+         */
+        BufferedImage getImage(BufferedImage img, boolean copy) {
+            int w = img.getWidth();
+            int h = img.getHeight();
+            int [] data;
+            boolean premultiplied;
+            if (isIntARGB(img)) {
+                premultiplied = img.isAlphaPremultiplied();
+                data = new int[w*h];
+                Raster r = img.getRaster();
+                int [] row = new int[w];
+                for (int y=0; y < h; y++) {
+                    r.getDataElements(0, y, w, 1, row);
+                    System.arraycopy(row, 0, data, y*w, w);
+                }
+            } else {
+                premultiplied = false;
+                data = img.getRGB(0, 0, w, h, null, 0, w);
+            }
+
+            ImageKey key = new ImageKey(w, h, premultiplied, data);
+            BufferedImage ret = (BufferedImage)images.get(key);
+            if (ret == null) {
+                if (!copy && (img.getType() == BufferedImage.TYPE_INT_ARGB))
+                    ret = img;
+                else
+                    ret = createImage(w, h, premultiplied, data);
+                images.put(key, ret);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Returns true if <code>img</code> holds sRGB pixels packed in ints
+     * as alpha, red, green and blue.
+     */
+    static boolean isIntARGB(BufferedImage img) {
+        ColorModel cm = img.getColorModel();
+        if (!(cm instanceof DirectColorModel) ||
+            !(img.getSampleModel() instanceof SinglePixelPackedSampleModel) ||
+            !(img.getRaster().getDataBuffer() instanceof DataBufferInt) ||
+            !cm.getColorSpace().isCS_sRGB())
+            return false;
+        DirectColorModel dcm = (DirectColorModel)cm;
+        return (dcm.getAlphaMask() == 0xff000000) &&
+            (dcm.getRedMask() == 0xff0000) &&
+            (dcm.getGreenMask() == 0xff00) &&
+            (dcm.getBlueMask() == 0xff);
+    }
+
+    /**
+     * Returns an image of the given ARGB pixels.
+     */
+    static BufferedImage createImage(int w, int h, boolean premultiplied,
+                                     int [] data) {
+        ColorModel cm = premultiplied ? GraphicsUtil.sRGB_Pre
+                                      : GraphicsUtil.sRGB_Unpre;
+        WritableRaster wr = Raster.createPackedRaster
+            (new DataBufferInt(data, data.length), w, h, w,
+             new int[] { 0xff0000, 0xff00, 0xff, 0xff000000 }, null);
+        return new BufferedImage(cm, wr, premultiplied, null);
+    }
+
+    /**
+     * The pixels of an image, to find the images recorded twice.
+     */
+    static class ImageKey {
+        final int width, height;
+        final boolean premultiplied;
+        final int [] data;
+        final int hash;
+
+        ImageKey(int width, int height, boolean premultiplied, int [] data) {
+            this.width = width;
+            this.height = height;
+            this.premultiplied = premultiplied;
+            this.data = data;
+            this.hash = Arrays.hashCode(data) * 31 + width;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof ImageKey))
+                return false;
+            ImageKey k = (ImageKey)o;
+            return (hash == k.hash) && (width == k.width) &&
+                (height == k.height) &&
+                (premultiplied == k.premultiplied) &&
+                Arrays.equals(data, k.data);
+        }
+    }
+}
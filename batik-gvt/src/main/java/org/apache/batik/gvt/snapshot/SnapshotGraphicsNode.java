@@ -0,0 +1,99 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.snapshot;
+
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+
+import org.apache.batik.gvt.AbstractGraphicsNode;
+
+/**
+ * A graphics node that paints a snapshot.
+ *
+ * @version $Id$
+ */
+public class SnapshotGraphicsNode extends AbstractGraphicsNode {
+
+    /**
+     * The snapshot painted by this node.
+     */
+    protected Snapshot snapshot;
+
+    /**
+     * Constructs a new <code>SnapshotGraphicsNode</code> painting the
+     * given snapshot.
+     */
+    public SnapshotGraphicsNode(Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Returns the snapshot painted by this node.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    //
+    // Drawing methods
+    //
+
+    /**
+     * Paints this node without applying Filter, Mask, Composite and clip.
+     *
+     * @param g2d the Graphics2D to use
+     */
+    public void primitivePaint(Graphics2D g2d) {
+        snapshot.paint(g2d);
+    }
+
+    //
+    // Geometric methods
+    //
+
+    /**
+     * Returns the bounds of the area covered by this node's primitive paint.
+     */
+    public Rectangle2D getPrimitiveBounds() {
+        return snapshot.getBounds();
+    }
+
+    /**
+     * Returns the bounds of the area covered by this node, without taking any
+     * of its rendering attribute into account.
+     */
+    public Rectangle2D getGeometryBounds() {
+        return snapshot.getBounds();
+    }
+
+    /**
+     * Returns the bounds of the sensitive area covered by this node.
+     */
+    public Rectangle2D getSensitiveBounds() {
+        return snapshot.getBounds();
+    }
+
+    /**
+     * Returns the outline of this node.
+     */
+    public Shape getOutline() {
+        return snapshot.getBounds();
+    }
+}
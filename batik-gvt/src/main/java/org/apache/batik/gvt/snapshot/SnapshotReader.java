@@ -0,0 +1,430 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.snapshot;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.batik.ext.awt.LinearGradientPaint;
+import org.apache.batik.ext.awt.MultipleGradientPaint;
+import org.apache.batik.ext.awt.RadialGradientPaint;
+import org.apache.batik.gvt.PatternPaint;
+
+/**
+ * Reads snapshots in the form described by
+ * <code>SnapshotConstants</code>.
+ *
+ * @version $Id$
+ */
+class SnapshotReader implements SnapshotConstants {
+
+    /**
+     * The stream the snapshot is read from.
+     */
+    protected InputStream is;
+
+    /**
+     * The inflated stream.
+     */
+    protected DataInputStream in;
+
+    /**
+     * The images defined so far, by index.
+     */
+    protected List images = new ArrayList();
+
+    /**
+     * The patterns defined so far, by index.
+     */
+    protected List patterns = new ArrayList();
+
+    SnapshotReader(InputStream is) {
+        this.is = is;
+    }
+
+    /**
+     * Reads a snapshot.
+     */
+    Snapshot read() throws IOException {
+        DataInputStream header = new DataInputStream(is);
+        if (header.readInt() != MAGIC)
+            throw new IOException("Not a GVT snapshot");
+        short version = header.readShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version: " + version);
+
+        Inflater inflater = new Inflater();
+        try {
+            in = new DataInputStream(new BufferedInputStream
+                (new InflaterInputStream(is, inflater)));
+
+            float width = in.readFloat();
+            float height = in.readFloat();
+            float [] viewBox = null;
+            if (in.readBoolean()) {
+                viewBox = new float[4];
+                for (int i=0; i < 4; i++)
+                    viewBox[i] = in.readFloat();
+            }
+            short align = in.readShort();
+            boolean meet = in.readBoolean();
+            AffineTransform viewTransform = readTransform();
+            float resolution = in.readFloat();
+
+            Snapshot s = readOps();
+            s.setSize(width, height);
+            s.setViewBox(viewBox, align, meet);
+            s.setViewTransform(viewTransform);
+            s.setResolution(resolution);
+            return s;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads the commands of a snapshot, up to <code>END</code>.
+     */
+    protected Snapshot readOps() throws IOException {
+        List ops = new ArrayList();
+        AffineTransform transform = new AffineTransform();
+        Shape clip = null;
+        RenderingHints hints = null;
+        Composite composite = AlphaComposite.SrcOver;
+        Paint paint = Color.black;
+        BasicStroke stroke = new BasicStroke();
+        Snapshot.State state = null;
+        for (;;) {
+            byte c = in.readByte();
+            switch (c) {
+            case END:
+                Snapshot.Op [] a = new Snapshot.Op[ops.size()];
+                return new Snapshot((Snapshot.Op[])ops.toArray(a));
+            case SET_TRANSFORM:
+                transform = readTransform();
+                state = null;
+                break;
+            case SET_CLIP:
+                clip = readShape();
+                state = null;
+                break;
+            case CLEAR_CLIP:
+                clip = null;
+                state = null;
+                break;
+            case SET_HINTS:
+                hints = readHints();
+                state = null;
+                break;
+            case SET_COMPOSITE:
+                int rule = in.readByte();
+                composite = AlphaComposite.getInstance(rule, in.readFloat());
+                state = null;
+                break;
+            case SET_PAINT:
+                paint = readPaint();
+                break;
+            case SET_STROKE:
+                stroke = readStroke();
+                break;
+            case DEFINE_IMAGE:
+                readImage();
+                break;
+            case DEFINE_PATTERN:
+                readPattern();
+                break;
+            case FILL:
+            case DRAW:
+            case DRAW_IMAGE: {
+                if (state == null)
+                    state = new Snapshot.State(transform, clip, hints,
+                                               composite);
+                Snapshot.Op op;
+                if (c == DRAW_IMAGE) {
+                    BufferedImage img = (BufferedImage)get(images,
+                                                           in.readInt());
+                    Rectangle2D b = state.deviceBounds
+                        (new Rectangle(0, 0, img.getWidth(),
+                                       img.getHeight()));
+                    op = (b == null) ? null
+                                     : new Snapshot.ImageOp(state, b, img);
+                } else if (c == DRAW) {
+                    Shape s = readShape();
+                    Rectangle2D b = state.deviceBounds
+                        (Snapshot.DrawOp.strokeBounds(s, stroke));
+                    op = (b == null) ? null
+                                     : new Snapshot.DrawOp(state, b, s,
+                                                           paint, stroke);
+                } else {
+                    Shape s = readShape();
+                    Rectangle2D b = state.deviceBounds(s.getBounds2D());
+                    op = (b == null) ? null
+                                     : new Snapshot.FillOp(state, b, s,
+                                                           paint);
+                }
+                if (op != null)
+                    ops.add(op);
+                break;
+            }
+            default:
+                throw new IOException("Invalid snapshot command: " + c);
+            }
+        }
+    }
+
+    /**
+     * Returns the image or pattern of the given index.
+     */
+    protected Object get(List l, int index) throws IOException {
+        if ((index < 0) || (index >= l.size()))
+            throw new IOException("Undefined snapshot index: " + index);
+        return l.get(index);
+    }
+
+    protected RenderingHints readHints() throws IOException {
+        RenderingHints hints = new RenderingHints(null);
+        int n = in.readByte();
+        for (int i=0; i < n; i++) {
+            int k = in.readByte();
+            int v = in.readByte();
+            if ((k < 0) || (k >= HINT_KEYS.length) ||
+                (v < 0) || (v >= HINT_VALUES[k].length))
+                throw new IOException("Invalid snapshot hint: " + k);
+            hints.put(HINT_KEYS[k], HINT_VALUES[k][v]);
+        }
+        return hints;
+    }
+
+    protected Paint readPaint() throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+        case PAINT_COLOR:
+            return new Color(in.readInt(), true);
+        case PAINT_LINEAR: {
+            Point2D start = readPoint();
+            Point2D end = readPoint();
+            Gradient g = readGradient();
+            return new LinearGradientPaint(start, end, g.fractions, g.colors,
+                                           g.cycleMethod, g.colorSpace,
+                                           g.transform);
+        }
+        case PAINT_RADIAL: {
+            Point2D center = readPoint();
+            float radius = in.readFloat();
+            Point2D focus = readPoint();
+            Gradient g = readGradient();
+            return new RadialGradientPaint(center, radius, focus,
+                                           g.fractions, g.colors,
+                                           g.cycleMethod, g.colorSpace,
+                                           g.transform);
+        }
+        case PAINT_PATTERN:
+            return (Paint)get(patterns, in.readInt());
+        default:
+            throw new IOException("Invalid snapshot paint: " + kind);
+        }
+    }
+
+    /**
+     * The common parameters of gradients.
+     */
+    protected static class Gradient {
+        float [] fractions;
+        Color [] colors;
+        MultipleGradientPaint.CycleMethodEnum cycleMethod;
+        MultipleGradientPaint.ColorSpaceEnum colorSpace;
+        AffineTransform transform;
+    }
+
+    protected Gradient readGradient() throws IOException {
+        Gradient g = new Gradient();
+        int n = in.readInt();
+        if (n < 2)
+            throw new IOException("Invalid snapshot gradient: " + n);
+        g.fractions = new float[n];
+        g.colors = new Color[n];
+        for (int i=0; i < n; i++) {
+            g.fractions[i] = in.readFloat();
+            g.colors[i] = new Color(in.readInt(), true);
+        }
+        switch (in.readByte()) {
+        case 1:
+            g.cycleMethod = MultipleGradientPaint.REFLECT;
+            break;
+        case 2:
+            g.cycleMethod = MultipleGradientPaint.REPEAT;
+            break;
+        default:
+            g.cycleMethod = MultipleGradientPaint.NO_CYCLE;
+        }
+        g.colorSpace = in.readBoolean() ? MultipleGradientPaint.LINEAR_RGB
+                                        : MultipleGradientPaint.SRGB;
+        g.transform = readTransform();
+        return g;
+    }
+
+    /**
+     * Reads the definition of a pattern, painted by a node replaying
+     * its snapshot.
+     */
+    protected void readPattern() throws IOException {
+        int index = in.readInt();
+        Rectangle2D r = new Rectangle2D.Double(in.readDouble(),
+                                               in.readDouble(),
+                                               in.readDouble(),
+                                               in.readDouble());
+        boolean overflow = in.readBoolean();
+        AffineTransform at = in.readBoolean() ? readTransform() : null;
+        Snapshot s = readOps();
+        if (index != patterns.size())
+            throw new IOException("Invalid snapshot index: " + index);
+        patterns.add(new PatternPaint(new SnapshotGraphicsNode(s),
+                                      r, overflow, at));
+    }
+
+    protected BasicStroke readStroke() throws IOException {
+        float width = in.readFloat();
+        int cap = in.readByte();
+        int join = in.readByte();
+        float miterLimit = in.readFloat();
+        int n = in.readInt();
+        if (n < 0)
+            return new BasicStroke(width, cap, join, miterLimit);
+        float [] dash = new float[n];
+        for (int i=0; i < n; i++)
+            dash[i] = in.readFloat();
+        return new BasicStroke(width, cap, join, miterLimit, dash,
+                               in.readFloat());
+    }
+
+    /**
+     * Reads the definition of an image.
+     */
+    protected void readImage() throws IOException {
+        int index = in.readInt();
+        int w = in.readInt();
+        int h = in.readInt();
+        boolean premultiplied = in.readBoolean();
+        if ((index != images.size()) || (w <= 0) || (h <= 0) ||
+            ((long)w * h > Integer.MAX_VALUE))
+            throw new IOException("Invalid snapshot image: " + index);
+        int [] data = new int[w*h];
+        for (int i=0; i < data.length; i++)
+            data[i] = in.readInt();
+        images.add(SnapshotGraphics2D.createImage(w, h, premultiplied, data));
+    }
+
+    protected AffineTransform readTransform() throws IOException {
+        double [] m = new double[6];
+        for (int i=0; i < 6; i++)
+            m[i] = in.readDouble();
+        return new AffineTransform(m);
+    }
+
+    protected Point2D readPoint() throws IOException {
+        return new Point2D.Double(in.readDouble(), in.readDouble());
+    }
+
+    /**
+     * Reads a rectangle or the segments of a shape.
+     */
+    protected Shape readShape() throws IOException {
+        byte kind = in.readByte();
+        if (kind == SHAPE_RECT) {
+            if (in.readBoolean())
+                return new Rectangle2D.Float(in.readFloat(), in.readFloat(),
+                                             in.readFloat(), in.readFloat());
+            return new Rectangle2D.Double(in.readDouble(), in.readDouble(),
+                                          in.readDouble(), in.readDouble());
+        }
+        if (kind != SHAPE_PATH)
+            throw new IOException("Invalid snapshot shape: " + kind);
+
+        int rule = in.readByte();
+        int n = in.readInt();
+        if (n < 0)
+            throw new IOException("Invalid snapshot shape");
+        byte [] types = new byte[n];
+        in.readFully(types);
+        boolean floats = in.readBoolean();
+        Path2D p = floats ? (Path2D)new Path2D.Float(rule, n)
+                          : (Path2D)new Path2D.Double(rule, n);
+        double [] c = new double[6];
+        for (int i=0; i < n; i++) {
+            int k;
+            switch (types[i]) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                k = 2;
+                break;
+            case PathIterator.SEG_QUADTO:
+                k = 4;
+                break;
+            case PathIterator.SEG_CUBICTO:
+                k = 6;
+                break;
+            case PathIterator.SEG_CLOSE:
+                k = 0;
+                break;
+            default:
+                throw new IOException("Invalid snapshot segment: " +
+                                      types[i]);
+            }
+            for (int j=0; j < k; j++)
+                c[j] = floats ? in.readFloat() : in.readDouble();
+            switch (types[i]) {
+            case PathIterator.SEG_MOVETO:
+                p.moveTo(c[0], c[1]);
+                break;
+            case PathIterator.SEG_LINETO:
+                p.lineTo(c[0], c[1]);
+                break;
+            case PathIterator.SEG_QUADTO:
+                p.quadTo(c[0], c[1], c[2], c[3]);
+                break;
+            case PathIterator.SEG_CUBICTO:
+                p.curveTo(c[0], c[1], c[2], c[3], c[4], c[5]);
+                break;
+            default:
+                p.closePath();
+            }
+        }
+        return p;
+    }
+}
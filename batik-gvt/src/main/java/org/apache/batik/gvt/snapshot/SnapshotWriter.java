@@ -0,0 +1,433 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.snapshot;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.batik.ext.awt.LinearGradientPaint;
+import org.apache.batik.ext.awt.MultipleGradientPaint;
+import org.apache.batik.ext.awt.RadialGradientPaint;
+import org.apache.batik.gvt.PatternPaint;
+
+/**
+ * Writes snapshots in the form described by
+ * <code>SnapshotConstants</code>.
+ *
+ * @version $Id$
+ */
+class SnapshotWriter implements SnapshotConstants {
+
+    /**
+     * The stream the snapshot is written to.
+     */
+    protected OutputStream os;
+
+    /**
+     * The deflated stream.
+     */
+    protected DataOutputStream out;
+
+    /**
+     * The indexes of the images already written, by image.
+     */
+    protected Map images = new HashMap();
+
+    /**
+     * The indexes of the patterns already written, by paint.
+     */
+    protected Map patterns = new HashMap();
+
+    SnapshotWriter(OutputStream os) {
+        this.os = os;
+    }
+
+    /**
+     * Writes the given snapshot.
+     */
+    void write(Snapshot s) throws IOException {
+        DataOutputStream header = new DataOutputStream(os);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.flush();
+
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream dos = new DeflaterOutputStream(os, deflater);
+            out = new DataOutputStream(new BufferedOutputStream(dos));
+
+            out.writeFloat(s.width);
+            out.writeFloat(s.height);
+            out.writeBoolean(s.viewBox != null);
+            if (s.viewBox != null) {
+                for (int i=0; i < 4; i++)
+                    out.writeFloat(s.viewBox[i]);
+            }
+            out.writeShort(s.align);
+            out.writeBoolean(s.meet);
+            writeTransform(s.viewTransform);
+            out.writeFloat(s.resolution);
+            writeOps(s);
+
+            out.flush();
+            dos.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the commands of the operations of a snapshot, ending with
+     * <code>END</code>.
+     */
+    protected void writeOps(Snapshot s) throws IOException {
+        Snapshot.State state = null;
+        Paint paint = null;
+        BasicStroke stroke = null;
+        for (int i=0; i < s.ops.length; i++) {
+            Snapshot.Op op = s.ops[i];
+            if (op instanceof Snapshot.ImageOp) {
+                int index = defineImage(((Snapshot.ImageOp)op).image);
+                state = writeState(op.state, state);
+                out.writeByte(DRAW_IMAGE);
+                out.writeInt(index);
+                continue;
+            }
+
+            Snapshot.FillOp f = (Snapshot.FillOp)op;
+            if (f.paint != paint) {
+                // Patterns are defined before the state is set.
+                writePaint(f.paint);
+                paint = f.paint;
+            }
+            state = writeState(op.state, state);
+            if (op instanceof Snapshot.DrawOp) {
+                BasicStroke bs = ((Snapshot.DrawOp)op).stroke;
+                if (!bs.equals(stroke)) {
+                    writeStroke(bs);
+                    stroke = bs;
+                }
+                out.writeByte(DRAW);
+            } else {
+                out.writeByte(FILL);
+            }
+            writeShape(f.shape);
+        }
+        out.writeByte(END);
+    }
+
+    /**
+     * Writes the commands setting what differs between two states.
+     * @return <code>state</code>.
+     */
+    protected Snapshot.State writeState(Snapshot.State state,
+                                        Snapshot.State prev)
+        throws IOException {
+        if (state == prev)
+            return state;
+        if ((prev == null) || !state.transform.equals(prev.transform)) {
+            out.writeByte(SET_TRANSFORM);
+            writeTransform(state.transform);
+        }
+        if ((prev == null) || (state.clip != prev.clip)) {
+            if (state.clip == null) {
+                out.writeByte(CLEAR_CLIP);
+            } else {
+                out.writeByte(SET_CLIP);
+                writeShape(state.clip);
+            }
+        }
+        if ((prev == null) || (state.hints != prev.hints))
+            writeHints(state.hints);
+        if ((prev == null) || !state.composite.equals(prev.composite))
+            writeComposite(state.composite);
+        return state;
+    }
+
+    protected void writeHints(RenderingHints hints) throws IOException {
+        int n = 0;
+        byte [] b = new byte[HINT_KEYS.length*2];
+        for (int i=0; (hints != null) && (i < HINT_KEYS.length); i++) {
+            Object v = hints.get(HINT_KEYS[i]);
+            for (int j=0; j < HINT_VALUES[i].length; j++) {
+                if (HINT_VALUES[i][j] == v) {
+                    b[n++] = (byte)i;
+                    b[n++] = (byte)j;
+                    break;
+                }
+            }
+        }
+        out.writeByte(SET_HINTS);
+        out.writeByte(n / 2);
+        out.write(b, 0, n);
+    }
+
+    protected void writeComposite(Composite c) throws IOException {
+        if (!(c instanceof AlphaComposite))
+            throw new IOException("Composite can not be written: " +
+                                  c.getClass().getName());
+        AlphaComposite ac = (AlphaComposite)c;
+        out.writeByte(SET_COMPOSITE);
+        out.writeByte(ac.getRule());
+        out.writeFloat(ac.getAlpha());
+    }
+
+    protected void writePaint(Paint p) throws IOException {
+        if (p instanceof Color) {
+            out.writeByte(SET_PAINT);
+            out.writeByte(PAINT_COLOR);
+            out.writeInt(((Color)p).getRGB());
+        } else if (p instanceof LinearGradientPaint) {
+            LinearGradientPaint lgp = (LinearGradientPaint)p;
+            out.writeByte(SET_PAINT);
+            out.writeByte(PAINT_LINEAR);
+            writePoint(lgp.getStartPoint());
+            writePoint(lgp.getEndPoint());
+            writeGradient(lgp);
+        } else if (p instanceof RadialGradientPaint) {
+            RadialGradientPaint rgp = (RadialGradientPaint)p;
+            out.writeByte(SET_PAINT);
+            out.writeByte(PAINT_RADIAL);
+            writePoint(rgp.getCenterPoint());
+            out.writeFloat(rgp.getRadius());
+            writePoint(rgp.getFocusPoint());
+            writeGradient(rgp);
+        } else if (p instanceof PatternPaint) {
+            int index = definePattern((PatternPaint)p);
+            out.writeByte(SET_PAINT);
+            out.writeByte(PAINT_PATTERN);
+            out.writeInt(index);
+        } else {
+            throw new IOException("Paint can not be written: " +
+                                  p.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes the stops, cycle method, color space and transform of a
+     * gradient.
+     */
+    protected void writeGradient(MultipleGradientPaint p) throws IOException {
+        float [] fractions = p.getFractions();
+        Color [] colors = p.getColors();
+        out.writeInt(fractions.length);
+        for (int i=0; i < fractions.length; i++) {
+            out.writeFloat(fractions[i]);
+            out.writeInt(colors[i].getRGB());
+        }
+        MultipleGradientPaint.CycleMethodEnum cm = p.getCycleMethod();
+        out.writeByte((cm == MultipleGradientPaint.REFLECT) ? 1 :
+                      (cm == MultipleGradientPaint.REPEAT) ? 2 : 0);
+        out.writeBoolean
+            (p.getColorSpace() == MultipleGradientPaint.LINEAR_RGB);
+        writeTransform(p.getTransform());
+    }
+
+    /**
+     * Writes the definition of a pattern, if not written yet, and
+     * returns its index.  The node of the pattern is recorded in its
+     * own snapshot.
+     */
+    protected int definePattern(PatternPaint p) throws IOException {
+        Integer index = (Integer)patterns.get(p);
+        if (index != null)
+            return index.intValue();
+
+        SnapshotGraphics2D g2d = new SnapshotGraphics2D();
+        g2d.setRenderingHints(new RenderingHints(null));
+        p.getGraphicsNode().paint(g2d);
+        Snapshot s = g2d.getSnapshot();
+
+        index = Integer.valueOf(patterns.size());
+        patterns.put(p, index);
+        out.writeByte(DEFINE_PATTERN);
+        out.writeInt(index.intValue());
+        Rectangle2D r = p.getPatternRect();
+        out.writeDouble(r.getX());
+        out.writeDouble(r.getY());
+        out.writeDouble(r.getWidth());
+        out.writeDouble(r.getHeight());
+        out.writeBoolean(p.getOverflow());
+        AffineTransform at = p.getPatternTransform();
+        out.writeBoolean(at != null);
+        if (at != null)
+            writeTransform(at);
+        writeOps(s);
+        return index.intValue();
+    }
+
+    protected void writeStroke(BasicStroke bs) throws IOException {
+        out.writeByte(SET_STROKE);
+        out.writeFloat(bs.getLineWidth());
+        out.writeByte(bs.getEndCap());
+        out.writeByte(bs.getLineJoin());
+        out.writeFloat(bs.getMiterLimit());
+        float [] dash = bs.getDashArray();
+        out.writeInt((dash == null) ? -1 : dash.length);
+        if (dash != null) {
+            for (int i=0; i < dash.length; i++)
+                out.writeFloat(dash[i]);
+            out.writeFloat(bs.getDashPhase());
+        }
+    }
+
+    /**
+     * Writes the definition of an image, if not written yet, and
+     * returns its index.
+     */
+    protected int defineImage(BufferedImage img) throws IOException {
+        Integer index = (Integer)images.get(img);
+        if (index != null)
+            return index.intValue();
+
+        index = Integer.valueOf(images.size());
+        images.put(img, index);
+        int w = img.getWidth();
+        int h = img.getHeight();
+        boolean intARGB = SnapshotGraphics2D.isIntARGB(img);
+        out.writeByte(DEFINE_IMAGE);
+        out.writeInt(index.intValue());
+        out.writeInt(w);
+        out.writeInt(h);
+        out.writeBoolean(intARGB && img.isAlphaPremultiplied());
+        Raster r = img.getRaster();
+        int [] row = new int[w];
+        for (int y=0; y < h; y++) {
+            if (intARGB)
+                r.getDataElements(0, y, w, 1, row);
+            else
+                img.getRGB(0, y, w, 1, row, 0, w);
+            for (int x=0; x < w; x++)
+                out.writeInt(row[x]);
+        }
+        return index.intValue();
+    }
+
+    protected void writeTransform(AffineTransform at) throws IOException {
+        double [] m = new double[6];
+        at.getMatrix(m);
+        for (int i=0; i < 6; i++)
+            out.writeDouble(m[i]);
+    }
+
+    protected void writePoint(Point2D p) throws IOException {
+        out.writeDouble(p.getX());
+        out.writeDouble(p.getY());
+    }
+
+    /**
+     * Writes a rectangle, or the segments of any other shape.  The
+     * coordinates of a path are written as floats when none of them
+     * loses precision as a float, which is the case of most shapes,
+     * and as doubles otherwise.
+     */
+    protected void writeShape(Shape s) throws IOException {
+        if (s instanceof Rectangle2D) {
+            Rectangle2D r = (Rectangle2D)s;
+            boolean floats = r instanceof Rectangle2D.Float;
+            out.writeByte(SHAPE_RECT);
+            out.writeBoolean(floats);
+            if (floats) {
+                Rectangle2D.Float f = (Rectangle2D.Float)r;
+                out.writeFloat(f.x);
+                out.writeFloat(f.y);
+                out.writeFloat(f.width);
+                out.writeFloat(f.height);
+            } else {
+                out.writeDouble(r.getX());
+                out.writeDouble(r.getY());
+                out.writeDouble(r.getWidth());
+                out.writeDouble(r.getHeight());
+            }
+            return;
+        }
+
+        byte [] types = new byte[16];
+        double [] coords = new double[64];
+        int nTypes = 0, nCoords = 0;
+        boolean floats = true;
+        double [] c = new double[6];
+        PathIterator pi = s.getPathIterator(null);
+        int rule = pi.getWindingRule();
+        for (; !pi.isDone(); pi.next()) {
+            int type = pi.currentSegment(c);
+            int n = 0;
+            switch (type) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                n = 2;
+                break;
+            case PathIterator.SEG_QUADTO:
+                n = 4;
+                break;
+            case PathIterator.SEG_CUBICTO:
+                n = 6;
+                break;
+            }
+            if (nTypes == types.length) {
+                byte [] tmp = new byte[types.length*2];
+                System.arraycopy(types, 0, tmp, 0, nTypes);
+                types = tmp;
+            }
+            types[nTypes++] = (byte)type;
+            if (nCoords + n > coords.length) {
+                double [] tmp = new double[coords.length*2];
+                System.arraycopy(coords, 0, tmp, 0, nCoords);
+                coords = tmp;
+            }
+            for (int i=0; i < n; i++) {
+                if (floats && ((float)c[i] != c[i]))
+                    floats = false;
+                coords[nCoords++] = c[i];
+            }
+        }
+
+        out.writeByte(SHAPE_PATH);
+        out.writeByte(rule);
+        out.writeInt(nTypes);
+        out.write(types, 0, nTypes);
+        out.writeBoolean(floats);
+        if (floats) {
+            for (int i=0; i < nCoords; i++)
+                out.writeFloat((float)coords[i]);
+        } else {
+            for (int i=0; i < nCoords; i++)
+                out.writeDouble(coords[i]);
+        }
+    }
+}
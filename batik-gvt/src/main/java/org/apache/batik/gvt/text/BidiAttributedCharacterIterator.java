@@ -19,7 +19,6 @@
 package org.apache.batik.gvt.text;
 
 import java.awt.font.FontRenderContext;
-import java.awt.font.TextLayout;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
 import java.util.HashMap;
@@ -74,6 +73,7 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
         aci.first();
         int   numChars    = aci.getEndIndex()-aci.getBeginIndex();
         AttributedString as;
+        String text = null;
 
          // Ideally we would do a 'quick' check on chars and
          // attributes to decide if we really need to do bidi or not.
@@ -89,7 +89,8 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
                 strB.append(c);
                 c = aci.next();
             }
-            as = new AttributedString(strB.toString());
+            text = strB.toString();
+            as = new AttributedString(text);
             int start=aci.getBeginIndex();
             int end  =aci.getEndIndex();
             int index = start;
@@ -115,21 +116,21 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
             }
         }
 
-        // We Just want it to do BIDI for us...
-        // In 1.4 we might be able to use the BIDI class...
-        TextLayout tl = new TextLayout(as.getIterator(), frc);
+        // The levels are shared between identical chunks, they do not
+        // depend on the fonts.
+        byte[] levels = BidiLevelCache.getLevels(as.getIterator(), text);
 
         int[] charIndices = new int[numChars];
         int[] charLevels  = new int[numChars];
 
         int runStart   = 0;
-        int currBiDi   = tl.getCharacterLevel(0);
+        int currBiDi   = (levels == null) ? 0 : levels[0];
         charIndices[0] = 0;
         charLevels [0] = currBiDi;
         int maxBiDi    = currBiDi;
 
         for (int i = 1; i < numChars; i++) {
-            int newBiDi = tl.getCharacterLevel(i);
+            int newBiDi = (levels == null) ? 0 : levels[i];
             charIndices[i] = i;
             charLevels [i] = newBiDi;
 
@@ -172,7 +173,7 @@ public class BidiAttributedCharacterIterator implements AttributedCharacterItera
             if (srcIdx == 0) reorderedFirstChar = i;
 
             // check for mirrored char
-            int bidiLevel = tl.getCharacterLevel(srcIdx);
+            int bidiLevel = levels[srcIdx];
             if ((bidiLevel & 0x01) != 0) {
                 // bidi level is odd so writing dir is right to left
                 // So get the mirror version of the char if there
@@ -0,0 +1,216 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.text;
+
+import java.awt.font.NumericShaper;
+import java.awt.font.TextAttribute;
+import java.text.AttributedCharacterIterator;
+import java.text.Bidi;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes the bidi levels of the characters of text chunks and shares
+ * them between all the documents.  The levels only depend on the
+ * characters and on the run direction, embedding and numeric shaping
+ * attributes, so identical chunks get the same, immutable, levels
+ * whatever their fonts and wherever they are laid out.
+ * <p>
+ * Chunks that need no bidi processing, the most common ones, are
+ * detected without computing anything and are not stored.
+ * <p>
+ * The positioned glyphs of the runs of a chunk are shared separately,
+ * by <code>org.apache.batik.bridge.TextLayoutCache</code>.
+ *
+ * @version $Id$
+ */
+public final class BidiLevelCache {
+
+    /**
+     * The maximum number of chunks whose levels are kept.
+     */
+    static final int MAX_ENTRIES = 1024;
+
+    /**
+     * The levels, by <code>Key</code>, least recently used first.
+     */
+    private static final Map levels
+        = new LinkedHashMap(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry e) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private static long hits;
+
+    private static long misses;
+
+    /**
+     * No instances.
+     */
+    private BidiLevelCache() {
+    }
+
+    /**
+     * Returns the bidi levels of the characters of <code>aci</code>, or
+     * null if they are all 0.  The returned array is shared and must
+     * not be modified.
+     * @param aci the chunk, with the attributes used by
+     *        <code>java.text.Bidi</code>.
+     * @param text the characters of <code>aci</code>.
+     */
+    public static byte [] getLevels(AttributedCharacterIterator aci,
+                                    String text) {
+        int begin = aci.getBeginIndex();
+        int end = aci.getEndIndex();
+        if (begin == end)
+            return null;
+
+        aci.first();
+        Object runDirection = aci.getAttribute(TextAttribute.RUN_DIRECTION);
+        Object shaper = aci.getAttribute(TextAttribute.NUMERIC_SHAPING);
+        if (!(shaper instanceof NumericShaper))
+            shaper = null;
+        int [] embeddings = null;
+        int index = begin;
+        while (index < end) {
+            aci.setIndex(index);
+            int limit = aci.getRunLimit(TextAttribute.BIDI_EMBEDDING);
+            Object o = aci.getAttribute(TextAttribute.BIDI_EMBEDDING);
+            if ((o instanceof Integer) && (((Integer)o).intValue() != 0)) {
+                if (embeddings == null)
+                    embeddings = new int[end-begin];
+                Arrays.fill(embeddings, index-begin, limit-begin,
+                            ((Integer)o).intValue());
+            }
+            index = limit;
+        }
+
+        if ((runDirection == null) && (shaper == null) &&
+            (embeddings == null)) {
+            char [] chars = text.toCharArray();
+            if (!Bidi.requiresBidi(chars, 0, chars.length))
+                return null;
+        }
+
+        Key key = new Key(text, runDirection, shaper, embeddings);
+        synchronized (levels) {
+            if (levels.containsKey(key)) {
+                hits++;
+                return (byte[])levels.get(key);
+            }
+            misses++;
+        }
+
+        // The same analysis as the one java.awt.font.TextLayout does.
+        Bidi bidi = new Bidi(aci);
+        byte [] ret = null;
+        if (!bidi.isLeftToRight()) {
+            ret = new byte[end-begin];
+            for (int i=0; i < ret.length; i++)
+                ret[i] = (byte)bidi.getLevelAt(i);
+        }
+        synchronized (levels) {
+            levels.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of chunks whose levels are currently shared.
+     */
+    public static int getSize() {
+        synchronized (levels) {
+            return levels.size();
+        }
+    }
+
+    /**
+     * Returns the number of chunks whose levels were found in the cache.
+     */
+    public static long getHits() {
+        synchronized (levels) {
+            return hits;
+        }
+    }
+
+    /**
+     * Returns the number of chunks whose levels had to be computed.
+     */
+    public static long getMisses() {
+        synchronized (levels) {
+            return misses;
+        }
+    }
+
+    /**
+     * Drops the shared levels and resets their counts.
+     */
+    public static void clear() {
+        synchronized (levels) {
+            levels.clear();
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    /**
+     * The characters and bidi attributes of a chunk.
+     */
+    private static class Key {
+        final String text;
+        final Object runDirection;
+        final Object shaper;
+        final int [] embeddings;
+        final int hash;
+
+        Key(String text, Object runDirection, Object shaper,
+            int [] embeddings) {
+            this.text = text;
+            this.runDirection = runDirection;
+            this.shaper = shaper;
+            this.embeddings = embeddings;
+            int h = text.hashCode();
+            if (runDirection != null)
+                h = h * 31 + runDirection.hashCode();
+            if (shaper != null)
+                h = h * 31 + shaper.hashCode();
+            this.hash = h * 31 + Arrays.hashCode(embeddings);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return (hash == k.hash) && text.equals(k.text) &&
+                equal(runDirection, k.runDirection) &&
+                equal(shaper, k.shaper) &&
+                Arrays.equals(embeddings, k.embeddings);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+    }
+}
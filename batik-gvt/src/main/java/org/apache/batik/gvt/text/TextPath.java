@@ -40,7 +40,18 @@ public class TextPath {
      * @param path The general path along which text is to be laid.
      */
     public TextPath(GeneralPath path) {
-        pathLength = new PathLength(path);
+        this(new PathLength(path));
+    }
+
+    /**
+     * Constructs a TextPath based on the path measured by the specified
+     * PathLength.  The PathLength may be shared by several text paths.
+     *
+     * @param pathLength The length of the path along which text is to be
+     *        laid.
+     */
+    public TextPath(PathLength pathLength) {
+        this.pathLength = pathLength;
         startOffset = 0;
     }
 
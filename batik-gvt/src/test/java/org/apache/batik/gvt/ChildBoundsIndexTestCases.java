@@ -0,0 +1,272 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that <code>ChildBoundsIndex</code> and the composites using it
+ * answer queries as a scan of all the children does.
+ */
+public class ChildBoundsIndexTestCases {
+
+    static final int CHILDREN = 300;
+
+    @Test
+    public void testQueryMatchesLinearScan() {
+        Random rnd = new Random(1);
+        GraphicsNode [] children = createChildren(rnd, CHILDREN);
+        for (int s=0; s < 2; s++) {
+            boolean sensitive = (s == 1);
+            ChildBoundsIndex index
+                = new ChildBoundsIndex(children, CHILDREN, sensitive);
+            double [] b = new double[4];
+            for (int q=0; q < 500; q++) {
+                double x = rnd.nextDouble()*1100 - 50;
+                double y = rnd.nextDouble()*1100 - 50;
+                double w = (q % 10 == 0) ? 0 : rnd.nextDouble()*200;
+                double h = (q % 10 == 0) ? 0 : rnd.nextDouble()*200;
+
+                List expected = new ArrayList();
+                for (int i=0; i < CHILDREN; i++) {
+                    if (!ChildBoundsIndex.getBounds(children[i], sensitive,
+                                                    b, 0)
+                        || !((b[0] > x+w) || (b[2] < x) ||
+                             (b[1] > y+h) || (b[3] < y)))
+                        expected.add(Integer.valueOf(i));
+                }
+                int [] hits = index.query(x, y, x+w, y+h);
+                assertArrayEquals(toArray(expected), hits);
+
+                // Whatever the scan, no child actually in the
+                // rectangle may be missed.
+                Rectangle2D r = new Rectangle2D.Double(x, y, w, h);
+                for (int i=0; i < CHILDREN; i++) {
+                    Rectangle2D cb = sensitive
+                        ? children[i].getTransformedSensitiveBounds
+                              (GraphicsNode.IDENTITY)
+                        : children[i].getTransformedBounds
+                              (GraphicsNode.IDENTITY);
+                    if ((cb != null) && cb.intersects(r))
+                        assertTrue("child " + i,
+                                   Arrays.binarySearch(hits, i) >= 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNotIndexedChildren() {
+        GraphicsNode [] children = new GraphicsNode[3];
+        children[0] = createShape(new Rectangle2D.Double(0, 0, 10, 10),
+                                  AffineTransform.getScaleInstance(0, 1));
+        children[1] = new CompositeGraphicsNode();
+        children[2] = createShape(new Rectangle2D.Double(0, 0, 10, 10),
+                                  null);
+        ChildBoundsIndex index = new ChildBoundsIndex(children, 3, false);
+        assertArrayEquals(new int[] { 0, 1 },
+                          index.query(100, 100, 200, 200));
+        assertArrayEquals(new int[] { 0, 1, 2 },
+                          index.query(5, 5, 5, 5));
+    }
+
+    @Test
+    public void testNoChildren() {
+        GraphicsNode [] children = new GraphicsNode[4];
+        for (int s=0; s < 2; s++) {
+            ChildBoundsIndex index
+                = new ChildBoundsIndex(children, 0, s == 1);
+            assertEquals(0, index.query(-1e9, -1e9, 1e9, 1e9).length);
+        }
+    }
+
+    @Test
+    public void testNodeHitAt() throws Exception {
+        Random rnd = new Random(2);
+        CompositeGraphicsNode plain = createComposite(new Random(3));
+        CompositeGraphicsNode indexed = createComposite(new Random(3));
+        warmUp(indexed);
+        assertNotNull(getIndex(indexed, "sensitiveIndex"));
+
+        for (int q=0; q < 2000; q++) {
+            Point2D p = new Point2D.Double(rnd.nextDouble()*1100 - 50,
+                                           rnd.nextDouble()*1100 - 50);
+            plain.invalidateGeometryCache();
+            GraphicsNode expected = plain.nodeHitAt(p);
+            plain.invalidateGeometryCache();
+            boolean contains = plain.contains(p);
+            GraphicsNode hit = indexed.nodeHitAt(p);
+            if (expected == null)
+                assertNull(hit);
+            else
+                assertEquals(plain.indexOf(expected),
+                             indexed.indexOf(hit));
+            assertEquals(contains, indexed.contains(p));
+        }
+    }
+
+    @Test
+    public void testSensitiveChildren() throws Exception {
+        Random rnd = new Random(4);
+        CompositeGraphicsNode plain = createComposite(new Random(5));
+        CompositeGraphicsNode indexed = createComposite(new Random(5));
+        warmUp(indexed);
+
+        for (int q=0; q < 500; q++) {
+            Rectangle2D r = new Rectangle2D.Double
+                (rnd.nextDouble()*1100 - 50, rnd.nextDouble()*1100 - 50,
+                 rnd.nextDouble()*100, rnd.nextDouble()*100);
+            plain.invalidateGeometryCache();
+            List all = plain.getSensitiveChildren(r);
+            assertEquals(CHILDREN, all.size());
+
+            List some = indexed.getSensitiveChildren(r);
+            int last = -1;
+            for (int k=0; k < some.size(); k++) {
+                int i = indexed.indexOf(some.get(k));
+                assertTrue("rendering order", i > last);
+                last = i;
+            }
+            for (int i=0; i < CHILDREN; i++) {
+                GraphicsNode child = (GraphicsNode)indexed.get(i);
+                Rectangle2D cb = child.getTransformedSensitiveBounds
+                    (GraphicsNode.IDENTITY);
+                if ((cb != null) && cb.intersects(r))
+                    assertTrue("child " + i, some.contains(child));
+            }
+        }
+    }
+
+    @Test
+    public void testClippedPaint() throws Exception {
+        Random rnd = new Random(6);
+        CompositeGraphicsNode plain = createComposite(new Random(7));
+        CompositeGraphicsNode indexed = createComposite(new Random(7));
+
+        for (int q=0; q < 20; q++) {
+            Rectangle2D clip = new Rectangle2D.Double
+                (rnd.nextDouble()*800, rnd.nextDouble()*800,
+                 rnd.nextDouble()*200, rnd.nextDouble()*200);
+            plain.invalidateGeometryCache();
+            BufferedImage expected = paint(plain, clip);
+            BufferedImage image = paint(indexed, clip);
+            for (int y=0; y < expected.getHeight(); y++)
+                for (int x=0; x < expected.getWidth(); x++)
+                    assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+        }
+        assertNotNull(getIndex(indexed, "paintIndex"));
+    }
+
+    static BufferedImage paint(GraphicsNode node, Rectangle2D clip) {
+        BufferedImage img
+            = new BufferedImage(250, 250, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.scale(0.25, 0.25);
+        g.clip(clip);
+        node.paint(g);
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Queries <code>node</code> enough times for it to build its
+     * sensitive index.
+     */
+    static void warmUp(CompositeGraphicsNode node) {
+        for (int i=0; i <= CompositeGraphicsNode.INDEX_QUERIES; i++)
+            node.nodeHitAt(new Point2D.Double(-1, -1));
+    }
+
+    static Object getIndex(CompositeGraphicsNode node, String name)
+        throws Exception {
+        Field f = CompositeGraphicsNode.class.getDeclaredField(name);
+        f.setAccessible(true);
+        return f.get(node);
+    }
+
+    static CompositeGraphicsNode createComposite(Random rnd) {
+        CompositeGraphicsNode node = new CompositeGraphicsNode();
+        GraphicsNode [] children = createChildren(rnd, CHILDREN);
+        for (int i=0; i < children.length; i++)
+            node.add(children[i]);
+        assertTrue(CHILDREN >= CompositeGraphicsNode.INDEX_THRESHOLD);
+        return node;
+    }
+
+    /**
+     * Creates overlapping squares, some of them rotated, with a few
+     * singular transforms and children without bounds mixed in.
+     */
+    static GraphicsNode [] createChildren(Random rnd, int n) {
+        GraphicsNode [] children = new GraphicsNode[n];
+        for (int i=0; i < n; i++) {
+            if (i % 37 == 5) {
+                children[i] = new CompositeGraphicsNode();
+                continue;
+            }
+            double x = rnd.nextDouble()*1000;
+            double y = rnd.nextDouble()*1000;
+            double s = 5 + rnd.nextDouble()*60;
+            AffineTransform t = null;
+            if (i % 41 == 7)
+                t = AffineTransform.getScaleInstance(0, 2);
+            else if (i % 3 == 0)
+                t = AffineTransform.getRotateInstance
+                    (rnd.nextDouble()*Math.PI, x, y);
+            children[i] = createShape
+                (new Rectangle2D.Double(x, y, s, s), t);
+        }
+        return children;
+    }
+
+    static ShapeNode createShape(Rectangle2D r, AffineTransform t) {
+        ShapeNode node = new ShapeNode();
+        FillShapePainter painter = new FillShapePainter(r);
+        painter.setPaint(new Color(r.hashCode() | 0xff000000));
+        node.setShape(r);
+        node.setShapePainter(painter);
+        if (t != null)
+            node.setTransform(t);
+        return node;
+    }
+
+    static int [] toArray(List l) {
+        int [] ret = new int[l.size()];
+        for (int i=0; i < ret.length; i++)
+            ret[i] = ((Integer)l.get(i)).intValue();
+        return ret;
+    }
+}
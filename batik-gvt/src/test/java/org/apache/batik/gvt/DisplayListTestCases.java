@@ -0,0 +1,307 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.ext.awt.image.renderable.ClipRable8Bit;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that replaying a <code>DisplayList</code> paints what
+ * painting the recorded tree paints, and that the recorder records the
+ * changed parts of the tree again.
+ */
+public class DisplayListTestCases {
+
+    static final int SIZE = 200;
+
+    /**
+     * The device transforms the lists are replayed with.
+     */
+    static final AffineTransform [] TRANSFORMS = {
+        new AffineTransform(),
+        new AffineTransform(1.7, 0.3, -0.2, 1.3, 11.5, -7.25)
+    };
+
+    RootGraphicsNode root;
+    CompositeGraphicsNode rotated;
+    CompositeGraphicsNode clipped;
+    CompositeGraphicsNode translucent;
+    ShapeNode square;
+    ShapeNode disc;
+    ShapeNode clippedShape;
+
+    /**
+     * Builds a tree of fills and strokes in transformed groups, with
+     * hints, clips, and a translucent group painted by itself under a
+     * clip.
+     */
+    void createTree() {
+        root = new RootGraphicsNode();
+        CompositeGraphicsNode scene = new CompositeGraphicsNode();
+        root.add(scene);
+
+        rotated = new CompositeGraphicsNode();
+        rotated.setTransform(AffineTransform.getRotateInstance(0.3, 60, 60));
+        rotated.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                 RenderingHints.VALUE_ANTIALIAS_OFF);
+        square = createShape(new Rectangle2D.Double(20, 20, 50, 40),
+                             Color.red, null);
+        disc = createShape(new Ellipse2D.Double(50, 40, 60, 45),
+                           null, Color.blue);
+        rotated.add(square);
+        rotated.add(disc);
+        scene.add(rotated);
+
+        clipped = new CompositeGraphicsNode();
+        clipped.setTransform(AffineTransform.getTranslateInstance(80, 70));
+        clipped.setClip(clip(clipped, new Ellipse2D.Double(0, 0, 90, 70)));
+        clipped.add(createShape(new Rectangle2D.Double(-10, -10, 70, 60),
+                                Color.green, Color.black));
+        translucent = new CompositeGraphicsNode();
+        translucent.setComposite
+            (AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+        translucent.add(createShape(new Rectangle2D.Double(30, 20, 70, 60),
+                                    Color.magenta, null));
+        clipped.add(translucent);
+        scene.add(clipped);
+
+        clippedShape = createShape(new Ellipse2D.Double(10, 110, 80, 80),
+                                   Color.orange, Color.darkGray);
+        clippedShape.setTransform
+            (AffineTransform.getRotateInstance(-0.4, 50, 150));
+        clippedShape.setClip
+            (clip(clippedShape, new Rectangle2D.Double(20, 100, 50, 100)));
+        scene.add(clippedShape);
+    }
+
+    @Test
+    public void testReplay() {
+        createTree();
+        DisplayListRecorder recorder = new DisplayListRecorder(root);
+        assertReplayMatchesPaint(root, recorder.getDisplayList());
+
+        // The translucent group reads the clip back from the graphics,
+        // so the group clipping it is painted by itself.
+        DisplayList.Item [] items
+            = (DisplayList.Item[])recorder.items.get(root);
+        int nodes = 0;
+        for (int i=0; i < items.length; i++) {
+            if (items[i] instanceof DisplayList.NodeItem) {
+                assertSame(clipped, ((DisplayList.NodeItem)items[i]).node);
+                nodes++;
+            } else {
+                assertTrue(items[i] instanceof DisplayList.FillItem);
+            }
+        }
+        assertEquals(1, nodes);
+    }
+
+    @Test
+    public void testReplayClippedShapes() {
+        createTree();
+        clipped.remove(translucent);
+        DisplayListRecorder recorder = new DisplayListRecorder(root);
+        DisplayList dl = recorder.getDisplayList();
+        assertTrue(!dl.paintsNodes());
+        assertReplayMatchesPaint(root, dl);
+    }
+
+    @Test
+    public void testRecordAgain() {
+        createTree();
+        DisplayListRecorder recorder = new DisplayListRecorder(root);
+        DisplayList dl = recorder.getDisplayList();
+        assertSame(dl, recorder.getDisplayList());
+
+        // A transform change only records the node again.
+        Object clippedItems = recorder.items.get(clipped);
+        square.setTransform(AffineTransform.getTranslateInstance(5, -3));
+        dl = assertRecordedAgain(recorder, dl);
+        assertSame(clippedItems, recorder.items.get(clipped));
+
+        // Hints are inherited by the children.
+        Object squareItems = recorder.items.get(square);
+        rotated.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                 RenderingHints.VALUE_ANTIALIAS_ON);
+        dl = assertRecordedAgain(recorder, dl);
+        assertNotSame(squareItems, recorder.items.get(square));
+
+        rotated.setTransform(AffineTransform.getScaleInstance(1.2, 0.9));
+        dl = assertRecordedAgain(recorder, dl);
+
+        // Children moving to a differently transformed group.
+        rotated.remove(disc);
+        dl = assertRecordedAgain(recorder, dl);
+        clipped.add(disc);
+        dl = assertRecordedAgain(recorder, dl);
+
+        ShapeNode added = createShape(new Rectangle2D.Double(0, 0, 30, 30),
+                                      Color.cyan, Color.black);
+        rotated.add(0, added);
+        dl = assertRecordedAgain(recorder, dl);
+
+        clippedShape.setClip
+            (clip(clippedShape, new Ellipse2D.Double(0, 90, 80, 60)));
+        dl = assertRecordedAgain(recorder, dl);
+
+        clipped.remove(translucent);
+        dl = assertRecordedAgain(recorder, dl);
+        assertTrue(!dl.paintsNodes());
+
+        recorder.dispose();
+    }
+
+    @Test
+    public void testParallelReplay() throws Exception {
+        createTree();
+        DisplayListRecorder recorder = new DisplayListRecorder(root);
+        final DisplayList dl = recorder.getDisplayList();
+        final AffineTransform at = TRANSFORMS[1];
+
+        List tiles = new ArrayList();
+        List expected = new ArrayList();
+        for (int y=0; y < SIZE; y += 50) {
+            for (int x=0; x < SIZE; x += 50) {
+                Rectangle tile = new Rectangle(x, y, 50, 50);
+                tiles.add(tile);
+                expected.add(paint(root, at, tile));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int pass=0; pass < 4; pass++) {
+                List futures = new ArrayList();
+                for (int i=0; i < tiles.size(); i++) {
+                    final Rectangle tile = (Rectangle)tiles.get(i);
+                    futures.add(executor.submit(new Callable() {
+                            public Object call() {
+                                return paint(dl, at, tile);
+                            }
+                        }));
+                }
+                for (int i=0; i < tiles.size(); i++) {
+                    BufferedImage img
+                        = (BufferedImage)((Future)futures.get(i)).get();
+                    assertSameImage((BufferedImage)expected.get(i), img);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks that the recorder gives a new list that paints as the
+     * tree does.
+     */
+    DisplayList assertRecordedAgain(DisplayListRecorder recorder,
+                                    DisplayList old) {
+        DisplayList dl = recorder.getDisplayList();
+        assertNotSame(old, dl);
+        assertReplayMatchesPaint(root, dl);
+        return dl;
+    }
+
+    static void assertReplayMatchesPaint(GraphicsNode node, DisplayList dl) {
+        for (int i=0; i < TRANSFORMS.length; i++) {
+            assertSameImage(paint(node, TRANSFORMS[i], null),
+                            paint(dl, TRANSFORMS[i], null));
+            assertSameImage(paint(node, TRANSFORMS[i],
+                                  new Rectangle(30, 40, 90, 70)),
+                            paint(dl, TRANSFORMS[i],
+                                  new Rectangle(30, 40, 90, 70)));
+        }
+    }
+
+    static void assertSameImage(BufferedImage expected, BufferedImage img) {
+        for (int y=0; y < SIZE; y++) {
+            for (int x=0; x < SIZE; x++) {
+                assertEquals("pixel " + x + "," + y,
+                             Integer.toHexString(expected.getRGB(x, y)),
+                             Integer.toHexString(img.getRGB(x, y)));
+            }
+        }
+    }
+
+    /**
+     * Paints a node or a display list.
+     */
+    static BufferedImage paint(Object o, AffineTransform at, Rectangle clip) {
+        BufferedImage img
+            = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        g.clip((clip == null) ? new Rectangle(0, 0, SIZE, SIZE) : clip);
+        g.transform(at);
+        if (o instanceof GraphicsNode)
+            ((GraphicsNode)o).paint(g);
+        else
+            ((DisplayList)o).paint(g);
+        g.dispose();
+        return img;
+    }
+
+    static ClipRable8Bit clip(GraphicsNode node, Shape s) {
+        return new ClipRable8Bit(node.getGraphicsNodeRable(true), s);
+    }
+
+    static ShapeNode createShape(Shape s, Color fill, Color stroke) {
+        ShapeNode node = new ShapeNode();
+        CompositeShapePainter painter = new CompositeShapePainter(s);
+        if (fill != null) {
+            FillShapePainter fp = new FillShapePainter(s);
+            fp.setPaint(fill);
+            painter.addShapePainter(fp);
+        }
+        if (stroke != null) {
+            StrokeShapePainter sp = new StrokeShapePainter(s);
+            sp.setPaint(stroke);
+            sp.setStroke(new BasicStroke(3));
+            painter.addShapePainter(sp);
+        }
+        node.setShape(s);
+        node.setShapePainter(painter);
+        return node;
+    }
+}
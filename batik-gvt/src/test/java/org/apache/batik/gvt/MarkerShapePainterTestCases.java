@@ -0,0 +1,199 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that markers painted from display lists are painted as the
+ * marker nodes paint them, and are only stamped when asked to.
+ */
+public class MarkerShapePainterTestCases {
+
+    static final int SIZE = 300;
+
+    /**
+     * A painter painting its markers through their nodes.
+     */
+    static class NodeMarkerShapePainter extends MarkerShapePainter {
+        NodeMarkerShapePainter(Shape s) {
+            super(s);
+        }
+
+        protected boolean paintInstances(Graphics2D g2d) {
+            return false;
+        }
+    }
+
+    @Test
+    public void testReplayMatchesNodes() {
+        Shape path = createPath(new Random(1), 40);
+        AffineTransform [] ats = {
+            new AffineTransform(),
+            new AffineTransform(0.8, 0.4, -0.3, 0.9, 20.25, 10.5)
+        };
+        for (int i=0; i < ats.length; i++) {
+            assertSameImage
+                (paint(createPainter(new NodeMarkerShapePainter(path)),
+                       ats[i], null, null),
+                 paint(createPainter(new MarkerShapePainter(path)),
+                       ats[i], null, null));
+            assertSameImage
+                (paint(createPainter(new NodeMarkerShapePainter(path)),
+                       ats[i], new Rectangle(50, 60, 120, 90), null),
+                 paint(createPainter(new MarkerShapePainter(path)),
+                       ats[i], new Rectangle(50, 60, 120, 90), null));
+        }
+    }
+
+    @Test
+    public void testStampingOptIn() {
+        // Markers of a same orientation, so that they share stamps.
+        Shape path = createPath(new Random(2), 2000);
+        BufferedImage expected
+            = paint(createPainter(new NodeMarkerShapePainter(path), 0),
+                    new AffineTransform(), null, null);
+        assertSameImage
+            (expected, paint(createPainter(new MarkerShapePainter(path), 0),
+                             new AffineTransform(), null, null));
+
+        // Stamped markers may move by a quarter of a pixel, but cover
+        // about the same area.
+        BufferedImage stamped
+            = paint(createPainter(new MarkerShapePainter(path), 0),
+                    new AffineTransform(), null, Integer.valueOf(100));
+        long a = 0, b = 0;
+        int diffs = 0;
+        for (int y=0; y < SIZE; y++) {
+            for (int x=0; x < SIZE; x++) {
+                a += expected.getRGB(x, y) >>> 24;
+                b += stamped.getRGB(x, y) >>> 24;
+                if (expected.getRGB(x, y) != stamped.getRGB(x, y))
+                    diffs++;
+            }
+        }
+        assertTrue("not stamped", diffs > 0);
+        assertTrue(a > 0);
+        assertTrue(Math.abs(a - b) < a / 50);
+    }
+
+    static MarkerShapePainter createPainter(MarkerShapePainter painter) {
+        return createPainter(painter, Double.NaN);
+    }
+
+    /**
+     * Sets the markers of <code>painter</code>, the middle ones with
+     * the given orientation.
+     */
+    static MarkerShapePainter createPainter(MarkerShapePainter painter,
+                                            double orient) {
+        painter.setStartMarker
+            (new Marker(createMarkerNode(Color.red), new Point2D.Double(),
+                        0.5));
+        painter.setMiddleMarker
+            (new Marker(createMarkerNode(Color.blue),
+                        new Point2D.Double(1, 1), orient));
+        painter.setEndMarker
+            (new Marker(createMarkerNode(Color.green), new Point2D.Double(),
+                        Double.NaN));
+        return painter;
+    }
+
+    /**
+     * Creates a small arrow with a stroked circle.
+     */
+    static GraphicsNode createMarkerNode(Color color) {
+        CompositeGraphicsNode g = new CompositeGraphicsNode();
+        GeneralPath arrow = new GeneralPath();
+        arrow.moveTo(-3, -2);
+        arrow.lineTo(4, 0);
+        arrow.lineTo(-3, 2);
+        arrow.closePath();
+        ShapeNode head = new ShapeNode();
+        FillShapePainter fp = new FillShapePainter(arrow);
+        fp.setPaint(color);
+        head.setShape(arrow);
+        head.setShapePainter(fp);
+        g.add(head);
+
+        Shape circle = new Ellipse2D.Double(-2.5, -2.5, 5, 5);
+        ShapeNode ring = new ShapeNode();
+        StrokeShapePainter sp = new StrokeShapePainter(circle);
+        sp.setPaint(Color.black);
+        sp.setStroke(new BasicStroke(0.75f));
+        ring.setShape(circle);
+        ring.setShapePainter(sp);
+        ring.setTransform(AffineTransform.getTranslateInstance(-1, 0));
+        g.add(ring);
+        return g;
+    }
+
+    static Shape createPath(Random rnd, int n) {
+        GeneralPath p = new GeneralPath();
+        p.moveTo(150, 150);
+        for (int i=1; i < n; i++)
+            p.lineTo(10 + rnd.nextFloat()*280, 10 + rnd.nextFloat()*280);
+        return p;
+    }
+
+    static BufferedImage paint(ShapePainter painter, AffineTransform at,
+                               Rectangle clip, Object stamping) {
+        BufferedImage img
+            = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        if (stamping != null)
+            g.setRenderingHint(RenderingHintsKeyExt.KEY_MARKER_STAMPING,
+                               stamping);
+        g.clip((clip == null) ? new Rectangle(0, 0, SIZE, SIZE) : clip);
+        g.transform(at);
+        painter.paint(g);
+        g.dispose();
+        return img;
+    }
+
+    static void assertSameImage(BufferedImage expected, BufferedImage img) {
+        for (int y=0; y < SIZE; y++) {
+            for (int x=0; x < SIZE; x++) {
+                assertEquals("pixel " + x + "," + y,
+                             Integer.toHexString(expected.getRGB(x, y)),
+                             Integer.toHexString(img.getRGB(x, y)));
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.PaintContext;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.util.Arrays;
+
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that <code>PatternPaint</code> renders its tile once for the
+ * fills it can share it with, and that these fills get the same pixels
+ * as with a paint of their own.
+ */
+public class PatternPaintTestCases {
+
+    /**
+     * A shape node counting how many times it is painted.
+     */
+    static class CountingShapeNode extends ShapeNode {
+        int count;
+
+        CountingShapeNode() {
+            setShape(new Ellipse2D.Double(2, 3, 12, 9));
+            FillShapePainter painter = new FillShapePainter(getShape());
+            painter.setPaint(new Color(200, 80, 40, 180));
+            setShapePainter(painter);
+        }
+
+        public void primitivePaint(Graphics2D g2d) {
+            count++;
+            super.primitivePaint(g2d);
+        }
+    }
+
+    static PatternPaint createPaint(GraphicsNode node) {
+        return new PatternPaint(node, new Rectangle2D.Double(0, 0, 16, 16),
+                                false, null);
+    }
+
+    /**
+     * Fills a rectangle with the paint, through the specified transform.
+     */
+    static BufferedImage fill(PatternPaint paint, AffineTransform at) {
+        BufferedImage img
+            = new BufferedImage(80, 80, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        g.transform(at);
+        g.setPaint(paint);
+        g.fill(new Rectangle2D.Double(0, 0, 50, 50));
+        g.dispose();
+        return img;
+    }
+
+    static void assertSamePixels(BufferedImage expected,
+                                 BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y,
+                             Integer.toHexString(expected.getRGB(x, y)),
+                             Integer.toHexString(actual.getRGB(x, y)));
+            }
+        }
+    }
+
+    @Test
+    public void testTileReused() {
+        CountingShapeNode node = new CountingShapeNode();
+        PatternPaint paint = createPaint(node);
+        AffineTransform at = AffineTransform.getScaleInstance(1.5, 1.5);
+
+        BufferedImage first = fill(paint, at);
+        int count = node.count;
+        assertTrue(count > 0);
+        BufferedImage second = fill(paint, at);
+        assertEquals(count, node.count);
+        assertSamePixels(first, second);
+    }
+
+    @Test
+    public void testTranslatedReuse() {
+        CountingShapeNode node = new CountingShapeNode();
+        PatternPaint paint = createPaint(node);
+        AffineTransform at = AffineTransform.getScaleInstance(1.5, 1.5);
+        BufferedImage first = fill(paint, at);
+        int count = node.count;
+
+        // A whole pixel translation is served by shifting the output of
+        // the cached context, giving the same pixels, shifted.
+        AffineTransform moved = AffineTransform.getTranslateInstance(7, 3);
+        moved.concatenate(at);
+        PaintContext pc = paint.createContext
+            (ColorModel.getRGBdefault(), new Rectangle(0, 0, 80, 80),
+             new Rectangle2D.Double(0, 0, 50, 50), moved, null);
+        assertTrue(pc instanceof PatternPaint.PatternPaintContextWrapper);
+        BufferedImage shifted = fill(paint, moved);
+        assertEquals(count, node.count);
+        for (int y = 3; y < shifted.getHeight(); y++) {
+            for (int x = 7; x < shifted.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y,
+                             Integer.toHexString(first.getRGB(x-7, y-3)),
+                             Integer.toHexString(shifted.getRGB(x, y)));
+            }
+        }
+
+        // A fractional one renders the tile again.
+        AffineTransform half = AffineTransform.getTranslateInstance(0.5, 0);
+        half.concatenate(at);
+        BufferedImage fractional = fill(paint, half);
+        assertTrue(node.count > count);
+        assertSamePixels(fill(createPaint(new CountingShapeNode()), half),
+                         fractional);
+    }
+
+    @Test
+    public void testOwnRaster() {
+        PatternPaint paint = createPaint(new CountingShapeNode());
+        ColorModel cm = ColorModel.getRGBdefault();
+        Rectangle bounds = new Rectangle(0, 0, 80, 80);
+        Rectangle2D userBounds = new Rectangle2D.Double(0, 0, 80, 80);
+        AffineTransform at = new AffineTransform();
+        PaintContext pc1
+            = paint.createContext(cm, bounds, userBounds, at, null);
+        PaintContext pc2
+            = paint.createContext(cm, bounds, userBounds, at, null);
+        assertNotSame(pc1, pc2);
+
+        Raster r1 = pc1.getRaster(0, 0, 16, 16);
+        int[] expected = r1.getPixels(0, 0, 16, 16, (int[])null);
+        Raster r2 = pc2.getRaster(5, 7, 16, 16);
+        assertNotSame(r1, r2);
+        // Using the second context leaves the first one's raster alone.
+        assertTrue(Arrays.equals
+                   (expected, r1.getPixels(0, 0, 16, 16, (int[])null)));
+    }
+
+    @Test
+    public void testClearCache() {
+        CountingShapeNode node = new CountingShapeNode();
+        PatternPaint paint = createPaint(node);
+        AffineTransform at = new AffineTransform();
+        fill(paint, at);
+        int count = node.count;
+
+        paint.clearCache();
+        fill(paint, at);
+        assertTrue(node.count > count);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.junit.Test;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the shapes <code>ShapeNode</code> simplifies for painting at
+ * small scales.
+ */
+public class ShapeNodeTestCases {
+
+    /**
+     * Returns an ellipse as a path, rectangular shapes are painted as
+     * they are.
+     */
+    static Shape createEllipse(double w, double h) {
+        return new GeneralPath(new Ellipse2D.Double(0, 0, w, h));
+    }
+
+    static ShapeNode createNode() {
+        ShapeNode node = new ShapeNode();
+        node.setShape(createEllipse(400, 300));
+        return node;
+    }
+
+    static Graphics2D createGraphics(double scale, boolean hint) {
+        BufferedImage img
+            = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        if (hint)
+            g.setRenderingHint
+                (RenderingHintsKeyExt.KEY_SHAPE_SIMPLIFICATION,
+                 Double.valueOf(1));
+        g.scale(scale, scale);
+        return g;
+    }
+
+    static Graphics2D createGraphics(double scale) {
+        return createGraphics(scale, true);
+    }
+
+    @Test
+    public void testNoHint() {
+        ShapeNode node = createNode();
+        assertNull(node.getSimplifiedShape(createGraphics(0.25, false)));
+        node.setShape(new Ellipse2D.Double(0, 0, 400, 300));
+        assertNull(node.getSimplifiedShape(createGraphics(0.25)));
+    }
+
+    @Test
+    public void testShapePerScale() {
+        ShapeNode node = createNode();
+        Shape small = node.getSimplifiedShape(createGraphics(0.25));
+        assertNotNull(small);
+        // The same power of two gives the same shape.
+        assertSame(small, node.getSimplifiedShape(createGraphics(0.3)));
+
+        Shape smaller = node.getSimplifiedShape(createGraphics(0.1));
+        assertNotNull(smaller);
+        assertNotSame(small, smaller);
+
+        // Going back keeps the shape of each scale.
+        assertSame(small, node.getSimplifiedShape(createGraphics(0.25)));
+        assertSame(smaller, node.getSimplifiedShape(createGraphics(0.1)));
+    }
+
+    @Test
+    public void testShapeChange() {
+        ShapeNode node = createNode();
+        Shape small = node.getSimplifiedShape(createGraphics(0.25));
+        node.setShape(createEllipse(300, 400));
+        Shape other = node.getSimplifiedShape(createGraphics(0.25));
+        assertNotNull(other);
+        assertNotSame(small, other);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that <code>StrokeShapePainter</code> keeps its stroked outline
+ * until its shape or stroke is set again.
+ */
+public class StrokeShapePainterTestCases {
+
+    static StrokeShapePainter createPainter(GeneralPath p, float width) {
+        StrokeShapePainter painter = new StrokeShapePainter(p);
+        painter.setPaint(Color.black);
+        painter.setStroke(createStroke(width));
+        return painter;
+    }
+
+    static BasicStroke createStroke(float width) {
+        return new BasicStroke(width, BasicStroke.CAP_BUTT,
+                               BasicStroke.JOIN_MITER);
+    }
+
+    static GeneralPath createLine(float x0, float y0, float x1, float y1) {
+        GeneralPath p = new GeneralPath();
+        p.moveTo(x0, y0);
+        p.lineTo(x1, y1);
+        return p;
+    }
+
+    @Test
+    public void testOutlineKept() {
+        StrokeShapePainter painter
+            = createPainter(createLine(0, 0, 100, 0), 10);
+        long misses = StrokeShapePainter.getOutlineCacheMisses();
+        long hits = StrokeShapePainter.getOutlineCacheHits();
+        assertSame(painter.getPaintedArea(), painter.getSensitiveArea());
+        assertEquals(painter.getPaintedBounds2D(),
+                     painter.getSensitiveBounds2D());
+        assertTrue(painter.inPaintedArea(new Point2D.Double(50, 4)));
+        assertEquals(misses + 1, StrokeShapePainter.getOutlineCacheMisses());
+        assertTrue(StrokeShapePainter.getOutlineCacheHits() > hits);
+        assertTrue(StrokeShapePainter.getOutlineCacheSize() > 0);
+
+        // The bounds given out are copies.
+        painter.getPaintedBounds2D().setRect(0, 0, 1, 1);
+        assertEquals(new Rectangle2D.Double(0, -5, 100, 10),
+                     painter.getPaintedBounds2D());
+    }
+
+    @Test
+    public void testSameShapeSetAgain() {
+        GeneralPath p = createLine(0, 0, 100, 0);
+        StrokeShapePainter painter = createPainter(p, 10);
+        Object outline = painter.getPaintedArea();
+        assertFalse(painter.inSensitiveArea(new Point2D.Double(50, 50)));
+
+        // The shape is changed in place and set again.
+        p.lineTo(100, 100);
+        painter.setShape(p);
+        assertNotSame(outline, painter.getPaintedArea());
+        assertEquals(new Rectangle2D.Double(0, -5, 105, 105),
+                     painter.getPaintedBounds2D());
+        assertTrue(painter.inSensitiveArea(new Point2D.Double(100, 50)));
+    }
+
+    @Test
+    public void testOtherShape() {
+        StrokeShapePainter painter
+            = createPainter(createLine(0, 0, 100, 0), 10);
+        painter.getPaintedBounds2D();
+        painter.setShape(createLine(0, 0, 0, 50));
+        assertEquals(new Rectangle2D.Double(-5, 0, 10, 50),
+                     painter.getPaintedBounds2D());
+        assertTrue(painter.inPaintedArea(new Point2D.Double(0, 40)));
+        assertFalse(painter.inPaintedArea(new Point2D.Double(50, 0)));
+    }
+
+    @Test
+    public void testStrokeChange() {
+        StrokeShapePainter painter
+            = createPainter(createLine(0, 0, 100, 0), 10);
+        assertFalse(painter.inPaintedArea(new Point2D.Double(50, 8)));
+        painter.setStroke(createStroke(20));
+        assertEquals(new Rectangle2D.Double(0, -10, 100, 20),
+                     painter.getSensitiveBounds2D());
+        assertTrue(painter.inPaintedArea(new Point2D.Double(50, 8)));
+
+        // An equal stroke gives the same outline, computed again.
+        Object outline = painter.getPaintedArea();
+        painter.setStroke(createStroke(20));
+        assertNotSame(outline, painter.getPaintedArea());
+        assertEquals(new Rectangle2D.Double(0, -10, 100, 20),
+                     painter.getPaintedBounds2D());
+
+        painter.setStroke(null);
+        assertEquals(null, painter.getSensitiveBounds2D());
+        assertFalse(painter.inSensitiveArea(new Point2D.Double(50, 0)));
+    }
+
+    @Test
+    public void testResetStats() {
+        StrokeShapePainter painter
+            = createPainter(createLine(0, 0, 100, 0), 10);
+        Object outline = painter.getPaintedArea();
+        painter.getPaintedArea();
+        StrokeShapePainter.resetOutlineCacheStats();
+        assertEquals(0, StrokeShapePainter.getOutlineCacheHits());
+        assertEquals(0, StrokeShapePainter.getOutlineCacheMisses());
+
+        // The outlines are kept.
+        assertSame(outline, painter.getPaintedArea());
+        assertEquals(1, StrokeShapePainter.getOutlineCacheHits());
+        assertEquals(0, StrokeShapePainter.getOutlineCacheMisses());
+    }
+}
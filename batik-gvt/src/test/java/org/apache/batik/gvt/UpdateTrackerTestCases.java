@@ -0,0 +1,169 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+
+import org.apache.batik.ext.awt.geom.RectListManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the device space regions of an <code>UpdateTracker</code>
+ * cover what the changed nodes painted before and after their changes.
+ */
+public class UpdateTrackerTestCases {
+
+    /**
+     * The transform from the user space of the root to device space.
+     */
+    static final AffineTransform USR2DEV
+        = new AffineTransform(1.5, 0, 0, 1.5, 12, -8);
+
+    RootGraphicsNode root;
+    CompositeGraphicsNode parent;
+    ShapeNode rect;
+    CompositeGraphicsNode group;
+    UpdateTracker tracker;
+
+    @Before
+    public void createTree() {
+        root = new RootGraphicsNode();
+        parent = new CompositeGraphicsNode();
+        parent.setTransform(AffineTransform.getRotateInstance(0.5, 100, 100));
+        root.add(parent);
+
+        rect = new ShapeNode();
+        rect.setShape(new Rectangle2D.Double(0, 0, 60, 20));
+        rect.setShapePainter(new FillShapePainter(rect.getShape()));
+        ((FillShapePainter)rect.getShapePainter()).setPaint(Color.red);
+        rect.setTransform(AffineTransform.getTranslateInstance(40, 50));
+        parent.add(rect);
+
+        group = new CompositeGraphicsNode();
+        group.setTransform(AffineTransform.getTranslateInstance(120, 30));
+        ShapeNode a = new ShapeNode();
+        a.setShape(new Rectangle2D.Double(0, 0, 80, 6));
+        a.setShapePainter(new FillShapePainter(a.getShape()));
+        ((FillShapePainter)a.getShapePainter()).setPaint(Color.blue);
+        group.add(a);
+        ShapeNode b = new ShapeNode();
+        b.setShape(new Ellipse2D.Double(70, 60, 30, 30));
+        b.setShapePainter(new FillShapePainter(b.getShape()));
+        ((FillShapePainter)b.getShapePainter()).setPaint(Color.green);
+        group.add(b);
+        parent.add(group);
+
+        tracker = new UpdateTracker();
+        root.addTreeGraphicsNodeChangeListener(tracker);
+        assertFalse(tracker.hasChanged());
+        assertNull(tracker.getDirtyRegions(USR2DEV));
+    }
+
+    @Test
+    public void testMovedUnderRotatedParent() {
+        Shape before = deviceShape(rect);
+        rect.setTransform(AffineTransform.getTranslateInstance(90, 140));
+        assertCovered(tracker.getDirtyRegions(USR2DEV),
+                      new Shape[] { before, deviceShape(rect) });
+    }
+
+    @Test
+    public void testMovedTwiceUnderRotatedParent() {
+        Shape before = deviceShape(rect);
+        rect.setTransform(AffineTransform.getTranslateInstance(-30, 10));
+        rect.setTransform(AffineTransform.getTranslateInstance(150, 0));
+        assertCovered(tracker.getDirtyRegions(USR2DEV),
+                      new Shape[] { before, deviceShape(rect) });
+    }
+
+    @Test
+    public void testReshapedUnderRotatedParent() {
+        Shape before = deviceShape(rect);
+        rect.setShape(new Rectangle2D.Double(-40, 30, 20, 90));
+        assertCovered(tracker.getDirtyRegions(USR2DEV),
+                      new Shape[] { before, deviceShape(rect) });
+    }
+
+    @Test
+    public void testGroupMovedUnderRotatedParent() {
+        Shape [] before = groupShapes();
+        group.setTransform(AffineTransform.getTranslateInstance(10, 150));
+        Shape [] after = groupShapes();
+        assertCovered(tracker.getDirtyRegions(USR2DEV),
+                      new Shape[] { before[0], before[1],
+                                    after[0], after[1] });
+    }
+
+    @Test
+    public void testParentRotated() {
+        Shape before = deviceShape(rect);
+        Shape [] groupBefore = groupShapes();
+        parent.setTransform(AffineTransform.getRotateInstance(-0.8, 60, 40));
+        Shape [] groupAfter = groupShapes();
+        assertCovered(tracker.getDirtyRegions(USR2DEV),
+                      new Shape[] { before, deviceShape(rect),
+                                    groupBefore[0], groupBefore[1],
+                                    groupAfter[0], groupAfter[1] });
+    }
+
+    /**
+     * Returns what <code>node</code> currently paints, in device space.
+     */
+    Shape deviceShape(ShapeNode node) {
+        AffineTransform at = new AffineTransform(USR2DEV);
+        GraphicsNode gn = node;
+        AffineTransform nat = new AffineTransform();
+        while (gn != null) {
+            if (gn.getTransform() != null)
+                nat.preConcatenate(gn.getTransform());
+            gn = gn.getParent();
+        }
+        at.concatenate(nat);
+        return at.createTransformedShape(node.getShape());
+    }
+
+    Shape [] groupShapes() {
+        return new Shape[] { deviceShape((ShapeNode)group.get(0)),
+                             deviceShape((ShapeNode)group.get(1)) };
+    }
+
+    static void assertCovered(RectListManager rlm, Shape [] shapes) {
+        assertNotNull(rlm);
+        Area dirty = new Area();
+        for (Object o : rlm)
+            dirty.add(new Area((Rectangle)o));
+        for (int i = 0; i < shapes.length; i++) {
+            Area a = new Area(shapes[i]);
+            a.subtract(dirty);
+            assertTrue("Shape " + i + " is not repainted", a.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+import org.apache.batik.gvt.text.GVTAttributedCharacterIterator;
+import org.apache.batik.gvt.text.TextPaintInfo;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that small solid text is drawn from a <code>GlyphAtlas</code>
+ * only when the hint asks for it, close to where its outlines are
+ * filled, and that the atlases stay within their number of pixels.
+ */
+public class GlyphAtlasTestCases {
+
+    static final FontRenderContext FRC
+        = new FontRenderContext(null, true, true);
+
+    static final String TEXT = "Atlas glyphs";
+
+    @Before
+    public void setUp() {
+        GlyphAtlas.clear();
+    }
+
+    static TextPaintInfo createPaintInfo(Paint fill) {
+        TextPaintInfo tpi = new TextPaintInfo();
+        tpi.visible = true;
+        tpi.fillPaint = fill;
+        return tpi;
+    }
+
+    /**
+     * Draws the text in a 12 pixels font, with its origin at the
+     * specified position.
+     * @param atlas the value of the atlas hint, or null.
+     */
+    static BufferedImage draw(TextPaintInfo tpi, Object atlas,
+                              AffineTransform at, double x, double y) {
+        AttributedString as = new AttributedString(TEXT);
+        as.addAttribute
+            (GVTAttributedCharacterIterator.TextAttribute.PAINT_INFO, tpi);
+        AttributedCharacterIterator aci = as.getIterator();
+        AWTGVTFont font
+            = new AWTGVTFont(new Font("Dialog", Font.PLAIN, 12));
+        GVTGlyphVector gv = font.createGlyphVector(FRC, aci);
+        gv.performDefaultLayout();
+
+        BufferedImage img
+            = new BufferedImage(120, 40, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        if (atlas != null)
+            g.setRenderingHint(RenderingHintsKeyExt.KEY_GLYPH_ATLAS, atlas);
+        g.transform(at);
+        g.translate(x, y);
+        gv.draw(g, aci);
+        g.dispose();
+        return img;
+    }
+
+    static BufferedImage draw(Object atlas, double x, double y) {
+        return draw(createPaintInfo(Color.black), atlas,
+                    new AffineTransform(), x, y);
+    }
+
+    /**
+     * Returns the amount of ink of an image and its center.
+     */
+    static double [] getInk(BufferedImage img) {
+        double sum = 0, sx = 0, sy = 0;
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                int a = img.getRGB(x, y) >>> 24;
+                sum += a;
+                sx += a * (x + 0.5);
+                sy += a * (y + 0.5);
+            }
+        }
+        return new double[] { sum, sx / sum, sy / sum };
+    }
+
+    @Test
+    public void testHintGatesAtlas() {
+        draw(null, 5, 25);
+        assertEquals(0, GlyphAtlas.getMissCount());
+        assertEquals(0, GlyphAtlas.getPixelCount());
+
+        // The font is larger than the hint allows.
+        draw(Integer.valueOf(8), 5, 25);
+        assertEquals(0, GlyphAtlas.getMissCount());
+
+        draw(Integer.valueOf(24), 5, 25);
+        long misses = GlyphAtlas.getMissCount();
+        long hits = GlyphAtlas.getHitCount();
+        assertTrue(misses > 0);
+        assertTrue(GlyphAtlas.getPixelCount() > 0);
+
+        // The glyphs are rendered once for each subpixel position.
+        draw(Integer.valueOf(24), 5, 25);
+        assertEquals(misses, GlyphAtlas.getMissCount());
+        assertEquals(hits + misses + hits, GlyphAtlas.getHitCount());
+    }
+
+    @Test
+    public void testCloseToFilled() {
+        double [][] origins = { { 5, 25 }, { 5.3, 25.6 }, { 7.9, 24.1 },
+                                { 6.55, 26.45 } };
+        for (int i = 0; i < origins.length; i++) {
+            double x = origins[i][0], y = origins[i][1];
+            double [] filled = getInk(draw(null, x, y));
+            double [] atlas = getInk(draw(Integer.valueOf(24), x, y));
+            assertEquals(filled[0], atlas[0], filled[0] * 0.02);
+            assertEquals(filled[1], atlas[1], 1.0 / GlyphAtlas.PHASES / 2
+                         + 0.01);
+            assertEquals(filled[2], atlas[2], 1.0 / GlyphAtlas.PHASES / 2
+                         + 0.01);
+        }
+        assertTrue(GlyphAtlas.getMissCount() > 0);
+    }
+
+    @Test
+    public void testFallbacks() {
+        Integer hint = Integer.valueOf(24);
+
+        // Rotated text.
+        draw(createPaintInfo(Color.black), hint,
+             AffineTransform.getRotateInstance(0.3), 5, 10);
+        assertEquals(0, GlyphAtlas.getMissCount());
+
+        // Stroked text.
+        TextPaintInfo stroked = createPaintInfo(Color.black);
+        stroked.strokePaint = Color.red;
+        stroked.strokeStroke = new BasicStroke(1);
+        draw(stroked, hint, new AffineTransform(), 5, 25);
+        assertEquals(0, GlyphAtlas.getMissCount());
+
+        // Text filled with something else than a color.
+        draw(createPaintInfo(new GradientPaint(0, 0, Color.black,
+                                               50, 0, Color.blue)),
+             hint, new AffineTransform(), 5, 25);
+        assertEquals(0, GlyphAtlas.getMissCount());
+        assertEquals(0, GlyphAtlas.getPixelCount());
+
+        // Checks the same text does use the atlas.
+        draw(createPaintInfo(Color.black), hint, new AffineTransform(),
+             5, 25);
+        assertTrue(GlyphAtlas.getMissCount() > 0);
+    }
+
+    @Test
+    public void testEviction() {
+        BufferedImage img
+            = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        Font font = new Font("Dialog", Font.PLAIN, 48);
+        // Each of these glyphs takes a whole sheet.
+        Rectangle2D outline = new Rectangle2D.Double(0, 0, 100, 100);
+        long sheet = GlyphAtlas.SHEET_SIZE * GlyphAtlas.SHEET_SIZE;
+
+        GlyphAtlas red = GlyphAtlas.getAtlas(font, 1, 1, Color.red, g);
+        red.draw(g, 1, outline, 0, 0);
+        GlyphAtlas blue = GlyphAtlas.getAtlas(font, 1, 1, Color.blue, g);
+        blue.draw(g, 1, outline, 0, 0);
+        assertSame(red, GlyphAtlas.getAtlas(font, 1, 1, Color.red, g));
+        assertEquals(2 * sheet, GlyphAtlas.getPixelCount());
+
+        // Filling a third atlas drops the least recently used one.
+        GlyphAtlas green = GlyphAtlas.getAtlas(font, 1, 1, Color.green, g);
+        int code = 0;
+        while (GlyphAtlas.getPixelCount() + sheet <= GlyphAtlas.MAX_PIXELS)
+            green.draw(g, code++, outline, 0, 0);
+        green.draw(g, code++, outline, 0, 0);
+        assertTrue(GlyphAtlas.getPixelCount() <= GlyphAtlas.MAX_PIXELS);
+        assertEquals(GlyphAtlas.MAX_PIXELS / sheet * sheet,
+                     GlyphAtlas.getPixelCount());
+        assertSame(red, GlyphAtlas.getAtlas(font, 1, 1, Color.red, g));
+        assertSame(green, GlyphAtlas.getAtlas(font, 1, 1, Color.green, g));
+        assertNotSame(blue, GlyphAtlas.getAtlas(font, 1, 1, Color.blue, g));
+        g.dispose();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.font;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that <code>GlyphGeometryCache</code> keys glyphs by font and
+ * glyph code, stays within its size and counts its lookups.
+ */
+public class GlyphGeometryCacheTestCases {
+
+    static final FontRenderContext FRC
+        = new FontRenderContext(null, true, true);
+
+    static final Font FONT = new Font("Dialog", Font.PLAIN, 12);
+
+    @Before
+    public void setUp() {
+        GlyphGeometryCache.clear();
+    }
+
+    /**
+     * Returns a glyph geometry whose outline has the specified number
+     * of segments.
+     */
+    static AWTGlyphGeometryCache.Value createValue(int segments) {
+        GeneralPath p = new GeneralPath();
+        p.moveTo(0, 0);
+        for (int i = 1; i < segments; i++)
+            p.lineTo(i % 7, i % 5);
+        return new AWTGlyphGeometryCache.Value
+            (p, new Rectangle2D.Float(0, 0, 7, 5));
+    }
+
+    @Test
+    public void testKeyedByGlyphCode() {
+        // The contextual forms of an Arabic letter are different glyphs
+        // of the same character.
+        char [] chars = { '\u0628', '\u0628', '\u0628' };
+        AWTGVTFont font = new AWTGVTFont(FONT);
+        assumeTrue(font.awtFont.canDisplayUpTo(new String(chars)) == -1);
+        GlyphVector gv = font.awtFont.layoutGlyphVector
+            (FRC, chars, 0, chars.length, Font.LAYOUT_RIGHT_TO_LEFT);
+        int [] codes = gv.getGlyphCodes(0, chars.length, null);
+        assumeTrue(codes[0] != codes[1] && codes[1] != codes[2]
+                   && codes[0] != codes[2]);
+
+        AWTGlyphGeometryCache.Value [] v
+            = new AWTGlyphGeometryCache.Value[chars.length];
+        for (int i = 0; i < chars.length; i++)
+            v[i] = AWTGVTFont.getGlyphGeometry
+                (font, chars[i], gv, i, gv.getGlyphPosition(i));
+        assertEquals(3, GlyphGeometryCache.getCount());
+        assertEquals(3, GlyphGeometryCache.getMissCount());
+        assertNotSame(v[0], v[1]);
+        assertNotSame(v[1], v[2]);
+        assertNotSame(v[0], v[2]);
+
+        // Fonts of other sizes are derived to the same AWT font.
+        AWTGVTFont larger = new AWTGVTFont(FONT.deriveFont(30f));
+        assertSame(v[1], AWTGVTFont.getGlyphGeometry
+                   (larger, chars[1], gv, 1, gv.getGlyphPosition(1)));
+        assertEquals(1, GlyphGeometryCache.getHitCount());
+
+        // Other fonts get their own glyphs.
+        AWTGVTFont bold = new AWTGVTFont(FONT.deriveFont(Font.BOLD));
+        GlyphVector bgv = bold.awtFont.layoutGlyphVector
+            (FRC, chars, 0, chars.length, Font.LAYOUT_RIGHT_TO_LEFT);
+        assertNotSame(v[0], AWTGVTFont.getGlyphGeometry
+                      (bold, chars[0], bgv, 0, bgv.getGlyphPosition(0)));
+        assertEquals(4, GlyphGeometryCache.getCount());
+    }
+
+    @Test
+    public void testEviction() {
+        long max = GlyphGeometryCache.getMaxSize();
+        long target = max - (max >> 2);
+        AWTGlyphGeometryCache.Value v = createValue((int)(max / 90));
+        long s = GlyphGeometryCache.sizeOf(v);
+        assertTrue(s > max / 10);
+
+        // The first glyph keeps being used, the others are put once.
+        GlyphGeometryCache.put(FONT, 0, v);
+        int last = 0;
+        while (GlyphGeometryCache.getEvictionCount() == 0) {
+            GlyphGeometryCache.put(FONT, ++last, createValue((int)(max / 90)));
+            assertNotNull(GlyphGeometryCache.get(FONT, 0));
+        }
+        long size = GlyphGeometryCache.getSize();
+        assertTrue(size <= target);
+        assertTrue(size + s > target);
+        assertEquals(GlyphGeometryCache.getCount() * s, size);
+
+        // The least recently used glyphs were dropped, in order.
+        int evicted = (int)GlyphGeometryCache.getEvictionCount();
+        for (int c = 1; c <= evicted; c++)
+            assertNull(GlyphGeometryCache.get(FONT, c));
+        for (int c = evicted + 1; c <= last; c++)
+            assertNotNull(GlyphGeometryCache.get(FONT, c));
+        assertNotNull(GlyphGeometryCache.get(FONT, 0));
+    }
+
+    @Test
+    public void testConcurrentPut() throws Exception {
+        final AWTGlyphGeometryCache.Value [] returned
+            = new AWTGlyphGeometryCache.Value[8];
+        Thread [] threads = new Thread[returned.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread() {
+                    public void run() {
+                        returned[n] = GlyphGeometryCache.put
+                            (FONT, 42, createValue(10));
+                    }
+                };
+        }
+        for (int i = 0; i < threads.length; i++)
+            threads[i].start();
+        for (int i = 0; i < threads.length; i++)
+            threads[i].join();
+
+        // All the threads use the geometry stored first.
+        AWTGlyphGeometryCache.Value first = GlyphGeometryCache.get(FONT, 42);
+        assertNotNull(first);
+        for (int i = 0; i < returned.length; i++)
+            assertSame(first, returned[i]);
+        assertEquals(1, GlyphGeometryCache.getCount());
+        assertEquals(GlyphGeometryCache.sizeOf(first),
+                     GlyphGeometryCache.getSize());
+    }
+
+    @Test
+    public void testStats() {
+        assertNull(GlyphGeometryCache.get(FONT, 1));
+        assertEquals(0, GlyphGeometryCache.getHitCount());
+        assertEquals(1, GlyphGeometryCache.getMissCount());
+
+        AWTGlyphGeometryCache.Value v = createValue(10);
+        assertSame(v, GlyphGeometryCache.put(FONT, 1, v));
+        assertSame(v, GlyphGeometryCache.get(FONT, 1));
+        assertSame(v, GlyphGeometryCache.get(FONT, 1));
+        assertEquals(2, GlyphGeometryCache.getHitCount());
+        assertEquals(1, GlyphGeometryCache.getMissCount());
+        assertEquals(1, GlyphGeometryCache.getCount());
+
+        GlyphGeometryCache.clear();
+        assertEquals(0, GlyphGeometryCache.getHitCount());
+        assertEquals(0, GlyphGeometryCache.getMissCount());
+        assertEquals(0, GlyphGeometryCache.getCount());
+        assertEquals(0, GlyphGeometryCache.getSize());
+        assertNull(GlyphGeometryCache.get(FONT, 1));
+    }
+}
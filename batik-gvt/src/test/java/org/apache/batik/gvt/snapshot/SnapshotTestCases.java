@@ -0,0 +1,223 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.snapshot;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.batik.ext.awt.LinearGradientPaint;
+import org.apache.batik.ext.awt.MultipleGradientPaint;
+import org.apache.batik.ext.awt.RadialGradientPaint;
+import org.apache.batik.ext.awt.image.GraphicsUtil;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that snapshots read back paint as the ones written, and that
+ * malformed snapshots are reported as <code>IOException</code>s.
+ */
+public class SnapshotTestCases {
+
+    private static final int SIZE = 100;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Snapshot s = record();
+        s.setSize(SIZE, SIZE);
+        s.setViewBox(new float[] { 0, 0, 50, 50 }, (short)2, false);
+        s.setViewTransform(AffineTransform.getScaleInstance(2, 2));
+        s.setResolution(1.5f);
+
+        Snapshot r = Snapshot.read(new ByteArrayInputStream(write(s)));
+        assertEquals(s.size(), r.size());
+        assertEquals(s.getBounds(), r.getBounds());
+        assertEquals(SIZE, r.getWidth(), 0);
+        assertEquals(SIZE, r.getHeight(), 0);
+        assertArrayEquals(s.getViewBox(), r.getViewBox(), 0);
+        assertEquals(s.getAlign(), r.getAlign());
+        assertEquals(s.isMeet(), r.isMeet());
+        assertEquals(s.getViewTransform(), r.getViewTransform());
+        assertEquals(1.5f, r.getResolution(), 0);
+
+        assertArrayEquals(render(s), render(r));
+
+        // Writing what was read gives the same bytes.
+        assertArrayEquals(write(s), write(r));
+    }
+
+    @Test
+    public void testNotASnapshot() {
+        assertInvalid(new byte[] { 1, 2, 3, 4, 0, 1 });
+    }
+
+    @Test
+    public void testNegativeGradientStops() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = begin(bos);
+        out.writeByte(SnapshotConstants.SET_PAINT);
+        out.writeByte(SnapshotConstants.PAINT_LINEAR);
+        for (int i = 0; i < 4; i++)
+            out.writeDouble(i);
+        out.writeInt(-1);
+        assertInvalid(end(bos, out));
+    }
+
+    @Test
+    public void testImageSizeOverflow() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = begin(bos);
+        out.writeByte(SnapshotConstants.DEFINE_IMAGE);
+        out.writeInt(0);
+        out.writeInt(0x10000);
+        out.writeInt(0x8000);
+        out.writeBoolean(false);
+        assertInvalid(end(bos, out));
+    }
+
+    @Test
+    public void testNegativeShapeLength() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = begin(bos);
+        out.writeByte(SnapshotConstants.FILL);
+        out.writeByte(SnapshotConstants.SHAPE_PATH);
+        out.writeByte(0);
+        out.writeInt(-5);
+        assertInvalid(end(bos, out));
+    }
+
+    /**
+     * Records colors, gradients, strokes, clips, composites and images.
+     */
+    private static Snapshot record() {
+        SnapshotGraphics2D g = new SnapshotGraphics2D();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                           RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(Color.blue);
+        g.fill(new Rectangle2D.Double(5, 5, 40, 30));
+
+        g.setPaint(new LinearGradientPaint
+                   (new Point2D.Float(0, 0), new Point2D.Float(100, 0),
+                    new float[] { 0, 0.5f, 1 },
+                    new Color[] { Color.red, Color.green,
+                                  new Color(0, 0, 255, 128) },
+                    MultipleGradientPaint.REFLECT,
+                    MultipleGradientPaint.LINEAR_RGB,
+                    new AffineTransform()));
+        g.fill(new Ellipse2D.Double(30, 20, 60, 40));
+
+        g.setStroke(new BasicStroke(3, BasicStroke.CAP_ROUND,
+                                    BasicStroke.JOIN_BEVEL, 4,
+                                    new float[] { 5, 2 }, 1));
+        g.setPaint(new RadialGradientPaint
+                   (new Point2D.Float(50, 50), 30,
+                    new float[] { 0, 1 },
+                    new Color[] { Color.yellow, Color.black }));
+        GeneralPath p = new GeneralPath();
+        p.moveTo(10, 90);
+        p.quadTo(50, 40, 90, 90);
+        p.curveTo(70, 70, 30, 70, 10, 90);
+        p.closePath();
+        g.draw(p);
+
+        g.rotate(0.3, 50, 50);
+        g.clip(new Rectangle2D.Double(20, 20, 60, 60));
+        g.setComposite(AlphaComposite.getInstance
+                       (AlphaComposite.SRC_OVER, 0.5f));
+        BufferedImage img = new BufferedImage
+            (8, 8, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 8; y++)
+            for (int x = 0; x < 8; x++)
+                img.setRGB(x, y, ((x + y) % 2 == 0) ? 0xffff00ff
+                                                    : 0x8000ff00);
+        g.drawImage(img, 25, 25, 40, 40, null);
+        g.dispose();
+        return g.getSnapshot();
+    }
+
+    private static byte [] write(Snapshot s) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        s.write(bos);
+        return bos.toByteArray();
+    }
+
+    private static int [] render(Snapshot s) {
+        BufferedImage img = new BufferedImage
+            (SIZE, SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = GraphicsUtil.createGraphics(img);
+        s.paint(g);
+        g.dispose();
+        return img.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+    }
+
+    /**
+     * Starts a snapshot with a valid header, ready for its commands.
+     */
+    private static DataOutputStream begin(ByteArrayOutputStream bos)
+            throws IOException {
+        DataOutputStream header = new DataOutputStream(bos);
+        header.writeInt(SnapshotConstants.MAGIC);
+        header.writeShort(SnapshotConstants.VERSION);
+        header.flush();
+        DataOutputStream out
+            = new DataOutputStream(new DeflaterOutputStream(bos));
+        out.writeFloat(SIZE);
+        out.writeFloat(SIZE);
+        out.writeBoolean(false);
+        out.writeShort(0);
+        out.writeBoolean(true);
+        for (int i = 0; i < 6; i++)
+            out.writeDouble((i == 0 || i == 3) ? 1 : 0);
+        out.writeFloat(1);
+        return out;
+    }
+
+    private static byte [] end(ByteArrayOutputStream bos,
+                               DataOutputStream out) throws IOException {
+        out.writeByte(SnapshotConstants.END);
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private static void assertInvalid(byte [] data) {
+        try {
+            Snapshot.read(new ByteArrayInputStream(data));
+            fail("Malformed snapshot read");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().length() > 0);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt.text;
+
+import java.awt.font.FontRenderContext;
+import java.awt.font.NumericShaper;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.text.CharacterIterator;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that the levels of <code>BidiLevelCache</code> are the ones
+ * <code>java.awt.font.TextLayout</code> computes.
+ */
+public class BidiLevelCacheTestCases {
+
+    private static final String HEBREW = "שלום";
+
+    private static final String ARABIC = "مرحبا";
+
+    private static final FontRenderContext FRC
+        = new FontRenderContext(null, true, true);
+
+    @Test
+    public void testLeftToRight() {
+        assertNull(BidiLevelCache.getLevels
+                   (new AttributedString("Hello 123").getIterator(),
+                    "Hello 123"));
+        check(new AttributedString("Hello world, 123."));
+    }
+
+    @Test
+    public void testMixed() {
+        check(new AttributedString("Hello " + HEBREW + " world"));
+        check(new AttributedString(HEBREW + " abc 123 " + HEBREW));
+        check(new AttributedString(ARABIC + " 12.5% " + ARABIC + " (x)"));
+        check(new AttributedString("abc " + ARABIC + " 42 " + HEBREW + "!"));
+    }
+
+    @Test
+    public void testRunDirection() {
+        AttributedString as = new AttributedString("abc 123 def");
+        as.addAttribute(TextAttribute.RUN_DIRECTION,
+                        TextAttribute.RUN_DIRECTION_RTL);
+        check(as);
+
+        as = new AttributedString(HEBREW + " abc " + ARABIC);
+        as.addAttribute(TextAttribute.RUN_DIRECTION,
+                        TextAttribute.RUN_DIRECTION_LTR);
+        check(as);
+    }
+
+    @Test
+    public void testEmbeddings() {
+        String text = "abc def " + HEBREW + " ghi 123";
+        AttributedString as = new AttributedString(text);
+        as.addAttribute(TextAttribute.BIDI_EMBEDDING, Integer.valueOf(1), 4, 7);
+        check(as);
+
+        // Negative values are overrides.
+        as = new AttributedString(text);
+        as.addAttribute(TextAttribute.BIDI_EMBEDDING, Integer.valueOf(-1), 0, 7);
+        as.addAttribute(TextAttribute.BIDI_EMBEDDING, Integer.valueOf(-2), 8, 12);
+        check(as);
+
+        as = new AttributedString(text);
+        as.addAttribute(TextAttribute.RUN_DIRECTION,
+                        TextAttribute.RUN_DIRECTION_RTL);
+        as.addAttribute(TextAttribute.BIDI_EMBEDDING, Integer.valueOf(2), 0, 3);
+        as.addAttribute(TextAttribute.BIDI_EMBEDDING, Integer.valueOf(-3), 13,
+                        text.length());
+        check(as);
+    }
+
+    @Test
+    public void testNumericShaping() {
+        NumericShaper shaper
+            = NumericShaper.getContextualShaper(NumericShaper.ARABIC);
+        String [] texts = { ARABIC + " 123 abc", "abc 123 " + ARABIC + " 45",
+                            "123 456" };
+        for (int i = 0; i < texts.length; i++) {
+            AttributedString as = new AttributedString(texts[i]);
+            as.addAttribute(TextAttribute.NUMERIC_SHAPING, shaper);
+            check(as);
+        }
+    }
+
+    /**
+     * Identical chunks share their levels, and a chunk with other bidi
+     * attributes does not get them.
+     */
+    @Test
+    public void testShared() {
+        BidiLevelCache.clear();
+        String text = "abc " + HEBREW + " def";
+        byte [] l1 = BidiLevelCache.getLevels
+            (new AttributedString(text).getIterator(), text);
+        byte [] l2 = BidiLevelCache.getLevels
+            (new AttributedString(text).getIterator(), text);
+        assertSame(l1, l2);
+        assertEquals(1, BidiLevelCache.getHits());
+        assertEquals(1, BidiLevelCache.getMisses());
+        assertEquals(1, BidiLevelCache.getSize());
+
+        AttributedString as = new AttributedString(text);
+        as.addAttribute(TextAttribute.RUN_DIRECTION,
+                        TextAttribute.RUN_DIRECTION_RTL);
+        byte [] l3 = BidiLevelCache.getLevels(as.getIterator(), text);
+        assertEquals(2, BidiLevelCache.getMisses());
+        assertEquals(2, l3[0]);
+        assertEquals(0, l1[0]);
+        BidiLevelCache.clear();
+        assertEquals(0, BidiLevelCache.getSize());
+    }
+
+    /**
+     * Checks the levels of <code>as</code>, computed twice so that the
+     * shared ones are checked too, against those of a text layout.
+     */
+    private static void check(AttributedString as) {
+        StringBuffer sb = new StringBuffer();
+        AttributedCharacterIterator aci = as.getIterator();
+        for (char c = aci.first(); c != CharacterIterator.DONE;
+             c = aci.next())
+            sb.append(c);
+        String text = sb.toString();
+        TextLayout tl = new TextLayout(as.getIterator(), FRC);
+        for (int pass = 0; pass < 2; pass++) {
+            byte [] levels = BidiLevelCache.getLevels(as.getIterator(), text);
+            for (int i = 0; i < text.length(); i++) {
+                int expected = tl.getCharacterLevel(i);
+                int actual = (levels == null) ? 0 : levels[i];
+                assertEquals(text + " at " + i, expected, actual);
+            }
+        }
+    }
+}
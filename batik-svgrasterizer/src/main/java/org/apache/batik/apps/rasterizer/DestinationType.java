@@ -21,6 +21,7 @@ package org.apache.batik.apps.rasterizer;
 import org.apache.batik.transcoder.Transcoder;
 import org.apache.batik.transcoder.image.JPEGTranscoder;
 import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.apache.batik.transcoder.image.SnapshotTranscoder;
 import org.apache.batik.transcoder.image.TIFFTranscoder;
 
 /**
@@ -36,16 +37,20 @@ public final class DestinationType {
     public static final String JPEG_STR = "image/jpeg";
     public static final String TIFF_STR = "image/tiff";
     public static final String PDF_STR  = "application/pdf";
+    public static final String SNAPSHOT_STR
+        = "application/x-batik-gvt-snapshot";
 
     public static final int PNG_CODE  = 0;
     public static final int JPEG_CODE = 1;
     public static final int TIFF_CODE = 2;
     public static final int PDF_CODE  = 3;
+    public static final int SNAPSHOT_CODE = 4;
 
     public static final String PNG_EXTENSION  = ".png";
     public static final String JPEG_EXTENSION = ".jpg";
     public static final String TIFF_EXTENSION = ".tif";
     public static final String PDF_EXTENSION  = ".pdf";
+    public static final String SNAPSHOT_EXTENSION = ".gvt";
 
     public static final DestinationType PNG
         = new DestinationType(PNG_STR, PNG_CODE, PNG_EXTENSION);
@@ -55,6 +60,9 @@ public final class DestinationType {
         = new DestinationType(TIFF_STR, TIFF_CODE, TIFF_EXTENSION);
     public static final DestinationType PDF
         = new DestinationType(PDF_STR, PDF_CODE, PDF_EXTENSION);
+    public static final DestinationType SNAPSHOT
+        = new DestinationType(SNAPSHOT_STR, SNAPSHOT_CODE,
+                              SNAPSHOT_EXTENSION);
 
     private String type;
     private int    code;
@@ -98,6 +106,8 @@ public final class DestinationType {
                 } catch(Exception e) {
                     return null;
                 }
+            case SNAPSHOT_CODE:
+                return new SnapshotTranscoder();
             default:
                 return null;
         }
@@ -110,7 +120,7 @@ public final class DestinationType {
      * @return Array of valid values as strings.
      */
     public DestinationType[] getValues() {
-        return new DestinationType[]{PNG, JPEG, TIFF, PDF};
+        return new DestinationType[]{PNG, JPEG, TIFF, PDF, SNAPSHOT};
     }
 
     public Object readResolve(){
@@ -123,6 +133,8 @@ public final class DestinationType {
             return TIFF;
         case PDF_CODE:
             return PDF;
+        case SNAPSHOT_CODE:
+            return SNAPSHOT;
         default:
             throw new RuntimeException("unknown code:" + code );
         }
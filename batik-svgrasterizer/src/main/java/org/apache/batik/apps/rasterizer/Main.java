@@ -539,6 +539,8 @@ public class Main implements SVGConverterController {
         mimeTypeMap.put("image/png", DestinationType.PNG);
         mimeTypeMap.put("application/pdf", DestinationType.PDF);
         mimeTypeMap.put("image/tiff", DestinationType.TIFF);
+        mimeTypeMap.put(DestinationType.SNAPSHOT_STR,
+                        DestinationType.SNAPSHOT);
 
         optionMap.put(CL_OPTION_OUTPUT,
                       new SingleValueOptionHandler(){
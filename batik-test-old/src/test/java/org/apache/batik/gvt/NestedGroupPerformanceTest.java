@@ -0,0 +1,71 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.gvt;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+import org.apache.batik.gvt.snapshot.SnapshotGraphics2D;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * This test checks that there is no performance degradation when a
+ * tree of deeply nested groups is rendered to a <code>Graphics2D</code>
+ * based on <code>AbstractGraphics2D</code>: every node is painted
+ * through a copy of the graphic context.
+ *
+ * @version $Id$
+ */
+public class NestedGroupPerformanceTest extends PerformanceTest {
+
+    /**
+     * The nesting depth, and the number of groups in each group.
+     */
+    static final int DEPTH = 9;
+    static final int FAN_OUT = 3;
+
+    protected GraphicsNode root = createGroup(DEPTH);
+
+    public void runOp() {
+        SnapshotGraphics2D g = new SnapshotGraphics2D();
+        root.paint(g);
+        g.dispose();
+    }
+
+    /**
+     * Returns a translated group holding a square and the nested
+     * groups.
+     */
+    static GraphicsNode createGroup(int depth) {
+        CompositeGraphicsNode group = new CompositeGraphicsNode();
+        ShapeNode square = new ShapeNode();
+        square.setShape(new Rectangle2D.Float(0, 0, 2, 2));
+        FillShapePainter painter = new FillShapePainter(square.getShape());
+        painter.setPaint((depth % 2 == 0) ? Color.red : Color.blue);
+        square.setShapePainter(painter);
+        group.getChildren().add(square);
+        for (int i = 0; depth > 0 && i < FAN_OUT; i++) {
+            GraphicsNode child = createGroup(depth - 1);
+            child.setTransform(AffineTransform.getTranslateInstance(3 * i, 1));
+            group.getChildren().add(child);
+        }
+        return group;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.svggen;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.DOMImplementation;
+
+import org.apache.batik.anim.dom.SVGDOMImplementation;
+import org.apache.batik.test.PerformanceTest;
+
+/**
+ * This test checks that there is no performance degradation when
+ * deeply nested groups are generated: every group is drawn through a
+ * <code>Graphics2D</code> made by <code>create()</code>, which copies
+ * the graphic context.
+ *
+ * @version $Id$
+ */
+public class NestedGroupPerformanceTest extends PerformanceTest {
+
+    /**
+     * The nesting depth, and the number of groups in each group.
+     */
+    static final int DEPTH = 7;
+    static final int FAN_OUT = 3;
+
+    public void runOp() {
+        DOMImplementation impl = SVGDOMImplementation.getDOMImplementation();
+        String svgNS = SVGDOMImplementation.SVG_NAMESPACE_URI;
+        Document doc = impl.createDocument(svgNS, "svg", null);
+        SVGGraphics2D g = new SVGGraphics2D(doc);
+        paint(g, DEPTH);
+        g.dispose();
+    }
+
+    /**
+     * Fills a square and paints the nested groups, each in a copy of
+     * <code>g</code> with its own translation.
+     */
+    static void paint(Graphics2D g, int depth) {
+        g.fillRect(0, 0, 2, 2);
+        if (depth == 0) {
+            return;
+        }
+        for (int i = 0; i < FAN_OUT; i++) {
+            Graphics2D c = (Graphics2D)g.create();
+            c.translate(3 * i, 1);
+            if (i == 1) {
+                c.setColor(Color.red);
+            }
+            paint(c, depth - 1);
+            c.dispose();
+        }
+    }
+}
@@ -152,6 +152,7 @@ public class JUnitRunnerTestCase {
 "samples/tests/spec/scripting/primaryDoc.svg",
 "NullURITest",
 "DoubleStringPerformanceTest",
+"NestedGroupPerformanceTest",
 "text.selection.latin",
 "text.selection.latin-ext",
 "text.selection.cyrillic",
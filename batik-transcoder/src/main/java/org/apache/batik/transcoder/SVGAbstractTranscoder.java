@@ -223,15 +223,7 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
         // take the AOI into account if any
         if (hints.containsKey(KEY_AOI)) {
             Rectangle2D aoi = (Rectangle2D)hints.get(KEY_AOI);
-            // transform the AOI into the image's coordinate system
-            Px = new AffineTransform();
-            double sx = width / aoi.getWidth();
-            double sy = height / aoi.getHeight();
-            double scale = Math.min(sx,sy);
-            Px.scale(scale, scale);
-            double tx = -aoi.getX() + (width/scale - aoi.getWidth())/2;
-            double ty = -aoi.getY() + (height/scale -aoi.getHeight())/2;
-            Px.translate(tx, ty);
+            Px = getAOITransform(aoi);
             // take the AOI transformation matrix into account
             // we apply first the preserveAspectRatio matrix
             curAOI = aoi;
@@ -273,6 +265,23 @@ public abstract class SVGAbstractTranscoder extends XMLAbstractTranscoder {
         this.root = gvtRoot;
     }
 
+    /**
+     * Returns the transform fitting the given area of interest, in
+     * user space, into the image.
+     */
+    protected AffineTransform getAOITransform(Rectangle2D aoi) {
+        // transform the AOI into the image's coordinate system
+        AffineTransform Px = new AffineTransform();
+        double sx = width / aoi.getWidth();
+        double sy = height / aoi.getHeight();
+        double scale = Math.min(sx,sy);
+        Px.scale(scale, scale);
+        double tx = -aoi.getX() + (width/scale - aoi.getWidth())/2;
+        double ty = -aoi.getY() + (height/scale -aoi.getHeight())/2;
+        Px.translate(tx, ty);
+        return Px;
+    }
+
     protected CanvasGraphicsNode getCanvasGraphicsNode(GraphicsNode gn) {
         if (!(gn instanceof CompositeGraphicsNode))
             return null;
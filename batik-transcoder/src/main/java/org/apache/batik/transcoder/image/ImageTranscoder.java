@@ -21,23 +21,36 @@ package org.apache.batik.transcoder.image;
 import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 import java.awt.Paint;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.InputStream;
 
+import org.apache.batik.bridge.ViewBox;
+import org.apache.batik.ext.awt.RenderingHintsKeyExt;
 import org.apache.batik.ext.awt.image.GraphicsUtil;
 import org.apache.batik.gvt.renderer.ConcreteImageRendererFactory;
 import org.apache.batik.gvt.renderer.ImageRenderer;
 import org.apache.batik.gvt.renderer.ImageRendererFactory;
+import org.apache.batik.gvt.snapshot.Snapshot;
+import org.apache.batik.gvt.snapshot.SnapshotGraphicsNode;
 import org.apache.batik.transcoder.SVGAbstractTranscoder;
 import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
 import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.TranscodingHints;
+import org.apache.batik.transcoder.image.resources.Messages;
 import org.apache.batik.transcoder.keys.BooleanKey;
+import org.apache.batik.transcoder.keys.FloatKey;
+import org.apache.batik.transcoder.keys.IntegerKey;
 import org.apache.batik.transcoder.keys.PaintKey;
+import org.apache.batik.util.ParsedURL;
 import org.w3c.dom.Document;
 
 /**
@@ -64,6 +77,10 @@ import org.w3c.dom.Document;
  * stylesheet, and <code>KEY_MM_PER_PIXEL</code> to specify the number of
  * millimeters in each pixel .
  *
+ * <p>When <code>KEY_GVT_SNAPSHOT</code> is true, the input is a snapshot
+ * written by the <code>SnapshotTranscoder</code> rather than a document,
+ * and is painted without parsing, styling or building a tree.
+ *
  * @author <a href="mailto:Thierry.Kormann@sophia.inria.fr">Thierry Kormann</a>
  * @version $Id$
  */
@@ -91,6 +108,119 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
         // Sets up root, curTxf & curAoi
         super.transcode(document, uri, output);
 
+        renderRoot(output);
+    }
+
+    /**
+     * Transcodes the specified input in the specified output.  The input
+     * is read as a snapshot when <code>KEY_GVT_SNAPSHOT</code> is true,
+     * and as a document otherwise.
+     *
+     * @param input the input to transcode
+     * @param output the ouput where to transcode
+     * @exception TranscoderException if an error occured while transcoding
+     */
+    public void transcode(TranscoderInput input, TranscoderOutput output)
+            throws TranscoderException {
+
+        if (!Boolean.TRUE.equals(hints.get(KEY_GVT_SNAPSHOT))) {
+            super.transcode(input, output);
+            return;
+        }
+
+        Snapshot snapshot = null;
+        try {
+            InputStream is = input.getInputStream();
+            if (is != null) {
+                snapshot = Snapshot.read(is);
+            } else if (input.getURI() != null) {
+                is = new ParsedURL(input.getURI()).openStream();
+                try {
+                    snapshot = Snapshot.read(is);
+                } finally {
+                    is.close();
+                }
+            } else {
+                handler.fatalError(new TranscoderException(
+                    Messages.formatMessage("snapshot.badinput", null)));
+                return;
+            }
+        } catch (IOException ex) {
+            handler.fatalError(new TranscoderException(ex));
+        }
+        if (snapshot != null) {
+            try {
+                transcode(snapshot, output);
+            } catch(TranscoderException ex) {
+                // at this time, all TranscoderExceptions are fatal errors
+                handler.fatalError(ex);
+            }
+        }
+    }
+
+    /**
+     * Transcodes the specified snapshot as an image in the specified
+     * output.  The snapshot is fitted to the image the way the document
+     * it was recorded from would be.
+     *
+     * @param snapshot the snapshot to transcode
+     * @param output the ouput where to transcode
+     * @exception TranscoderException if an error occured while transcoding
+     */
+    protected void transcode(Snapshot snapshot, TranscoderOutput output)
+            throws TranscoderException {
+
+        if (hints.containsKey(KEY_WIDTH))
+            width = (Float) hints.get(KEY_WIDTH);
+        if (hints.containsKey(KEY_HEIGHT))
+            height = (Float) hints.get(KEY_HEIGHT);
+
+        float snapshotWidth = snapshot.getWidth();
+        float snapshotHeight = snapshot.getHeight();
+        setImageSize(snapshotWidth, snapshotHeight);
+
+        // compute the transform from the user space of the document
+        AffineTransform Px;
+        if (hints.containsKey(KEY_AOI)) {
+            Rectangle2D aoi = (Rectangle2D)hints.get(KEY_AOI);
+            Px = getAOITransform(aoi);
+            curAOI = aoi;
+        } else {
+            float[] vb = snapshot.getViewBox();
+            if (vb != null) {
+                Px = ViewBox.getPreserveAspectRatioTransform
+                    (vb, snapshot.getAlign(), snapshot.isMeet(),
+                     width, height);
+            } else {
+                float scale = Math.min(width/snapshotWidth,
+                                       height/snapshotHeight);
+                Px = AffineTransform.getScaleInstance(scale, scale);
+                Px.concatenate(snapshot.getViewTransform());
+            }
+            curAOI = new Rectangle2D.Float(0, 0, width, height);
+        }
+
+        // the snapshot is painted from the space it was recorded in
+        try {
+            Px.concatenate(snapshot.getRecordingTransform().createInverse());
+        } catch (NoninvertibleTransformException ex) {
+            throw new TranscoderException(ex);
+        }
+        curTxf = Px;
+        this.root = new SnapshotGraphicsNode(snapshot);
+
+        renderRoot(output);
+    }
+
+    /**
+     * Paints the current tree as an image in the specified output.
+     *
+     * @param output the ouput where to transcode
+     * @exception TranscoderException if an error occured while transcoding
+     */
+    protected void renderRoot(TranscoderOutput output)
+            throws TranscoderException {
+
         // prepare the image to be painted
         int w = (int)(width+0.5);
         int h = (int)(height+0.5);
@@ -98,6 +228,21 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
         // paint the SVG document using the bridge package
         // create the appropriate renderer
         ImageRenderer renderer = createRenderer();
+        if (hints.containsKey(KEY_SHAPE_SIMPLIFICATION) ||
+            hints.containsKey(KEY_GLYPH_ATLAS) ||
+            hints.containsKey(KEY_MARKER_STAMPING)) {
+            RenderingHints rh = renderer.getRenderingHints();
+            if (hints.containsKey(KEY_SHAPE_SIMPLIFICATION))
+                rh.put(RenderingHintsKeyExt.KEY_SHAPE_SIMPLIFICATION,
+                       hints.get(KEY_SHAPE_SIMPLIFICATION));
+            if (hints.containsKey(KEY_GLYPH_ATLAS))
+                rh.put(RenderingHintsKeyExt.KEY_GLYPH_ATLAS,
+                       hints.get(KEY_GLYPH_ATLAS));
+            if (hints.containsKey(KEY_MARKER_STAMPING))
+                rh.put(RenderingHintsKeyExt.KEY_MARKER_STAMPING,
+                       hints.get(KEY_MARKER_STAMPING));
+            renderer.setRenderingHints(rh);
+        }
         renderer.updateOffScreen(w, h);
         // curTxf.translate(0.5, 0.5);
         renderer.setTransform(curTxf);
@@ -275,4 +420,146 @@ public abstract class ImageTranscoder extends SVGAbstractTranscoder {
      */
     public static final TranscodingHints.Key KEY_FORCE_TRANSPARENT_WHITE
         = new BooleanKey();
+
+    /**
+     * The shape simplification key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_SHAPE_SIMPLIFICATION</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Float</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">none</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The distance, in pixels, by which shapes may
+     *       be simplified before they are painted.  Shapes with many
+     *       more vertices than the pixels they cover, such as the
+     *       coastlines of a map rendered as a small overview, are then
+     *       painted in a time that depends on the size of the image
+     *       rather than on their number of vertices.  A quarter of a
+     *       pixel is usually not noticeable.  Shapes are not
+     *       simplified when this key is not set.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_SHAPE_SIMPLIFICATION
+        = new FloatKey();
+
+    /**
+     * The glyph atlas key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_GLYPH_ATLAS</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Float</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">none</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The largest font size, in pixels, of the text
+     *       whose glyphs are copied from images rendered once rather
+     *       than filled one by one.  Only text filled with a color, not
+     *       stroked and not rotated is drawn this way, and its glyphs
+     *       may be off by an eighth of a pixel.  Dense small text, such
+     *       as the labels of a chart, renders much faster.  Glyphs are
+     *       always filled when this key is not set.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_GLYPH_ATLAS
+        = new FloatKey();
+
+    /**
+     * The marker stamping key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_MARKER_STAMPING</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Integer</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">none</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of markers of a shape from which
+     *       they are copied from images rendered once rather than
+     *       painted one by one.  Markers drawn this way may be off by a
+     *       quarter of a pixel.  Shapes with thousands of markers, such
+     *       as scatter plots, render much faster.  Markers are always
+     *       painted one by one when this key is not set.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_MARKER_STAMPING
+        = new IntegerKey();
+
+    /**
+     * The GVT snapshot key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_GVT_SNAPSHOT</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Boolean</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">false</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">Whether the input is a GVT snapshot written
+     *       by the <code>SnapshotTranscoder</code> rather than an SVG
+     *       document.  A snapshot is painted without parsing the
+     *       document, applying its style sheets or building its tree,
+     *       which is most of the time spent rendering simple documents.
+     *       The <code>KEY_WIDTH</code>, <code>KEY_HEIGHT</code>,
+     *       <code>KEY_AOI</code> and <code>KEY_BACKGROUND_COLOR</code>
+     *       keys apply as for documents, but the keys acting on the SVG
+     *       processor have no effect.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_GVT_SNAPSHOT
+        = new BooleanKey();
 }
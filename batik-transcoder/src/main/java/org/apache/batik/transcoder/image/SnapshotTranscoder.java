@@ -0,0 +1,186 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.batik.bridge.ViewBox;
+import org.apache.batik.gvt.CanvasGraphicsNode;
+import org.apache.batik.gvt.snapshot.Snapshot;
+import org.apache.batik.gvt.snapshot.SnapshotGraphics2D;
+import org.apache.batik.transcoder.SVGAbstractTranscoder;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.TranscodingHints;
+import org.apache.batik.transcoder.image.resources.Messages;
+import org.apache.batik.transcoder.keys.FloatKey;
+import org.apache.batik.util.ParsedURL;
+import org.apache.batik.util.SVGConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.svg.SVGPreserveAspectRatio;
+import org.w3c.dom.svg.SVGSVGElement;
+
+/**
+ * This class is a transcoder that produces a GVT snapshot: the painting
+ * of the GVT tree of a document, in a binary form that an
+ * <code>ImageTranscoder</code> reads back when its
+ * <code>KEY_GVT_SNAPSHOT</code> key is true.  Rendering a snapshot
+ * skips parsing the document, applying its style sheets and building
+ * its tree.
+ *
+ * <p>The <code>KEY_WIDTH</code>, <code>KEY_HEIGHT</code> and
+ * <code>KEY_AOI</code> keys define the image the snapshot is recorded
+ * for, and only what is painted within that image is recorded.
+ * Shapes, gradients, patterns and text are recorded as vectors;
+ * what the document paints through images (filters, masks, group
+ * opacity and raster images) is recorded at the resolution given by
+ * <code>KEY_RASTER_RESOLUTION</code>.
+ *
+ * @version $Id$
+ */
+public class SnapshotTranscoder extends SVGAbstractTranscoder {
+
+    /**
+     * Constructs a new transcoder that produces GVT snapshots.
+     */
+    public SnapshotTranscoder() {
+    }
+
+    /**
+     * Transcodes the specified Document as a snapshot in the specified
+     * output.
+     *
+     * @param document the document to transcode
+     * @param uri the uri of the document or null if any
+     * @param output the ouput where to transcode
+     * @exception TranscoderException if an error occured while transcoding
+     */
+    protected void transcode(Document document,
+                             String uri,
+                             TranscoderOutput output)
+            throws TranscoderException {
+
+        OutputStream ostream = output.getOutputStream();
+        if (ostream == null) {
+            throw new TranscoderException(
+                Messages.formatMessage("snapshot.badoutput", null));
+        }
+
+        // Sets up root, curTxf & curAoi
+        super.transcode(document, uri, output);
+
+        float resolution = 1;
+        if (hints.containsKey(KEY_RASTER_RESOLUTION)) {
+            resolution = (Float) hints.get(KEY_RASTER_RESOLUTION);
+        }
+
+        // the transform from the user space of the document to the image
+        AffineTransform viewTransform;
+        CanvasGraphicsNode cgn = getCanvasGraphicsNode(root);
+        if (cgn != null) {
+            viewTransform = cgn.getViewingTransform();
+        } else {
+            viewTransform = curTxf;
+        }
+
+        // paint the tree the way the static renderer does
+        SnapshotGraphics2D g2d = new SnapshotGraphics2D();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                             RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                             RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.scale(resolution, resolution);
+        g2d.clip(new Rectangle2D.Float(0, 0, width, height));
+        g2d.transform(curTxf);
+        root.paint(g2d);
+        this.root = null; // We're done with it...
+
+        Snapshot snapshot = g2d.getSnapshot();
+        snapshot.setSize(width, height);
+        snapshot.setViewTransform(viewTransform);
+        snapshot.setResolution(resolution);
+
+        // the view box lets the snapshot be fitted to other sizes the
+        // way the document would
+        SVGSVGElement svg = (SVGSVGElement)ctx.getDocument()
+            .getDocumentElement();
+        String ref = new ParsedURL(uri).getRef();
+        String viewBox = svg.getAttributeNS
+            (null, SVGConstants.SVG_VIEW_BOX_ATTRIBUTE);
+        if (!hints.containsKey(KEY_AOI) &&
+            ((ref == null) || (ref.length() == 0)) &&
+            (viewBox.length() != 0)) {
+            float[] vb = ViewBox.parseViewBoxAttribute(svg, viewBox, ctx);
+            SVGPreserveAspectRatio par =
+                svg.getPreserveAspectRatio().getBaseVal();
+            snapshot.setViewBox
+                (vb, par.getAlign(),
+                 par.getMeetOrSlice()
+                 == SVGPreserveAspectRatio.SVG_MEETORSLICE_MEET);
+        }
+
+        try {
+            snapshot.write(ostream);
+            ostream.flush();
+        } catch (IOException ex) {
+            throw new TranscoderException(ex);
+        }
+    }
+
+    // --------------------------------------------------------------------
+    // Keys definition
+    // --------------------------------------------------------------------
+
+    /**
+     * The raster resolution key.
+     *
+     * <table summary="" border="0" cellspacing="0" cellpadding="1">
+     *   <tr>
+     *     <th valign="top" align="right">Key:</th>
+     *     <td valign="top">KEY_RASTER_RESOLUTION</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Value:</th>
+     *     <td valign="top">Float</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Default:</th>
+     *     <td valign="top">1</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Required:</th>
+     *     <td valign="top">No</td>
+     *   </tr>
+     *   <tr>
+     *     <th valign="top" align="right">Description:</th>
+     *     <td valign="top">The number of snapshot pixels per image
+     *       pixel for the parts of the document recorded as images,
+     *       such as filtered or masked elements.  Use a value above 1
+     *       for snapshots that will be rendered larger than the image
+     *       they are recorded for.</td>
+     *   </tr>
+     * </table>
+     */
+    public static final TranscodingHints.Key KEY_RASTER_RESOLUTION
+        = new FloatKey();
+}
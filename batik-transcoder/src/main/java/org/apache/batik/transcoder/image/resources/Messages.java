@@ -71,7 +71,7 @@ public class Messages {
     public static String formatMessage(String key, Object[] args)
         throws MissingResourceException {
         //return localizableSupport.formatMessage(key, args);
-        if (args.length == 0) {
+        if ((args == null) || (args.length == 0)) {
           return key;
         }
         return key + " " + Arrays.toString(args);
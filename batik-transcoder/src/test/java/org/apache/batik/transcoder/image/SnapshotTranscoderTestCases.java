@@ -0,0 +1,181 @@
+/*
+
+   Licensed to the Apache Software Foundation (ASF) under one or more
+   contributor license agreements.  See the NOTICE file distributed with
+   this work for additional information regarding copyright ownership.
+   The ASF licenses this file to You under the Apache License, Version 2.0
+   (the "License"); you may not use this file except in compliance with
+   the License.  You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+ */
+package org.apache.batik.transcoder.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that an image transcoder renders a snapshot written by the
+ * <code>SnapshotTranscoder</code> as it renders the document itself.
+ */
+public class SnapshotTranscoderTestCases {
+
+    private static final String URI = "file:/snapshot-test.svg";
+
+    private static final String SVG =
+        "<svg xmlns='http://www.w3.org/2000/svg'"
+        + " xmlns:xlink='http://www.w3.org/1999/xlink'"
+        + " width='120' height='80' viewBox='0 0 60 40'>"
+        + "<defs><linearGradient id='g'>"
+        + "<stop offset='0' stop-color='red'/>"
+        + "<stop offset='1' stop-color='blue' stop-opacity='0.5'/>"
+        + "</linearGradient>"
+        + "<pattern id='p' width='4' height='4'"
+        + " patternUnits='userSpaceOnUse'>"
+        + "<rect width='2' height='2' fill='green'/></pattern></defs>"
+        + "<rect x='2' y='2' width='30' height='20' fill='url(#g)'/>"
+        + "<circle cx='40' cy='20' r='12' fill='url(#p)' stroke='black'"
+        + " stroke-width='1.5' stroke-dasharray='3 1'/>"
+        + "<g transform='rotate(20 30 20)' opacity='0.6'>"
+        + "<path d='M5 35 Q30 5 55 35 Z' fill='orange'/></g>"
+        + "</svg>";
+
+    @Test
+    public void testSnapshotRender() throws TranscoderException {
+        BufferedImage direct = renderDocument(null);
+        BufferedImage snapshot = renderSnapshot(null);
+        assertEquals(120, direct.getWidth());
+        assertEquals(80, direct.getHeight());
+        assertSimilar(direct, snapshot);
+    }
+
+    /**
+     * A snapshot rendered at another size is fitted to it through the
+     * view box of the document.
+     */
+    @Test
+    public void testSnapshotRenderResized() throws TranscoderException {
+        Float width = Float.valueOf(240);
+        BufferedImage direct = renderDocument(width);
+        BufferedImage snapshot = renderSnapshot(width);
+        assertEquals(240, snapshot.getWidth());
+        assertEquals(160, snapshot.getHeight());
+        assertSimilar(direct, snapshot);
+    }
+
+    /**
+     * A snapshot can not be read from characters or from a DOM.
+     */
+    @Test
+    public void testReaderInput() {
+        ImageTranscoder t = new Capture();
+        t.addTranscodingHint(ImageTranscoder.KEY_GVT_SNAPSHOT,
+                             Boolean.TRUE);
+        try {
+            t.transcode(new TranscoderInput(new StringReader(SVG)),
+                        new TranscoderOutput());
+            fail("Snapshot read from a reader");
+        } catch (TranscoderException ex) {
+            assertNotNull(ex.getMessage());
+        }
+    }
+
+    private static BufferedImage renderDocument(Float width)
+            throws TranscoderException {
+        Capture t = new Capture();
+        if (width != null)
+            t.addTranscodingHint(ImageTranscoder.KEY_WIDTH, width);
+        TranscoderInput input = new TranscoderInput(new StringReader(SVG));
+        input.setURI(URI);
+        t.transcode(input, new TranscoderOutput());
+        return t.image;
+    }
+
+    private static BufferedImage renderSnapshot(Float width)
+            throws TranscoderException {
+        SnapshotTranscoder st = new SnapshotTranscoder();
+        if (width != null)
+            st.addTranscodingHint(SnapshotTranscoder.KEY_RASTER_RESOLUTION,
+                                  Float.valueOf(2));
+        TranscoderInput input = new TranscoderInput(new StringReader(SVG));
+        input.setURI(URI);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        st.transcode(input, new TranscoderOutput(bos));
+        assertTrue(bos.size() > 0);
+
+        Capture t = new Capture();
+        t.addTranscodingHint(ImageTranscoder.KEY_GVT_SNAPSHOT, Boolean.TRUE);
+        if (width != null)
+            t.addTranscodingHint(ImageTranscoder.KEY_WIDTH, width);
+        t.transcode(new TranscoderInput
+                    (new ByteArrayInputStream(bos.toByteArray())),
+                    new TranscoderOutput());
+        return t.image;
+    }
+
+    /**
+     * Checks that both images have the same size and that they only
+     * differ on a few pixels: the antialiased edges of what is recorded
+     * as an image, such as the group with an opacity, are not clipped
+     * the same way.
+     */
+    private static void assertSimilar(BufferedImage a, BufferedImage b) {
+        assertEquals(a.getWidth(), b.getWidth());
+        assertEquals(a.getHeight(), b.getHeight());
+        int w = a.getWidth();
+        int h = a.getHeight();
+        int painted = 0;
+        int different = 0;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int pa = a.getRGB(x, y);
+                int pb = b.getRGB(x, y);
+                if (pa != 0)
+                    painted++;
+                int d = 0;
+                for (int s = 0; s < 32; s += 8)
+                    d = Math.max(d, Math.abs(((pa >>> s) & 0xff)
+                                             - ((pb >>> s) & 0xff)));
+                if (d > 2)
+                    different++;
+            }
+        }
+        assertTrue(painted > w * h / 4);
+        assertTrue(different + " different pixels", different * 100 < w * h);
+    }
+
+    /**
+     * Keeps the image it transcodes to.
+     */
+    private static class Capture extends ImageTranscoder {
+        BufferedImage image;
+
+        public BufferedImage createImage(int width, int height) {
+            return new BufferedImage(width, height,
+                                     BufferedImage.TYPE_INT_ARGB);
+        }
+
+        public void writeImage(BufferedImage img, TranscoderOutput output) {
+            image = img;
+        }
+    }
+}